@@ -1,9 +1,12 @@
 package com.ydlclass;
 
+import com.ydlclass.annotation.YrpcApi;
+
 /**
  * @author it楠老师
  * @createTime 2023-06-27
  */
+@YrpcApi
 public interface HelloYrpc2 {
 
     /**
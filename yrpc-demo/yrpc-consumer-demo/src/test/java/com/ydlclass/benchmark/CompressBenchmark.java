@@ -0,0 +1,166 @@
+package com.ydlclass.benchmark;
+
+import com.ydlclass.compress.AdaptiveCompression;
+import com.ydlclass.compress.Compressor;
+import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.config.ObjectWrapper;
+import com.ydlclass.serialize.Serializer;
+import com.ydlclass.serialize.impl.HessianSerializer;
+import com.ydlclass.transport.message.RequestPayload;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比内置压缩方式在典型rpc报文上的压缩率和耗时
+ * 报文体先用hessian序列化，再分别压缩和解压缩
+ * serialize和adaptiveWrite对比编码器写报文体的完整过程：只序列化，以及序列化后按需压缩并在同一个byteBuf中前移
+ * 直接运行main方法即可，先输出每种组合的压缩率，再运行基准测试
+ *
+ * @author it楠老师
+ * @createTime 2023-08-15
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressBenchmark {
+
+    @Param({"request", "orders-20", "orders-500"})
+    public String payload;
+
+    @Param({"gzip", "lz4", "zstd"})
+    public String codec;
+
+    private final Serializer serializer = new HessianSerializer();
+    private Object body;
+    private byte[] raw;
+    private byte[] compressed;
+    private Compressor compressor;
+    private byte code;
+
+    @Setup
+    public void setUp() {
+        ObjectWrapper<Compressor> wrapper = CompressorFactory.getCompressor(codec);
+        compressor = wrapper.getImpl();
+        code = wrapper.getCode();
+        body = body(payload);
+        raw = serializer.serialize(body);
+        compressed = compressor.compress(raw);
+        if (!Arrays.equals(raw, compressor.decompress(compressed))) {
+            throw new IllegalStateException(codec + "解压后的数据与原始数据不一致");
+        }
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compressor.compress(raw);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return compressor.decompress(compressed);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            try (OutputStream os = new ByteBufOutputStream(out)) {
+                serializer.serialize(body, os);
+            }
+            return out.writerIndex();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public int adaptiveWrite() throws IOException {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            return AdaptiveCompression.write(out, body, serializer, code, payload, true) + out.writerIndex();
+        } finally {
+            out.release();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Serializer serializer = new HessianSerializer();
+        System.out.printf("%-12s %-6s %10s %10s %8s%n", "payload", "codec", "raw", "compressed", "ratio");
+        for (String payload : new String[]{"request", "orders-20", "orders-500"}) {
+            byte[] raw = serializer.serialize(body(payload));
+            for (String codec : new String[]{"gzip", "lz4", "zstd"}) {
+                byte[] compressed = CompressorFactory.getCompressor(codec).getImpl().compress(raw);
+                System.out.printf("%-12s %-6s %10d %10d %8.3f%n",
+                    payload, codec, raw.length, compressed.length, (double) compressed.length / raw.length);
+            }
+        }
+        new Runner(new OptionsBuilder().include(CompressBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static Object body(String payload) {
+        return switch (payload) {
+            case "request" -> request();
+            case "orders-20" -> orders(20);
+            default -> orders(500);
+        };
+    }
+
+    private static RequestPayload request() {
+        return RequestPayload.builder()
+            .interfaceName("com.ydlclass.HelloYrpc")
+            .methodName("sayHi")
+            .parametersType(new Class[]{String.class})
+            .parametersValue(new Object[]{"你好，yrpc"})
+            .returnType(String.class)
+            .build();
+    }
+
+    /**
+     * 模拟一个查询接口返回的订单列表，字段名和枚举值大量重复，金额、时间等是随机的
+     */
+    private static List<Map<String, Object>> orders(int count) {
+        Random random = new Random(count);
+        String[] status = {"CREATED", "PAID", "SHIPPED", "FINISHED", "CANCELED"};
+        List<Map<String, Object>> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> order = new HashMap<>();
+            order.put("orderId", 1_000_000_000L + random.nextInt(1_000_000));
+            order.put("userId", random.nextInt(100_000));
+            order.put("status", status[random.nextInt(status.length)]);
+            order.put("amount", random.nextInt(100_000) / 100.0);
+            order.put("createTime", 1_690_000_000_000L + random.nextInt(1_000_000_000));
+            order.put("address", "北京市海淀区中关村大街" + random.nextInt(200) + "号");
+            order.put("remark", random.nextBoolean() ? "" : "请尽快发货");
+            orders.add(order);
+        }
+        return orders;
+    }
+}
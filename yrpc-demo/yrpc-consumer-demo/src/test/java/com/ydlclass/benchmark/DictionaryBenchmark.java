@@ -0,0 +1,226 @@
+package com.ydlclass.benchmark;
+
+import com.ydlclass.compress.Compressor;
+import com.ydlclass.compress.DictionaryRegistry;
+import com.ydlclass.compress.DictionaryTrainer;
+import com.ydlclass.compress.impl.GzipCompressor;
+import com.ydlclass.compress.impl.Lz4Compressor;
+import com.ydlclass.compress.impl.ZstdCompressor;
+import com.ydlclass.compress.impl.ZstdDictCompressor;
+import com.ydlclass.serialize.Serializer;
+import com.ydlclass.serialize.impl.HessianSerializer;
+import com.ydlclass.transport.message.RequestPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比使用压缩字典前后小报文的压缩率和耗时
+ * 先用一批随机生成的报文体训练字典，再用另一批报文体计算每种压缩方式的平均长度和耗时，训练用的报文不参与计算
+ * 直接运行main方法即可，先输出字典的训练耗时和每种组合的压缩率，再运行基准测试，需要zstd-jni
+ *
+ * @author it楠老师
+ * @createTime 2023-08-16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    private static final String[] STATUS = {"CREATED", "PAID", "SHIPPED", "FINISHED", "CANCELED"};
+    private static final String[] PAYLOADS = {"request", "order", "orders-5"};
+    private static final String[] CODECS = {"gzip", "lz4", "zstd", ZstdDictCompressor.NAME};
+    private static final int TRAIN_SAMPLES = 2000;
+    private static final int TEST_SAMPLES = 1000;
+
+    @Param({"request", "order", "orders-5"})
+    public String payload;
+
+    @Param({"gzip", "lz4", "zstd", ZstdDictCompressor.NAME})
+    public String codec;
+
+    private Compressor compressor;
+    private List<byte[]> raws;
+    private List<byte[]> compressed;
+
+    @Setup
+    public void setUp() {
+        if (!ZstdCompressor.isAvailable()) {
+            throw new IllegalStateException("未找到zstd-jni，无法运行。");
+        }
+        train();
+        compressor = compressor(codec);
+        raws = testSamples(payload);
+        compressed = compress(compressor, raws, codec);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEST_SAMPLES)
+    public void compress(Blackhole blackhole) {
+        for (byte[] raw : raws) {
+            blackhole.consume(compressor.compress(raw));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEST_SAMPLES)
+    public void decompress(Blackhole blackhole) {
+        for (byte[] bytes : compressed) {
+            blackhole.consume(compressor.decompress(bytes));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        if (!ZstdCompressor.isAvailable()) {
+            System.out.println("未找到zstd-jni，无法运行。");
+            return;
+        }
+        long begin = System.nanoTime();
+        byte[] dictionary = train();
+        System.out.printf("使用%d个样本训练出%d字节的字典，耗时%d毫秒%n%n",
+            TRAIN_SAMPLES * PAYLOADS.length, dictionary.length, (System.nanoTime() - begin) / 1_000_000);
+
+        // 使用没有参与训练的报文计算压缩率
+        System.out.printf("%-10s %-9s %8s %11s %8s%n", "payload", "codec", "raw", "compressed", "ratio");
+        for (String payload : PAYLOADS) {
+            List<byte[]> raws = testSamples(payload);
+            long rawTotal = raws.stream().mapToLong(raw -> raw.length).sum();
+            for (String codec : CODECS) {
+                long compressedTotal = compress(compressor(codec), raws, codec).stream().mapToLong(bytes -> bytes.length).sum();
+                System.out.printf("%-10s %-9s %8d %11d %8.3f%n", payload, codec, rawTotal / raws.size(),
+                    compressedTotal / raws.size(), (double) compressedTotal / rawTotal);
+            }
+        }
+        new Runner(new OptionsBuilder().include(DictionaryBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * 训练字典并作为发送方使用的字典，各种报文混在一起，和线上采集到的一样
+     * 样本使用固定的种子，同一个进程中重复训练得到的是同一个字典
+     */
+    private static byte[] train() {
+        Serializer serializer = new HessianSerializer();
+        Random random = new Random(1);
+        List<byte[]> samples = new ArrayList<>(TRAIN_SAMPLES * PAYLOADS.length);
+        for (int i = 0; i < TRAIN_SAMPLES; i++) {
+            for (String payload : PAYLOADS) {
+                samples.add(serializer.serialize(payload(payload, random)));
+            }
+        }
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+        DictionaryRegistry.activate(DictionaryRegistry.register(dictionary));
+        return dictionary;
+    }
+
+    private static List<byte[]> testSamples(String payload) {
+        Serializer serializer = new HessianSerializer();
+        Random random = new Random(2);
+        List<byte[]> raws = new ArrayList<>(TEST_SAMPLES);
+        for (int i = 0; i < TEST_SAMPLES; i++) {
+            raws.add(serializer.serialize(payload(payload, random)));
+        }
+        return raws;
+    }
+
+    private static List<byte[]> compress(Compressor compressor, List<byte[]> raws, String codec) {
+        List<byte[]> compressed = new ArrayList<>(raws.size());
+        for (byte[] raw : raws) {
+            byte[] bytes = compressor.compress(raw);
+            if (!Arrays.equals(raw, compressor.decompress(bytes))) {
+                throw new IllegalStateException(codec + "解压后的数据与原始数据不一致");
+            }
+            compressed.add(bytes);
+        }
+        return compressed;
+    }
+
+    private static Compressor compressor(String codec) {
+        return switch (codec) {
+            case "gzip" -> new GzipCompressor();
+            case "lz4" -> new Lz4Compressor();
+            case "zstd" -> new ZstdCompressor();
+            default -> new ZstdDictCompressor();
+        };
+    }
+
+    private static Object payload(String payload, Random random) {
+        return switch (payload) {
+            case "request" -> request(random);
+            case "order" -> order(random);
+            default -> orders(random, 5);
+        };
+    }
+
+    /**
+     * 模拟几个接口的调用请求，接口名、方法名、参数类型都是重复的，参数值是随机的
+     */
+    private static RequestPayload request(Random random) {
+        return switch (random.nextInt(3)) {
+            case 0 -> RequestPayload.builder()
+                .interfaceName("com.ydlclass.HelloYrpc")
+                .methodName("sayHi")
+                .parametersType(new Class[]{String.class})
+                .parametersValue(new Object[]{"你好，yrpc" + random.nextInt(10_000)})
+                .returnType(String.class)
+                .build();
+            case 1 -> RequestPayload.builder()
+                .interfaceName("com.ydlclass.order.OrderService")
+                .methodName("queryOrder")
+                .parametersType(new Class[]{Long.class, Integer.class})
+                .parametersValue(new Object[]{1_000_000_000L + random.nextInt(1_000_000), random.nextInt(100_000)})
+                .returnType(Map.class)
+                .build();
+            default -> RequestPayload.builder()
+                .interfaceName("com.ydlclass.order.OrderService")
+                .methodName("listOrders")
+                .parametersType(new Class[]{Integer.class, String.class, Integer.class})
+                .parametersValue(new Object[]{random.nextInt(100_000), STATUS[random.nextInt(STATUS.length)], 20})
+                .returnType(List.class)
+                .build();
+        };
+    }
+
+    private static Map<String, Object> order(Random random) {
+        Map<String, Object> order = new HashMap<>();
+        order.put("orderId", 1_000_000_000L + random.nextInt(1_000_000));
+        order.put("userId", random.nextInt(100_000));
+        order.put("status", STATUS[random.nextInt(STATUS.length)]);
+        order.put("amount", random.nextInt(100_000) / 100.0);
+        order.put("createTime", 1_690_000_000_000L + random.nextInt(1_000_000_000));
+        order.put("address", "北京市海淀区中关村大街" + random.nextInt(200) + "号");
+        order.put("remark", random.nextBoolean() ? "" : "请尽快发货");
+        return order;
+    }
+
+    private static List<Map<String, Object>> orders(Random random, int count) {
+        List<Map<String, Object>> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(random));
+        }
+        return orders;
+    }
+}
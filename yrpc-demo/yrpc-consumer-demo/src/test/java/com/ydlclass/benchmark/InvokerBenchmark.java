@@ -0,0 +1,117 @@
+package com.ydlclass.benchmark;
+
+import com.ydlclass.core.MethodInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比服务提供方调用目标方法的几种方式的耗时
+ * lookupReflect：每次调用都按方法名和参数类型查找Method再反射调用（预先生成调用器之前的做法）
+ * reflect：缓存Method，只做反射调用
+ * invoker：发布时预先生成的MethodInvoker
+ * 直接运行main方法即可
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+
+    @Param({"sayHi", "add", "now"})
+    public String method;
+
+    private Greeting target;
+    private Method reflectMethod;
+    private MethodInvoker invoker;
+    private Class<?>[] parametersType;
+    private Object[] parametersValue;
+
+    @Setup
+    public void setUp() throws Exception {
+        target = new GreetingImpl();
+        switch (method) {
+            case "sayHi" -> {
+                parametersType = new Class[]{String.class};
+                parametersValue = new Object[]{"yrpc"};
+            }
+            case "add" -> {
+                parametersType = new Class[]{int.class, int.class};
+                parametersValue = new Object[]{1, 2};
+            }
+            default -> {
+                parametersType = new Class[0];
+                parametersValue = new Object[0];
+            }
+        }
+        reflectMethod = target.getClass().getMethod(method, parametersType);
+        invoker = MethodInvoker.of(target, reflectMethod);
+    }
+
+    @Benchmark
+    public Object lookupReflect() throws Exception {
+        return target.getClass().getMethod(method, parametersType).invoke(target, parametersValue);
+    }
+
+    @Benchmark
+    public Object reflect() throws Exception {
+        return reflectMethod.invoke(target, parametersValue);
+    }
+
+    @Benchmark
+    public Object invoker() throws Throwable {
+        return invoker.invoke(parametersValue);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(InvokerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public interface Greeting {
+        String sayHi(String name);
+
+        int add(int a, int b);
+
+        long now();
+    }
+
+    /**
+     * 模拟一个服务实现，方法本身足够简单，耗时主要来自调用方式
+     */
+    public static class GreetingImpl implements Greeting {
+
+        @Override
+        public String sayHi(String name) {
+            return "hi " + name;
+        }
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public long now() {
+            return System.nanoTime();
+        }
+    }
+}
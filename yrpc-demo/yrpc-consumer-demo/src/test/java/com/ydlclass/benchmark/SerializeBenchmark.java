@@ -0,0 +1,179 @@
+package com.ydlclass.benchmark;
+
+import com.ydlclass.serialize.Serializer;
+import com.ydlclass.serialize.compact.CompactClassRegistry;
+import com.ydlclass.serialize.impl.CompactSerializer;
+import com.ydlclass.serialize.impl.HessianSerializer;
+import com.ydlclass.serialize.impl.JdkSerializer;
+import com.ydlclass.serialize.impl.JsonSerializer;
+import com.ydlclass.transport.message.RequestPayload;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比内置序列化方式的报文长度、耗时和内存分配
+ * 内存分配使用jmh的gc profiler，看结果中的gc.alloc.rate.norm（每次操作分配的字节数）
+ * json不能还原Class类型的字段，也不能还原集合中元素的类型，对应组合的deserialize以UnsupportedOperationException结束
+ * 直接运行main方法即可，先输出每种组合的报文长度，再运行基准测试
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+
+    private static final String[] PAYLOADS = {"request", "order", "orders-20"};
+    private static final String[] FORMATS = {"jdk", "json", "hessian", "compact"};
+
+    @Param({"request", "order", "orders-20"})
+    public String payload;
+
+    @Param({"jdk", "json", "hessian", "compact"})
+    public String format;
+
+    private Serializer serializer;
+    private Object value;
+    private Class<?> type;
+    private byte[] bytes;
+    private boolean deserializable;
+
+    @Setup
+    public void setUp() {
+        // 业务的类登记编号以后，报文中不再写类名
+        CompactClassRegistry.register(Order.class, CompactClassRegistry.USER_ID_START);
+        serializer = serializer(format);
+        value = payload(payload);
+        type = value.getClass();
+        bytes = serializer.serialize(value);
+        deserializable = canDeserialize(serializer, bytes, type);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        if (!deserializable) {
+            throw new UnsupportedOperationException(format + "无法还原" + payload);
+        }
+        return serializer.deserialize(bytes, type);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CompactClassRegistry.register(Order.class, CompactClassRegistry.USER_ID_START);
+        System.out.printf("%-10s %-8s %8s %12s%n", "payload", "format", "size", "deserialize");
+        for (String payload : PAYLOADS) {
+            Object value = payload(payload);
+            for (String format : FORMATS) {
+                Serializer serializer = serializer(format);
+                byte[] bytes = serializer.serialize(value);
+                System.out.printf("%-10s %-8s %8d %12s%n", payload, format, bytes.length,
+                    canDeserialize(serializer, bytes, value.getClass()) ? "支持" : "不支持");
+            }
+        }
+        new Runner(new OptionsBuilder()
+            .include(SerializeBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+    private static boolean canDeserialize(Serializer serializer, byte[] bytes, Class<?> type) {
+        try {
+            serializer.deserialize(bytes, type);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Serializer serializer(String format) {
+        return switch (format) {
+            case "jdk" -> new JdkSerializer();
+            case "json" -> new JsonSerializer();
+            case "hessian" -> new HessianSerializer();
+            default -> new CompactSerializer();
+        };
+    }
+
+    private static Object payload(String payload) {
+        return switch (payload) {
+            case "request" -> request();
+            case "order" -> order(new Random(1));
+            default -> orders(20);
+        };
+    }
+
+    private static RequestPayload request() {
+        return RequestPayload.builder()
+            .interfaceName("com.ydlclass.HelloYrpc")
+            .methodName("sayHi")
+            .parametersType(new Class[]{String.class})
+            .parametersValue(new Object[]{"你好，yrpc"})
+            .returnType(String.class)
+            .build();
+    }
+
+    private static Order order(Random random) {
+        String[] status = {"CREATED", "PAID", "SHIPPED", "FINISHED", "CANCELED"};
+        return new Order(1_000_000_000L + random.nextInt(1_000_000), random.nextInt(100_000),
+            status[random.nextInt(status.length)], BigDecimal.valueOf(random.nextInt(100_000), 2),
+            1_690_000_000_000L + random.nextInt(1_000_000_000), "北京市海淀区中关村大街" + random.nextInt(200) + "号",
+            random.nextBoolean(), new ArrayList<>(List.of("book", "pen")));
+    }
+
+    private static ArrayList<Order> orders(int count) {
+        Random random = new Random(count);
+        ArrayList<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(random));
+        }
+        return orders;
+    }
+
+    /**
+     * 模拟一个查询接口返回的订单
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Order implements Serializable {
+        private long orderId;
+        private int userId;
+        private String status;
+        private BigDecimal amount;
+        private long createTime;
+        private String address;
+        private boolean paid;
+        private List<String> items;
+    }
+}
@@ -14,4 +14,7 @@ public class Constant {
     public static final String BASE_PROVIDERS_PATH = "/yrpc-metadata/providers";
     public static final String BASE_CONSUMERS_PATH = "/yrpc-metadata/consumers";
     
+    // 压缩字典在注册中心的基础路径
+    public static final String BASE_DICTIONARIES_PATH = "/yrpc-metadata/dictionaries";
+    
 }
@@ -0,0 +1,28 @@
+package com.ydlclass.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 舱壁，服务提供方为服务或方法单独分配线程和队列，一个慢方法打满了也不会拖垮其他方法
+ * 标注在服务的接口或实现类上时整个服务共用一个舱壁，标注在方法上时该方法独占一个舱壁
+ *
+ * @author it楠老师
+ * @createTime 2023-08-11
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+    
+    // 同时执行的最大调用数，也是舱壁的线程数
+    int maxConcurrency() default 10;
+    
+    // 排队的最大调用数，0代表不排队
+    int queueSize() default 100;
+    
+    // 舱壁已满时的响应：overload（服务过载）或rateLimit（服务被限流）
+    String rejectPolicy() default "overload";
+    
+}
@@ -0,0 +1,20 @@
+package com.ydlclass.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 服务调用方等待响应的超时时间，标注在接口的方法上，没有标注的方法使用默认的10秒
+ *
+ * @author it楠老师
+ * @createTime 2023-08-12
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+    
+    long timeoutMillis() default 10_000;
+    
+}
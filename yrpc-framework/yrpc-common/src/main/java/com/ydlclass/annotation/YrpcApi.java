@@ -6,6 +6,9 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * 标注在服务实现上时，包扫描会发布它实现的所有接口
+ * 使用yrpc-processor编译时，服务实现会生成分发器并写入服务索引，标注在接口上时会为接口生成存根
+ *
  * @author it楠老师
  * @createTime 2023-07-09
  */
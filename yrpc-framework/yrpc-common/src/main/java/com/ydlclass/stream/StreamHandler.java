@@ -0,0 +1,21 @@
+package com.ydlclass.stream;
+
+/**
+ * 服务提供方的双向流处理器，通过ServiceConfig登记，每打开一个流调用一次open
+ * <pre>
+ *   serviceConfig.addStreamHandler("ingest", responses -> new StreamObserver&lt;Event&gt;() {...});
+ * </pre>
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+@FunctionalInterface
+public interface StreamHandler<I, O> {
+
+    /**
+     * 打开一个流，该方法以及返回的观察者都在netty的线程中被调用，不能阻塞
+     * @param responseObserver 向调用方发送响应的观察者
+     * @return 接收调用方消息的观察者
+     */
+    StreamObserver<I> open(StreamObserver<O> responseObserver);
+}
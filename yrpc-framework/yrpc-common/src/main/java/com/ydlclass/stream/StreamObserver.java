@@ -0,0 +1,28 @@
+package com.ydlclass.stream;
+
+/**
+ * 双向流中一个方向上的消息观察者
+ * 调用方通过它发送消息、接收响应；服务提供方通过它接收消息、发送响应
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+public interface StreamObserver<T> {
+
+    /**
+     * 收到或者发送一条消息
+     * @param value 消息
+     */
+    void onNext(T value);
+
+    /**
+     * 对方发生异常或者流被取消，之后不会再有任何消息
+     * @param throwable 异常
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * 这个方向上的消息已经全部发送完毕（半关闭）
+     */
+    void onCompleted();
+}
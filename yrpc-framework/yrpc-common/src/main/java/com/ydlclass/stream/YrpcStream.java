@@ -0,0 +1,63 @@
+package com.ydlclass.stream;
+
+import java.util.Iterator;
+
+/**
+ * 服务端流式方法的返回值类型
+ * 服务提供方返回一个YrpcStream，框架按照调用方给的额度（credit）逐个将元素以数据帧的形式推送出去
+ * 服务调用方拿到的是一个阻塞的迭代器，边消费边补充额度，提前结束时需要调用close方法通知提供方
+ * <pre>
+ *   YrpcStream&lt;User&gt; listUsers(int pageSize);
+ * </pre>
+ *
+ * @author it楠老师
+ * @createTime 2023-08-05
+ */
+public interface YrpcStream<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * 关闭流，释放资源
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * 服务提供方使用，将一个迭代器包装成流，迭代器实现了AutoCloseable时会在流结束时关闭
+     * @param iterator 数据源
+     * @return 流
+     */
+    static <T> YrpcStream<T> of(Iterator<T> iterator) {
+        return new YrpcStream<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                if (iterator instanceof AutoCloseable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * 服务提供方使用，将一个集合包装成流
+     * @param iterable 数据源
+     * @return 流
+     */
+    static <T> YrpcStream<T> of(Iterable<T> iterable) {
+        return of(iterable.iterator());
+    }
+}
@@ -0,0 +1,54 @@
+package com.ydlclass.stub;
+
+import java.util.List;
+
+/**
+ * 注解处理器和运行时共同约定的生成类的名字、索引文件的位置和方法签名的格式
+ *
+ * @author it楠老师
+ * @createTime 2023-08-09
+ */
+public class GeneratedNames {
+
+    // 服务索引文件，每行一个标注了@YrpcApi的服务实现的全限定名
+    public static final String SERVICE_INDEX = "META-INF/yrpc/services";
+
+    // 存根中记录方法签名的静态字段
+    public static final String SIGNATURES_FIELD = "SIGNATURES";
+
+    private static final String STUB_SUFFIX = "_YrpcStub";
+    private static final String DISPATCHER_SUFFIX = "_YrpcDispatcher";
+
+    /**
+     * @param interfaceName 接口的全限定名（内部类使用$分隔）
+     * @return 接口存根的全限定名，和接口在同一个包下
+     */
+    public static String stubName(String interfaceName) {
+        return flatten(interfaceName) + STUB_SUFFIX;
+    }
+
+    /**
+     * @param implementationName 服务实现的全限定名（内部类使用$分隔）
+     * @return 服务实现分发器的全限定名，和服务实现在同一个包下
+     */
+    public static String dispatcherName(String implementationName) {
+        return flatten(implementationName) + DISPATCHER_SUFFIX;
+    }
+
+    /**
+     * 方法的签名，例如 com.ydlclass.HelloYrpc#sayHi(java.lang.String)
+     * @param interfaceName  接口的全限定名
+     * @param methodName     方法名
+     * @param parametersType 参数类型，格式和Class#getName相同
+     * @return 签名
+     */
+    public static String signature(String interfaceName, String methodName, List<String> parametersType) {
+        return interfaceName + "#" + methodName + "(" + String.join(",", parametersType) + ")";
+    }
+
+    // 内部类的$换成_，生成的类都是顶层类
+    private static String flatten(String className) {
+        int packageEnd = className.lastIndexOf('.');
+        return className.substring(0, packageEnd + 1) + className.substring(packageEnd + 1).replace('$', '_');
+    }
+}
@@ -0,0 +1,25 @@
+package com.ydlclass.stub;
+
+/**
+ * 编译期为服务实现生成的分发器，按方法下标直接调用服务实现，不再经过反射
+ *
+ * @author it楠老师
+ * @createTime 2023-08-09
+ */
+public interface ServiceDispatcher {
+
+    /**
+     * @return 分发器能够调用的方法的签名，下标和dispatch的index一一对应
+     */
+    String[] signatures();
+
+    /**
+     * 调用服务实现的方法，方法本身抛出的异常原样抛出
+     * @param ref             服务的实现
+     * @param index           方法的下标
+     * @param parametersValue 参数，没有参数时可以为null
+     * @return 返回值
+     * @throws Throwable 方法抛出的异常
+     */
+    Object dispatch(Object ref, int index, Object[] parametersValue) throws Throwable;
+}
@@ -0,0 +1,20 @@
+package com.ydlclass.stub;
+
+/**
+ * 编译期生成的服务调用方存根通过它发起远程调用
+ * 存根只依赖yrpc-common，运行时由框架为每个存根提供实现
+ *
+ * @author it楠老师
+ * @createTime 2023-08-09
+ */
+@FunctionalInterface
+public interface StubInvoker {
+
+    /**
+     * 调用远程方法
+     * @param index           方法在存根SIGNATURES中的下标
+     * @param parametersValue 参数，没有参数时为null
+     * @return 返回值
+     */
+    Object invoke(int index, Object[] parametersValue);
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.CountDownLatch;
  * | 创建节点     | createNode(...)      | 自动判断节点是否存在，不重复创建     |
  * | 判断节点存在 | exists(...)          | 判断指定路径的节点是否存在        |
  * | 查询子节点  | getChildren(...)     | 获取指定节点下的所有子节点名称      |
+ * | 读取节点数据 | getData(...)         | 读取指定节点的数据，节点不存在时返回null |
  * | 关闭连接   | close(...)           | 安全关闭 ZooKeeper 实例连接  |
  */
 @Slf4j
@@ -131,4 +132,22 @@ public class ZookeeperUtils {
             throw new ZookeeperException(e);
         }
     }
+
+    /**
+     * 读取一个节点的数据
+     *
+     * @param zooKeeper zk实例
+     * @param node      节点路径
+     * @return 节点的数据，节点不存在时返回null
+     */
+    public static byte[] getData(ZooKeeper zooKeeper, String node) {
+        try {
+            return zooKeeper.getData(node, null, null);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (KeeperException | InterruptedException e) {
+            log.error("读取节点【{}】的数据时发生异常.", node, e);
+            throw new ZookeeperException(e);
+        }
+    }
 }
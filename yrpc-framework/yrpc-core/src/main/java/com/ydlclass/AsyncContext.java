@@ -0,0 +1,77 @@
+package com.ydlclass;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 同步接口的异步调用，调用线程不等待响应，响应到达以后完成返回的future
+ * <pre>
+ *   CompletableFuture&lt;String&gt; future = AsyncContext.call(() -> helloYrpc.sayHi("你好"));
+ * </pre>
+ * 接口方法本身返回CompletableFuture时不需要这个类
+ * future的回调在netty的线程中执行，不能阻塞，需要阻塞时使用xxxAsync方法并指定线程池
+ *
+ * @author it楠老师
+ * @createTime 2023-08-10
+ */
+public class AsyncContext {
+
+    private static final ThreadLocal<AsyncContext> CONTEXT = new ThreadLocal<>();
+
+    // 上下文中第一次远程调用的结果
+    private CompletableFuture<Object> future;
+
+    private AsyncContext() {
+    }
+
+    /**
+     * 异步执行一次同步接口的调用，lambda中只能发起一次远程调用，之后的调用依然是同步的
+     * @param syncCall 同步接口的调用，它的返回值是占位的默认值，没有意义
+     * @return 调用的结果
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> call(Supplier<T> syncCall) {
+        AsyncContext previous = CONTEXT.get();
+        AsyncContext context = new AsyncContext();
+        CONTEXT.set(context);
+        try {
+            syncCall.get();
+        } finally {
+            if (previous == null) {
+                CONTEXT.remove();
+            } else {
+                CONTEXT.set(previous);
+            }
+        }
+        if (context.future == null) {
+            throw new IllegalStateException("异步上下文中没有发起远程调用。");
+        }
+        return (CompletableFuture<T>) context.future;
+    }
+
+    /**
+     * 异步执行一次返回值为void的同步接口的调用
+     * @param syncCall 同步接口的调用
+     * @return 调用完成以后结束的future
+     */
+    public static CompletableFuture<Void> run(Runnable syncCall) {
+        return call(() -> {
+            syncCall.run();
+            return null;
+        }).thenApply(result -> null);
+    }
+
+    /**
+     * 当前线程处于异步上下文中并且还没有发起过远程调用时，由上下文接管这次调用的结果，框架内部使用
+     * @param future 调用的结果
+     * @return 是否被接管，被接管时调用方不需要等待结果
+     */
+    public static boolean capture(CompletableFuture<Object> future) {
+        AsyncContext context = CONTEXT.get();
+        if (context == null || context.future != null) {
+            return false;
+        }
+        context.future = future;
+        return true;
+    }
+}
@@ -1,9 +1,11 @@
 package com.ydlclass;
 
 import com.ydlclass.channelhandler.ConsumerChannelInitializer;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.transport.Transport;
+import com.ydlclass.transport.TransportFactory;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import lombok.extern.slf4j.Slf4j;
 /**
         Netty 客户端引导类 NettyBootstrapInitializer。
@@ -18,11 +20,16 @@ public class NettyBootstrapInitializer {
     // 静态代码块，类加载时运行一次，用于配置 Bootstrap
     //
     static {
-        NioEventLoopGroup group = new NioEventLoopGroup();
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        // 根据配置和运行环境选择传输层，linux下优先使用epoll
+        Transport transport = TransportFactory.getTransport(configuration.getTransport());
+        EventLoopGroup group = transport.newEventLoopGroup(0);
         // Netty 的标准客户端配置
         bootstrap.group(group)                          //设置线程池
-            .channel(NioSocketChannel.class)            //表明使用 NIO Socket 通道
+            .channel(transport.channelClass())          //表明使用的 Socket 通道
             .handler(new ConsumerChannelInitializer()); //设置成功连接后要加载的ChannelHandle管道链(用于消息编码)
+        transport.applyClientOptions(bootstrap, configuration);
+        log.info("yrpc客户端使用的传输层为【{}】.", transport.getName());
     }
     
     private NettyBootstrapInitializer() {
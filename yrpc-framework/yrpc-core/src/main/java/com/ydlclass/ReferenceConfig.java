@@ -1,11 +1,17 @@
 package com.ydlclass;
 
 import com.ydlclass.discovery.Registry;
+import com.ydlclass.proxy.GeneratedStubs;
+import com.ydlclass.proxy.RemoteMethod;
+import com.ydlclass.proxy.StubGenerator;
 import com.ydlclass.proxy.handler.RpcConsumerInvocationHandler;
+import com.ydlclass.stream.BidiStreamCall;
+import com.ydlclass.stream.StreamObserver;
+import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
 
 /**
  * ReferenceConfig<T> 是 YRPC 框架中 客户端（Consumer）引用服务的配置类
@@ -14,6 +20,9 @@ import java.lang.reflect.Proxy;
 @Slf4j
 public class ReferenceConfig<T> {
 
+    // 代理方式：生成存根
+    public static final String STUB_PROXY = "stub";
+
     private Class<T> interfaceRef;  // 目标接口类，例如 HelloYrpc.class
     private Registry registry;      // 注册中心对象，用于服务发现
     private String group;           // 分组信息，用于区分同一接口的多个版本
@@ -43,7 +52,20 @@ public class ReferenceConfig<T> {
                     放在了RpcConsumerInvocationHandler类的getAvailableChannel方法中
             4.接收服务端响应并返回结果。
          */
-        InvocationHandler handler = new RpcConsumerInvocationHandler(registry, interfaceRef, group);
+        RpcConsumerInvocationHandler handler = new RpcConsumerInvocationHandler(registry, interfaceRef, group);
+        // 优先使用编译期生成的存根
+        T generatedStub = GeneratedStubs.create(interfaceRef, handler);
+        if (generatedStub != null) {
+            return generatedStub;
+        }
+        // 配置了存根时，直接为接口生成实现类，生成失败时退回jdk动态代理
+        if (STUB_PROXY.equals(YrpcBootstrap.getInstance().getConfiguration().getProxyType())) {
+            try {
+                return StubGenerator.generate(interfaceRef, handler);
+            } catch (Throwable e) {
+                log.warn("为接口【{}】生成存根失败，使用jdk动态代理。", interfaceRef.getName(), e);
+            }
+        }
         // 使用 JDK 原生的动态代理 API 创建代理对象。
         Object helloProxy = Proxy.newProxyInstance(classLoader, classes, handler);
         // 最后将代理对象强制转换为 T 类型返回给调用者。
@@ -51,6 +73,33 @@ public class ReferenceConfig<T> {
     }
 
 
+    /**
+     * 打开一个双向流，复用与服务提供方已经建立的连接
+     * 服务提供方需要通过ServiceConfig#addStreamHandler登记同名的流处理器
+     *
+     * @param name             流的名字
+     * @param responseObserver 接收服务提供方消息的观察者，在netty线程中被调用，不能阻塞
+     * @return 向服务提供方发送消息的观察者，消息积压超过一个窗口时onNext会阻塞
+     */
+    public <I, O> StreamObserver<I> openStream(String name, StreamObserver<O> responseObserver) {
+        return openStream(name, responseObserver, RemoteMethod.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 打开一个双向流，并指定onNext阻塞等待发送额度的超时时间
+     *
+     * @param name             流的名字
+     * @param responseObserver 接收服务提供方消息的观察者
+     * @param timeoutMillis    等待发送额度的超时时间
+     * @return 向服务提供方发送消息的观察者
+     */
+    public <I, O> StreamObserver<I> openStream(String name, StreamObserver<O> responseObserver, long timeoutMillis) {
+        InetSocketAddress address = YrpcBootstrap.getInstance()
+            .getConfiguration().getLoadBalancer().selectServiceAddress(interfaceRef.getName(), group);
+        Channel channel = RpcConsumerInvocationHandler.getAvailableChannel(address);
+        return BidiStreamCall.open(channel, interfaceRef.getName(), name, responseObserver, timeoutMillis);
+    }
+
     public Class<T> getInterface() {
         return interfaceRef;
     }
@@ -1,5 +1,11 @@
 package com.ydlclass;
 
+import com.ydlclass.protection.BulkheadConfig;
+import com.ydlclass.stream.StreamHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @author it楠老师
  * @createTime 2023-06-29
@@ -8,6 +14,10 @@ public class ServiceConfig<T> {
     private Class<?> interfaceProvider;
     private Object ref;
     private String group = "default";
+    // 整个服务共用的舱壁，为null时使用@Bulkhead注解或者公共的线程模型
+    private BulkheadConfig bulkhead;
+    // 登记的双向流处理器，key为流的名字
+    private final Map<String, StreamHandler<?, ?>> streamHandlers = new ConcurrentHashMap<>(4);
     
     public Class<?> getInterface() {
      return interfaceProvider;
@@ -32,4 +42,25 @@ public class ServiceConfig<T> {
     public String getGroup() {
         return group;
     }
+    
+    public void setBulkhead(BulkheadConfig bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+    
+    public BulkheadConfig getBulkhead() {
+        return bulkhead;
+    }
+    
+    /**
+     * 登记一个双向流处理器，调用方通过ReferenceConfig#openStream按名字打开
+     * @param name    流的名字
+     * @param handler 流处理器
+     */
+    public void addStreamHandler(String name, StreamHandler<?, ?> handler) {
+        streamHandlers.put(name, handler);
+    }
+    
+    public StreamHandler<?, ?> getStreamHandler(String name) {
+        return streamHandlers.get(name);
+    }
 }
@@ -2,33 +2,60 @@ package com.ydlclass;
 
 
 import com.ydlclass.annotation.YrpcApi;
+import com.ydlclass.channelhandler.handler.FaultInjectionHandler;
+import com.ydlclass.channelhandler.handler.FlushBatchHandler;
 import com.ydlclass.channelhandler.handler.MethodCallHandler;
 import com.ydlclass.channelhandler.handler.YrpcRequestDecoder;
 import com.ydlclass.channelhandler.handler.YrpcResponseEncoder;
+import com.ydlclass.compress.DictionaryRegistry;
+import com.ydlclass.compress.DictionarySampler;
+import com.ydlclass.compress.DictionaryTrainer;
+import com.ydlclass.compress.impl.ZstdCompressor;
 import com.ydlclass.config.Configuration;
 import com.ydlclass.core.HeartbeatDetector;
+import com.ydlclass.core.InvocationDispatcher;
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.core.PendingCalls;
+import com.ydlclass.core.ServerHandle;
 import com.ydlclass.core.YrpcShutdownHook;
+import com.ydlclass.discovery.Registry;
 import com.ydlclass.discovery.RegistryConfig;
+import com.ydlclass.exceptions.CompressException;
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.fault.FaultRule;
 import com.ydlclass.loadbalancer.LoadBalancer;
+import com.ydlclass.serialize.compact.CompactClassRegistry;
+import com.ydlclass.stream.ConsumerStream;
+import com.ydlclass.stub.GeneratedNames;
+import com.ydlclass.transport.ChannelPool;
+import com.ydlclass.transport.Transport;
+import com.ydlclass.transport.TransportFactory;
 import com.ydlclass.transport.message.YrpcRequest;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LoggingHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -63,18 +90,26 @@ public class YrpcBootstrap {
     // ConcurrentHashMap 保证线程安全
     public final static Map<InetSocketAddress, Channel> CHANNEL_CACHE = new ConcurrentHashMap<>(16);
     public final static TreeMap<Long, Channel> ANSWER_TIME_CHANNEL_CACHE = new TreeMap<>();
+    // 与每个服务提供方之间的连接池，调用时从池中选择连接，CHANNEL_CACHE中是池中的一条可用连接
+    public final static Map<InetSocketAddress, ChannelPool> CHANNEL_POOLS = new ConcurrentHashMap<>(16);
     
     // 维护已经发布且暴露的服务列表 key-> interface的全限定名  value -> ServiceConfig
     // 这个映射表是服务提供方用来保存自己暴露的服务实现。通过接口名快速查找对应实现的对象，以便执行请求方法
     public final static Map<String, ServiceConfig<?>> SERVERS_LIST = new ConcurrentHashMap<>(16);
     
-    // 定义全局的对外挂起的 completableFuture
-    public final static Map<Long, CompletableFuture<Object>> PENDING_REQUEST = new ConcurrentHashMap<>(128);
+    // 定义全局的对外挂起的 completableFuture，结束以后自动移除，超时由时间轮处理
+    public final static PendingCalls PENDING_REQUEST = new PendingCalls();
+    
+    // 服务调用方正在进行的流（服务端流和双向流），key为流的id，也就是打开流时的请求id
+    public final static Map<Long, ConsumerStream> STREAMS = new ConcurrentHashMap<>(16);
     
     
     // 维护一个zookeeper实例
 //    private ZooKeeper zooKeeper;
     
+    // 发布服务使用的注册中心，服务端启动时用它发布压缩字典
+    private volatile Registry providerRegistry;
+    
     private YrpcBootstrap() {
         // 构造启动引导程序，时需要做一些什么初始化的事
         configuration = new Configuration();
@@ -121,6 +156,17 @@ public class YrpcBootstrap {
     }
     
     
+    /**
+     * 配置一条故障注入规则，用于韧性测试，可以多次调用
+     * @param faultRule 故障注入规则
+     * @return this当前实例
+     */
+    public YrpcBootstrap faultInjection(FaultRule faultRule) {
+        configuration.getFaultRules().add(faultRule);
+        return this;
+    }
+    
+    
     /**
      * ---------------------------服务提供方 provide 的相关 api---------------------------------
      */
@@ -134,11 +180,17 @@ public class YrpcBootstrap {
     public YrpcBootstrap publish(ServiceConfig<?> service) {
         // 我们抽象了注册中心的概念，使用注册中心的一个实现完成注册
         // 有人会想，此时此刻难道不是强耦合了吗？
-        configuration.getRegistryConfig().getRegistry().register(service);
+        Registry registry = configuration.getRegistryConfig().getRegistry();
+        registry.register(service);
+        if (providerRegistry == null) {
+            providerRegistry = registry;
+        }
         
         // 1、当服务调用方，通过接口、方法名、具体的方法参数列表发起调用，提供怎么知道使用哪一个实现
         // (1) new 一个  （2）spring beanFactory.getBean(Class)  (3) 自己维护映射关系
         SERVERS_LIST.put(service.getInterface().getName(), service);
+        // 2、预先解析服务的方法并分配编号
+        MethodRegistry.register(service);
         return this;
     }
     
@@ -156,51 +208,104 @@ public class YrpcBootstrap {
     }
     
     /**
-     * 启动netty服务
+     * 启动netty服务，并阻塞当前线程直到服务端关闭
      */
     public void start() {
+        ServerHandle serverHandle = startAsync();
+        try {
+            serverHandle.awaitTermination();
+        } catch (InterruptedException e) {
+            log.error("等待服务端关闭时被中断.", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            serverHandle.shutdown();
+        }
+    }
+    
+    /**
+     * 启动netty服务，绑定端口后立即返回
+     * @return 服务端句柄，可以用来等待或主动关闭服务端
+     */
+    public ServerHandle startAsync() {
         // 注册关闭应用程序的钩子函数
         Runtime.getRuntime().addShutdownHook(new YrpcShutdownHook());
         
+        // 压缩字典只发布一次，服务调用方按编号查找
+        if (providerRegistry != null) {
+            DictionaryRegistry.publish(providerRegistry);
+        }
+        
+        // 根据配置和运行环境选择传输层，linux下优先使用epoll
+        Transport transport = TransportFactory.getTransport(configuration.getTransport());
+        
+        // 多个监听器依赖SO_REUSEPORT，只有原生传输层支持
+        int acceptors = configuration.getAcceptors();
+        if (acceptors > 1 && !transport.supportsReusePort()) {
+            log.warn("传输层【{}】不支持SO_REUSEPORT，只会启动一个监听器.", transport.getName());
+            acceptors = 1;
+        }
+        // 每一个监听的channel会绑定一个boss线程
+        int bossThreads = Math.max(configuration.getBossThreads(), acceptors);
+        int workerThreads = configuration.getWorkerThreads();
+        log.info("yrpc服务端使用的传输层为【{}】，boss线程数【{}】，worker线程数【{}】，监听器数量【{}】.",
+            transport.getName(), bossThreads, workerThreads, acceptors);
+        
         // 1、创建eventLoop，老板只负责处理请求，之后会将请求分发至worker
-        EventLoopGroup boss = new NioEventLoopGroup(2);
-        EventLoopGroup worker = new NioEventLoopGroup(10);
+        EventLoopGroup boss = transport.newEventLoopGroup(bossThreads);
+        EventLoopGroup worker = transport.newEventLoopGroup(workerThreads);
+        // 执行方法调用的线程模型，所有连接共用
+        InvocationDispatcher dispatcher = InvocationDispatcher.create(configuration);
+        List<Channel> channels = new ArrayList<>(acceptors);
         try {
             
             // 2、需要一个服务器引导程序
             ServerBootstrap serverBootstrap = new ServerBootstrap();
             // 3、配置服务器
             serverBootstrap = serverBootstrap.group(boss, worker)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel socketChannel) throws Exception {
+                        // 合并flush，离socket最近，批量写出编码后的响应
+                        if (configuration.isFlushConsolidation()) {
+                            socketChannel.pipeline().addLast(new FlushBatchHandler(
+                                configuration.getFlushWindowMicros(), configuration.getMaxFramesPerFlush()));
+                        }
                         // 是核心，我们需要添加很多入站和出站的handler
                         socketChannel.pipeline().addLast(new LoggingHandler())
-                            .addLast(new YrpcRequestDecoder())
+                            .addLast(new YrpcRequestDecoder());
+                        // 配置了故障规则才会进行故障注入
+                        if (!configuration.getFaultRules().isEmpty()) {
+                            socketChannel.pipeline().addLast(new FaultInjectionHandler(configuration.getFaultRules()));
+                        }
+                        socketChannel.pipeline()
                             // 根据请求进行方法调用
-                            .addLast(new MethodCallHandler())
+                            .addLast(new MethodCallHandler(dispatcher))
                             .addLast(new YrpcResponseEncoder())
                         ;
                     }
                 });
             
-            // 4、绑定端口
-            ChannelFuture channelFuture = serverBootstrap.bind(configuration.getPort()).sync();
+            transport.applyServerOptions(serverBootstrap, configuration);
             
-            channelFuture.channel().closeFuture().sync();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                boss.shutdownGracefully().sync();
-                worker.shutdownGracefully().sync();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            // 4、绑定端口，开启SO_REUSEPORT后同一个端口可以绑定多次，由内核分摊连接
+            for (int i = 0; i < acceptors; i++) {
+                ChannelFuture channelFuture = serverBootstrap.bind(configuration.getPort()).sync();
+                channels.add(channelFuture.channel());
             }
+        } catch (InterruptedException e) {
+            new ServerHandle(channels, boss, worker, dispatcher).shutdown();
+            Thread.currentThread().interrupt();
+            throw new NetworkException("启动服务端时发生了异常。");
+        } catch (Exception e) {
+            // 端口被占用等绑定失败的情况，同样需要释放已经创建的线程池
+            log.error("服务端绑定端口【{}】时发生了异常.", configuration.getPort(), e);
+            new ServerHandle(channels, boss, worker, dispatcher).shutdown();
+            throw new NetworkException(e);
         }
-        
+        return new ServerHandle(channels, boss, worker, dispatcher);
     }
+    
     /**
      * ---------------------------服务调用方 consumer 的相关 api---------------------------------
      */
@@ -214,6 +319,8 @@ public class YrpcBootstrap {
         // 1、reference需要一个注册中心
         reference.setRegistry(configuration.getRegistryConfig().getRegistry());
         reference.setGroup(this.getConfiguration().getGroup());
+        // 2、不认识的压缩字典从这个注册中心查找
+        DictionaryRegistry.lookupFrom(reference.getRegistry());
         return this;
     }
     
@@ -229,6 +336,113 @@ public class YrpcBootstrap {
         return this;
     }
     
+    /**
+     * 登记compact序列化的类编号，报文中只写编号不写类名，两端必须使用同样的编号
+     * @param clazz 类
+     * @param id    编号，从64开始
+     * @return this当前实例
+     */
+    public YrpcBootstrap compactClass(Class<?> clazz, int id) {
+        CompactClassRegistry.register(clazz, id);
+        return this;
+    }
+    
+    /**
+     * 允许没有登记编号的类在compact报文中按类名传输，其他的类名在读取时会被拒绝
+     * @param names 完整的类名，或者以.结尾的包名前缀
+     * @return this当前实例
+     */
+    public YrpcBootstrap compactAllow(String... names) {
+        for (String name : names) {
+            CompactClassRegistry.allow(name);
+        }
+        return this;
+    }
+    
+    /**
+     * 配置传输层
+     * @param transport auto、nio、epoll、io_uring，不可用时会自动回退
+     * @return this当前实例
+     */
+    public YrpcBootstrap transport(String transport) {
+        configuration.setTransport(transport);
+        return this;
+    }
+    
+    /**
+     * 开启合并flush，同一轮事件循环中写出的报文只做一次flush
+     * @param windowMicros 额外等待的时间窗口（微秒），0代表不额外等待
+     * @return this当前实例
+     */
+    public YrpcBootstrap flushConsolidation(long windowMicros) {
+        configuration.setFlushConsolidation(true);
+        configuration.setFlushWindowMicros(windowMicros);
+        return this;
+    }
+    
+    /**
+     * 开启请求合并，同一轮事件循环中发出的多个请求合并成一个批量报文
+     * @param maxBatchSize 一个批量报文最多携带的请求数
+     * @return this当前实例
+     */
+    public YrpcBootstrap requestBatching(int maxBatchSize) {
+        configuration.setRequestBatching(true);
+        configuration.setMaxBatchSize(maxBatchSize);
+        return this;
+    }
+    
+    /**
+     * 配置流式调用的窗口大小，也就是服务提供方在没有收到额度补充时最多能发送的数据帧个数
+     * @param streamWindow 窗口大小
+     * @return this当前实例
+     */
+    public YrpcBootstrap streamWindow(int streamWindow) {
+        configuration.setStreamWindow(streamWindow);
+        return this;
+    }
+    
+    /**
+     * 配置期望使用的最高协议版本，1代表不协商，始终使用v1协议
+     * @param protocolVersion 协议版本
+     * @return this当前实例
+     */
+    public YrpcBootstrap protocolVersion(int protocolVersion) {
+        configuration.setProtocolVersion(protocolVersion);
+        return this;
+    }
+    
+    /**
+     * 配置服务调用方的代理方式
+     * @param proxyType jdk为jdk动态代理，stub为生成的存根
+     * @return this当前实例
+     */
+    public YrpcBootstrap proxy(String proxyType) {
+        configuration.setProxyType(proxyType);
+        return this;
+    }
+    
+    /**
+     * 配置服务提供方执行方法调用的线程模型
+     * @param dispatchMode inline、pool、virtual
+     * @return this当前实例
+     */
+    public YrpcBootstrap dispatch(String dispatchMode) {
+        configuration.setDispatchMode(dispatchMode);
+        return this;
+    }
+    
+    /**
+     * 配置服务调用方与每个服务提供方之间的连接数
+     * @param minConnections 最少保持的连接数
+     * @param maxConnections 最多建立的连接数
+     * @return this当前实例
+     */
+    public YrpcBootstrap connectionPool(int minConnections, int maxConnections) {
+        configuration.setMinConnections(minConnections);
+        configuration.setMaxConnections(maxConnections);
+        return this;
+    }
+    
     public YrpcBootstrap compress(String compressType) {
         configuration.setCompressType(compressType);
         if (log.isDebugEnabled()) {
@@ -237,6 +451,44 @@ public class YrpcBootstrap {
         return this;
     }
     
+    /**
+     * 配置压缩的阈值，报文体小于该字节数时不压缩
+     * @param compressThreshold 阈值，0代表总是压缩
+     * @return this当前实例
+     */
+    public YrpcBootstrap compressThreshold(int compressThreshold) {
+        configuration.setCompressThreshold(compressThreshold);
+        return this;
+    }
+    
+    /**
+     * 加载zstdDict压缩使用的字典，发送方之后都使用这个字典
+     * @param location 字典的位置，classpath:开头时从classpath中加载，否则是文件路径
+     * @return this当前实例
+     */
+    public YrpcBootstrap compressDictionary(String location) {
+        configuration.setCompressDictionary(location);
+        DictionaryRegistry.load(location);
+        return this;
+    }
+    
+    /**
+     * 在线训练zstdDict压缩使用的字典，需要zstd-jni
+     * 采集之后一段时间内发出的报文体，训练出字典，注册、发布到注册中心并作为发送方使用的字典
+     * 对端第一次遇到新的字典时在后台去注册中心取，取到之前收到的报文无法解压，适合在流量低的时候进行
+     * @param samples        最多保留的样本数
+     * @param durationMillis 采集的时长
+     * @return 训练完成时结束的future，结果为字典的编号
+     */
+    public CompletableFuture<Integer> trainDictionary(int samples, long durationMillis) {
+        if (!ZstdCompressor.isAvailable()) {
+            return CompletableFuture.failedFuture(new CompressException("未找到zstd-jni，无法训练压缩字典。"));
+        }
+        return DictionarySampler.sample(samples, durationMillis)
+            .thenApply(collected -> DictionaryRegistry.install(
+                DictionaryTrainer.train(collected, DictionaryTrainer.DEFAULT_DICTIONARY_SIZE)));
+    }
+    
     /**
      * 扫描包，进行批量注册
      * @param packageName 包名
@@ -244,7 +496,13 @@ public class YrpcBootstrap {
      */
     public YrpcBootstrap scan(String packageName) {
         // 1、需要通过packageName获取其下的所有的类的权限定名称
-        List<String> classNames = getAllClassNames(packageName);
+        // 有服务索引的classpath根目录直接使用索引，没有索引的根目录（没有运行yrpc-processor的模块）照常遍历文件
+        Set<String> indexedRoots = new HashSet<>();
+        Set<String> classNames = new LinkedHashSet<>(getIndexedClassNames(packageName, indexedRoots));
+        if (log.isDebugEnabled() && !classNames.isEmpty()) {
+            log.debug("包【{}】使用服务索引中的【{}】个服务实现.", packageName, classNames.size());
+        }
+        classNames.addAll(getAllClassNames(packageName, indexedRoots, classNames.isEmpty()));
         // 2、通过反射获取他的接口，构建具体实现
         List<Class<?>> classes = classNames.stream()
             .map(className -> {
@@ -253,7 +511,7 @@ public class YrpcBootstrap {
                 } catch (ClassNotFoundException e) {
                     throw new RuntimeException(e);
                 }
-            }).filter(clazz -> clazz.getAnnotation(YrpcApi.class) != null)
+            }).filter(clazz -> !clazz.isInterface() && clazz.getAnnotation(YrpcApi.class) != null)
             .collect(Collectors.toList());
     
         for (Class<?> clazz : classes) {
@@ -287,19 +545,83 @@ public class YrpcBootstrap {
         return this;
     }
     
+    /**
+     * 从yrpc-processor生成的服务索引中读取包下的服务实现
+     * @param packageName  包名
+     * @param indexedRoots 出参，带有服务索引的classpath根目录，这些根目录不再遍历文件
+     * @return 服务实现的全限定名称，没有索引时为空
+     */
+    private List<String> getIndexedClassNames(String packageName, Set<String> indexedRoots) {
+        List<String> classNames = new ArrayList<>();
+        try {
+            Enumeration<URL> indexes = Thread.currentThread().getContextClassLoader().getResources(GeneratedNames.SERVICE_INDEX);
+            while (indexes.hasMoreElements()) {
+                URL index = indexes.nextElement();
+                List<String> indexed = new ArrayList<>();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                    String className;
+                    while ((className = reader.readLine()) != null) {
+                        className = className.trim();
+                        if (className.startsWith(packageName + ".")) {
+                            indexed.add(className);
+                        }
+                    }
+                }
+                // 读完整个索引才认为这个根目录可以跳过
+                classNames.addAll(indexed);
+                indexedRoots.add(rootOf(index, GeneratedNames.SERVICE_INDEX));
+            }
+        } catch (IOException e) {
+            log.warn("读取服务索引时发生异常，改为扫描包【{}】.", packageName, e);
+            indexedRoots.clear();
+            return new ArrayList<>();
+        }
+        return classNames;
+    }
+    
+    /**
+     * @param resource 资源的地址
+     * @param name     资源的名称
+     * @return 资源所在的classpath根目录
+     */
+    private static String rootOf(URL resource, String name) {
+        String url = resource.toString();
+        int end = url.lastIndexOf(name);
+        return end < 0 ? url : url.substring(0, end);
+    }
+
     private List<String> getAllClassNames(String packageName) {
+        return getAllClassNames(packageName, Collections.emptySet(), true);
+    }
+    
+    /**
+     * 遍历包所在的classpath根目录，找出所有的类
+     * @param packageName  包名
+     * @param skippedRoots 不需要遍历的根目录
+     * @param required     包必须存在
+     * @return 类的全限定名称
+     */
+    private List<String> getAllClassNames(String packageName, Set<String> skippedRoots, boolean required) {
         // 1、通过packageName获得绝对路径
         // com.ydlclass.xxx.yyy -> E://xxx/xww/sss/com/ydlclass/xxx/yyy
         String basePath = packageName.replaceAll("\\.","/");
-        URL url = ClassLoader.getSystemClassLoader().getResource(basePath);
-        if(url == null){
+        List<URL> urls;
+        try {
+            urls = Collections.list(ClassLoader.getSystemClassLoader().getResources(basePath));
+        } catch (IOException e) {
+            throw new RuntimeException("包扫描时，读取路径发生异常.", e);
+        }
+        if(urls.isEmpty() && required){
             throw new RuntimeException("包扫描时，发现路径不存在.");
         }
-        String absolutePath = url.getPath();
-        //
         List<String> classNames = new ArrayList<>();
-        classNames = recursionFile(absolutePath,classNames,basePath);
-    
+        for (URL url : urls) {
+            // 只能遍历文件系统中的目录，jar中的服务实现需要服务索引
+            if (!"file".equals(url.getProtocol()) || skippedRoots.contains(rootOf(url, basePath))) {
+                continue;
+            }
+            recursionFile(url.getPath(), classNames, basePath);
+        }
         return classNames;
     }
     
@@ -335,9 +657,10 @@ public class YrpcBootstrap {
     private String getClassNameByAbsolutePath(String absolutePath,String basePath) {
         // E:\project\ydlclass-yrpc\yrpc-framework\yrpc-core\target\classes\com\ydlclass\serialize\Serializer.class
         // com\ydlclass\serialize\Serializer.class --> com.ydlclass.serialize.Serializer
-        String fileName = absolutePath
-            .substring(absolutePath.indexOf(basePath.replaceAll("/","\\\\")))
-            .replaceAll("\\\\",".");
+        String path = absolutePath.replace(File.separatorChar, '/');
+        String fileName = path
+            .substring(path.indexOf(basePath))
+            .replace('/', '.');
         
         fileName = fileName.substring(0,fileName.indexOf(".class"));
         return fileName;
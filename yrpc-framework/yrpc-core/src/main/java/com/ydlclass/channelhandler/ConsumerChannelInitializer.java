@@ -1,8 +1,15 @@
 package com.ydlclass.channelhandler;
 
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.channelhandler.handler.FlushBatchHandler;
+import com.ydlclass.channelhandler.handler.MethodTableHandler;
 import com.ydlclass.channelhandler.handler.MySimpleChannelInboundHandler;
+import com.ydlclass.channelhandler.handler.ProtocolHandshakeHandler;
+import com.ydlclass.channelhandler.handler.RequestBatchHandler;
 import com.ydlclass.channelhandler.handler.YrpcRequestEncoder;
 import com.ydlclass.channelhandler.handler.YrpcResponseDecoder;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.transport.message.MessageFormatConstant;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.logging.LogLevel;
@@ -15,15 +22,33 @@ import io.netty.handler.logging.LoggingHandler;
 public class ConsumerChannelInitializer extends ChannelInitializer<SocketChannel> {
     @Override
     protected void initChannel(SocketChannel socketChannel) throws Exception {
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        // 合并flush，离socket最近，批量写出编码后的报文
+        if (configuration.isFlushConsolidation()) {
+            socketChannel.pipeline().addLast(new FlushBatchHandler(
+                configuration.getFlushWindowMicros(), configuration.getMaxFramesPerFlush()));
+        }
         socketChannel.pipeline()
             // netty自带的日志处理器
             .addLast(new LoggingHandler(LogLevel.DEBUG))
             // 消息编码器
             .addLast(new YrpcRequestEncoder())
             // 入栈的解码器
-            .addLast(new YrpcResponseDecoder())
-            // 处理结果
-            .addLast(new MySimpleChannelInboundHandler());
+            .addLast(new YrpcResponseDecoder());
+        // 协议握手，协商出更高的版本之后切换到紧凑协议
+        if (configuration.getProtocolVersion() > MessageFormatConstant.VERSION) {
+            socketChannel.pipeline().addLast(new ProtocolHandshakeHandler(configuration.getProtocolVersion()));
+            // 方法表，v2连接上的请求只携带方法编号
+            if (configuration.isMethodTable()) {
+                socketChannel.pipeline().addLast(new MethodTableHandler());
+            }
+        }
+        // 处理结果
+        socketChannel.pipeline().addLast(new MySimpleChannelInboundHandler());
+        // 请求合并，出站方向在编码器之前执行
+        if (configuration.isRequestBatching()) {
+            socketChannel.pipeline().addLast(new RequestBatchHandler(configuration.getMaxBatchSize()));
+        }
         
     }
 }
@@ -0,0 +1,209 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.core.ServiceMethod;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.fault.FaultRule;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 故障注入处理器，只有配置了故障规则时才会加入服务端的pipeline
+ * 批量请求中的子请求逐个匹配规则
+ * 延迟通过eventLoop的定时任务实现，不会阻塞当前的io线程
+ *
+ * @author it楠老师
+ * @createTime 2023-08-01
+ */
+@Slf4j
+public class FaultInjectionHandler extends ChannelInboundHandlerAdapter {
+    
+    private final List<FaultRule> faultRules;
+    
+    public FaultInjectionHandler(List<FaultRule> faultRules) {
+        this.faultRules = faultRules;
+    }
+    
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 心跳请求不做处理
+        if (!(msg instanceof YrpcRequest yrpcRequest)
+            || yrpcRequest.getRequestType() == RequestType.HEART_BEAT.getId()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        // 批量请求中的每一个子请求单独匹配规则
+        if (yrpcRequest.getRequestType() == RequestType.BATCH.getId() && yrpcRequest.getBatchPayload() != null) {
+            injectBatch(ctx, yrpcRequest);
+            return;
+        }
+        if (yrpcRequest.getRequestPayload() == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        
+        FaultRule faultRule = select(yrpcRequest.getRequestPayload());
+        if (faultRule == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        
+        switch (faultRule.getType()) {
+            case DELAY -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("请求【{}】被注入了【{}】ms的延迟.", yrpcRequest.getRequestId(), faultRule.getDelay());
+                }
+                ctx.executor().schedule(() -> ctx.fireChannelRead(msg), faultRule.getDelay(), TimeUnit.MILLISECONDS);
+            }
+            case DROP -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("请求【{}】被注入故障，直接丢弃.", yrpcRequest.getRequestId());
+                }
+            }
+            case ERROR -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("请求【{}】被注入故障，返回响应码【{}】.", yrpcRequest.getRequestId(), faultRule.getCode());
+                }
+                YrpcResponse yrpcResponse = new YrpcResponse();
+                yrpcResponse.setRequestId(yrpcRequest.getRequestId());
+                yrpcResponse.setCompressType(yrpcRequest.getCompressType());
+                yrpcResponse.setSerializeType(yrpcRequest.getSerializeType());
+                yrpcResponse.setCode(faultRule.getCode());
+                ctx.channel().writeAndFlush(yrpcResponse);
+            }
+        }
+    }
+    
+    /**
+     * 批量请求按子请求注入故障：命中延迟的子请求各自拆成一个批量请求延迟处理，命中丢弃的直接移除，
+     * 命中错误的合并成一个批量响应立即返回，其余的子请求组成新的批量请求继续处理
+     */
+    private void injectBatch(ChannelHandlerContext ctx, YrpcRequest yrpcRequest) {
+        BatchPayload batchPayload = yrpcRequest.getBatchPayload();
+        int size = batchPayload.size();
+        FaultRule[] hits = new FaultRule[size];
+        boolean hit = false;
+        for (int i = 0; i < size; i++) {
+            if (batchPayload.getBodies()[i] instanceof RequestPayload requestPayload) {
+                hits[i] = select(requestPayload);
+                hit |= hits[i] != null;
+            }
+        }
+        if (!hit) {
+            ctx.fireChannelRead(yrpcRequest);
+            return;
+        }
+        
+        List<Integer> passed = new ArrayList<>(size);
+        List<Integer> failed = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            FaultRule faultRule = hits[i];
+            long requestId = batchPayload.getRequestIds()[i];
+            if (faultRule == null) {
+                passed.add(i);
+                continue;
+            }
+            switch (faultRule.getType()) {
+                case DELAY -> {
+                    if (log.isDebugEnabled()) {
+                        log.debug("批量请求中的子请求【{}】被注入了【{}】ms的延迟.", requestId, faultRule.getDelay());
+                    }
+                    YrpcRequest delayed = subBatch(yrpcRequest, List.of(i));
+                    ctx.executor().schedule(() -> ctx.fireChannelRead(delayed), faultRule.getDelay(), TimeUnit.MILLISECONDS);
+                }
+                case DROP -> {
+                    if (log.isDebugEnabled()) {
+                        log.debug("批量请求中的子请求【{}】被注入故障，直接丢弃.", requestId);
+                    }
+                }
+                case ERROR -> {
+                    if (log.isDebugEnabled()) {
+                        log.debug("批量请求中的子请求【{}】被注入故障，返回响应码【{}】.", requestId, faultRule.getCode());
+                    }
+                    failed.add(i);
+                }
+            }
+        }
+        
+        if (!failed.isEmpty()) {
+            long[] requestIds = new long[failed.size()];
+            byte[] codes = new byte[failed.size()];
+            for (int i = 0; i < failed.size(); i++) {
+                requestIds[i] = batchPayload.getRequestIds()[failed.get(i)];
+                codes[i] = hits[failed.get(i)].getCode();
+            }
+            YrpcResponse yrpcResponse = new YrpcResponse();
+            yrpcResponse.setRequestId(yrpcRequest.getRequestId());
+            yrpcResponse.setCompressType(yrpcRequest.getCompressType());
+            yrpcResponse.setSerializeType(yrpcRequest.getSerializeType());
+            yrpcResponse.setCode(RespCode.BATCH.getCode());
+            yrpcResponse.setBody(BatchPayload.builder()
+                .requestIds(requestIds)
+                .codes(codes)
+                .bodies(new Object[failed.size()])
+                .build());
+            ctx.channel().writeAndFlush(yrpcResponse);
+        }
+        if (!passed.isEmpty()) {
+            ctx.fireChannelRead(subBatch(yrpcRequest, passed));
+        }
+    }
+    
+    /**
+     * 用批量请求中的部分子请求组成一个新的批量请求
+     */
+    private YrpcRequest subBatch(YrpcRequest yrpcRequest, List<Integer> indexes) {
+        BatchPayload batchPayload = yrpcRequest.getBatchPayload();
+        long[] requestIds = new long[indexes.size()];
+        Object[] bodies = new Object[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            requestIds[i] = batchPayload.getRequestIds()[indexes.get(i)];
+            bodies[i] = batchPayload.getBodies()[indexes.get(i)];
+        }
+        return YrpcRequest.builder()
+            .requestId(yrpcRequest.getRequestId())
+            .requestType(yrpcRequest.getRequestType())
+            .compressType(yrpcRequest.getCompressType())
+            .serializeType(yrpcRequest.getSerializeType())
+            .timeStamp(yrpcRequest.getTimeStamp())
+            .attachments(yrpcRequest.getAttachments())
+            .batchPayload(BatchPayload.builder().requestIds(requestIds).bodies(bodies).build())
+            .build();
+    }
+    
+    /**
+     * 按配置顺序选出第一条匹配并且命中概率的规则
+     * 使用方法表的请求只携带方法的编号，先通过MethodRegistry找到接口名和方法名再匹配
+     * @param requestPayload 请求负载
+     * @return 命中的规则，没有则返回null
+     */
+    private FaultRule select(RequestPayload requestPayload) {
+        String interfaceName = requestPayload.getInterfaceName();
+        String methodName = requestPayload.getMethodName();
+        if (interfaceName == null && requestPayload.getMethodId() > 0) {
+            ServiceMethod serviceMethod = MethodRegistry.get(requestPayload.getMethodId());
+            if (serviceMethod != null) {
+                interfaceName = serviceMethod.getInterfaceName();
+                methodName = serviceMethod.getMethodName();
+            }
+        }
+        for (FaultRule faultRule : faultRules) {
+            if (faultRule.matches(interfaceName, methodName)
+                && ThreadLocalRandom.current().nextDouble() < faultRule.getProbability()) {
+                return faultRule;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.metrics.YrpcMetrics;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并flush的处理器，默认不开启
+ * 同一轮事件循环中（或一个很小的时间窗口内）写出的报文只触发一次flush，也就是一次write系统调用
+ * 低负载时任务队列为空，合并flush的任务会被立即执行，不会额外增加延迟
+ *
+ * @author it楠老师
+ * @createTime 2023-08-03
+ */
+public class FlushBatchHandler extends ChannelDuplexHandler {
+    
+    public static final String FRAMES = "yrpc.flush.frames";
+    public static final String FLUSHES = "yrpc.flush.flushes";
+    
+    private static final LongAdder FRAME_COUNTER = YrpcMetrics.counter(FRAMES);
+    private static final LongAdder FLUSH_COUNTER = YrpcMetrics.counter(FLUSHES);
+    
+    // 合并的时间窗口，0代表只合并同一轮事件循环中的flush
+    private final long windowMicros;
+    // 积攒了多少个报文之后立即flush
+    private final int maxFrames;
+    
+    // 以下状态只会在channel所属的eventLoop中访问
+    private ChannelHandlerContext ctx;
+    private int pendingFrames;
+    private boolean flushScheduled;
+    
+    private final Runnable flushTask = () -> {
+        flushScheduled = false;
+        if (pendingFrames > 0) {
+            flushNow(ctx);
+        }
+    };
+    
+    public FlushBatchHandler(long windowMicros, int maxFrames) {
+        this.windowMicros = windowMicros;
+        this.maxFrames = maxFrames;
+    }
+    
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+    
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        pendingFrames++;
+        ctx.write(msg, promise);
+    }
+    
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (pendingFrames >= maxFrames) {
+            flushNow(ctx);
+            return;
+        }
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        if (windowMicros > 0) {
+            ctx.executor().schedule(flushTask, windowMicros, TimeUnit.MICROSECONDS);
+        } else {
+            // 排在当前任务队列的末尾执行，同一轮中提交的写请求都会被合并
+            ctx.executor().execute(flushTask);
+        }
+    }
+    
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 写缓冲区满了需要尽快flush
+        if (!ctx.channel().isWritable() && pendingFrames > 0) {
+            flushNow(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+    
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (pendingFrames > 0) {
+            flushNow(ctx);
+        }
+        ctx.close(promise);
+    }
+    
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (pendingFrames > 0) {
+            flushNow(ctx);
+        }
+    }
+    
+    private void flushNow(ChannelHandlerContext ctx) {
+        FRAME_COUNTER.add(pendingFrames);
+        FLUSH_COUNTER.increment();
+        pendingFrames = 0;
+        ctx.flush();
+    }
+    
+    /**
+     * @return 平均每次flush写出的报文数
+     */
+    public static double framesPerFlush() {
+        long flushes = FLUSH_COUNTER.sum();
+        return flushes == 0 ? 0 : (double) FRAME_COUNTER.sum() / flushes;
+    }
+}
@@ -1,12 +1,21 @@
 package com.ydlclass.channelhandler.handler;
 
-import com.ydlclass.ServiceConfig;
 import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.core.InvocationDispatcher;
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.core.ServiceMethod;
 import com.ydlclass.core.ShutDownHolder;
 import com.ydlclass.enumeration.RequestType;
 import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.protection.BulkheadExecutor;
 import com.ydlclass.protection.RateLimiter;
 import com.ydlclass.protection.TokenBuketRateLimiter;
+import com.ydlclass.stream.BidiStreamCall;
+import com.ydlclass.stream.StreamRegistry;
+import com.ydlclass.stream.StreamSender;
+import com.ydlclass.stream.YrpcStream;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.MessageFormatConstant;
 import com.ydlclass.transport.message.RequestPayload;
 import com.ydlclass.transport.message.YrpcRequest;
 import com.ydlclass.transport.message.YrpcResponse;
@@ -15,10 +24,14 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author it楠老师
@@ -26,6 +39,14 @@ import java.util.Map;
  */
 @Slf4j
 public class MethodCallHandler extends SimpleChannelInboundHandler<YrpcRequest> {
+    
+    // 执行方法调用的线程模型，所有连接共用
+    private final InvocationDispatcher dispatcher;
+    
+    public MethodCallHandler(InvocationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+    
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, YrpcRequest yrpcRequest) throws Exception {
     
@@ -38,9 +59,43 @@ public class MethodCallHandler extends SimpleChannelInboundHandler<YrpcRequest>
         // 2、 获得通道
         Channel channel = channelHandlerContext.channel();
         
+        // 已经打开的流上的报文交给流自己处理，不需要响应，也不参与限流和计数
+        if (StreamRegistry.dispatch(channel, yrpcRequest)) {
+            return;
+        }
+        
+        // 协议握手，回复本端支持的最高协议版本，不参与限流和计数
+        if (yrpcRequest.getRequestType() == RequestType.HANDSHAKE.getId()) {
+            int version = Math.min(YrpcBootstrap.getInstance().getConfiguration().getProtocolVersion(),
+                MessageFormatConstant.MAX_VERSION);
+            yrpcResponse.setCode(RespCode.SUCCESS_HANDSHAKE.getCode());
+            yrpcResponse.setBody(version);
+            channel.writeAndFlush(yrpcResponse);
+            return;
+        }
+        
+        // 登记方法编号，回复方法在方法表中的编号
+        if (yrpcRequest.getRequestType() == RequestType.METHOD_REGISTER.getId()) {
+            ServiceMethod serviceMethod = yrpcRequest.getRequestPayload() == null
+                ? null : MethodRegistry.lookup(yrpcRequest.getRequestPayload());
+            if (serviceMethod == null) {
+                yrpcResponse.setCode(RespCode.RESOURCE_NOT_FOUND.getCode());
+            } else {
+                yrpcResponse.setCode(RespCode.SUCCESS.getCode());
+                yrpcResponse.setBody(serviceMethod.getId());
+            }
+            channel.writeAndFlush(yrpcResponse);
+            return;
+        }
+        
         // 3、查看关闭的挡板是否打开，如果挡板已经打开，返回一个错误的响应
         if( ShutDownHolder.BAFFLE.get() ){
             yrpcResponse.setCode(RespCode.BECOLSING.getCode());
+            if (yrpcRequest.getRequestType() == RequestType.BATCH.getId() && yrpcRequest.getBatchPayload() != null) {
+                // 批量请求中的每一个子请求都需要拿到拒绝的响应
+                yrpcResponse.setCode(RespCode.BATCH.getCode());
+                yrpcResponse.setBody(rejectBatch(yrpcRequest.getBatchPayload(), RespCode.BECOLSING));
+            }
             channel.writeAndFlush(yrpcResponse);
             return;
         }
@@ -58,11 +113,37 @@ public class MethodCallHandler extends SimpleChannelInboundHandler<YrpcRequest>
             rateLimiter = new TokenBuketRateLimiter(10, 10);
             everyIpRateLimiter.put(socketAddress, rateLimiter);
         }
-        boolean allowRequest = rateLimiter.allowRequest();
         
         // 5、处理请求的逻辑
-        // 限流
-        if (!allowRequest) {
+        // 报文体为空的请求无法调用，直接回复失败，不交给线程模型
+        if (isMissingPayload(yrpcRequest)) {
+            log.error("编号为【{}】的请求没有携带负载。", yrpcRequest.getRequestId());
+            yrpcResponse.setCode(RespCode.FAIL.getCode());
+            
+            // 批量请求，每一个子请求单独限流、单独调用
+        } else if (yrpcRequest.getRequestType() == RequestType.BATCH.getId()) {
+            yrpcResponse.setCode(RespCode.BATCH.getCode());
+            RateLimiter batchRateLimiter = rateLimiter;
+            try {
+                // 子请求中有异步方法时，等它们都完成以后再写出批量响应
+                dispatcher.execute(() -> callBatchSafely(yrpcRequest, batchRateLimiter)
+                    .thenAccept(batchPayload -> {
+                        if (log.isDebugEnabled()) {
+                            log.debug("批量请求【{}】已经在服务端完成【{}】个子请求的调用。",
+                                yrpcRequest.getRequestId(), batchPayload.size());
+                        }
+                        yrpcResponse.setBody(batchPayload);
+                        writeResponse(channel, yrpcResponse);
+                    }));
+            } catch (RejectedExecutionException e) {
+                log.error("批量请求【{}】被拒绝，执行方法调用的线程池已满。", yrpcRequest.getRequestId());
+                yrpcResponse.setBody(rejectBatch(yrpcRequest.getBatchPayload(), RespCode.FAIL));
+                writeResponse(channel, yrpcResponse);
+            }
+            return;
+            
+            // 限流
+        } else if (!rateLimiter.allowRequest()) {
             // 需要封装响应并且返回了
             yrpcResponse.setCode(RespCode.RATE_LIMIT.getCode());
             
@@ -71,25 +152,64 @@ public class MethodCallHandler extends SimpleChannelInboundHandler<YrpcRequest>
             // 需要封装响应并且返回
            yrpcResponse.setCode(RespCode.SUCCESS_HEART_BEAT.getCode());
            
+           // 打开双向流，后续的报文都由登记的流处理器处理
+        } else if (yrpcRequest.getRequestType() == RequestType.STREAM_OPEN.getId()) {
+            try {
+                if (BidiStreamCall.accept(channel, yrpcRequest)) {
+                    ShutDownHolder.REQUEST_COUNTER.decrement();
+                    return;
+                }
+                yrpcResponse.setCode(RespCode.RESOURCE_NOT_FOUND.getCode());
+            } catch (Exception e) {
+                log.error("编号为【{}】的双向流在打开时发生异常。", yrpcRequest.getRequestId(), e);
+                yrpcResponse.setCode(RespCode.FAIL.getCode());
+            }
+           
            // 正常调用
         } else {
             /** ---------------具体的调用过程--------------**/
             // （1）获取负载内容
             RequestPayload requestPayload = yrpcRequest.getRequestPayload();
+            // 编号没有登记，调用方会携带完整的方法描述重新发送
+            if (isUnknownMethod(requestPayload)) {
+                yrpcResponse.setCode(RespCode.METHOD_UNKNOWN.getCode());
+                channel.writeAndFlush(yrpcResponse);
+                ShutDownHolder.REQUEST_COUNTER.decrement();
+                return;
+            }
+            // 服务端流式请求，先登记发送器，方法调用期间到达的额度会累积下来
+            boolean serverStream = yrpcRequest.getRequestType() == RequestType.SERVER_STREAM.getId();
+            if (serverStream) {
+                StreamSender.register(channel, yrpcRequest);
+            }
     
-            // （2）根据负载内容进行方法调用
+            // （2）根据负载内容进行方法调用，有舱壁的方法在自己的舱壁中执行，其他的按照配置的线程模型执行，响应回到io线程写出
+            ServiceMethod serviceMethod = findServiceMethod(requestPayload);
+            BulkheadExecutor bulkhead = serviceMethod == null ? null : serviceMethod.getBulkhead();
+            if (serviceMethod != null) {
+                yrpcResponse.setMethod(serviceMethod.getInterfaceName() + "." + serviceMethod.getMethodName());
+            }
+            Runnable invocation = () -> invoke(channel, yrpcRequest, yrpcResponse, serverStream, serviceMethod);
             try {
-                Object result = callTargetMethod(requestPayload);
-                if (log.isDebugEnabled()) {
-                    log.debug("请求【{}】已经在服务端完成方法调用。", yrpcRequest.getRequestId());
+                if (bulkhead != null) {
+                    bulkhead.execute(invocation);
+                } else {
+                    dispatcher.execute(invocation);
                 }
-                // （3）封装响应   我们是否需要考虑另外一个问题，响应码，响应类型
-                yrpcResponse.setCode(RespCode.SUCCESS.getCode());
-                yrpcResponse.setBody(result);
-            } catch (Exception e){
-                log.error("编号为【{}】的请求在调用过程中发生异常。",yrpcRequest.getRequestId(),e);
-                yrpcResponse.setCode(RespCode.FAIL.getCode());
+            } catch (RejectedExecutionException e) {
+                if (serverStream) {
+                    StreamSender.discard(channel, yrpcRequest.getRequestId());
+                }
+                if (bulkhead != null) {
+                    log.warn("编号为【{}】的请求被拒绝，舱壁【{}】已满。", yrpcRequest.getRequestId(), bulkhead.getName());
+                    yrpcResponse.setCode(bulkhead.getRejectCode().getCode());
+                } else {
+                    log.error("编号为【{}】的请求被拒绝，执行方法调用的线程池已满。", yrpcRequest.getRequestId());
+                    yrpcResponse.setCode(RespCode.FAIL.getCode());
+                }
+                writeResponse(channel, yrpcResponse);
             }
+            return;
         }
         
         // 6、写出响应
@@ -99,26 +219,239 @@ public class MethodCallHandler extends SimpleChannelInboundHandler<YrpcRequest>
         ShutDownHolder.REQUEST_COUNTER.decrement();
     }
     
-    private Object callTargetMethod(RequestPayload requestPayload) {
-        String interfaceName = requestPayload.getInterfaceName();
-        String methodName = requestPayload.getMethodName();
-        Class<?>[] parametersType = requestPayload.getParametersType();
-        Object[] parametersValue = requestPayload.getParametersValue();
+    /**
+     * 执行一次方法调用并写出响应，可能运行在io线程，也可能运行在线程池或者虚拟线程中
+     */
+    private void invoke(Channel channel, YrpcRequest yrpcRequest, YrpcResponse yrpcResponse,
+                        boolean serverStream, ServiceMethod serviceMethod) {
+        Object result;
+        try {
+            result = callTargetMethod(serviceMethod, yrpcRequest.getRequestPayload());
+            if (log.isDebugEnabled()) {
+                log.debug("请求【{}】已经在服务端完成方法调用。", yrpcRequest.getRequestId());
+            }
+        } catch (Exception e) {
+            log.error("编号为【{}】的请求在调用过程中发生异常。", yrpcRequest.getRequestId(), e);
+            yrpcResponse.setCode(RespCode.FAIL.getCode());
+            inEventLoop(channel, () -> {
+                if (serverStream) {
+                    StreamSender.discard(channel, yrpcRequest.getRequestId());
+                }
+                channel.writeAndFlush(yrpcResponse);
+                ShutDownHolder.REQUEST_COUNTER.decrement();
+            });
+            return;
+        }
         
-        // 寻找到匹配的暴露出去的具体的实现
-        ServiceConfig<?> serviceConfig = YrpcBootstrap.SERVERS_LIST.get(interfaceName);
-        Object refImpl = serviceConfig.getRef();
+        // 流式的结果由发送器按照额度逐帧写出，不再写出单个响应
+        if (serverStream) {
+            inEventLoop(channel, () -> {
+                StreamSender.open(channel, yrpcRequest.getRequestId(), (YrpcStream<?>) result);
+                ShutDownHolder.REQUEST_COUNTER.decrement();
+            });
+            return;
+        }
+        // 异步方法返回的future完成以后再写出响应，不占用执行方法调用的线程
+        if (result instanceof CompletionStage<?> stage) {
+            stage.whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    yrpcResponse.setCode(RespCode.SUCCESS.getCode());
+                    yrpcResponse.setBody(value);
+                } else {
+                    log.error("编号为【{}】的请求在异步调用过程中发生异常。", yrpcRequest.getRequestId(), throwable);
+                    yrpcResponse.setCode(RespCode.FAIL.getCode());
+                }
+                writeResponse(channel, yrpcResponse);
+            });
+            return;
+        }
+        // （3）封装响应
+        yrpcResponse.setCode(RespCode.SUCCESS.getCode());
+        yrpcResponse.setBody(result);
+        writeResponse(channel, yrpcResponse);
+    }
+    
+    /**
+     * 回到channel所在的io线程写出响应，并将计数器减一
+     */
+    private void writeResponse(Channel channel, YrpcResponse yrpcResponse) {
+        inEventLoop(channel, () -> {
+            channel.writeAndFlush(yrpcResponse);
+            ShutDownHolder.REQUEST_COUNTER.decrement();
+        });
+    }
+    
+    private void inEventLoop(Channel channel, Runnable task) {
+        if (channel.eventLoop().inEventLoop()) {
+            task.run();
+        } else {
+            channel.eventLoop().execute(task);
+        }
+    }
+    
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 写缓冲区腾出了空间，继续发送被挂起的流
+        if (ctx.channel().isWritable()) {
+            StreamRegistry.resumeAll(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        StreamRegistry.closeAll(ctx.channel());
+        super.channelInactive(ctx);
+    }
+    
+    /**
+     * 执行批量请求，发生意外的异常时给每一个子请求回复失败，保证批量响应一定会写出、计数器一定会减一
+     */
+    private CompletableFuture<BatchPayload> callBatchSafely(YrpcRequest yrpcRequest, RateLimiter rateLimiter) {
+        try {
+            return callBatch(yrpcRequest.getBatchPayload(), rateLimiter);
+        } catch (RuntimeException e) {
+            log.error("批量请求【{}】在调用过程中发生异常。", yrpcRequest.getRequestId(), e);
+            return CompletableFuture.completedFuture(rejectBatch(yrpcRequest.getBatchPayload(), RespCode.FAIL));
+        }
+    }
+    
+    /**
+     * 逐个执行批量请求中的子请求，返回与之一一对应的批量响应，有舱壁的子请求在自己的舱壁中执行
+     * @param batchPayload 批量请求的负载
+     * @param rateLimiter  当前ip的限流器
+     * @return 批量响应的负载，子请求中有异步方法时在它们都完成以后结束
+     */
+    private CompletableFuture<BatchPayload> callBatch(BatchPayload batchPayload, RateLimiter rateLimiter) {
+        int size = batchPayload.size();
+        byte[] codes = new byte[size];
+        Object[] bodies = new Object[size];
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (!rateLimiter.allowRequest()) {
+                codes[i] = RespCode.RATE_LIMIT.getCode();
+                continue;
+            }
+            // 解码器无法转换的子请求为null
+            if (!(batchPayload.getBodies()[i] instanceof RequestPayload requestPayload)) {
+                codes[i] = RespCode.FAIL.getCode();
+                continue;
+            }
+            if (isUnknownMethod(requestPayload)) {
+                codes[i] = RespCode.METHOD_UNKNOWN.getCode();
+                continue;
+            }
+            ServiceMethod serviceMethod = findServiceMethod(requestPayload);
+            CompletableFuture<Object> result;
+            try {
+                result = callEntry(serviceMethod, requestPayload);
+            } catch (RejectedExecutionException e) {
+                log.warn("编号为【{}】的子请求被拒绝，舱壁【{}】已满。",
+                    batchPayload.getRequestIds()[i], serviceMethod.getBulkhead().getName());
+                codes[i] = serviceMethod.getBulkhead().getRejectCode().getCode();
+                continue;
+            }
+            int index = i;
+            pending.add(result.handle((value, throwable) -> {
+                if (throwable == null) {
+                    codes[index] = RespCode.SUCCESS.getCode();
+                    bodies[index] = value;
+                } else {
+                    log.error("编号为【{}】的子请求在调用过程中发生异常。", batchPayload.getRequestIds()[index], throwable);
+                    codes[index] = RespCode.FAIL.getCode();
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> BatchPayload.builder()
+                .requestIds(batchPayload.getRequestIds())
+                .codes(codes)
+                .bodies(bodies)
+                .build());
+    }
+    
+    /**
+     * 执行一个子请求，有舱壁时在舱壁中执行，否则在当前线程执行
+     * @return 子请求的结果，异步方法在返回的future完成以后结束
+     * @throws RejectedExecutionException 舱壁已满
+     */
+    private CompletableFuture<Object> callEntry(ServiceMethod serviceMethod, RequestPayload requestPayload) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        Runnable call = () -> {
+            try {
+                Object result = callTargetMethod(serviceMethod, requestPayload);
+                if (result instanceof CompletionStage<?> stage) {
+                    stage.whenComplete((value, throwable) -> {
+                        if (throwable == null) {
+                            future.complete(value);
+                        } else {
+                            future.completeExceptionally(throwable);
+                        }
+                    });
+                } else {
+                    future.complete(result);
+                }
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        };
+        if (serviceMethod != null && serviceMethod.getBulkhead() != null) {
+            serviceMethod.getBulkhead().execute(call);
+        } else {
+            call.run();
+        }
+        return future;
+    }
+    
+    private BatchPayload rejectBatch(BatchPayload batchPayload, RespCode respCode) {
+        byte[] codes = new byte[batchPayload.size()];
+        Arrays.fill(codes, respCode.getCode());
+        return BatchPayload.builder()
+            .requestIds(batchPayload.getRequestIds())
+            .codes(codes)
+            .bodies(new Object[batchPayload.size()])
+            .build();
+    }
+    
+    /**
+     * 方法调用和批量请求必须携带负载，报文体为空时解码出的负载为null
+     */
+    private boolean isMissingPayload(YrpcRequest yrpcRequest) {
+        byte requestType = yrpcRequest.getRequestType();
+        if (requestType == RequestType.BATCH.getId()) {
+            return yrpcRequest.getBatchPayload() == null;
+        }
+        return (requestType == RequestType.REQUEST.getId() || requestType == RequestType.SERVER_STREAM.getId())
+            && yrpcRequest.getRequestPayload() == null;
+    }
+    
+    /**
+     * 只携带了编号，但是编号没能在方法表中找到
+     */
+    private boolean isUnknownMethod(RequestPayload requestPayload) {
+        return requestPayload != null && requestPayload.getMethodId() > 0 && requestPayload.getInterfaceName() == null;
+    }
+    
+    private ServiceMethod findServiceMethod(RequestPayload requestPayload) {
+        // 携带了编号的请求直接按编号取，否则按接口名、方法名和参数类型查找，两者拿到的都是发布时生成好的调用器
+        return requestPayload.getMethodId() > 0
+            ? MethodRegistry.get(requestPayload.getMethodId())
+            : MethodRegistry.lookup(requestPayload);
+    }
+    
+    private Object callTargetMethod(ServiceMethod serviceMethod, RequestPayload requestPayload) {
+        if (serviceMethod == null) {
+            log.error("服务【{}】的方法【{}】不存在。", requestPayload.getInterfaceName(), requestPayload.getMethodName());
+            throw new RuntimeException("请求的方法不存在。");
+        }
         
-        // 通过反射调用 1、获取方法对象  2、执行invoke方法
-        Object returnValue;
         try {
-            Class<?> aClass = refImpl.getClass();
-            Method method = aClass.getMethod(methodName, parametersType);
-            returnValue = method.invoke(refImpl, parametersValue);
-        } catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
-            log.error("调用服务【{}】的方法【{}】时发生了异常。", interfaceName, methodName, e);
+            return serviceMethod.getInvoker().invoke(requestPayload.getParametersValue());
+        } catch (Throwable e) {
+            log.error("调用服务【{}】的方法【{}】时发生了异常。",
+                serviceMethod.getInterfaceName(), serviceMethod.getMethodName(), e);
             throw new RuntimeException(e);
         }
-        return returnValue;
     }
 }
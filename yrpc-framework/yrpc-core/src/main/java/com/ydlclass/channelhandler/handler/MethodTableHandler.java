@@ -0,0 +1,252 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.CompactProtocol;
+import com.ydlclass.transport.message.MessageFormatConstant;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务调用方每个连接一份的方法表
+ * 某个方法第一次在连接上调用时，请求照常携带完整的方法描述，同时向服务提供方登记，拿到编号以后的请求只携带编号和参数
+ * 服务提供方不认识编号时（比如提供方重启后方法表丢失）会返回METHOD_UNKNOWN，此时清空方法表，携带完整的描述重新发送
+ * 方法表依赖协议握手，只有协商出v2协议的连接才会启用，所有状态都只在通道所属的eventLoop中访问
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+@Slf4j
+public class MethodTableHandler extends ChannelDuplexHandler {
+
+    // 最多记录的在途请求数，更早的请求早已超时
+    private static final int MAX_IN_FLIGHT = 4096;
+
+    // key 为方法的签名，value 为服务提供方分配的编号，0代表提供方无法登记该方法
+    private final Map<String, Integer> methodIds = new HashMap<>(32);
+
+    // 正在登记的方法，key 为登记请求的id，value 为方法的签名
+    private final Map<Long, String> registering = new HashMap<>(8);
+
+    // 只携带了编号的在途请求，编号失效时用来携带完整的描述重新发送
+    private final Map<Long, YrpcRequest> inFlight = new LinkedHashMap<>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, YrpcRequest> eldest) {
+            return size() > MAX_IN_FLIGHT;
+        }
+    };
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof YrpcRequest yrpcRequest)
+            || CompactProtocol.version(ctx.channel()) < MessageFormatConstant.VERSION_2) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        List<RequestPayload> unregistered = new ArrayList<>(1);
+        YrpcRequest compacted = null;
+        if (yrpcRequest.getRequestType() == RequestType.REQUEST.getId()) {
+            RequestPayload payload = compact(yrpcRequest.getRequestPayload(), unregistered);
+            if (payload != yrpcRequest.getRequestPayload()) {
+                compacted = copy(yrpcRequest, payload, null);
+            }
+        } else if (yrpcRequest.getRequestType() == RequestType.BATCH.getId()) {
+            BatchPayload batchPayload = yrpcRequest.getBatchPayload();
+            Object[] bodies = new Object[batchPayload.size()];
+            boolean changed = false;
+            for (int i = 0; i < bodies.length; i++) {
+                bodies[i] = compact((RequestPayload) batchPayload.getBodies()[i], unregistered);
+                changed |= bodies[i] != batchPayload.getBodies()[i];
+            }
+            if (changed) {
+                compacted = copy(yrpcRequest, null, BatchPayload.builder()
+                    .requestIds(batchPayload.getRequestIds())
+                    .codes(batchPayload.getCodes())
+                    .bodies(bodies)
+                    .build());
+            }
+        }
+
+        if (compacted != null) {
+            inFlight.put(yrpcRequest.getRequestId(), yrpcRequest);
+            ctx.write(compacted, promise);
+        } else {
+            ctx.write(msg, promise);
+        }
+        // 登记请求跟在本次请求之后，随着本次的flush一起写出
+        for (RequestPayload payload : unregistered) {
+            register(ctx, yrpcRequest, payload);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof YrpcResponse yrpcResponse)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        // 登记的结果
+        String signature = registering.remove(yrpcResponse.getRequestId());
+        if (signature != null) {
+            if (yrpcResponse.getCode() == RespCode.SUCCESS.getCode()) {
+                methodIds.put(signature, (Integer) yrpcResponse.getBody());
+            } else {
+                methodIds.put(signature, 0);
+                log.error("方法【{}】登记编号失败，响应码【{}】。", signature, yrpcResponse.getCode());
+            }
+            return;
+        }
+
+        YrpcRequest original = inFlight.remove(yrpcResponse.getRequestId());
+        if (original == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (yrpcResponse.getCode() == RespCode.METHOD_UNKNOWN.getCode()) {
+            forget(ctx);
+            ctx.writeAndFlush(original);
+            return;
+        }
+        if (yrpcResponse.getCode() == RespCode.BATCH.getCode()) {
+            yrpcResponse = resendUnknownEntries(ctx, original, yrpcResponse);
+        }
+        ctx.fireChannelRead(yrpcResponse);
+    }
+
+    /**
+     * 批量响应中编号失效的子请求单独携带完整的描述重新发送，并从批量响应中移除
+     */
+    private YrpcResponse resendUnknownEntries(ChannelHandlerContext ctx, YrpcRequest original, YrpcResponse yrpcResponse) {
+        BatchPayload batchResponse = (BatchPayload) yrpcResponse.getBody();
+        BatchPayload batchRequest = original.getBatchPayload();
+        List<Integer> known = new ArrayList<>(batchResponse.size());
+        for (int i = 0; i < batchResponse.size(); i++) {
+            // 批量响应可能只包含部分子请求（比如服务端注入了故障），按请求id找到对应的子请求
+            int index = indexOf(batchRequest.getRequestIds(), batchResponse.getRequestIds()[i]);
+            if (batchResponse.getCodes()[i] != RespCode.METHOD_UNKNOWN.getCode() || index < 0) {
+                known.add(i);
+                continue;
+            }
+            ctx.write(YrpcRequest.builder()
+                .requestId(batchRequest.getRequestIds()[index])
+                .requestType(RequestType.REQUEST.getId())
+                .compressType(original.getCompressType())
+                .serializeType(original.getSerializeType())
+                .timeStamp(System.currentTimeMillis())
+                .requestPayload((RequestPayload) batchRequest.getBodies()[index])
+                .build());
+        }
+        if (known.size() == batchResponse.size()) {
+            return yrpcResponse;
+        }
+        forget(ctx);
+        ctx.flush();
+
+        long[] requestIds = new long[known.size()];
+        byte[] codes = new byte[known.size()];
+        Object[] bodies = new Object[known.size()];
+        for (int i = 0; i < known.size(); i++) {
+            requestIds[i] = batchResponse.getRequestIds()[known.get(i)];
+            codes[i] = batchResponse.getCodes()[known.get(i)];
+            bodies[i] = batchResponse.getBodies()[known.get(i)];
+        }
+        yrpcResponse.setBody(BatchPayload.builder().requestIds(requestIds).codes(codes).bodies(bodies).build());
+        return yrpcResponse;
+    }
+
+    private static int indexOf(long[] requestIds, long requestId) {
+        for (int i = 0; i < requestIds.length; i++) {
+            if (requestIds[i] == requestId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 服务提供方的方法表已经失效，之后的调用重新登记
+     */
+    private void forget(ChannelHandlerContext ctx) {
+        if (!methodIds.isEmpty()) {
+            log.info("【{}】的方法表已经失效，重新登记方法编号。", ctx.channel().remoteAddress());
+            methodIds.clear();
+        }
+    }
+
+    /**
+     * 已经登记过的方法只保留编号和参数，没有登记过的方法记录下来等待登记
+     */
+    private RequestPayload compact(RequestPayload requestPayload, List<RequestPayload> unregistered) {
+        if (requestPayload == null || requestPayload.getInterfaceName() == null) {
+            return requestPayload;
+        }
+        String signature = MethodRegistry.signature(requestPayload.getInterfaceName(),
+            requestPayload.getMethodName(), requestPayload.getParametersType());
+        Integer methodId = methodIds.get(signature);
+        if (methodId != null) {
+            if (methodId == 0) {
+                return requestPayload;
+            }
+            return RequestPayload.builder()
+                .methodId(methodId)
+                .parametersValue(requestPayload.getParametersValue())
+                .build();
+        }
+        if (!registering.containsValue(signature)) {
+            unregistered.add(requestPayload);
+        }
+        return requestPayload;
+    }
+
+    private void register(ChannelHandlerContext ctx, YrpcRequest yrpcRequest, RequestPayload requestPayload) {
+        String signature = MethodRegistry.signature(requestPayload.getInterfaceName(),
+            requestPayload.getMethodName(), requestPayload.getParametersType());
+        if (registering.containsValue(signature)) {
+            return;
+        }
+        long requestId = YrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId();
+        registering.put(requestId, signature);
+        ctx.write(YrpcRequest.builder()
+            .requestId(requestId)
+            .requestType(RequestType.METHOD_REGISTER.getId())
+            .compressType(yrpcRequest.getCompressType())
+            .serializeType(yrpcRequest.getSerializeType())
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(RequestPayload.builder()
+                .interfaceName(requestPayload.getInterfaceName())
+                .methodName(requestPayload.getMethodName())
+                .parametersType(requestPayload.getParametersType())
+                .returnType(requestPayload.getReturnType())
+                .build())
+            .build());
+    }
+
+    private YrpcRequest copy(YrpcRequest yrpcRequest, RequestPayload requestPayload, BatchPayload batchPayload) {
+        return YrpcRequest.builder()
+            .requestId(yrpcRequest.getRequestId())
+            .requestType(yrpcRequest.getRequestType())
+            .compressType(yrpcRequest.getCompressType())
+            .serializeType(yrpcRequest.getSerializeType())
+            .timeStamp(yrpcRequest.getTimeStamp())
+            .attachments(yrpcRequest.getAttachments())
+            .requestPayload(requestPayload)
+            .batchPayload(batchPayload)
+            .build();
+    }
+}
@@ -2,9 +2,13 @@ package com.ydlclass.channelhandler.handler;
 
 import com.ydlclass.YrpcBootstrap;
 import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.exceptions.NetworkException;
 import com.ydlclass.exceptions.ResponseException;
 import com.ydlclass.loadbalancer.LoadBalancer;
 import com.ydlclass.protection.CircuitBreaker;
+import com.ydlclass.stream.ConsumerStream;
+import com.ydlclass.transport.ConnectionManager;
+import com.ydlclass.transport.message.BatchPayload;
 import com.ydlclass.transport.message.YrpcRequest;
 import com.ydlclass.transport.message.YrpcResponse;
 import io.netty.channel.ChannelHandlerContext;
@@ -25,9 +29,59 @@ import java.util.concurrent.CompletableFuture;
 public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<YrpcResponse> {
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, YrpcResponse yrpcResponse) throws Exception {
+        if (yrpcResponse.getCode() == RespCode.BATCH.getCode()) {
+            // 批量响应，拆成一个个子响应分别处理，某一个失败不影响其他子响应
+            BatchPayload batchPayload = (BatchPayload) yrpcResponse.getBody();
+            for (int i = 0; i < batchPayload.size(); i++) {
+                YrpcResponse itemResponse = YrpcResponse.builder()
+                    .requestId(batchPayload.getRequestIds()[i])
+                    .code(batchPayload.getCodes()[i])
+                    .body(batchPayload.getBodies()[i])
+                    .compressType(yrpcResponse.getCompressType())
+                    .serializeType(yrpcResponse.getSerializeType())
+                    .timeStamp(yrpcResponse.getTimeStamp())
+                    .build();
+                try {
+                    handleResponse(channelHandlerContext, itemResponse);
+                } catch (RuntimeException e) {
+                    log.error("批量响应【{}】中编号为【{}】的子请求处理失败。",
+                        yrpcResponse.getRequestId(), itemResponse.getRequestId(), e);
+                }
+            }
+            return;
+        }
+        handleResponse(channelHandlerContext, yrpcResponse);
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，这个连接上挂起的请求不会再有响应，立即失败
+        int failed = YrpcBootstrap.PENDING_REQUEST.failAll(ctx.channel(),
+            new NetworkException("与【" + ctx.channel().remoteAddress() + "】的连接已经断开。"));
+        if (failed > 0) {
+            log.warn("与【{}】的连接已经断开，【{}】个挂起的请求已经失败。", ctx.channel().remoteAddress(), failed);
+        }
+        super.channelInactive(ctx);
+    }
+    
+    private void handleResponse(ChannelHandlerContext channelHandlerContext, YrpcResponse yrpcResponse) {
+        
+        // 流式调用的帧交给对应的流处理
+        ConsumerStream stream = YrpcBootstrap.STREAMS.get(yrpcResponse.getRequestId());
+        if (stream != null) {
+            stream.onResponse(yrpcResponse);
+            return;
+        }
     
         // 从全局的挂起的请求中寻找与之匹配的待处理的completableFuture
         CompletableFuture<Object> completableFuture = YrpcBootstrap.PENDING_REQUEST.get(yrpcResponse.getRequestId());
+        if (completableFuture == null) {
+            // 请求已经超时或者连接断开，迟到的响应直接丢弃
+            if (log.isDebugEnabled()) {
+                log.debug("编号为【{}】的请求已经结束，丢弃迟到的响应。", yrpcResponse.getRequestId());
+            }
+            return;
+        }
         
         SocketAddress socketAddress = channelHandlerContext.channel().remoteAddress();
         Map<SocketAddress, CircuitBreaker> everyIpCircuitBreaker = YrpcBootstrap.getInstance()
@@ -36,25 +90,36 @@ public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<Y
     
         byte code = yrpcResponse.getCode();
         if(code == RespCode.FAIL.getCode()){
+            ResponseException exception = new ResponseException(code, RespCode.FAIL.getDesc());
             circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
+            completableFuture.completeExceptionally(exception);
             log.error("当前id为[{}]的请求，返回错误的结果，响应码[{}].",
                 yrpcResponse.getRequestId(),yrpcResponse.getCode());
-            throw new ResponseException(code,RespCode.FAIL.getDesc());
+            throw exception;
             
         } else if (code == RespCode.RATE_LIMIT.getCode()){
+            ResponseException exception = new ResponseException(code, RespCode.RATE_LIMIT.getDesc());
             circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
+            completableFuture.completeExceptionally(exception);
             log.error("当前id为[{}]的请求，被限流，响应码[{}].",
                 yrpcResponse.getRequestId(),yrpcResponse.getCode());
-            throw new ResponseException(code,RespCode.RATE_LIMIT.getDesc());
-            
+            throw exception;
+
+        } else if (code == RespCode.OVERLOAD.getCode()){
+            ResponseException exception = new ResponseException(code, RespCode.OVERLOAD.getDesc());
+            circuitBreaker.recordErrorRequest();
+            completableFuture.completeExceptionally(exception);
+            log.error("当前id为[{}]的请求，服务过载，舱壁已满，响应码[{}].",
+                yrpcResponse.getRequestId(),yrpcResponse.getCode());
+            throw exception;
+
         } else if (code == RespCode.RESOURCE_NOT_FOUND.getCode() ){
+            ResponseException exception = new ResponseException(code, RespCode.RESOURCE_NOT_FOUND.getDesc());
             circuitBreaker.recordErrorRequest();
-            completableFuture.complete(null);
+            completableFuture.completeExceptionally(exception);
             log.error("当前id为[{}]的请求，未找到目标资源，响应码[{}].",
                 yrpcResponse.getRequestId(),yrpcResponse.getCode());
-            throw new ResponseException(code,RespCode.RESOURCE_NOT_FOUND.getDesc());
+            throw exception;
             
         } else if (code == RespCode.SUCCESS.getCode() ){
             // 服务提供方，给予的结果
@@ -69,7 +134,8 @@ public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<Y
                 log.debug("以寻找到编号为【{}】的completableFuture,处理心跳检测，处理响应结果。", yrpcResponse.getRequestId());
             }
         } else if(code == RespCode.BECOLSING.getCode()){
-            completableFuture.complete(null);
+            ResponseException exception = new ResponseException(code, RespCode.BECOLSING.getDesc());
+            completableFuture.completeExceptionally(exception);
             if (log.isDebugEnabled()) {
                 log.debug("当前id为[{}]的请求，访问被拒绝，目标服务器正处于关闭中，响应码[{}].",
                     yrpcResponse.getRequestId(),yrpcResponse.getCode());
@@ -77,7 +143,7 @@ public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<Y
             
             // 修正负载均衡器
             // 从健康列表中移除
-            YrpcBootstrap.CHANNEL_CACHE.remove(socketAddress);
+            ConnectionManager.remove(socketAddress);
             // reLoadBalance
             LoadBalancer loadBalancer = YrpcBootstrap.getInstance()
                 .getConfiguration().getLoadBalancer();
@@ -86,7 +152,7 @@ public class MySimpleChannelInboundHandler extends SimpleChannelInboundHandler<Y
             loadBalancer.reLoadBalance(yrpcRequest.getRequestPayload().getInterfaceName()
                 ,YrpcBootstrap.CHANNEL_CACHE.keySet().stream().toList());
     
-            throw new ResponseException(code,RespCode.BECOLSING.getDesc());
+            throw exception;
         }
     }
 }
@@ -0,0 +1,104 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.CompactProtocol;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务调用方的协议握手处理器，连接建立后用v1报文询问服务提供方支持的最高协议版本
+ * 握手完成之前的请求依然使用v1协议，握手完成后编码器切换到协商出的版本，处理器把自己从pipeline中移除
+ * 老版本的提供方不认识握手请求，可能返回错误的响应码，也可能不回复：
+ * 在握手的响应之前收到了其他响应，或者超过HANDSHAKE_TIMEOUT_MILLIS没有收到回复，同样继续使用v1协议并移除处理器
+ * 所以调用方可以先于提供方升级，默认开启v2不影响和老版本的提供方通信
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+@Slf4j
+public class ProtocolHandshakeHandler extends ChannelInboundHandlerAdapter {
+
+    // 等待握手响应的时间，超时以后认为提供方不支持握手
+    public static final long HANDSHAKE_TIMEOUT_MILLIS = 3000;
+
+    private final int protocolVersion;
+
+    private long handshakeId;
+
+    private ScheduledFuture<?> timeout;
+
+    public ProtocolHandshakeHandler(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        handshakeId = configuration.getIdGenerator().getId();
+        YrpcRequest handshake = YrpcRequest.builder()
+            .requestId(handshakeId)
+            .requestType(RequestType.HANDSHAKE.getId())
+            .compressType(CompressorFactory.getCompressor(configuration.getCompressType()).getCode())
+            .serializeType(SerializerFactory.getSerializer(configuration.getSerializeType()).getCode())
+            .timeStamp(System.currentTimeMillis())
+            .build();
+        ctx.writeAndFlush(handshake);
+        timeout = ctx.executor().schedule(() -> {
+            log.info("服务提供方【{}】在【{}】ms内没有回复协议握手，继续使用v1协议。",
+                ctx.channel().remoteAddress(), HANDSHAKE_TIMEOUT_MILLIS);
+            remove(ctx);
+        }, HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof YrpcResponse yrpcResponse)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+        // 握手是连接上的第一个请求，支持握手的提供方一定最先回复它，先收到其他响应说明提供方忽略了握手
+        if (yrpcResponse.getRequestId() != handshakeId) {
+            log.info("服务提供方【{}】没有回复协议握手，继续使用v1协议。", ctx.channel().remoteAddress());
+            remove(ctx);
+            super.channelRead(ctx, msg);
+            return;
+        }
+
+        if (yrpcResponse.getCode() == RespCode.SUCCESS_HANDSHAKE.getCode()) {
+            int version = Math.min(protocolVersion, (Integer) yrpcResponse.getBody());
+            CompactProtocol.upgrade(ctx.channel(), version);
+            if (log.isDebugEnabled()) {
+                log.debug("和【{}】协商出的协议版本为【{}】。", ctx.channel().remoteAddress(), version);
+            }
+        } else {
+            log.info("服务提供方【{}】不支持协议握手，继续使用v1协议。", ctx.channel().remoteAddress());
+        }
+        remove(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        super.handlerRemoved(ctx);
+    }
+
+    private void remove(ChannelHandlerContext ctx) {
+        if (!ctx.isRemoved()) {
+            ctx.pipeline().remove(this);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 请求合并的处理器，默认不开启，需要放在YrpcRequestEncoder之前（出站方向）
+ * 同一轮事件循环中写出的多个普通请求会被合并成一个BATCH报文，只需要一个报文头、一次序列化和压缩
+ * 只有一个请求时原样写出，不同序列化或压缩方式的请求不会被合并
+ *
+ * @author it楠老师
+ * @createTime 2023-08-04
+ */
+@Slf4j
+public class RequestBatchHandler extends ChannelOutboundHandlerAdapter {
+
+    // 一个批量报文最多携带的请求数
+    private final int maxBatchSize;
+
+    // 以下状态只会在channel所属的eventLoop中访问
+    private ChannelHandlerContext ctx;
+    private final List<YrpcRequest> pendingRequests = new ArrayList<>();
+    private final List<ChannelPromise> pendingPromises = new ArrayList<>();
+    private boolean drainScheduled;
+
+    private final Runnable drainTask = () -> {
+        drainScheduled = false;
+        drain(ctx);
+        ctx.flush();
+    };
+
+    public RequestBatchHandler(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        // 心跳等其他类型的请求直接写出，不能还原子请求类型的序列化方式也不合并
+        if (!(msg instanceof YrpcRequest yrpcRequest)
+            || yrpcRequest.getRequestType() != RequestType.REQUEST.getId()
+            || !SerializerFactory.getSerializer(yrpcRequest.getSerializeType()).getImpl().keepsType()) {
+            ctx.write(msg, promise);
+            return;
+        }
+        pendingRequests.add(yrpcRequest);
+        pendingPromises.add(promise);
+        if (pendingRequests.size() >= maxBatchSize) {
+            drain(ctx);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (pendingRequests.isEmpty()) {
+            ctx.flush();
+            return;
+        }
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        // 排在当前任务队列的末尾执行，同一轮中提交的请求都会被合并
+        ctx.executor().execute(drainTask);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        drain(ctx);
+        ctx.flush();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        drain(ctx);
+        ctx.flush();
+    }
+
+    /**
+     * 将积攒的请求写出，序列化和压缩方式相同的连续请求合并成一个批量报文
+     */
+    private void drain(ChannelHandlerContext ctx) {
+        int start = 0;
+        int size = pendingRequests.size();
+        while (start < size) {
+            YrpcRequest first = pendingRequests.get(start);
+            int end = start + 1;
+            while (end < size
+                && pendingRequests.get(end).getSerializeType() == first.getSerializeType()
+                && pendingRequests.get(end).getCompressType() == first.getCompressType()) {
+                end++;
+            }
+            writeBatch(ctx, start, end);
+            start = end;
+        }
+        pendingRequests.clear();
+        pendingPromises.clear();
+    }
+
+    private void writeBatch(ChannelHandlerContext ctx, int start, int end) {
+        if (end - start == 1) {
+            ctx.write(pendingRequests.get(start), pendingPromises.get(start));
+            return;
+        }
+
+        int count = end - start;
+        long[] requestIds = new long[count];
+        Object[] bodies = new Object[count];
+        List<ChannelPromise> promises = new ArrayList<>(pendingPromises.subList(start, end));
+        for (int i = 0; i < count; i++) {
+            YrpcRequest yrpcRequest = pendingRequests.get(start + i);
+            requestIds[i] = yrpcRequest.getRequestId();
+            bodies[i] = yrpcRequest.getRequestPayload();
+        }
+
+        YrpcRequest first = pendingRequests.get(start);
+        YrpcRequest batchRequest = YrpcRequest.builder()
+            .requestId(YrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
+            .requestType(RequestType.BATCH.getId())
+            .compressType(first.getCompressType())
+            .serializeType(first.getSerializeType())
+            .timeStamp(System.currentTimeMillis())
+            .batchPayload(BatchPayload.builder().requestIds(requestIds).bodies(bodies).build())
+            .build();
+
+        if (log.isDebugEnabled()) {
+            log.debug("【{}】个请求被合并成编号为【{}】的批量请求。", count, batchRequest.getRequestId());
+        }
+
+        // 批量报文写出的结果同步给每一个原始请求
+        ctx.write(batchRequest).addListener((ChannelFutureListener) future -> {
+            for (ChannelPromise promise : promises) {
+                if (future.isSuccess()) {
+                    promise.trySuccess();
+                } else {
+                    promise.tryFailure(future.cause());
+                }
+            }
+        });
+    }
+}
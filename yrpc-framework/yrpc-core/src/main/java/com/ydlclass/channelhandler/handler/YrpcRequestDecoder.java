@@ -2,18 +2,24 @@ package com.ydlclass.channelhandler.handler;
 
 import com.ydlclass.compress.Compressor;
 import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.core.MethodRegistry;
 import com.ydlclass.enumeration.RequestType;
 import com.ydlclass.serialize.Serializer;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.CompactHeader;
+import com.ydlclass.transport.message.CompactProtocol;
 import com.ydlclass.transport.message.MessageFormatConstant;
 import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.StreamPayload;
 import com.ydlclass.transport.message.YrpcRequest;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Random;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * * 自定义协议编码器
@@ -44,13 +50,17 @@ import java.util.Random;
  * * @author it楠老师
  * * @createTime 2023-07-02
  * <p>
- * 基于长度字段的帧解码器
+ * 基于长度字段的帧解码器，同时支持v2紧凑协议（见CompactProtocol），按照报文的第一个字节区分
  *
  * @author it楠老师
  * @createTime 2023-07-03
  */
 @Slf4j
 public class YrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
+    
+    // 上一个v2报文的请求id，v2的请求id是差值编码的，解码器每个连接一个
+    private long lastRequestId;
+    
     public YrpcRequestDecoder() {
         super(
             // 找到当前报文的总长度，截取报文，截取出来的报文我们可以去进行解析
@@ -68,17 +78,33 @@ public class YrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
     
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
-        
-        Thread.sleep(new Random().nextInt(50));
+        if (CompactProtocol.isCompact(in)) {
+            ByteBuf frame = CompactProtocol.readFrame(in);
+            if (frame == null) {
+                return null;
+            }
+            // 调用方已经切换到v2，响应也使用v2
+            CompactProtocol.upgrade(ctx.channel(), MessageFormatConstant.VERSION_2);
+            try {
+                return decodeCompactFrame(frame);
+            } finally {
+                frame.release();
+            }
+        }
         
         Object decode = super.decode(ctx, in);
         if(decode instanceof ByteBuf byteBuf){
-            return decodeFrame(byteBuf);
+            // 父类截取出的帧是一个retainedSlice，对象图构建完成后需要立即释放
+            try {
+                return decodeFrame(byteBuf);
+            } finally {
+                byteBuf.release();
+            }
         }
         return null;
     }
     
-    private Object decodeFrame(ByteBuf byteBuf) {
+    private Object decodeFrame(ByteBuf byteBuf) throws IOException {
         // 1、解析魔数
         byte[] magic = new byte[MessageFormatConstant.MAGIC.length];
         byteBuf.readBytes(magic);
@@ -129,27 +155,83 @@ public class YrpcRequestDecoder extends LengthFieldBasedFrameDecoder {
             return yrpcRequest;
         }
         
-        int payloadLength = fullLength - headLength;
-        byte[] payload = new byte[payloadLength];
-        byteBuf.readBytes(payload);
+        decodePayload(yrpcRequest, byteBuf, fullLength - headLength);
         
-        // 有了字节数组之后就可以解压缩，反序列化
-        // 1、解压缩
-        if(payload != null && payload.length != 0) {
-            Compressor compressor = CompressorFactory.getCompressor(compressType).getImpl();
-            payload = compressor.decompress(payload);
-    
+        if(log.isDebugEnabled()){
+            log.debug("请求【{}】已经在服务端完成解码工作。",yrpcRequest.getRequestId());
+        }
+        
+        return yrpcRequest;
+    }
     
-            // 2、反序列化
-            Serializer serializer = SerializerFactory.getSerializer(serializeType).getImpl();
-            RequestPayload requestPayload = serializer.deserialize(payload, RequestPayload.class);
-            yrpcRequest.setRequestPayload(requestPayload);
+    private Object decodeCompactFrame(ByteBuf frame) throws IOException {
+        CompactHeader header = CompactProtocol.readHeader(frame, lastRequestId);
+        lastRequestId = header.getRequestId();
+        
+        YrpcRequest yrpcRequest = YrpcRequest.builder()
+            .requestId(header.getRequestId())
+            .requestType(header.getType())
+            .serializeType(header.getSerializeType())
+            .compressType(header.getCompressType())
+            .timeStamp(header.getTimeStamp())
+            .attachments(header.getAttachments())
+            .build();
+        if (header.getType() != RequestType.HEART_BEAT.getId()) {
+            decodePayload(yrpcRequest, frame, frame.readableBytes());
         }
         
         if(log.isDebugEnabled()){
-            log.debug("请求【{}】已经在服务端完成解码工作。",yrpcRequest.getRequestId());
+            log.debug("v2请求【{}】已经在服务端完成解码工作。",yrpcRequest.getRequestId());
         }
-        
         return yrpcRequest;
     }
+    
+    private void decodePayload(YrpcRequest yrpcRequest, ByteBuf byteBuf, int payloadLength) throws IOException {
+        byte requestType = yrpcRequest.getRequestType();
+        byte compressType = yrpcRequest.getCompressType();
+        byte serializeType = yrpcRequest.getSerializeType();
+        
+        // 直接在帧上进行解压缩，反序列化，不再拷贝出负载的字节数组
+        if(payloadLength > 0) {
+            // 1、解压缩
+            Compressor compressor = CompressorFactory.getCompressor(compressType).getImpl();
+            // 2、反序列化
+            Serializer serializer = SerializerFactory.getSerializer(serializeType).getImpl();
+            try (InputStream payload = compressor.decompress(byteBuf, payloadLength)) {
+                if (requestType == RequestType.BATCH.getId()) {
+                    BatchPayload batchPayload = serializer.deserialize(payload, BatchPayload.class);
+                    Object[] bodies = batchPayload.getBodies();
+                    for (int i = 0; bodies != null && i < bodies.length; i++) {
+                        bodies[i] = toRequestPayload(serializer, bodies[i]);
+                        MethodRegistry.resolve((RequestPayload) bodies[i]);
+                    }
+                    yrpcRequest.setBatchPayload(batchPayload);
+                } else if (RequestType.isStreamControl(requestType)) {
+                    yrpcRequest.setStreamPayload(serializer.deserialize(payload, StreamPayload.class));
+                } else {
+                    RequestPayload requestPayload = serializer.deserialize(payload, RequestPayload.class);
+                    // 只携带了方法编号的负载，还原出完整的方法描述，编号未登记时交给MethodCallHandler处理
+                    MethodRegistry.resolve(requestPayload);
+                    yrpcRequest.setRequestPayload(requestPayload);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 批量负载中的子请求按Object反序列化，不保留类型的序列化方式（如json）得到的不是RequestPayload，
+     * 需要通过同一个序列化器再转换一次
+     * @return 子请求的负载，无法转换时返回null，由MethodCallHandler给这个子请求回复失败
+     */
+    private RequestPayload toRequestPayload(Serializer serializer, Object body) {
+        if (body == null || body instanceof RequestPayload) {
+            return (RequestPayload) body;
+        }
+        try {
+            return serializer.deserialize(serializer.serialize(body), RequestPayload.class);
+        } catch (RuntimeException e) {
+            log.error("批量请求中的子请求【{}】无法转换为请求负载。", body.getClass().getName(), e);
+            return null;
+        }
+    }
 }
@@ -1,16 +1,22 @@
 package com.ydlclass.channelhandler.handler;
 
-import com.ydlclass.compress.Compressor;
-import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.compress.AdaptiveCompression;
+import com.ydlclass.compress.impl.NoneCompressor;
 import com.ydlclass.serialize.Serializer;
+import com.ydlclass.enumeration.RequestType;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.CompactHeader;
+import com.ydlclass.transport.message.CompactProtocol;
 import com.ydlclass.transport.message.MessageFormatConstant;
+import com.ydlclass.transport.message.RequestPayload;
 import com.ydlclass.transport.message.YrpcRequest;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+
 /**
  * 自定义协议编码器
  * <p>
@@ -37,6 +43,7 @@ import lombok.extern.slf4j.Slf4j;
  * body
  * <p>
  * 出站时，第一个经过的处理器
+ * 与服务提供方协商出v2协议之后，使用v2紧凑协议编码（见CompactProtocol）
  *
  * @author it楠老师
  * @createTime 2023-07-02
@@ -44,8 +51,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class YrpcRequestEncoder extends MessageToByteEncoder<YrpcRequest> {
     
+    // 上一个v2报文的请求id，v2的请求id是差值编码的，编码器每个连接一个
+    private long lastRequestId;
+    
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, YrpcRequest yrpcRequest, ByteBuf byteBuf) throws Exception {
+        // 编号放不进v2报文头的序列化或压缩方式，这个报文依然使用v1
+        if (CompactProtocol.version(channelHandlerContext.channel()) >= MessageFormatConstant.VERSION_2
+            && CompactProtocol.fitsCodec(yrpcRequest.getSerializeType(), yrpcRequest.getCompressType())) {
+            encodeCompact(yrpcRequest, byteBuf);
+            return;
+        }
+        
+        int frameStart = byteBuf.writerIndex();
         // 4个字节的魔数值
         byteBuf.writeBytes(MessageFormatConstant.MAGIC);
         // 1个字节的版本号
@@ -74,22 +92,10 @@ public class YrpcRequestEncoder extends MessageToByteEncoder<YrpcRequest> {
 //            return;
 //        }
         
-        // 写入请求体（requestPayload）
-        // 1、根据配置的序列化方式进行序列化
-        // 怎么实现序列化 1、工具类 耦合性很高 如果以后我想替换序列化的方式，很难
-        byte[] body = null;
-        if (yrpcRequest.getRequestPayload() != null) {
-            Serializer serializer = SerializerFactory.getSerializer(yrpcRequest.getSerializeType()).getImpl();
-            body = serializer.serialize(yrpcRequest.getRequestPayload());
-            // 2、根据配置的压缩方式进行压缩
-            Compressor compressor = CompressorFactory.getCompressor(yrpcRequest.getCompressType()).getImpl();
-            body = compressor.compress(body);
-        }
-        
-        if (body != null) {
-            byteBuf.writeBytes(body);
-        }
-        int bodyLength = body == null ? 0 : body.length;
+        // 写入请求体（requestPayload），回填实际使用的压缩方式
+        int bodyStart = byteBuf.writerIndex();
+        byteBuf.setByte(frameStart + MessageFormatConstant.COMPRESS_OFFSET, writePayload(yrpcRequest, byteBuf, false));
+        int bodyLength = byteBuf.writerIndex() - bodyStart;
         
         // 重新处理报文的总长度
         // 先保存当前的写指针的位置
@@ -108,5 +114,53 @@ public class YrpcRequestEncoder extends MessageToByteEncoder<YrpcRequest> {
         
     }
     
+    private void encodeCompact(YrpcRequest yrpcRequest, ByteBuf byteBuf) throws IOException {
+        CompactHeader header = CompactHeader.builder()
+            .type(yrpcRequest.getRequestType())
+            .serializeType(yrpcRequest.getSerializeType())
+            .compressType(yrpcRequest.getCompressType())
+            .requestId(yrpcRequest.getRequestId())
+            // 只有心跳报文需要时间戳
+            .timeStamp(yrpcRequest.getRequestType() == RequestType.HEART_BEAT.getId() ? yrpcRequest.getTimeStamp() : 0)
+            .attachments(yrpcRequest.getAttachments())
+            .build();
+        int lengthIndex = CompactProtocol.writeHeader(byteBuf, header, lastRequestId);
+        CompactProtocol.writeCompressType(byteBuf, lengthIndex, yrpcRequest.getSerializeType(), writePayload(yrpcRequest, byteBuf, true));
+        CompactProtocol.writeLength(byteBuf, lengthIndex);
+        lastRequestId = yrpcRequest.getRequestId();
+        
+        if (log.isDebugEnabled()) {
+            log.debug("请求【{}】已经完成v2报文的编码。", yrpcRequest.getRequestId());
+        }
+    }
+    
+    /**
+     * 序列化直接面向byteBuf的输出流，是否压缩由AdaptiveCompression决定
+     * @param omittable 能否不压缩直接发送，只有v2报文可以
+     * @return 实际使用的压缩方式
+     */
+    private byte writePayload(YrpcRequest yrpcRequest, ByteBuf byteBuf, boolean omittable) throws IOException {
+        // 批量请求携带的是批量负载，流报文携带的是流负载，按方法统计压缩率
+        Object payload = yrpcRequest.getRequestPayload();
+        String key;
+        if (yrpcRequest.getBatchPayload() != null) {
+            payload = yrpcRequest.getBatchPayload();
+            key = "batch";
+        } else if (yrpcRequest.getStreamPayload() != null) {
+            payload = yrpcRequest.getStreamPayload();
+            key = "stream";
+        } else if (payload != null) {
+            RequestPayload requestPayload = yrpcRequest.getRequestPayload();
+            key = requestPayload.getInterfaceName() == null
+                ? "#" + requestPayload.getMethodId()
+                : requestPayload.getInterfaceName() + "." + requestPayload.getMethodName();
+        } else {
+            return NoneCompressor.CODE;
+        }
+        // 根据配置的序列化方式进行序列化，压缩交给AdaptiveCompression
+        Serializer serializer = SerializerFactory.getSerializer(yrpcRequest.getSerializeType()).getImpl();
+        return AdaptiveCompression.write(byteBuf, payload, serializer, yrpcRequest.getCompressType(), key, omittable);
+    }
+    
     
 }
@@ -4,6 +4,8 @@ import com.ydlclass.compress.Compressor;
 import com.ydlclass.compress.CompressorFactory;
 import com.ydlclass.serialize.Serializer;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.CompactHeader;
+import com.ydlclass.transport.message.CompactProtocol;
 import com.ydlclass.transport.message.MessageFormatConstant;
 import com.ydlclass.transport.message.YrpcResponse;
 import io.netty.buffer.ByteBuf;
@@ -11,6 +13,9 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * * 自定义协议编码器
  * * <p>
@@ -40,13 +45,17 @@ import lombok.extern.slf4j.Slf4j;
  * * @author it楠老师
  * * @createTime 2023-07-02
  * <p>
- * 基于长度字段的帧解码器
+ * 基于长度字段的帧解码器，同时支持v2紧凑协议（见CompactProtocol），按照报文的第一个字节区分
  *
  * @author it楠老师
  * @createTime 2023-07-03
  */
 @Slf4j
 public class YrpcResponseDecoder extends LengthFieldBasedFrameDecoder {
+    
+    // 上一个v2报文的请求id，v2的请求id是差值编码的，解码器每个连接一个
+    private long lastRequestId;
+    
     public YrpcResponseDecoder() {
         super(
             // 找到当前报文的总长度，截取报文，截取出来的报文我们可以去进行解析
@@ -64,14 +73,31 @@ public class YrpcResponseDecoder extends LengthFieldBasedFrameDecoder {
     
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (CompactProtocol.isCompact(in)) {
+            ByteBuf frame = CompactProtocol.readFrame(in);
+            if (frame == null) {
+                return null;
+            }
+            try {
+                return decodeCompactFrame(frame);
+            } finally {
+                frame.release();
+            }
+        }
+        
         Object decode = super.decode(ctx, in);
         if(decode instanceof ByteBuf byteBuf){
-            return decodeFrame(byteBuf);
+            // 父类截取出的帧是一个retainedSlice，对象图构建完成后需要立即释放
+            try {
+                return decodeFrame(byteBuf);
+            } finally {
+                byteBuf.release();
+            }
         }
         return null;
     }
     
-    private Object decodeFrame(ByteBuf byteBuf) {
+    private Object decodeFrame(ByteBuf byteBuf) throws IOException {
         // 1、解析魔数
         byte[] magic = new byte[MessageFormatConstant.MAGIC.length];
         byteBuf.readBytes(magic);
@@ -122,28 +148,49 @@ public class YrpcResponseDecoder extends LengthFieldBasedFrameDecoder {
 //            return yrpcRequest;
 //        }
         
-        int bodyLength = fullLength - headLength;
-        byte[] payload = new byte[bodyLength];
-        byteBuf.readBytes(payload);
+        decodeBody(yrpcResponse, byteBuf, fullLength - headLength);
         
-        if(payload.length > 0) {
-            // 有了字节数组之后就可以解压缩，反序列化
+        if(log.isDebugEnabled()){
+            log.debug("响应【{}】已经在调用端完成解码工作。",yrpcResponse.getRequestId());
+        }
+    
+        return yrpcResponse;
+    }
+    
+    private Object decodeCompactFrame(ByteBuf frame) throws IOException {
+        CompactHeader header = CompactProtocol.readHeader(frame, lastRequestId);
+        lastRequestId = header.getRequestId();
+        
+        YrpcResponse yrpcResponse = YrpcResponse.builder()
+            .requestId(header.getRequestId())
+            .code(header.getType())
+            .serializeType(header.getSerializeType())
+            .compressType(header.getCompressType())
+            .timeStamp(header.getTimeStamp())
+            .attachments(header.getAttachments())
+            .build();
+        decodeBody(yrpcResponse, frame, frame.readableBytes());
+        
+        if(log.isDebugEnabled()){
+            log.debug("v2响应【{}】已经在调用端完成解码工作。",yrpcResponse.getRequestId());
+        }
+        return yrpcResponse;
+    }
+    
+    private void decodeBody(YrpcResponse yrpcResponse, ByteBuf byteBuf, int bodyLength) throws IOException {
+        if(bodyLength > 0) {
+            // 直接在帧上进行解压缩，反序列化，不再拷贝出负载的字节数组
             // 1、解压缩
-            Compressor compressor = CompressorFactory.getCompressor(compressType).getImpl();
-            payload = compressor.decompress(payload);
+            Compressor compressor = CompressorFactory.getCompressor(yrpcResponse.getCompressType()).getImpl();
     
             // 2、反序列化
             Serializer serializer = SerializerFactory
                 .getSerializer(yrpcResponse.getSerializeType()).getImpl();
-            Object body = serializer.deserialize(payload, Object.class);
-            yrpcResponse.setBody(body);
-        }
-        
-        if(log.isDebugEnabled()){
-            log.debug("响应【{}】已经在调用端完成解码工作。",yrpcResponse.getRequestId());
+            try (InputStream payload = compressor.decompress(byteBuf, bodyLength)) {
+                Object body = serializer.deserialize(payload, Object.class);
+                yrpcResponse.setBody(body);
+            }
         }
-    
-        return yrpcResponse;
     }
     
     public static void main(String[] args) {
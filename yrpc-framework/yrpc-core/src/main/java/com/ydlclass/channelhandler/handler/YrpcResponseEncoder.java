@@ -1,9 +1,12 @@
 package com.ydlclass.channelhandler.handler;
 
-import com.ydlclass.compress.Compressor;
-import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.compress.AdaptiveCompression;
+import com.ydlclass.compress.impl.NoneCompressor;
 import com.ydlclass.serialize.Serializer;
+import com.ydlclass.enumeration.RespCode;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.CompactHeader;
+import com.ydlclass.transport.message.CompactProtocol;
 import com.ydlclass.transport.message.MessageFormatConstant;
 import com.ydlclass.transport.message.YrpcResponse;
 import io.netty.buffer.ByteBuf;
@@ -11,6 +14,8 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+
 /**
  * 自定义协议编码器
  * <p>
@@ -43,8 +48,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class YrpcResponseEncoder extends MessageToByteEncoder<YrpcResponse> {
     
+    // 上一个v2报文的请求id，v2的请求id是差值编码的，编码器每个连接一个
+    private long lastRequestId;
+    
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, YrpcResponse yrpcResponse, ByteBuf byteBuf) throws Exception {
+        // 调用方发来过v2的请求，响应也使用v2，编号放不进v2报文头的序列化或压缩方式依然使用v1
+        if (CompactProtocol.version(channelHandlerContext.channel()) >= MessageFormatConstant.VERSION_2
+            && CompactProtocol.fitsCodec(yrpcResponse.getSerializeType(), yrpcResponse.getCompressType())) {
+            encodeCompact(yrpcResponse, byteBuf);
+            return;
+        }
+        
+        int frameStart = byteBuf.writerIndex();
         // 4个字节的魔数值
         byteBuf.writeBytes(MessageFormatConstant.MAGIC);
         // 1个字节的版本号
@@ -61,24 +77,10 @@ public class YrpcResponseEncoder extends MessageToByteEncoder<YrpcResponse> {
         byteBuf.writeLong(yrpcResponse.getRequestId());
         byteBuf.writeLong(yrpcResponse.getTimeStamp());
         
-        // 1、对响应做序列化
-        byte[] body = null;
-        if(yrpcResponse.getBody() != null) {
-            Serializer serializer = SerializerFactory
-                .getSerializer(yrpcResponse.getSerializeType()).getImpl();
-            body = serializer.serialize(yrpcResponse.getBody());
-    
-            // 2、压缩
-            Compressor compressor = CompressorFactory.getCompressor(
-                yrpcResponse.getCompressType()
-            ).getImpl();
-            body = compressor.compress(body);
-        }
-        
-        if(body != null){
-            byteBuf.writeBytes(body);
-        }
-        int bodyLength = body == null ? 0 : body.length;
+        // 写入响应体，回填实际使用的压缩方式
+        int bodyStart = byteBuf.writerIndex();
+        byteBuf.setByte(frameStart + MessageFormatConstant.COMPRESS_OFFSET, writeBody(yrpcResponse, byteBuf, false));
+        int bodyLength = byteBuf.writerIndex() - bodyStart;
         
         // 重新处理报文的总长度
         // 先保存当前的写指针的位置
@@ -97,5 +99,45 @@ public class YrpcResponseEncoder extends MessageToByteEncoder<YrpcResponse> {
         
     }
     
+    private void encodeCompact(YrpcResponse yrpcResponse, ByteBuf byteBuf) throws IOException {
+        CompactHeader header = CompactHeader.builder()
+            .type(yrpcResponse.getCode())
+            .serializeType(yrpcResponse.getSerializeType())
+            .compressType(yrpcResponse.getCompressType())
+            .requestId(yrpcResponse.getRequestId())
+            // 只有心跳报文需要时间戳
+            .timeStamp(yrpcResponse.getCode() == RespCode.SUCCESS_HEART_BEAT.getCode() ? yrpcResponse.getTimeStamp() : 0)
+            .attachments(yrpcResponse.getAttachments())
+            .build();
+        int lengthIndex = CompactProtocol.writeHeader(byteBuf, header, lastRequestId);
+        CompactProtocol.writeCompressType(byteBuf, lengthIndex, yrpcResponse.getSerializeType(), writeBody(yrpcResponse, byteBuf, true));
+        CompactProtocol.writeLength(byteBuf, lengthIndex);
+        lastRequestId = yrpcResponse.getRequestId();
+    
+        if(log.isDebugEnabled()){
+            log.debug("响应【{}】已经在服务端完成v2编码工作。",yrpcResponse.getRequestId());
+        }
+    }
+    
+    /**
+     * 序列化直接写入byteBuf，是否压缩由AdaptiveCompression决定
+     * @param omittable 能否不压缩直接发送，只有v2报文可以
+     * @return 实际使用的压缩方式
+     */
+    private byte writeBody(YrpcResponse yrpcResponse, ByteBuf byteBuf, boolean omittable) throws IOException {
+        if(yrpcResponse.getBody() == null) {
+            return NoneCompressor.CODE;
+        }
+        // 1、对响应做序列化
+        Serializer serializer = SerializerFactory
+            .getSerializer(yrpcResponse.getSerializeType()).getImpl();
+        
+        // 2、压缩，按方法统计压缩率，不知道方法时按响应体的类型统计
+        String key = yrpcResponse.getMethod() != null
+            ? yrpcResponse.getMethod() : yrpcResponse.getBody().getClass().getName();
+        return AdaptiveCompression.write(byteBuf, yrpcResponse.getBody(), serializer,
+            yrpcResponse.getCompressType(), key, omittable);
+    }
+    
    
 }
@@ -0,0 +1,207 @@
+package com.ydlclass.compress;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.compress.impl.NoneCompressor;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.config.ObjectWrapper;
+import com.ydlclass.metrics.YrpcMetrics;
+import com.ydlclass.serialize.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 编码器写报文体时决定是否压缩、使用哪种压缩
+ * 1、报文体先不压缩直接序列化进byteBuf，小于阈值时原样发送，报文头中的压缩方式为none
+ * 2、超过阈值时使用报文中指定的压缩方式，没有指定时使用配置的压缩方式，压缩后没有变小依然原样发送
+ * 3、按方法统计压缩率，压缩率一直很差的方法不再压缩，每隔一段时间重新试一次
+ * 4、每种压缩方式节省的字节数和耗费的cpu时间记录在指标中
+ *
+ * @author it楠老师
+ * @createTime 2023-08-14
+ */
+@Slf4j
+public class AdaptiveCompression {
+    
+    // 前若干次一定压缩，用来统计压缩率
+    private static final int WARMUP_SAMPLES = 16;
+    // 压缩后的长度超过原长度的90%就认为不划算
+    private static final double MAX_RATIO = 0.9;
+    // 关闭压缩以后每隔这么多个报文重新试一次，数据的特征可能会变
+    private static final int PROBE_INTERVAL = 256;
+    // 压缩率的滑动平均系数
+    private static final double ALPHA = 0.2;
+    
+    // 指标：因为太小和因为不划算而没有压缩的报文数
+    public static final String SKIPPED_SMALL_COUNTER = "yrpc.compress.skipped.small";
+    public static final String SKIPPED_RATIO_COUNTER = "yrpc.compress.skipped.ratio";
+    
+    private static final LongAdder SKIPPED_SMALL = YrpcMetrics.counter(SKIPPED_SMALL_COUNTER);
+    private static final LongAdder SKIPPED_RATIO = YrpcMetrics.counter(SKIPPED_RATIO_COUNTER);
+    
+    // key是方法，值是该方法的压缩率统计
+    private static final Map<String, RatioStats> STATS = new ConcurrentHashMap<>(64);
+    
+    // key是压缩方式的编号
+    private static final Map<Byte, CompressorMetrics> METRICS = new ConcurrentHashMap<>(8);
+    
+    /**
+     * 序列化报文体并按需压缩，写入byteBuf
+     * @param out        输出
+     * @param body       报文体
+     * @param serializer 序列化器
+     * @param preferred  报文中指定的压缩方式，为none时使用配置的压缩方式
+     * @param key        统计压缩率使用的key，一般是方法名
+     * @param omittable  能否不压缩直接发送，只有协商了v2的连接可以；v1的老版本把压缩方式0当作gzip解压，只能使用确定的压缩方式
+     * @return 实际使用的压缩方式的编号，需要回填到报文头中
+     */
+    public static byte write(ByteBuf out, Object body, Serializer serializer, byte preferred, String key,
+                             boolean omittable) throws IOException {
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        ObjectWrapper<Compressor> wrapper = preferred == NoneCompressor.CODE
+            ? CompressorFactory.getCompressor(configuration.getCompressType())
+            : CompressorFactory.getCompressor(preferred);
+        
+        // 1、先不压缩，直接序列化
+        int start = out.writerIndex();
+        try (OutputStream os = new ByteBufOutputStream(out)) {
+            serializer.serialize(body, os);
+        }
+        int rawLength = out.writerIndex() - start;
+        // 采集训练压缩字典的样本
+        DictionarySampler.offer(out, start, rawLength);
+        if (wrapper.getCode() == NoneCompressor.CODE) {
+            return NoneCompressor.CODE;
+        }
+        if (omittable && rawLength < configuration.getCompressThreshold()) {
+            SKIPPED_SMALL.increment();
+            return NoneCompressor.CODE;
+        }
+        RatioStats stats = configuration.isAdaptiveCompress()
+            ? STATS.computeIfAbsent(key, RatioStats::new) : null;
+        if (omittable && stats != null && !stats.shouldCompress()) {
+            SKIPPED_RATIO.increment();
+            return NoneCompressor.CODE;
+        }
+        
+        // 2、压缩结果直接写在原始报文体的后面，变小了才整体前移覆盖原始的报文体
+        // 不额外申请缓冲区，代价是把压缩后的字节在同一个buf里搬运一次，压缩后越小搬运得越少
+        // 先按最坏情况预留空间，压缩过程中buf不会扩容，直接读取内存地址的压缩器拿到的输入始终有效
+        out.ensureWritable(maxCompressedLength(rawLength));
+        int compressedStart = start + rawLength;
+        long begin = System.nanoTime();
+        wrapper.getImpl().compress(out.slice(start, rawLength), out);
+        long cost = System.nanoTime() - begin;
+        int compressedLength = out.writerIndex() - compressedStart;
+        if (stats != null) {
+            stats.record(rawLength, compressedLength);
+        }
+        boolean smaller = compressedLength < rawLength;
+        METRICS.computeIfAbsent(wrapper.getCode(), code -> new CompressorMetrics(wrapper.getName()))
+            .record(rawLength, smaller ? compressedLength : rawLength, cost);
+        if (!smaller && omittable) {
+            SKIPPED_RATIO.increment();
+            out.writerIndex(compressedStart);
+            return NoneCompressor.CODE;
+        }
+        if (!smaller) {
+            // v1只能发送压缩后的数据，两段区域可能重叠，先复制出来再前移
+            ByteBuf compressed = out.copy(compressedStart, compressedLength);
+            try {
+                out.setBytes(start, compressed);
+            } finally {
+                compressed.release();
+            }
+            out.writerIndex(start + compressedLength);
+            return wrapper.getCode();
+        }
+        // 压缩数据比原始数据短，前移时两段区域不会重叠
+        out.setBytes(start, out, compressedStart, compressedLength);
+        out.writerIndex(start + compressedLength);
+        return wrapper.getCode();
+    }
+    
+    /**
+     * 压缩后长度的上限，覆盖了gzip、lz4、zstd在数据无法压缩时的膨胀
+     * @param rawLength 原始长度
+     * @return 需要预留的字节数
+     */
+    static int maxCompressedLength(int rawLength) {
+        return rawLength + (rawLength >>> 8) + 128;
+    }
+    
+    /**
+     * @param key 方法
+     * @return 该方法目前的压缩率，没有统计时返回1
+     */
+    public static double ratio(String key) {
+        RatioStats stats = STATS.get(key);
+        return stats == null ? 1 : stats.ratio;
+    }
+    
+    /**
+     * 一个方法的压缩率，并发更新时允许丢失个别的样本
+     */
+    private static class RatioStats {
+        private final String key;
+        private final AtomicLong messages = new AtomicLong(0);
+        private volatile double ratio = 1;
+        private volatile boolean sampled = false;
+        private volatile boolean disabled = false;
+        
+        private RatioStats(String key) {
+            this.key = key;
+        }
+        
+        private boolean shouldCompress() {
+            long count = messages.getAndIncrement();
+            return count < WARMUP_SAMPLES || !disabled || count % PROBE_INTERVAL == 0;
+        }
+        
+        private void record(int rawLength, int compressedLength) {
+            double current = (double) compressedLength / rawLength;
+            ratio = sampled ? ratio * (1 - ALPHA) + current * ALPHA : current;
+            sampled = true;
+            boolean worse = messages.get() >= WARMUP_SAMPLES && ratio > MAX_RATIO;
+            if (worse != disabled) {
+                disabled = worse;
+                log.info("方法【{}】的压缩率为【{}】，{}压缩.", key, String.format("%.2f", ratio), worse ? "关闭" : "重新开启");
+            }
+        }
+    }
+    
+    /**
+     * 一种压缩方式的指标
+     */
+    private static class CompressorMetrics {
+        private final LongAdder messages;
+        private final LongAdder bytesIn;
+        private final LongAdder bytesOut;
+        private final LongAdder bytesSaved;
+        private final LongAdder cpuMicros;
+        
+        private CompressorMetrics(String name) {
+            String prefix = "yrpc.compress." + name;
+            this.messages = YrpcMetrics.counter(prefix + ".messages");
+            this.bytesIn = YrpcMetrics.counter(prefix + ".bytes.in");
+            this.bytesOut = YrpcMetrics.counter(prefix + ".bytes.out");
+            this.bytesSaved = YrpcMetrics.counter(prefix + ".bytes.saved");
+            this.cpuMicros = YrpcMetrics.counter(prefix + ".cpu.micros");
+        }
+        
+        private void record(int rawLength, int sentLength, long costNanos) {
+            messages.increment();
+            bytesIn.add(rawLength);
+            bytesOut.add(sentLength);
+            bytesSaved.add(rawLength - sentLength);
+            cpuMicros.add(costNanos / 1000);
+        }
+    }
+}
@@ -1,5 +1,16 @@
 package com.ydlclass.compress;
 
+import com.ydlclass.exceptions.CompressException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * @author it楠老师
  * @createTime 2023-07-05
@@ -13,10 +24,62 @@ public interface Compressor {
      */
     byte[] compress(byte[] bytes);
     
+    /**
+     * 包装一个输出流，写入返回流的数据会被压缩后写入目标流，调用close时完成压缩
+     * 默认实现先缓存原始字节，关闭时调用compress(byte[])再写出，自定义的压缩器可以按需覆盖
+     * @param out 目标输出流，通常是包装了ByteBuf的ByteBufOutputStream
+     * @return 压缩输出流
+     */
+    default OutputStream compress(OutputStream out) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                out.write(Compressor.this.compress(toByteArray()));
+            }
+        };
+    }
+    
+    /**
+     * 压缩in中所有可读的字节，写入out
+     * 默认实现经过compress(OutputStream)，能直接操作ByteBuf的压缩器可以按需覆盖
+     * @param in  待压缩的数据，读完以后读指针移动到末尾
+     * @param out 压缩后的数据写入的位置
+     */
+    default void compress(ByteBuf in, ByteBuf out) throws IOException {
+        try (OutputStream os = compress(new ByteBufOutputStream(out))) {
+            in.readBytes(os, in.readableBytes());
+        }
+    }
+    
     /**
      * 对字节数据进行解压缩
      * @param bytes 待解压缩的字节数据
      * @return 解压缩后的字节数据
      */
     byte[] decompress(byte[] bytes);
+    
+    /**
+     * 包装一个输入流，从返回的流中读出的是解压缩后的数据
+     * 默认实现先读出全部字节，调用decompress(byte[])后再包装成流，自定义的压缩器可以按需覆盖
+     * @param in 待解压缩的输入流，通常是包装了ByteBuf的ByteBufInputStream
+     * @return 解压缩输入流
+     */
+    default InputStream decompress(InputStream in) {
+        try {
+            return new ByteArrayInputStream(decompress(in.readAllBytes()));
+        } catch (IOException e) {
+            throw new CompressException(e);
+        }
+    }
+    
+    /**
+     * 解压缩in中从读指针开始的length个字节，解码器直接在帧上调用
+     * 默认实现经过decompress(InputStream)，能直接操作ByteBuf的压缩器可以按需覆盖
+     * @param in     帧
+     * @param length 压缩数据的长度，解压缩以后读指针移过这些字节
+     * @return 解压缩输入流，使用完需要关闭
+     */
+    default InputStream decompress(ByteBuf in, int length) {
+        return decompress(new ByteBufInputStream(in, length));
+    }
 }
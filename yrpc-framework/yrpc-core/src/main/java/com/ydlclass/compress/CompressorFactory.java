@@ -1,6 +1,10 @@
 package com.ydlclass.compress;
 
 import com.ydlclass.compress.impl.GzipCompressor;
+import com.ydlclass.compress.impl.Lz4Compressor;
+import com.ydlclass.compress.impl.NoneCompressor;
+import com.ydlclass.compress.impl.ZstdCompressor;
+import com.ydlclass.compress.impl.ZstdDictCompressor;
 import com.ydlclass.config.ObjectWrapper;
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,9 +22,26 @@ public class CompressorFactory {
     private final static Map<Byte, ObjectWrapper<Compressor>> COMPRESSOR_CACHE_CODE = new ConcurrentHashMap<>(8);
     
     static {
+        ObjectWrapper<Compressor> none = new ObjectWrapper<>(NoneCompressor.CODE, NoneCompressor.NAME, new NoneCompressor());
+        COMPRESSOR_CACHE.put(NoneCompressor.NAME, none);
+        COMPRESSOR_CACHE_CODE.put(NoneCompressor.CODE, none);
         ObjectWrapper<Compressor> gzip = new ObjectWrapper<>((byte) 1, "gzip", new GzipCompressor());
         COMPRESSOR_CACHE.put("gzip", gzip);
         COMPRESSOR_CACHE_CODE.put((byte) 1, gzip);
+        ObjectWrapper<Compressor> lz4 = new ObjectWrapper<>(Lz4Compressor.CODE, Lz4Compressor.NAME, new Lz4Compressor());
+        COMPRESSOR_CACHE.put(Lz4Compressor.NAME, lz4);
+        COMPRESSOR_CACHE_CODE.put(Lz4Compressor.CODE, lz4);
+        // zstd依赖可选的zstd-jni，不存在时不注册
+        if (ZstdCompressor.isAvailable()) {
+            ObjectWrapper<Compressor> zstd = new ObjectWrapper<>(ZstdCompressor.CODE, ZstdCompressor.NAME, new ZstdCompressor());
+            COMPRESSOR_CACHE.put(ZstdCompressor.NAME, zstd);
+            COMPRESSOR_CACHE_CODE.put(ZstdCompressor.CODE, zstd);
+            ObjectWrapper<Compressor> zstdDict = new ObjectWrapper<>(ZstdDictCompressor.CODE, ZstdDictCompressor.NAME, new ZstdDictCompressor());
+            COMPRESSOR_CACHE.put(ZstdDictCompressor.NAME, zstdDict);
+            COMPRESSOR_CACHE_CODE.put(ZstdDictCompressor.CODE, zstdDict);
+        } else {
+            log.info("未找到zstd-jni，zstd和zstdDict压缩不可用。");
+        }
     }
     
     /**
@@ -38,7 +59,7 @@ public class CompressorFactory {
     }
     
     public static ObjectWrapper<Compressor> getCompressor(byte serializeCode) {
-        ObjectWrapper<Compressor> compressorObjectWrapper = COMPRESSOR_CACHE.get(serializeCode);
+        ObjectWrapper<Compressor> compressorObjectWrapper = COMPRESSOR_CACHE_CODE.get(serializeCode);
         if ((compressorObjectWrapper == null)){
             log.error("未找到您配置的编号为【{}】的压缩算法，默认选用gzip算法。",serializeCode);
             return COMPRESSOR_CACHE.get("gzip");
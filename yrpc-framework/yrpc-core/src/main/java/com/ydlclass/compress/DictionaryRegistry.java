@@ -0,0 +1,300 @@
+package com.ydlclass.compress;
+
+import com.ydlclass.discovery.Registry;
+import com.ydlclass.exceptions.CompressException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 压缩字典的缓存，key是字典的编号
+ * 1、字典的编号写在字典自己的头部，zstd压缩时会把它写进帧头，接收方从帧头中取出编号找到对应的字典
+ * 2、字典可以从classpath或者文件中加载，也可以把运行时训练出来的字典直接注册进来
+ * 3、服务端启动时把字典发布到注册中心，设置注册中心时预先加载其他节点发布的字典
+ * 4、接收方遇到不认识的编号时在后台去注册中心取，解压缩时只等待有限的时间，
+ *    发送方刚启用新字典时接收方第一次取字典的报文也能解压，注册中心也没有的编号过一段时间才会再去取
+ *
+ * @author it楠老师
+ * @createTime 2023-08-16
+ */
+@Slf4j
+public class DictionaryRegistry {
+
+    public static final String CLASSPATH_PREFIX = "classpath:";
+
+    // zstd字典的魔数，小端
+    private static final int DICTIONARY_MAGIC = 0xEC30A437;
+
+    private static final Map<Integer, byte[]> DICTIONARIES = new ConcurrentHashMap<>(4);
+
+    // 注册中心也没有找到的编号，在这段时间内不再重复查找
+    private static final long MISSING_RETRY_MILLIS = 30_000;
+
+    // key为注册中心也没有找到的编号，value为下一次允许查找的时间
+    private static final Map<Integer, Long> MISSING = new ConcurrentHashMap<>(4);
+
+    // key为正在注册中心查找的编号，value在查找结束时完成，没有找到时为null
+    private static final Map<Integer, CompletableFuture<byte[]>> FETCHING = new ConcurrentHashMap<>(4);
+
+    // 访问注册中心的后台线程
+    private static final ExecutorService FETCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "yrpc-dictionary-fetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 发送方使用的字典的编号，0代表没有
+    private static volatile int activeId;
+
+    // 用来查找其他节点发布的字典
+    private static volatile Registry registry;
+
+    /**
+     * 加载一个字典并作为发送方使用的字典
+     * @param location 字典的位置，classpath:开头时从classpath中加载，否则是文件路径
+     * @return 字典的编号
+     */
+    public static int load(String location) {
+        byte[] dictionary;
+        try {
+            if (location.startsWith(CLASSPATH_PREFIX)) {
+                String resource = location.substring(CLASSPATH_PREFIX.length());
+                try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+                    if (in == null) {
+                        throw new CompressException("在classpath中未找到压缩字典【" + resource + "】。");
+                    }
+                    dictionary = in.readAllBytes();
+                }
+            } else {
+                dictionary = Files.readAllBytes(Path.of(location));
+            }
+        } catch (IOException e) {
+            log.error("加载压缩字典【{}】时发生异常", location, e);
+            throw new CompressException(e);
+        }
+        int id = register(dictionary);
+        activate(id);
+        log.info("已经加载编号为【{}】的压缩字典【{}】，长度【{}】。", id, location, dictionary.length);
+        return id;
+    }
+
+    /**
+     * 注册一个字典，只缓存，不会作为发送方使用的字典
+     * @param dictionary zstd格式的字典
+     * @return 字典的编号
+     */
+    public static int register(byte[] dictionary) {
+        int id = dictionaryId(dictionary);
+        byte[] exists = DICTIONARIES.putIfAbsent(id, dictionary);
+        if (exists != null && !Arrays.equals(exists, dictionary)) {
+            throw new CompressException("编号为【" + id + "】的压缩字典已经存在，并且内容不同。");
+        }
+        MISSING.remove(id);
+        return id;
+    }
+
+    /**
+     * 设置发送方使用的字典
+     * @param id 已经注册的字典的编号，0代表不再使用字典
+     */
+    public static void activate(int id) {
+        if (id != 0 && !DICTIONARIES.containsKey(id)) {
+            throw new CompressException("编号为【" + id + "】的压缩字典还没有注册。");
+        }
+        activeId = id;
+    }
+
+    /**
+     * @return 发送方使用的字典的编号，0代表没有
+     */
+    public static int activeId() {
+        return activeId;
+    }
+
+    /**
+     * 注册、发布一个运行时训练出来的字典，并作为发送方使用的字典
+     * @param dictionary zstd格式的字典
+     * @return 字典的编号
+     */
+    public static int install(byte[] dictionary) {
+        int id = register(dictionary);
+        Registry current = registry;
+        if (current != null) {
+            current.publishDictionary(id, dictionary);
+        }
+        activate(id);
+        log.info("已经启用编号为【{}】的压缩字典，长度【{}】。", Integer.toUnsignedString(id), dictionary.length);
+        return id;
+    }
+
+    /**
+     * 按编号获取字典，不会阻塞
+     * 本地没有时在后台去注册中心查找，本次返回null
+     * @param id 字典的编号
+     * @return 字典，本地没有时返回null
+     */
+    public static byte[] get(int id) {
+        byte[] dictionary = DICTIONARIES.get(id);
+        if (dictionary == null) {
+            fetchAsync(id);
+        }
+        return dictionary;
+    }
+
+    /**
+     * 按编号获取字典，本地没有时去注册中心查找，最多等待timeoutMillis毫秒
+     * 解压缩时使用，发送方刚启用的新字典第一次出现时接收方还没有，等到取回来再解压，而不是直接丢弃报文
+     * @param id            字典的编号
+     * @param timeoutMillis 最多等待的毫秒数
+     * @return 字典，超时或者注册中心也没有时返回null
+     */
+    public static byte[] await(int id, long timeoutMillis) {
+        byte[] dictionary = DICTIONARIES.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        CompletableFuture<byte[]> fetching = fetchAsync(id);
+        if (fetching == null) {
+            return null;
+        }
+        try {
+            return fetching.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("【{}】毫秒内没有取到编号为【{}】的压缩字典。", timeoutMillis, Integer.toUnsignedString(id));
+        }
+        return null;
+    }
+
+    /**
+     * @return 查找的结果，不需要查找时返回null
+     */
+    private static CompletableFuture<byte[]> fetchAsync(int id) {
+        Registry current = registry;
+        if (current == null) {
+            return null;
+        }
+        Long retryAt = MISSING.get(id);
+        if (retryAt != null && System.currentTimeMillis() < retryAt) {
+            return null;
+        }
+        // 同一个编号同一时刻只查找一次，后来的等待同一个结果
+        CompletableFuture<byte[]> fetching = new CompletableFuture<>();
+        CompletableFuture<byte[]> exists = FETCHING.putIfAbsent(id, fetching);
+        if (exists != null) {
+            return exists;
+        }
+        try {
+            FETCHER.execute(() -> {
+                byte[] dictionary = null;
+                try {
+                    dictionary = fetch(current, id);
+                } finally {
+                    FETCHING.remove(id);
+                    fetching.complete(dictionary);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            FETCHING.remove(id);
+            fetching.complete(null);
+        }
+        return fetching;
+    }
+
+    private static byte[] fetch(Registry source, int id) {
+        try {
+            byte[] dictionary = source.lookupDictionary(id);
+            if (dictionary != null && dictionaryId(dictionary) == id) {
+                register(dictionary);
+                log.info("已经从注册中心取到编号为【{}】的压缩字典。", Integer.toUnsignedString(id));
+                return dictionary;
+            }
+            log.warn("本地和注册中心都没有编号为【{}】的压缩字典，【{}】毫秒内不再查找。",
+                Integer.toUnsignedString(id), MISSING_RETRY_MILLIS);
+        } catch (RuntimeException e) {
+            log.warn("从注册中心查找编号为【{}】的压缩字典时发生异常，【{}】毫秒内不再查找。",
+                Integer.toUnsignedString(id), MISSING_RETRY_MILLIS, e);
+        }
+        MISSING.put(id, System.currentTimeMillis() + MISSING_RETRY_MILLIS);
+        return null;
+    }
+
+    /**
+     * 把本地的字典发布到注册中心，之后也从这个注册中心查找不认识的字典，服务端启动时调用一次
+     * @param target 注册中心
+     */
+    public static void publish(Registry target) {
+        registry = target;
+        DICTIONARIES.forEach(target::publishDictionary);
+        preload(target);
+    }
+
+    /**
+     * 设置查找字典的注册中心，服务调用方使用，已经设置过时忽略
+     * @param target 注册中心
+     */
+    public static void lookupFrom(Registry target) {
+        synchronized (DictionaryRegistry.class) {
+            if (registry != null) {
+                return;
+            }
+            registry = target;
+        }
+        preload(target);
+    }
+
+    /**
+     * 预先加载注册中心中的所有字典，失败时只记录日志，之后遇到时再查找
+     */
+    private static void preload(Registry source) {
+        int count = 0;
+        try {
+            for (byte[] dictionary : source.lookupDictionaries()) {
+                try {
+                    register(dictionary);
+                    count++;
+                } catch (CompressException e) {
+                    log.warn("注册中心中的压缩字典无法使用。", e);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("从注册中心预先加载压缩字典时发生异常。", e);
+        }
+        if (count > 0) {
+            log.info("已经从注册中心预先加载了【{}】个压缩字典。", count);
+        }
+    }
+
+    /**
+     * 从字典的头部读取编号，格式为4字节魔数 + 4字节编号，都是小端
+     */
+    private static int dictionaryId(byte[] dictionary) {
+        if (dictionary == null || dictionary.length < 8 || readIntLE(dictionary, 0) != DICTIONARY_MAGIC) {
+            throw new CompressException("不是合法的zstd压缩字典。");
+        }
+        int id = readIntLE(dictionary, 4);
+        if (id == 0) {
+            throw new CompressException("压缩字典的编号不能为0。");
+        }
+        return id;
+    }
+
+    private static int readIntLE(byte[] bytes, int index) {
+        return bytes[index] & 0xFF | (bytes[index + 1] & 0xFF) << 8
+            | (bytes[index + 2] & 0xFF) << 16 | (bytes[index + 3] & 0xFF) << 24;
+    }
+}
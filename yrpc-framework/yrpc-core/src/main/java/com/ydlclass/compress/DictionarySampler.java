@@ -0,0 +1,94 @@
+package com.ydlclass.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线采集未压缩的报文体，用来训练压缩字典
+ * 采集期间使用蓄水池抽样，保留的样本在所有报文中是均匀的，没有开始采集时只多一次volatile读
+ *
+ * @author it楠老师
+ * @createTime 2023-08-16
+ */
+public class DictionarySampler {
+
+    // 太大的报文体对字典没有帮助，只取开头的部分
+    private static final int MAX_SAMPLE_LENGTH = 16 * 1024;
+
+    private static volatile boolean sampling;
+    private static List<byte[]> samples = new ArrayList<>();
+    private static int maxSamples;
+    private static long seen;
+
+    /**
+     * 开始采集，之前采集的样本会被丢弃
+     * @param max 最多保留的样本数
+     */
+    public static synchronized void start(int max) {
+        samples = new ArrayList<>(max);
+        maxSamples = max;
+        seen = 0;
+        sampling = true;
+    }
+
+    /**
+     * 采集一段时间的报文体，期间之前采集的样本会被丢弃
+     * @param max            最多保留的样本数
+     * @param durationMillis 采集的时长
+     * @return 采集结束时完成的future，结果为采集到的样本
+     */
+    public static CompletableFuture<List<byte[]>> sample(int max, long durationMillis) {
+        start(max);
+        return CompletableFuture.supplyAsync(DictionarySampler::stop,
+            CompletableFuture.delayedExecutor(durationMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 结束采集
+     * @return 采集到的样本
+     */
+    public static synchronized List<byte[]> stop() {
+        sampling = false;
+        List<byte[]> result = samples;
+        samples = new ArrayList<>();
+        return result;
+    }
+
+    public static boolean isSampling() {
+        return sampling;
+    }
+
+    /**
+     * 提供一个报文体
+     * @param buf    报文所在的buf
+     * @param index  报文体的起始位置
+     * @param length 报文体的长度
+     */
+    public static void offer(ByteBuf buf, int index, int length) {
+        if (!sampling) {
+            return;
+        }
+        synchronized (DictionarySampler.class) {
+            if (!sampling) {
+                return;
+            }
+            long count = ++seen;
+            int slot = count <= maxSamples ? samples.size() : (int) ThreadLocalRandom.current().nextLong(count);
+            if (slot >= maxSamples) {
+                return;
+            }
+            byte[] sample = ByteBufUtil.getBytes(buf, index, Math.min(length, MAX_SAMPLE_LENGTH));
+            if (slot == samples.size()) {
+                samples.add(sample);
+            } else {
+                samples.set(slot, sample);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ydlclass.compress;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.ydlclass.exceptions.CompressException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 训练zstd压缩字典，依赖可选的zstd-jni
+ * 1、离线：把样本报文体逐个保存成文件，运行main方法，参数为样本目录、字典的输出路径、字典的字节数（默认16384）
+ * 2、在线：DictionarySampler采集一段时间的报文体，再调用train训练，训练结果交给DictionaryRegistry注册
+ * 字典的编号由zstd随机生成，写在字典的头部
+ *
+ * @author it楠老师
+ * @createTime 2023-08-16
+ */
+@Slf4j
+public class DictionaryTrainer {
+
+    public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+
+    // 样本太少时训练不出有用的字典
+    private static final int MIN_SAMPLES = 8;
+
+    /**
+     * 训练一个字典
+     * @param samples        样本报文体
+     * @param dictionarySize 字典的字节数
+     * @return zstd格式的字典
+     */
+    public static byte[] train(List<byte[]> samples, int dictionarySize) {
+        if (samples.size() < MIN_SAMPLES) {
+            throw new CompressException("训练压缩字典至少需要【" + MIN_SAMPLES + "】个样本，现在只有【" + samples.size() + "】个。");
+        }
+        long total = samples.stream().mapToLong(sample -> sample.length).sum();
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE, total), dictionarySize);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        try {
+            byte[] dictionary = trainer.trainSamples();
+            log.info("使用【{}】个共【{}】字节的样本训练出了【{}】字节的压缩字典。", samples.size(), total, dictionary.length);
+            return dictionary;
+        } catch (RuntimeException e) {
+            log.error("训练压缩字典时发生异常", e);
+            throw new CompressException(e);
+        }
+    }
+
+    /**
+     * 离线训练
+     * @param args 样本目录 字典的输出路径 [字典的字节数]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("用法：DictionaryTrainer <样本目录> <字典的输出路径> [字典的字节数]");
+            return;
+        }
+        int dictionarySize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DICTIONARY_SIZE;
+        List<byte[]> samples = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Path.of(args[0]))) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                samples.add(Files.readAllBytes(file));
+            }
+        }
+        byte[] dictionary = train(samples, dictionarySize);
+        Files.write(Path.of(args[1]), dictionary);
+        System.out.printf("字典已经写入【%s】，编号【%d】，长度【%d】。%n",
+            args[1], Integer.toUnsignedLong(DictionaryRegistry.register(dictionary)), dictionary.length);
+    }
+}
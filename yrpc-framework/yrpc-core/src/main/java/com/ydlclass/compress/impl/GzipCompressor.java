@@ -1,57 +1,238 @@
 package com.ydlclass.compress.impl;
 
+import com.ydlclass.YrpcBootstrap;
 import com.ydlclass.compress.Compressor;
 import com.ydlclass.exceptions.CompressException;
+import com.ydlclass.metrics.YrpcMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * 使用gzip算法进行压缩的具体实现
+ * 1、Deflater和Inflater持有zlib的本地内存，放在有界的池中复用，池满时归还的实例直接释放，本地内存不会随线程数增长
+ * 2、直接在ByteBuf上压缩和解压缩，输出按原始长度（或gzip尾部记录的长度）预先分配好，不再反复扩容
+ * 3、报文格式与GZIPOutputStream一致，可以和旧版本互通
+ *
  * @author it楠老师
  * @createTime 2023-07-05
  */
 @Slf4j
 public class GzipCompressor implements Compressor {
+
+    // 固定的10字节头部：魔数、deflate算法、没有标志位、没有修改时间
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    // deflate的压缩率上限大约是1032，用来检查尾部记录的长度是否可信
+    private static final int MAX_RATIO = 1032;
+
+    // 池的大小，超过的实例用完就释放
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // 指标：新建的zlib实例数，池中空闲的实例数
+    private static final LongAdder DEFLATERS_CREATED = YrpcMetrics.counter("yrpc.compress.gzip.deflaters.created");
+    private static final LongAdder INFLATERS_CREATED = YrpcMetrics.counter("yrpc.compress.gzip.inflaters.created");
+
+    static {
+        YrpcMetrics.gauge("yrpc.compress.gzip.deflaters.pooled", DEFLATERS::size);
+        YrpcMetrics.gauge("yrpc.compress.gzip.inflaters.pooled", INFLATERS::size);
+    }
+
     @Override
     public byte[] compress(byte[] bytes) {
-    
-        try (
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(baos);
-        ) {
-            gzipOutputStream.write(bytes);
-            gzipOutputStream.finish();
-            byte[] result = baos.toByteArray();
-            if(log.isDebugEnabled()){
-                log.debug("对字节数组进行了压缩长度由【{}】压缩至【{}】.",bytes.length,result.length);
-            }
-            return result;
-        } catch (IOException e){
-            log.error("对字节数组进行压缩时发生异常",e);
+        ByteBuf out = Unpooled.buffer(HEADER.length + deflateBound(bytes.length) + TRAILER_LENGTH);
+        try {
+            compress(Unpooled.wrappedBuffer(bytes), out);
+        } catch (IOException e) {
+            log.error("对字节数组进行压缩时发生异常", e);
             throw new CompressException(e);
         }
+        byte[] result = new byte[out.readableBytes()];
+        out.readBytes(result);
+        if(log.isDebugEnabled()){
+            log.debug("对字节数组进行了压缩长度由【{}】压缩至【{}】.",bytes.length,result.length);
+        }
+        return result;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) throws IOException {
+        if (out instanceof CompositeByteBuf) {
+            // 组合的ByteBuf不能作为一整块内存直接写入
+            Compressor.super.compress(in, out);
+            return;
+        }
+        int length = in.readableBytes();
+        ByteBuffer input = in.nioBuffer();
+        CRC32 crc = new CRC32();
+        crc.update(input.duplicate());
 
+        out.ensureWritable(HEADER.length + deflateBound(length) + TRAILER_LENGTH);
+        out.writeBytes(HEADER);
+        Deflater deflater = borrowDeflater();
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!out.isWritable()) {
+                    out.ensureWritable(Math.max(256, length >> 3));
+                }
+                int written = deflater.deflate(out.nioBuffer(out.writerIndex(), out.writableBytes()));
+                out.writerIndex(out.writerIndex() + written);
+            }
+        } finally {
+            releaseDeflater(deflater);
+        }
+        out.writeIntLE((int) crc.getValue());
+        out.writeIntLE(length);
+        in.skipBytes(length);
     }
-    
+
     @Override
     public byte[] decompress(byte[] bytes) {
-        try (
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            GZIPInputStream gzipInputStream = new GZIPInputStream(bais);
-        ) {
-            byte[] result = gzipInputStream.readAllBytes();
+        try (InputStream in = decompress(Unpooled.wrappedBuffer(bytes), bytes.length)) {
+            byte[] result = in.readAllBytes();
             if(log.isDebugEnabled()){
                 log.debug("对字节数组进行了解压缩长度由【{}】变为【{}】.",bytes.length,result.length);
             }
             return result;
         } catch (IOException e){
-            log.error("对字节数组进行压缩时发生异常",e);
+            log.error("对字节数组进行解压缩时发生异常",e);
             throw new CompressException(e);
         }
     }
+
+    @Override
+    public InputStream decompress(ByteBuf in, int length) {
+        int start = in.readerIndex();
+        int headerLength = headerLength(in, start, length);
+        int dataLength = length - headerLength - TRAILER_LENGTH;
+        if (dataLength < 0) {
+            throw new CompressException("gzip数据的长度【" + length + "】不完整。");
+        }
+        int expectedCrc = in.getIntLE(start + length - TRAILER_LENGTH);
+        // 尾部记录的是原始长度，按它分配输出，被篡改时限制在压缩率的上限以内
+        int originalLength = in.getIntLE(start + length - 4);
+        long maxLength = (long) dataLength * MAX_RATIO + 64;
+        ByteBuf out = in.alloc().heapBuffer((int) Math.min(Math.max(originalLength, 64), maxLength));
+        Inflater inflater = borrowInflater();
+        try {
+            inflater.setInput(in.nioBuffer(start + headerLength, dataLength));
+            while (!inflater.finished()) {
+                if (!out.isWritable()) {
+                    if (out.writerIndex() >= maxLength) {
+                        throw new CompressException("gzip数据解压后的长度超过了上限。");
+                    }
+                    out.ensureWritable(Math.max(256, out.writerIndex() >> 1));
+                }
+                int read = inflater.inflate(out.nioBuffer(out.writerIndex(), out.writableBytes()));
+                out.writerIndex(out.writerIndex() + read);
+                if (read == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new CompressException("gzip数据不完整。");
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(out.nioBuffer());
+            if ((int) crc.getValue() != expectedCrc || out.readableBytes() != originalLength) {
+                throw new CompressException("gzip数据的校验和或者长度不一致。");
+            }
+        } catch (DataFormatException | RuntimeException e) {
+            out.release();
+            log.error("对gzip数据进行解压缩时发生异常", e);
+            throw e instanceof CompressException ? (CompressException) e : new CompressException(e);
+        } finally {
+            releaseInflater(inflater);
+        }
+        in.skipBytes(length);
+        // 关闭流时释放输出
+        return new ByteBufInputStream(out, true);
+    }
+
+    /**
+     * 解析gzip的头部，兼容带有可选字段的报文
+     * @return 头部的长度
+     */
+    private static int headerLength(ByteBuf in, int start, int length) {
+        if (length < HEADER.length + TRAILER_LENGTH
+            || in.getUnsignedShortLE(start) != 0x8b1f || in.getByte(start + 2) != Deflater.DEFLATED) {
+            throw new CompressException("不是合法的gzip数据。");
+        }
+        int flags = in.getUnsignedByte(start + 3);
+        int index = start + HEADER.length;
+        if ((flags & FEXTRA) != 0) {
+            index += 2 + in.getUnsignedShortLE(index);
+        }
+        if ((flags & FNAME) != 0) {
+            index = in.indexOf(index, start + length, (byte) 0) + 1;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            index = in.indexOf(index, start + length, (byte) 0) + 1;
+        }
+        if ((flags & FHCRC) != 0) {
+            index += 2;
+        }
+        if (index <= start) {
+            throw new CompressException("gzip数据的头部不完整。");
+        }
+        return index - start;
+    }
+
+    /**
+     * zlib的deflateBound，压缩后的长度不会超过它
+     */
+    private static int deflateBound(int length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    private static Deflater borrowDeflater() {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            DEFLATERS_CREATED.increment();
+        }
+        deflater.setLevel(YrpcBootstrap.getInstance().getConfiguration().getGzipLevel());
+        return deflater;
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static Inflater borrowInflater() {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+            INFLATERS_CREATED.increment();
+        }
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
+        }
+    }
 }
@@ -0,0 +1,216 @@
+package com.ydlclass.compress.impl;
+
+import com.ydlclass.compress.Compressor;
+import com.ydlclass.exceptions.CompressException;
+import com.ydlclass.transport.message.MessageFormatConstant;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * lz4块格式的压缩实现，纯java编写，不依赖本地库
+ * 只做一次哈希查找，不做多次匹配，压缩率不如gzip，但压缩和解压缩都只需要几微秒，适合机房内的调用
+ * 压缩后的格式：4字节原始长度 + lz4块
+ *
+ * @author it楠老师
+ * @createTime 2023-08-15
+ */
+@Slf4j
+public class Lz4Compressor implements Compressor {
+
+    public static final byte CODE = 2;
+    public static final String NAME = "lz4";
+
+    private static final int MIN_MATCH = 4;
+    // 最后5个字节必须是字面量，最后一个匹配必须在结束前12个字节开始
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int MIN_HASH_LOG = 8;
+    // 连续多次没有找到匹配时加大步长，不可压缩的数据能尽快跳过
+    private static final int SKIP_TRIGGER = 6;
+    // 解压后的长度超过该值时认为数据已经损坏，报文体本身不超过一帧，留出足够的余量
+    private static final long MAX_DECOMPRESSED_LENGTH = 256L * MessageFormatConstant.MAX_FRAME_LENGTH;
+
+    // 查找和扩展匹配时一次比较4个或8个字节
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // 哈希表每个线程一个，保存的是位置加一，0代表没有
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        int length = bytes.length;
+        byte[] result = new byte[4 + length + length / 255 + 16];
+        writeInt(result, 0, length);
+        int dp = 4;
+        int anchor = 0;
+
+        if (length > MF_LIMIT) {
+            // 小报文使用哈希表的一部分，清空哈希表的开销不会超过压缩本身
+            int hashLog = Math.min(HASH_LOG, Math.max(MIN_HASH_LOG, 32 - Integer.numberOfLeadingZeros(length)));
+            int[] table = HASH_TABLE.get();
+            Arrays.fill(table, 0, 1 << hashLog, 0);
+            int matchLimit = length - MF_LIMIT;
+            int literalLimit = length - LAST_LITERALS;
+            int ip = 0;
+            int searches = 1 << SKIP_TRIGGER;
+            while (ip < matchLimit) {
+                int sequence = (int) INT.get(bytes, ip);
+                int hash = (sequence * -1640531535) >>> (32 - hashLog);
+                int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || (int) INT.get(bytes, ref) != sequence) {
+                    ip += searches++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searches = 1 << SKIP_TRIGGER;
+                // 向前扩展匹配
+                while (ip > anchor && ref > 0 && bytes[ip - 1] == bytes[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                // 向后扩展匹配，先8个字节一比，不相等时由最低的不同位算出相同的字节数
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength + 8 <= literalLimit) {
+                    long diff = (long) LONG.get(bytes, ip + matchLength) ^ (long) LONG.get(bytes, ref + matchLength);
+                    if (diff != 0) {
+                        matchLength += Long.numberOfTrailingZeros(diff) >>> 3;
+                        break;
+                    }
+                    matchLength += 8;
+                }
+                while (ip + matchLength < literalLimit && bytes[ip + matchLength] == bytes[ref + matchLength]) {
+                    matchLength++;
+                }
+                dp = writeSequence(result, dp, bytes, anchor, ip - anchor, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        // 剩余的都是字面量
+        dp = writeSequence(result, dp, bytes, anchor, length - anchor, 0, 0);
+        if (log.isDebugEnabled()) {
+            log.debug("对字节数组进行了lz4压缩长度由【{}】压缩至【{}】.", length, dp);
+        }
+        return Arrays.copyOf(result, dp);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        try {
+            int length = readInt(bytes, 0);
+            // lz4的压缩率不会超过255，超过时数据一定已经损坏；再大的报文也不会超过上限
+            if (length < 0 || length > (long) (bytes.length - 4) * 255 + 16 || length > MAX_DECOMPRESSED_LENGTH) {
+                throw new CompressException("lz4数据中的原始长度【" + length + "】不合法。");
+            }
+            byte[] result = new byte[length];
+            int sp = 4;
+            int dp = 0;
+            while (true) {
+                int token = bytes[sp++] & 0xFF;
+
+                // 字面量
+                int literalLength = token >>> 4;
+                if (literalLength == 0x0F) {
+                    int b;
+                    do {
+                        b = bytes[sp++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 0xFF);
+                }
+                System.arraycopy(bytes, sp, result, dp, literalLength);
+                sp += literalLength;
+                dp += literalLength;
+                if (sp >= bytes.length) {
+                    break;
+                }
+
+                // 匹配，可能和正在写的内容重叠，重叠时只能逐字节复制
+                int offset = bytes[sp] & 0xFF | (bytes[sp + 1] & 0xFF) << 8;
+                sp += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 0x0F) {
+                    int b;
+                    do {
+                        b = bytes[sp++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                int ref = dp - offset;
+                if (offset == 0 || ref < 0 || dp + matchLength > length) {
+                    throw new CompressException("lz4数据中的匹配位置不合法。");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(result, ref, result, dp, matchLength);
+                    dp += matchLength;
+                } else {
+                    for (int end = dp + matchLength; dp < end; ) {
+                        result[dp++] = result[ref++];
+                    }
+                }
+            }
+            if (dp != length) {
+                throw new CompressException("lz4数据解压后的长度【" + dp + "】与原始长度【" + length + "】不一致。");
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("对字节数组进行了lz4解压缩长度由【{}】变为【{}】.", bytes.length, length);
+            }
+            return result;
+        } catch (IndexOutOfBoundsException e) {
+            log.error("对字节数组进行lz4解压缩时发生异常", e);
+            throw new CompressException(e);
+        }
+    }
+
+    private static int writeSequence(byte[] out, int dp, byte[] src, int literalStart, int literalLength,
+                                     int offset, int matchLength) {
+        int tokenIndex = dp++;
+        int token = Math.min(literalLength, 0x0F) << 4;
+        if (literalLength >= 0x0F) {
+            dp = writeLength(out, dp, literalLength - 0x0F);
+        }
+        System.arraycopy(src, literalStart, out, dp, literalLength);
+        dp += literalLength;
+        // 最后一个序列只有字面量
+        if (matchLength > 0) {
+            out[dp++] = (byte) offset;
+            out[dp++] = (byte) (offset >>> 8);
+            int extra = matchLength - MIN_MATCH;
+            token |= Math.min(extra, 0x0F);
+            if (extra >= 0x0F) {
+                dp = writeLength(out, dp, extra - 0x0F);
+            }
+        }
+        out[tokenIndex] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLength(byte[] out, int dp, int length) {
+        while (length >= 0xFF) {
+            out[dp++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        out[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) << 24 | (bytes[index + 1] & 0xFF) << 16
+            | (bytes[index + 2] & 0xFF) << 8 | bytes[index + 3] & 0xFF;
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+}
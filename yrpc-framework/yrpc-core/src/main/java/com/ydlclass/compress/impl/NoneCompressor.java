@@ -0,0 +1,37 @@
+package com.ydlclass.compress.impl;
+
+import com.ydlclass.compress.Compressor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 不压缩，报文体较小或者压缩不划算时使用，编号固定为0
+ * @author it楠老师
+ * @createTime 2023-08-14
+ */
+public class NoneCompressor implements Compressor {
+    
+    public static final byte CODE = 0;
+    public static final String NAME = "none";
+    
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return bytes;
+    }
+    
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+    
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        return bytes;
+    }
+    
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
@@ -0,0 +1,143 @@
+package com.ydlclass.compress.impl;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.compress.Compressor;
+import com.ydlclass.compress.DictionaryRegistry;
+import com.ydlclass.exceptions.CompressException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 使用训练好的字典进行zstd压缩，依赖可选的zstd-jni
+ * rpc的报文体很小并且彼此很像，单个报文中几乎没有可以引用的重复内容，字典把这些共同的内容提前给了压缩器
+ * 1、发送方使用DictionaryRegistry中设置的字典，没有设置时和zstd压缩完全一样
+ * 2、字典的编号写在zstd的帧头中，接收方按帧头中的编号找到字典，本地没有时去注册中心取，最多等待FETCH_WAIT_MILLIS毫秒
+ * 3、解析好的字典所有线程共用，每个线程的上下文只在字典变化时重新引用
+ *
+ * @author it楠老师
+ * @createTime 2023-08-16
+ */
+@Slf4j
+public class ZstdDictCompressor implements Compressor {
+
+    public static final byte CODE = 4;
+    public static final String NAME = "zstdDict";
+
+    // 解压后的长度超过该值时认为数据已经损坏，避免分配过大的数组
+    private static final long MAX_DECOMPRESSED_LENGTH = 256L * 1024 * 1024;
+
+    // 本地没有字典时等待注册中心的最长时间，解压缩在io线程中进行，只在每个新字典第一次出现时等待
+    private static final long FETCH_WAIT_MILLIS = 1000;
+
+    // 没有字典时的压缩和解压缩
+    private final ZstdCompressor plain = new ZstdCompressor();
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        int id = DictionaryRegistry.activeId();
+        if (id == 0) {
+            return plain.compress(bytes);
+        }
+        try {
+            Contexts contexts = Contexts.CURRENT.get();
+            if (contexts.compressId != id) {
+                contexts.compress.loadDict(Contexts.compressDictionary(id));
+                contexts.compressId = id;
+            }
+            byte[] result = contexts.compress.compress(bytes);
+            if (log.isDebugEnabled()) {
+                log.debug("使用编号为【{}】的字典进行了zstd压缩，长度由【{}】压缩至【{}】.", id, bytes.length, result.length);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            log.error("使用字典进行zstd压缩时发生异常", e);
+            throw e instanceof CompressException ? e : new CompressException(e);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        int id = (int) Zstd.getDictIdFromFrame(bytes);
+        if (id == 0) {
+            return plain.decompress(bytes);
+        }
+        long length = Zstd.getFrameContentSize(bytes);
+        if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+            throw new CompressException("zstd数据中的原始长度【" + length + "】不合法。");
+        }
+        try {
+            Contexts contexts = Contexts.CURRENT.get();
+            if (contexts.decompressId != id) {
+                contexts.decompress.loadDict(Contexts.decompressDictionary(id));
+                contexts.decompressId = id;
+            }
+            byte[] result = contexts.decompress.decompress(bytes, (int) length);
+            if (log.isDebugEnabled()) {
+                log.debug("使用编号为【{}】的字典进行了zstd解压缩，长度由【{}】变为【{}】.", id, bytes.length, result.length);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            log.error("使用字典进行zstd解压缩时发生异常", e);
+            throw e instanceof CompressException ? e : new CompressException(e);
+        }
+    }
+
+    /**
+     * 解析好的字典和每个线程的上下文，放在单独的类中，没有zstd-jni时不会加载
+     */
+    private static class Contexts {
+
+        // 解析字典的开销比较大，每个编号只解析一次，压缩级别取第一次使用时的配置
+        private static final Map<Integer, ZstdDictCompress> COMPRESS_DICTIONARIES = new ConcurrentHashMap<>(4);
+        private static final Map<Integer, ZstdDictDecompress> DECOMPRESS_DICTIONARIES = new ConcurrentHashMap<>(4);
+
+        private static final ThreadLocal<Contexts> CURRENT = ThreadLocal.withInitial(Contexts::new);
+
+        private final ZstdCompressCtx compress = new ZstdCompressCtx();
+        private final ZstdDecompressCtx decompress = new ZstdDecompressCtx();
+        // 上下文当前引用的字典的编号
+        private int compressId;
+        private int decompressId;
+
+        private static ZstdDictCompress compressDictionary(int id) {
+            ZstdDictCompress dictionary = COMPRESS_DICTIONARIES.get(id);
+            if (dictionary == null) {
+                dictionary = new ZstdDictCompress(dictionary(id), YrpcBootstrap.getInstance().getConfiguration().getZstdLevel());
+                ZstdDictCompress exists = COMPRESS_DICTIONARIES.putIfAbsent(id, dictionary);
+                if (exists != null) {
+                    dictionary.close();
+                    dictionary = exists;
+                }
+            }
+            return dictionary;
+        }
+
+        private static ZstdDictDecompress decompressDictionary(int id) {
+            ZstdDictDecompress dictionary = DECOMPRESS_DICTIONARIES.get(id);
+            if (dictionary == null) {
+                dictionary = new ZstdDictDecompress(dictionary(id));
+                ZstdDictDecompress exists = DECOMPRESS_DICTIONARIES.putIfAbsent(id, dictionary);
+                if (exists != null) {
+                    dictionary.close();
+                    dictionary = exists;
+                }
+            }
+            return dictionary;
+        }
+
+        private static byte[] dictionary(int id) {
+            byte[] dictionary = DictionaryRegistry.await(id, FETCH_WAIT_MILLIS);
+            if (dictionary == null) {
+                throw new CompressException("未找到编号为【" + Integer.toUnsignedString(id) + "】的压缩字典，注册中心也没有及时返回。");
+            }
+            return dictionary;
+        }
+    }
+}
@@ -2,14 +2,18 @@ package com.ydlclass.config;
 
 import com.ydlclass.IdGenerator;
 import com.ydlclass.discovery.RegistryConfig;
+import com.ydlclass.fault.FaultRule;
 import com.ydlclass.loadbalancer.LoadBalancer;
 import com.ydlclass.loadbalancer.impl.RoundRobinLoadBalancer;
 import com.ydlclass.protection.CircuitBreaker;
 import com.ydlclass.protection.RateLimiter;
+import com.ydlclass.transport.message.MessageFormatConstant;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -40,6 +44,16 @@ public class Configuration {
     
     // 配置信息-->压缩使用的协议
     private String compressType = "gzip";
+    // 报文体小于该字节数时不压缩
+    private int compressThreshold = 512;
+    // 按方法统计压缩率，压缩不划算的方法自动关闭压缩
+    private boolean adaptiveCompress = true;
+    // zstd的压缩级别，越大压缩率越高、越慢，负数是更快的级别
+    private int zstdLevel = 3;
+    // gzip的压缩级别，1最快、9压缩率最高，-1使用zlib默认的6
+    private int gzipLevel = -1;
+    // zstdDict使用的压缩字典的位置，classpath:开头时从classpath中加载
+    private String compressDictionary;
     
     // 配置信息-->id发射器
     public IdGenerator idGenerator = new IdGenerator(1, 2);
@@ -52,6 +66,66 @@ public class Configuration {
     // 为每一个ip配置一个断路器，熔断
     private final Map<SocketAddress, CircuitBreaker> everyIpCircuitBreaker = new ConcurrentHashMap<>(16);
     
+    // 配置信息-->传输层 auto、nio、epoll、io_uring
+    private String transport = "auto";
+    
+    // 配置信息-->原生传输层的socket参数，nio下不生效
+    private boolean tcpQuickAck = false;
+    private boolean reusePort = false;
+    // epoll默认使用边缘触发
+    private boolean edgeTriggered = true;
+    
+    // 配置信息-->服务端线程模型
+    private int bossThreads = 1;
+    // worker线程数默认和cpu核数一致
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    // 监听同一个端口的监听器数量，大于1时需要原生传输层的SO_REUSEPORT支持
+    private int acceptors = 1;
+    
+    // 配置信息-->合并flush，默认关闭
+    private boolean flushConsolidation = false;
+    // 合并flush的时间窗口（微秒），0代表只合并同一轮事件循环中的写
+    private long flushWindowMicros = 0;
+    // 积攒多少个报文后立即flush
+    private int maxFramesPerFlush = 64;
+    
+    // 配置信息-->请求合并，默认关闭
+    private boolean requestBatching = false;
+    // 一个批量报文最多携带的请求数
+    private int maxBatchSize = 32;
+    
+    // 配置信息-->流式调用的窗口大小，提供方在没有收到额度补充时最多能发送的数据帧个数
+    private int streamWindow = 32;
+    
+    // 配置信息-->期望使用的最高协议版本，建立连接时和提供方协商，1代表不协商，始终使用v1协议
+    // 默认开启v2：不认识握手的老版本提供方不回复或回复错误码时，连接自动退回v1，调用方可以先于提供方升级
+    private int protocolVersion = MessageFormatConstant.MAX_VERSION;
+    // 是否使用方法表，只在v2协议的连接上生效，开启后请求只携带方法编号和参数
+    private boolean methodTable = true;
+    
+    // 配置信息-->服务调用方的代理方式，jdk为jdk动态代理，stub为生成的存根
+    private String proxyType = "jdk";
+    
+    // 配置信息-->服务提供方执行方法调用的线程模型 inline、pool、virtual
+    private String dispatchMode = "inline";
+    // pool模式的线程数和队列长度，队列满了以后拒绝请求
+    private int dispatchThreads = 200;
+    private int dispatchQueueSize = 1024;
+    
+    // 配置信息-->服务调用方与每个服务提供方之间的连接数，默认只有一条连接
+    private int minConnections = 1;
+    private int maxConnections = 1;
+    // 从连接池中选择连接的方式 leastPending（挂起的请求最少）、roundRobin（轮询）
+    private String connectionSelect = "leastPending";
+    // 超过最小连接数的连接空闲多久以后关闭
+    private long connectionIdleMillis = 60_000;
+    // 连接失败以后的退避时间，每次失败翻倍，不超过最大值
+    private long reconnectBackoffMillis = 100;
+    private long reconnectMaxBackoffMillis = 10_000;
+
+    // 配置信息-->故障注入规则，为空时不开启故障注入
+    private List<FaultRule> faultRules = new ArrayList<>();
+    
     // 读xml，dom4j
     public Configuration() {
         // 1、成员变量的默认配置项
@@ -3,13 +3,19 @@ package com.ydlclass.config;
 import com.ydlclass.IdGenerator;
 import com.ydlclass.compress.Compressor;
 import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.compress.DictionaryRegistry;
 import com.ydlclass.discovery.RegistryConfig;
+import com.ydlclass.enumeration.FaultType;
+import com.ydlclass.fault.FaultRule;
 import com.ydlclass.loadbalancer.LoadBalancer;
 import com.ydlclass.serialize.Serializer;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.serialize.compact.CompactClassRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -19,6 +25,8 @@ import javax.xml.xpath.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -71,6 +79,20 @@ public class XmlResolver {
     
             configuration.setLoadBalancer(resolveLoadBalancer(doc, xpath));
             
+            resolveTransport(doc, xpath, configuration);
+            resolveEventLoop(doc, xpath, configuration);
+            resolveFlushConsolidation(doc, xpath, configuration);
+            resolveRequestBatching(doc, xpath, configuration);
+            resolveStreaming(doc, xpath, configuration);
+            resolveProtocol(doc, xpath, configuration);
+            resolveProxy(doc, xpath, configuration);
+            resolveDispatch(doc, xpath, configuration);
+            resolveConnectionPool(doc, xpath, configuration);
+            resolveCompression(doc, xpath, configuration);
+            
+            configuration.getFaultRules().addAll(resolveFaultRules(doc, xpath));
+            resolveCompactClasses(doc, xpath);
+            
             // 如果有新增的标签，这里继续修改
             
         } catch (ParserConfigurationException | SAXException | IOException e) {
@@ -207,6 +229,355 @@ public class XmlResolver {
     }
     
     
+    /**
+     * 解析传输层的配置，该标签是可选的
+     * <transport type="auto" tcpQuickAck="true" reusePort="false" edgeTriggered="true"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveTransport(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/transport");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element transport = (Element) nodes.item(0);
+        if (transport.hasAttribute("type")) {
+            configuration.setTransport(transport.getAttribute("type"));
+        }
+        if (transport.hasAttribute("tcpQuickAck")) {
+            configuration.setTcpQuickAck(Boolean.parseBoolean(transport.getAttribute("tcpQuickAck")));
+        }
+        if (transport.hasAttribute("reusePort")) {
+            configuration.setReusePort(Boolean.parseBoolean(transport.getAttribute("reusePort")));
+        }
+        if (transport.hasAttribute("edgeTriggered")) {
+            configuration.setEdgeTriggered(Boolean.parseBoolean(transport.getAttribute("edgeTriggered")));
+        }
+    }
+    
+    /**
+     * 解析服务端的线程模型，该标签是可选的
+     * <eventLoop bossThreads="1" workerThreads="16" acceptors="4"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveEventLoop(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/eventLoop");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element eventLoop = (Element) nodes.item(0);
+        if (eventLoop.hasAttribute("bossThreads")) {
+            configuration.setBossThreads(Integer.parseInt(eventLoop.getAttribute("bossThreads")));
+        }
+        if (eventLoop.hasAttribute("workerThreads")) {
+            configuration.setWorkerThreads(Integer.parseInt(eventLoop.getAttribute("workerThreads")));
+        }
+        if (eventLoop.hasAttribute("acceptors")) {
+            configuration.setAcceptors(Integer.parseInt(eventLoop.getAttribute("acceptors")));
+        }
+    }
+    
+    /**
+     * 解析合并flush的配置，该标签是可选的
+     * <flushConsolidation enabled="true" windowMicros="0" maxFrames="64"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveFlushConsolidation(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/flushConsolidation");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element flushConsolidation = (Element) nodes.item(0);
+        configuration.setFlushConsolidation(!"false".equals(flushConsolidation.getAttribute("enabled")));
+        if (flushConsolidation.hasAttribute("windowMicros")) {
+            configuration.setFlushWindowMicros(Long.parseLong(flushConsolidation.getAttribute("windowMicros")));
+        }
+        if (flushConsolidation.hasAttribute("maxFrames")) {
+            configuration.setMaxFramesPerFlush(Integer.parseInt(flushConsolidation.getAttribute("maxFrames")));
+        }
+    }
+    
+    /**
+     * 解析请求合并的配置，该标签是可选的
+     * <requestBatching enabled="true" maxBatchSize="32"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveRequestBatching(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/requestBatching");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element requestBatching = (Element) nodes.item(0);
+        configuration.setRequestBatching(!"false".equals(requestBatching.getAttribute("enabled")));
+        if (requestBatching.hasAttribute("maxBatchSize")) {
+            configuration.setMaxBatchSize(Integer.parseInt(requestBatching.getAttribute("maxBatchSize")));
+        }
+    }
+    
+    /**
+     * 解析流式调用的配置，该标签是可选的
+     * <streaming window="32"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveStreaming(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/streaming");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element streaming = (Element) nodes.item(0);
+        if (streaming.hasAttribute("window")) {
+            configuration.setStreamWindow(Integer.parseInt(streaming.getAttribute("window")));
+        }
+    }
+    
+    /**
+     * 解析协议版本的配置，该标签是可选的
+     * <protocol version="2" methodTable="true"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveProtocol(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/protocol");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element protocol = (Element) nodes.item(0);
+        if (protocol.hasAttribute("version")) {
+            configuration.setProtocolVersion(Integer.parseInt(protocol.getAttribute("version")));
+        }
+        if (protocol.hasAttribute("methodTable")) {
+            configuration.setMethodTable(!"false".equals(protocol.getAttribute("methodTable")));
+        }
+    }
+    
+    /**
+     * 解析服务调用方代理方式的配置，该标签是可选的
+     * <proxy type="stub"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveProxy(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/proxy");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element proxy = (Element) nodes.item(0);
+        if (proxy.hasAttribute("type")) {
+            configuration.setProxyType(proxy.getAttribute("type"));
+        }
+    }
+    
+    /**
+     * 解析服务提供方线程模型的配置，该标签是可选的
+     * <dispatch mode="pool" threads="200" queueSize="1024"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveDispatch(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/dispatch");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element dispatch = (Element) nodes.item(0);
+        if (dispatch.hasAttribute("mode")) {
+            configuration.setDispatchMode(dispatch.getAttribute("mode"));
+        }
+        if (dispatch.hasAttribute("threads")) {
+            configuration.setDispatchThreads(Integer.parseInt(dispatch.getAttribute("threads")));
+        }
+        if (dispatch.hasAttribute("queueSize")) {
+            configuration.setDispatchQueueSize(Integer.parseInt(dispatch.getAttribute("queueSize")));
+        }
+    }
+    
+    /**
+     * 解析服务调用方连接池的配置，该标签是可选的
+     * <connectionPool min="1" max="4" select="leastPending" idleMillis="60000" backoffMillis="100" maxBackoffMillis="10000"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveConnectionPool(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/connectionPool");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element pool = (Element) nodes.item(0);
+        if (pool.hasAttribute("min")) {
+            configuration.setMinConnections(Integer.parseInt(pool.getAttribute("min")));
+        }
+        if (pool.hasAttribute("max")) {
+            configuration.setMaxConnections(Integer.parseInt(pool.getAttribute("max")));
+        }
+        if (pool.hasAttribute("select")) {
+            configuration.setConnectionSelect(pool.getAttribute("select"));
+        }
+        if (pool.hasAttribute("idleMillis")) {
+            configuration.setConnectionIdleMillis(Long.parseLong(pool.getAttribute("idleMillis")));
+        }
+        if (pool.hasAttribute("backoffMillis")) {
+            configuration.setReconnectBackoffMillis(Long.parseLong(pool.getAttribute("backoffMillis")));
+        }
+        if (pool.hasAttribute("maxBackoffMillis")) {
+            configuration.setReconnectMaxBackoffMillis(Long.parseLong(pool.getAttribute("maxBackoffMillis")));
+        }
+    }
+    
+    /**
+     * 解析压缩的阈值和自适应压缩，该标签是可选的
+     * <compression threshold="512" adaptive="true" zstdLevel="3" gzipLevel="6" dictionary="classpath:yrpc.dict"/>
+     *
+     * @param doc           文档
+     * @param xpath         xpath解析器
+     * @param configuration 配置实例
+     */
+    private void resolveCompression(Document doc, XPath xpath, Configuration configuration) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/compression");
+        if (nodes == null || nodes.getLength() == 0) {
+            return;
+        }
+        Element compression = (Element) nodes.item(0);
+        if (compression.hasAttribute("threshold")) {
+            configuration.setCompressThreshold(Integer.parseInt(compression.getAttribute("threshold")));
+        }
+        if (compression.hasAttribute("adaptive")) {
+            configuration.setAdaptiveCompress(Boolean.parseBoolean(compression.getAttribute("adaptive")));
+        }
+        if (compression.hasAttribute("zstdLevel")) {
+            configuration.setZstdLevel(Integer.parseInt(compression.getAttribute("zstdLevel")));
+        }
+        if (compression.hasAttribute("gzipLevel")) {
+            configuration.setGzipLevel(Integer.parseInt(compression.getAttribute("gzipLevel")));
+        }
+        if (compression.hasAttribute("dictionary")) {
+            configuration.setCompressDictionary(compression.getAttribute("dictionary"));
+            DictionaryRegistry.load(configuration.getCompressDictionary());
+        }
+    }
+    
+    /**
+     * 解析故障注入规则，该标签是可选的
+     * <faultInjection>
+     *     <rule service="com.ydlclass.HelloYrpc" method="sayHi" type="delay" probability="0.1" delay="50"/>
+     * </faultInjection>
+     *
+     * @param doc   文档
+     * @param xpath xpath解析器
+     * @return 故障注入规则
+     */
+    private List<FaultRule> resolveFaultRules(Document doc, XPath xpath) {
+        List<FaultRule> faultRules = new ArrayList<>();
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/faultInjection/rule");
+        if (nodes == null) {
+            return faultRules;
+        }
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element rule = (Element) nodes.item(i);
+            // 类型或数值写错的规则跳过，不影响其他配置的加载
+            try {
+                faultRules.add(resolveFaultRule(rule));
+            } catch (IllegalArgumentException e) {
+                log.error("故障注入规则【service={}, method={}, type={}】配置有误，已经忽略。",
+                    rule.getAttribute("service"), rule.getAttribute("method"), rule.getAttribute("type"), e);
+            }
+        }
+        return faultRules;
+    }
+    
+    private FaultRule resolveFaultRule(Element rule) {
+        FaultRule.FaultRuleBuilder builder = FaultRule.builder()
+            .type(FaultType.of(rule.getAttribute("type")));
+        if (rule.hasAttribute("service")) {
+            builder.service(rule.getAttribute("service"));
+        }
+        if (rule.hasAttribute("method")) {
+            builder.method(rule.getAttribute("method"));
+        }
+        if (rule.hasAttribute("probability")) {
+            builder.probability(Double.parseDouble(rule.getAttribute("probability")));
+        }
+        if (rule.hasAttribute("delay")) {
+            builder.delay(Long.parseLong(rule.getAttribute("delay")));
+        }
+        if (rule.hasAttribute("code")) {
+            builder.code(Byte.parseByte(rule.getAttribute("code")));
+        }
+        return builder.build();
+    }
+    
+    
+    /**
+     * 登记compact序列化的类编号和允许按类名传输的类，该标签是可选的
+     * <compactClasses>
+     *     <class id="64" name="com.ydlclass.order.OrderDTO"/>
+     *     <allow name="com.ydlclass.order."/>
+     * </compactClasses>
+     *
+     * @param doc   文档
+     * @param xpath xpath解析器
+     */
+    private void resolveCompactClasses(Document doc, XPath xpath) {
+        NodeList nodes = parseNodes(doc, xpath, "/configuration/compactClasses/class");
+        if (nodes == null) {
+            return;
+        }
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+            try {
+                CompactClassRegistry.register(Class.forName(element.getAttribute("name")),
+                    Integer.parseInt(element.getAttribute("id")));
+            } catch (ClassNotFoundException e) {
+                log.error("未找到compact序列化登记的类【{}】。", element.getAttribute("name"), e);
+            }
+        }
+        NodeList allows = parseNodes(doc, xpath, "/configuration/compactClasses/allow");
+        if (allows == null) {
+            return;
+        }
+        for (int i = 0; i < allows.getLength(); i++) {
+            CompactClassRegistry.allow(((Element) allows.item(i)).getAttribute("name"));
+        }
+    }
+    
+    /**
+     * 获得一组节点，节点不存在时返回空的列表
+     * @param doc        文档对象
+     * @param xpath      xpath解析器
+     * @param expression xpath表达式
+     * @return 节点列表
+     */
+    private NodeList parseNodes(Document doc, XPath xpath, String expression) {
+        try {
+            XPathExpression expr = xpath.compile(expression);
+            return (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            log.error("An exception occurred while parsing the expression.", e);
+        }
+        return null;
+    }
+    
+    
     /**
      * 获得一个节点文本值   <port>7777</>
      * @param doc        文档对象
@@ -1,11 +1,12 @@
 package com.ydlclass.core;
 
-import com.ydlclass.NettyBootstrapInitializer;
 import com.ydlclass.YrpcBootstrap;
 import com.ydlclass.compress.CompressorFactory;
 import com.ydlclass.discovery.Registry;
 import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.exceptions.ResponseException;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.ConnectionManager;
 import com.ydlclass.transport.message.YrpcRequest;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
@@ -36,14 +37,9 @@ public class HeartbeatDetector {
         
         // 将连接进行缓存
         for (InetSocketAddress address : addresses) {
-            try {
-                if (!YrpcBootstrap.CHANNEL_CACHE.containsKey(address)) {
-                    Channel channel = NettyBootstrapInitializer.getBootstrap().connect(address).sync().channel();
-                    YrpcBootstrap.CHANNEL_CACHE.put(address, channel);
-                }
-                
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            if (!YrpcBootstrap.CHANNEL_CACHE.containsKey(address)) {
+                // 交给连接管理异步建立，建立以后会放入缓存
+                ConnectionManager.warmUp(address);
             }
         }
         
@@ -64,6 +60,9 @@ public class HeartbeatDetector {
             // 将响应时长的map清空
             YrpcBootstrap.ANSWER_TIME_CHANNEL_CACHE.clear();
             
+            // 之前失效的地址重新尝试建立连接，建立以后重新参与心跳检测
+            ConnectionManager.reconnectIdle();
+            
             // 遍历所有的channel
             Map<InetSocketAddress, Channel> cache = YrpcBootstrap.CHANNEL_CACHE;
             for (Map.Entry<InetSocketAddress, Channel> entry : cache.entrySet()) {
@@ -86,9 +85,9 @@ public class HeartbeatDetector {
                         .build();
                     
                     // 4、写出报文
-                    CompletableFuture<Object> completableFuture = new CompletableFuture<>();
-                    // 将 completableFuture 暴露出去
-                    YrpcBootstrap.PENDING_REQUEST.put(yrpcRequest.getRequestId(), completableFuture);
+                    // 将 completableFuture 暴露出去，1秒没有响应视为超时
+                    CompletableFuture<Object> completableFuture = YrpcBootstrap.PENDING_REQUEST.register(
+                        yrpcRequest.getRequestId(), channel, 1000);
                     
                     channel.writeAndFlush(yrpcRequest).addListener((ChannelFutureListener) promise -> {
                         if (!promise.isSuccess()) {
@@ -103,24 +102,28 @@ public class HeartbeatDetector {
                         completableFuture.get(1, TimeUnit.SECONDS);
                         endTime = System.currentTimeMillis();
                     } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                        // 一旦发生问题，需要优先重试
-                        tryTimes --;
-                        log.error("和地址为【{}】的主机连接发生异常.正在进行第【{}】次重试......",
-                            channel.remoteAddress(), 3 - tryTimes);
+                        // 对方返回了错误的响应码（例如被限流）时，连接依然是通的
+                        if (!(e.getCause() instanceof ResponseException)) {
+                            // 一旦发生问题，需要优先重试
+                            tryTimes --;
+                            log.error("和地址为【{}】的主机连接发生异常.正在进行第【{}】次重试......",
+                                channel.remoteAddress(), 3 - tryTimes);
                         
-                        // 将重试的机会用尽，将失效的地址移出服务列表
-                        if(tryTimes == 0){
-                            YrpcBootstrap.CHANNEL_CACHE.remove(entry.getKey());
-                        }
+                            // 将重试的机会用尽，通过连接池移除并关闭失效的连接，之后由连接池重连
+                            if(tryTimes == 0){
+                                ConnectionManager.evict(entry.getKey(), channel);
+                            }
                         
-                        // 尝试等到一段时间后重试
-                        try {
-                            Thread.sleep(10*(new Random().nextInt(5)));
-                        } catch (InterruptedException ex) {
-                            throw new RuntimeException(ex);
-                        }
+                            // 尝试等到一段时间后重试
+                            try {
+                                Thread.sleep(10*(new Random().nextInt(5)));
+                            } catch (InterruptedException ex) {
+                                throw new RuntimeException(ex);
+                            }
     
-                        continue;
+                            continue;
+                        }
+                        endTime = System.currentTimeMillis();
                     }
                     Long time = endTime - start;
                     
@@ -0,0 +1,166 @@
+package com.ydlclass.core;
+
+import com.ydlclass.config.Configuration;
+import com.ydlclass.metrics.YrpcMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务提供方执行方法调用的线程模型
+ * inline：直接在netty的io线程中调用，方法很快时开销最小，但一个阻塞的方法会卡住该线程上的所有连接
+ * pool：交给有界的线程池，队列满了以后拒绝
+ * virtual：每个请求一个虚拟线程，需要jdk21，低版本的jdk退回pool
+ * 只有方法调用会被分发，流控制帧、握手、心跳等依然在io线程中处理，响应也回到channel所在的io线程写出
+ *
+ * @author it楠老师
+ * @createTime 2023-08-10
+ */
+@Slf4j
+public class InvocationDispatcher {
+
+    public static final String INLINE = "inline";
+    public static final String POOL = "pool";
+    public static final String VIRTUAL = "virtual";
+
+    // 指标：正在执行的方法调用数、排队中的调用数、累计的调用次数和排队时间
+    public static final String ACTIVE_GAUGE = "yrpc.dispatch.active";
+    public static final String QUEUED_GAUGE = "yrpc.dispatch.queued";
+    public static final String INVOCATIONS_COUNTER = "yrpc.dispatch.invocations";
+    public static final String QUEUE_WAIT_COUNTER = "yrpc.dispatch.queue.wait.micros";
+
+    private final String mode;
+
+    // inline模式下为null
+    private final ExecutorService executor;
+
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final LongAdder invocations = YrpcMetrics.counter(INVOCATIONS_COUNTER);
+    private final LongAdder queueWaitMicros = YrpcMetrics.counter(QUEUE_WAIT_COUNTER);
+
+    private InvocationDispatcher(String mode, ExecutorService executor) {
+        this.mode = mode;
+        this.executor = executor;
+        YrpcMetrics.gauge(ACTIVE_GAUGE, active::get);
+        YrpcMetrics.gauge(QUEUED_GAUGE, queued::get);
+    }
+
+    /**
+     * 根据配置创建线程模型
+     * @param configuration 配置
+     * @return 线程模型
+     */
+    public static InvocationDispatcher create(Configuration configuration) {
+        String mode = configuration.getDispatchMode();
+        if (VIRTUAL.equals(mode)) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                log.info("服务提供方使用虚拟线程执行方法调用.");
+                return new InvocationDispatcher(VIRTUAL, executor);
+            }
+            log.warn("当前jdk不支持虚拟线程，改为使用线程池执行方法调用.");
+            mode = POOL;
+        }
+        if (POOL.equals(mode)) {
+            int threads = configuration.getDispatchThreads();
+            log.info("服务提供方使用线程池执行方法调用，线程数【{}】，队列长度【{}】.",
+                threads, configuration.getDispatchQueueSize());
+            ExecutorService executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(configuration.getDispatchQueueSize()), new NamedThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+            return new InvocationDispatcher(POOL, executor);
+        }
+        if (!INLINE.equals(mode)) {
+            log.warn("不支持的线程模型【{}】，使用inline.", mode);
+        }
+        return new InvocationDispatcher(INLINE, null);
+    }
+
+    /**
+     * 执行一次方法调用，inline模式下直接在当前线程执行
+     * @param invocation 方法调用
+     * @throws RejectedExecutionException 线程池的队列已满
+     */
+    public void execute(Runnable invocation) {
+        if (executor == null) {
+            run(invocation);
+            return;
+        }
+        long enqueuedAt = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                queueWaitMicros.add((System.nanoTime() - enqueuedAt) / 1000);
+                run(invocation);
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Runnable invocation) {
+        invocations.increment();
+        active.incrementAndGet();
+        try {
+            invocation.run();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 是否直接在io线程中执行
+     */
+    public boolean isInline() {
+        return executor == null;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 不再接收新的调用，已经提交的调用会执行完
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        YrpcMetrics.removeGauge(ACTIVE_GAUGE);
+        YrpcMetrics.removeGauge(QUEUED_GAUGE);
+    }
+
+    /**
+     * jdk21的Executors#newVirtualThreadPerTaskExecutor，默认按jdk17编译，所以反射获取
+     * @return 虚拟线程的线程池，不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "yrpc-invoker-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ydlclass.core;
+
+import com.ydlclass.stub.ServiceDispatcher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 服务发布时为每一个方法预先生成的调用器
+ * 方法句柄在生成时已经绑定了服务的实现、完成了访问检查和参数的展开
+ * 每个方法的调用器都是MethodInvokerTemplate的一个隐藏类副本，方法句柄通过classData传入并赋值给static final字段，
+ * jit把它当作常量，可以一直内联到目标方法，不再经过反射，也不经过一个无法内联的方法句柄
+ * 服务实现有编译期生成的分发器时，方法句柄绑定的是分发器和方法的下标
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+@Slf4j
+public abstract class MethodInvoker {
+
+    // 统一的调用形式 (Object[])Object
+    static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    // ServiceDispatcher#dispatch(Object, int, Object[])
+    private static final MethodHandle DISPATCH;
+
+    // 隐藏类的模板，读取失败时退回直接持有方法句柄的调用器
+    private static final byte[] TEMPLATE;
+
+    static {
+        try {
+            DISPATCH = MethodHandles.publicLookup().findVirtual(ServiceDispatcher.class, "dispatch",
+                MethodType.methodType(Object.class, Object.class, int.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        TEMPLATE = readTemplate();
+    }
+
+    MethodInvoker() {
+    }
+
+    /**
+     * 为服务实现上的方法生成调用器
+     * @param ref    服务的实现
+     * @param method 实现类上的方法
+     * @return 调用器
+     * @throws IllegalAccessException 方法无法访问
+     */
+    public static MethodInvoker of(Object ref, Method method) throws IllegalAccessException {
+        // 实现类不是public时需要打开访问权限，失败了也没关系，public类的方法依然可以访问
+        method.trySetAccessible();
+        MethodHandle methodHandle = MethodHandles.lookup().unreflect(method)
+            .bindTo(ref)
+            .asSpreader(Object[].class, method.getParameterCount())
+            .asType(INVOKE_TYPE);
+        return spin(methodHandle);
+    }
+
+    /**
+     * 为分发器中的方法生成调用器
+     * @param dispatcher 编译期生成的分发器
+     * @param ref        服务的实现
+     * @param index      方法在分发器中的下标
+     * @return 调用器
+     */
+    public static MethodInvoker of(ServiceDispatcher dispatcher, Object ref, int index) {
+        return spin(MethodHandles.insertArguments(DISPATCH, 0, dispatcher, ref, index));
+    }
+
+    /**
+     * 调用方法，方法本身抛出的异常原样抛出
+     * @param parametersValue 参数，没有参数时可以为null
+     * @return 返回值
+     * @throws Throwable 方法抛出的异常
+     */
+    public abstract Object invoke(Object[] parametersValue) throws Throwable;
+
+    /**
+     * 以方法句柄为classData定义一个模板的隐藏类副本
+     */
+    private static MethodInvoker spin(MethodHandle methodHandle) {
+        if (TEMPLATE != null) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(TEMPLATE, methodHandle, true);
+                return (MethodInvoker) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            } catch (Throwable e) {
+                log.warn("生成调用器时发生异常，改为直接持有方法句柄。", e);
+            }
+        }
+        return new HandleInvoker(methodHandle);
+    }
+
+    private static byte[] readTemplate() {
+        try (InputStream in = MethodInvoker.class.getResourceAsStream("MethodInvokerTemplate.class")) {
+            if (in != null) {
+                return in.readAllBytes();
+            }
+        } catch (IOException e) {
+            log.warn("读取调用器模板时发生异常。", e);
+        }
+        return null;
+    }
+
+    /**
+     * 无法定义隐藏类时使用，方法句柄是实例字段，jit无法内联
+     */
+    private static final class HandleInvoker extends MethodInvoker {
+
+        private final MethodHandle methodHandle;
+
+        private HandleInvoker(MethodHandle methodHandle) {
+            this.methodHandle = methodHandle;
+        }
+
+        @Override
+        public Object invoke(Object[] parametersValue) throws Throwable {
+            return (Object) methodHandle.invokeExact(parametersValue);
+        }
+    }
+}
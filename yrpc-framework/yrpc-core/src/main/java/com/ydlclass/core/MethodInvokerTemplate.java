@@ -0,0 +1,29 @@
+package com.ydlclass.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * 调用器的模板，只作为MethodInvoker定义隐藏类时的字节码使用，自身不会被加载初始化
+ * 隐藏类的classData是绑定好的方法句柄，(Object[])Object
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+final class MethodInvokerTemplate extends MethodInvoker {
+
+    private static final MethodHandle METHOD_HANDLE;
+
+    static {
+        try {
+            METHOD_HANDLE = MethodHandles.classData(MethodHandles.lookup(), "_", MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Object invoke(Object[] parametersValue) throws Throwable {
+        return (Object) METHOD_HANDLE.invokeExact(parametersValue);
+    }
+}
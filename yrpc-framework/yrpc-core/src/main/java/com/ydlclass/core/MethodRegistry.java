@@ -0,0 +1,251 @@
+package com.ydlclass.core;
+
+import com.ydlclass.ServiceConfig;
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.annotation.Bulkhead;
+import com.ydlclass.protection.BulkheadConfig;
+import com.ydlclass.protection.BulkheadExecutor;
+import com.ydlclass.stub.GeneratedNames;
+import com.ydlclass.stub.ServiceDispatcher;
+import com.ydlclass.transport.message.RequestPayload;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 服务提供方的方法表，服务发布时为每一个方法分配编号并预先生成调用器
+ * 服务调用方在一个连接上第一次调用某个方法时登记，拿到编号以后只传输编号和参数
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+@Slf4j
+public class MethodRegistry {
+
+    // 方法编号的计数器，所有服务共用，编号只在当前进程内有效
+    private static final AtomicInteger ID_GENERATOR = new AtomicInteger(0);
+
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+    // key 为方法的编号
+    private static final Map<Integer, ServiceMethod> METHODS = new ConcurrentHashMap<>(64);
+
+    // key 为接口名，value 为该接口下按方法名分组的方法，重载的方法放在同一个列表里
+    private static final Map<String, Map<String, List<ServiceMethod>>> SERVICES = new ConcurrentHashMap<>(16);
+
+    // 登记服务时创建的所有舱壁，服务端关闭时一起关闭
+    private static final List<BulkheadExecutor> BULKHEADS = new ArrayList<>();
+
+    /**
+     * 登记一个服务的所有方法，重复登记会被忽略
+     * @param service 服务
+     */
+    public static synchronized void register(ServiceConfig<?> service) {
+        String interfaceName = service.getInterface().getName();
+        if (SERVICES.containsKey(interfaceName)) {
+            return;
+        }
+        Object ref = service.getRef();
+        Map<String, Integer> dispatcherIndexes = new HashMap<>();
+        ServiceDispatcher dispatcher = loadDispatcher(ref.getClass());
+        if (dispatcher != null) {
+            String[] signatures = dispatcher.signatures();
+            for (int i = 0; i < signatures.length; i++) {
+                dispatcherIndexes.put(signatures[i], i);
+            }
+        }
+        Map<String, List<ServiceMethod>> methodsByName = new HashMap<>();
+        BulkheadExecutor serviceBulkhead = serviceBulkhead(service);
+        // 方法级别的舱壁，key为方法的签名，重载的方法各自独立
+        Map<String, BulkheadExecutor> methodBulkheads = new HashMap<>();
+        // 按签名排序，同一个服务内的编号按签名递增；编号来自全局的计数器，跟服务的发布顺序有关，
+        // 不同进程之间并不相同，只在提供方的进程内有效。调用方的方法表跟着连接走，提供方重启后连接重建、重新登记，不会用到旧的编号
+        Method[] methods = service.getInterface().getMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::toGenericString));
+        for (Method method : methods) {
+            MethodInvoker invoker;
+            Integer index = dispatcherIndexes.get(signature(interfaceName, method.getName(), method.getParameterTypes()));
+            try {
+                // 优先使用编译期生成的分发器
+                invoker = index != null ? MethodInvoker.of(dispatcher, ref, index)
+                    : MethodInvoker.of(ref, ref.getClass().getMethod(method.getName(), method.getParameterTypes()));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                log.error("服务【{}】的方法【{}】无法生成调用器。", interfaceName, method.getName(), e);
+                continue;
+            }
+            ServiceMethod serviceMethod = ServiceMethod.builder()
+                .id(ID_GENERATOR.incrementAndGet())
+                .interfaceName(interfaceName)
+                .methodName(method.getName())
+                .parametersType(method.getParameterTypes())
+                .returnType(method.getReturnType())
+                .invoker(invoker)
+                .bulkhead(methodBulkhead(interfaceName, ref, method, methodBulkheads, serviceBulkhead))
+                .build();
+            METHODS.put(serviceMethod.getId(), serviceMethod);
+            methodsByName.computeIfAbsent(method.getName(), name -> new ArrayList<>(1)).add(serviceMethod);
+        }
+        SERVICES.put(interfaceName, methodsByName);
+        // 服务级别的舱壁即使所有方法都有自己的舱壁，线程池也已经创建了
+        if (serviceBulkhead != null) {
+            BULKHEADS.add(serviceBulkhead);
+        }
+        BULKHEADS.addAll(methodBulkheads.values());
+        if (log.isDebugEnabled()) {
+            log.debug("服务【{}】的方法已经登记到方法表中。", interfaceName);
+        }
+    }
+
+    /**
+     * 关闭所有舱壁并清空方法表，服务端关闭时调用
+     * 已经发布的服务仍然保留在YrpcBootstrap.SERVERS_LIST中，服务端再次启动后第一次查找时重新登记、重新创建舱壁
+     */
+    public static synchronized void shutdown() {
+        for (BulkheadExecutor bulkhead : BULKHEADS) {
+            bulkhead.shutdown();
+        }
+        BULKHEADS.clear();
+        METHODS.clear();
+        SERVICES.clear();
+    }
+
+    /**
+     * 服务级别的舱壁，ServiceConfig中的配置优先，其次是实现类和接口上的注解
+     * @param service 服务
+     * @return 舱壁，没有配置时返回null
+     */
+    private static BulkheadExecutor serviceBulkhead(ServiceConfig<?> service) {
+        BulkheadConfig config = service.getBulkhead();
+        if (config == null) {
+            Bulkhead annotation = service.getRef().getClass().getAnnotation(Bulkhead.class);
+            if (annotation == null) {
+                annotation = service.getInterface().getAnnotation(Bulkhead.class);
+            }
+            config = annotation == null ? null : BulkheadConfig.of(annotation);
+        }
+        return config == null ? null : new BulkheadExecutor(service.getInterface().getName(), config);
+    }
+
+    /**
+     * 方法级别的舱壁，实现类的方法上的注解优先，其次是接口的方法上的注解，都没有时使用服务级别的舱壁
+     */
+    private static BulkheadExecutor methodBulkhead(String interfaceName, Object ref, Method method,
+                                                   Map<String, BulkheadExecutor> methodBulkheads,
+                                                   BulkheadExecutor serviceBulkhead) {
+        Bulkhead annotation = null;
+        try {
+            annotation = ref.getClass().getMethod(method.getName(), method.getParameterTypes()).getAnnotation(Bulkhead.class);
+        } catch (NoSuchMethodException ignored) {
+            // 由生成的分发器调用的方法不一定能通过反射找到
+        }
+        if (annotation == null) {
+            annotation = method.getAnnotation(Bulkhead.class);
+        }
+        if (annotation == null) {
+            return serviceBulkhead;
+        }
+        BulkheadConfig config = BulkheadConfig.of(annotation);
+        return methodBulkheads.computeIfAbsent(signature(interfaceName, method.getName(), method.getParameterTypes()),
+            signature -> new BulkheadExecutor(signature, config));
+    }
+
+    /**
+     * 加载服务实现在编译期生成的分发器
+     * @param implementation 服务实现的类
+     * @return 分发器，没有生成时返回null
+     */
+    private static ServiceDispatcher loadDispatcher(Class<?> implementation) {
+        String dispatcherName = GeneratedNames.dispatcherName(implementation.getName());
+        try {
+            Class<?> dispatcherClass = Class.forName(dispatcherName, true, implementation.getClassLoader());
+            return (ServiceDispatcher) dispatcherClass.getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            log.warn("服务实现【{}】的分发器【{}】无法使用，改用方法句柄。", implementation.getName(), dispatcherName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 根据编号获取方法
+     * @param id 方法的编号
+     * @return 方法，不存在时返回null
+     */
+    public static ServiceMethod get(int id) {
+        return METHODS.get(id);
+    }
+
+    /**
+     * 根据请求中的接口名、方法名和参数类型查找方法，服务还没有登记时从已发布的服务中登记
+     * @param requestPayload 携带完整描述的请求负载
+     * @return 方法，不存在时返回null
+     */
+    public static ServiceMethod lookup(RequestPayload requestPayload) {
+        String interfaceName = requestPayload.getInterfaceName();
+        if (interfaceName == null) {
+            return null;
+        }
+        Map<String, List<ServiceMethod>> methodsByName = SERVICES.get(interfaceName);
+        if (methodsByName == null) {
+            ServiceConfig<?> service = YrpcBootstrap.SERVERS_LIST.get(interfaceName);
+            if (service == null) {
+                return null;
+            }
+            register(service);
+            methodsByName = SERVICES.get(interfaceName);
+        }
+        List<ServiceMethod> candidates = methodsByName.get(requestPayload.getMethodName());
+        if (candidates == null) {
+            return null;
+        }
+        // 重载的方法通过参数类型区分
+        Class<?>[] parametersType = requestPayload.getParametersType() == null
+            ? NO_PARAMETERS : requestPayload.getParametersType();
+        for (ServiceMethod candidate : candidates) {
+            if (Arrays.equals(candidate.getParametersType(), parametersType)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 将只携带编号的请求负载还原成完整的描述
+     * @param requestPayload 请求负载
+     * @return 编号不存在时返回false，此时负载保持原样
+     */
+    public static boolean resolve(RequestPayload requestPayload) {
+        if (requestPayload == null || requestPayload.getMethodId() <= 0) {
+            return true;
+        }
+        ServiceMethod serviceMethod = METHODS.get(requestPayload.getMethodId());
+        if (serviceMethod == null) {
+            return false;
+        }
+        requestPayload.setInterfaceName(serviceMethod.getInterfaceName());
+        requestPayload.setMethodName(serviceMethod.getMethodName());
+        requestPayload.setParametersType(serviceMethod.getParametersType());
+        requestPayload.setReturnType(serviceMethod.getReturnType());
+        return true;
+    }
+
+    /**
+     * 方法的签名，同时也是服务调用方方法表的key，和编译期生成的分发器、存根中的签名一致
+     */
+    public static String signature(String interfaceName, String methodName, Class<?>[] parametersType) {
+        List<String> parameters = parametersType == null ? List.of() : Arrays.stream(parametersType)
+            .map(Class::getName)
+            .collect(Collectors.toList());
+        return GeneratedNames.signature(interfaceName, methodName, parameters);
+    }
+}
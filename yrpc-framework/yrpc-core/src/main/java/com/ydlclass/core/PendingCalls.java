@@ -0,0 +1,225 @@
+package com.ydlclass.core;
+
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.metrics.YrpcMetrics;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务调用方挂起的请求，key为请求id
+ * 1、按请求id分段加锁，每段是一个以基本类型long为key的map，不装箱
+ * 2、future无论以哪种方式结束（响应、超时、写出失败、连接断开）都会从表中移除
+ * 3、超时由时间轮统一处理，不为每一个请求创建定时任务
+ * 4、连接断开时，这个连接上所有挂起的请求立即失败，不用等到超时
+ * 5、每个通道上挂起的请求同时记录在通道的属性中，连接断开时只处理这个通道的请求，连接池据此选择最空闲的连接
+ * 指标：yrpc.pending.outstanding（全部挂起的请求数）和yrpc.pending.outstanding.<ip:端口>（每个服务提供方，连接池关闭后移除）
+ *
+ * @author it楠老师
+ * @createTime 2023-08-12
+ */
+@Slf4j
+public class PendingCalls {
+    
+    public static final String OUTSTANDING_GAUGE = "yrpc.pending.outstanding";
+    
+    // 通道上挂起的请求
+    private static final AttributeKey<Set<PendingCall>> CHANNEL_PENDING = AttributeKey.valueOf("yrpc.pending");
+    
+    // 分段的数量，必须是2的幂
+    private static final int STRIPES = 16;
+    
+    private final LongObjectMap<PendingCall>[] stripes;
+    
+    // 时间轮，一格10毫秒，超时的精度在一格以内
+    private final Timer timer;
+    
+    // key为服务提供方的地址，value为该地址上挂起的请求数
+    private final Map<String, AtomicInteger> outstanding = new ConcurrentHashMap<>(16);
+    private final AtomicInteger total = new AtomicInteger(0);
+    
+    @SuppressWarnings("unchecked")
+    public PendingCalls() {
+        stripes = new LongObjectMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongObjectHashMap<>(32);
+        }
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "yrpc-timeout-wheel");
+            thread.setDaemon(true);
+            return thread;
+        }, 10, TimeUnit.MILLISECONDS, 512);
+        YrpcMetrics.gauge(OUTSTANDING_GAUGE, total::get);
+    }
+    
+    /**
+     * 挂起一个请求
+     * @param requestId     请求id
+     * @param channel       写出请求的通道
+     * @param timeoutMillis 等待响应的超时时间，超时后future以TimeoutException结束
+     * @return 收到响应时完成的future
+     */
+    public CompletableFuture<Object> register(long requestId, Channel channel, long timeoutMillis) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        PendingCall call = new PendingCall(requestId, future,
+            outstandingCounter(channel.remoteAddress()), channelCalls(channel));
+        LongObjectMap<PendingCall> stripe = stripe(requestId);
+        synchronized (stripe) {
+            stripe.put(requestId, call);
+        }
+        call.counter.incrementAndGet();
+        call.channelCalls.add(call);
+        total.incrementAndGet();
+        call.timeout = timer.newTimeout(timeout -> future.completeExceptionally(
+            new TimeoutException("编号为【" + requestId + "】的请求在" + timeoutMillis + "毫秒内没有收到响应。")),
+            timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, throwable) -> remove(call));
+        // 通道在挂起之前已经断开，不会再有channelInactive事件
+        if (!channel.isActive()) {
+            future.completeExceptionally(new NetworkException("与【" + channel.remoteAddress() + "】的连接已经断开。"));
+        }
+        return future;
+    }
+    
+    /**
+     * 获取挂起的请求，future结束以后会自动移除
+     * @param requestId 请求id
+     * @return future，已经结束（例如超时）或者不存在时返回null
+     */
+    public CompletableFuture<Object> get(long requestId) {
+        LongObjectMap<PendingCall> stripe = stripe(requestId);
+        PendingCall call;
+        synchronized (stripe) {
+            call = stripe.get(requestId);
+        }
+        return call == null ? null : call.future;
+    }
+    
+    /**
+     * 连接断开时，让这个连接上所有挂起的请求立即失败
+     * @param channel 断开的通道
+     * @param cause   失败的原因
+     * @return 失败的请求数
+     */
+    public int failAll(Channel channel, Throwable cause) {
+        Set<PendingCall> channelCalls = channel.attr(CHANNEL_PENDING).get();
+        if (channelCalls == null) {
+            return 0;
+        }
+        // 先复制一份，结束future时回调会从集合中移除
+        List<PendingCall> calls = new ArrayList<>(channelCalls);
+        for (PendingCall call : calls) {
+            call.future.completeExceptionally(cause);
+        }
+        return calls.size();
+    }
+    
+    /**
+     * @param channel 通道
+     * @return 通道上挂起的请求数
+     */
+    public static int pending(Channel channel) {
+        Set<PendingCall> calls = channel.attr(CHANNEL_PENDING).get();
+        return calls == null ? 0 : calls.size();
+    }
+    
+    /**
+     * @return 全部挂起的请求数
+     */
+    public int size() {
+        return total.get();
+    }
+    
+    /**
+     * 连接池关闭以后，移除该服务提供方的指标，该地址上还有挂起的请求时保留
+     * @param address 服务提供方的地址
+     */
+    public void removeAddress(SocketAddress address) {
+        String key = addressKey(address);
+        if (outstanding.computeIfPresent(key, (name, counter) -> counter.get() == 0 ? null : counter) == null) {
+            YrpcMetrics.removeGauge(OUTSTANDING_GAUGE + "." + key);
+        }
+    }
+    
+    private void remove(PendingCall call) {
+        LongObjectMap<PendingCall> stripe = stripe(call.requestId);
+        synchronized (stripe) {
+            // 请求id理论上不会重复，这里依然只移除自己
+            if (stripe.get(call.requestId) != call) {
+                return;
+            }
+            stripe.remove(call.requestId);
+        }
+        call.counter.decrementAndGet();
+        call.channelCalls.remove(call);
+        total.decrementAndGet();
+        if (call.timeout != null) {
+            call.timeout.cancel();
+        }
+    }
+    
+    private LongObjectMap<PendingCall> stripe(long requestId) {
+        // 请求id的低位可能变化不大，先打散再取段
+        long hash = requestId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+    }
+    
+    private static Set<PendingCall> channelCalls(Channel channel) {
+        Set<PendingCall> calls = channel.attr(CHANNEL_PENDING).get();
+        if (calls == null) {
+            Set<PendingCall> created = ConcurrentHashMap.newKeySet();
+            calls = channel.attr(CHANNEL_PENDING).setIfAbsent(created);
+            if (calls == null) {
+                calls = created;
+            }
+        }
+        return calls;
+    }
+    
+    private static String addressKey(SocketAddress address) {
+        return address instanceof InetSocketAddress inetAddress
+            ? inetAddress.getHostString() + ":" + inetAddress.getPort() : String.valueOf(address);
+    }
+    
+    private AtomicInteger outstandingCounter(SocketAddress address) {
+        return outstanding.computeIfAbsent(addressKey(address), name -> {
+            AtomicInteger counter = new AtomicInteger(0);
+            YrpcMetrics.gauge(OUTSTANDING_GAUGE + "." + name, counter::get);
+            return counter;
+        });
+    }
+    
+    private static class PendingCall {
+        private final long requestId;
+        private final CompletableFuture<Object> future;
+        private final AtomicInteger counter;
+        // 写出请求的通道上挂起的请求
+        private final Set<PendingCall> channelCalls;
+        private volatile Timeout timeout;
+        
+        private PendingCall(long requestId, CompletableFuture<Object> future,
+                            AtomicInteger counter, Set<PendingCall> channelCalls) {
+            this.requestId = requestId;
+            this.future = future;
+            this.counter = counter;
+            this.channelCalls = channelCalls;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ydlclass.core;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 服务端启动后返回的句柄，持有所有监听的channel和线程池
+ * 可以用来阻塞等待服务端关闭，或者主动关闭服务端
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+@Slf4j
+public class ServerHandle {
+    
+    // 监听同一个端口的channel，开启SO_REUSEPORT时可能有多个
+    private final List<Channel> channels;
+    private final EventLoopGroup boss;
+    private final EventLoopGroup worker;
+    // 执行方法调用的线程模型
+    private final InvocationDispatcher dispatcher;
+    
+    public ServerHandle(List<Channel> channels, EventLoopGroup boss, EventLoopGroup worker, InvocationDispatcher dispatcher) {
+        this.channels = channels;
+        this.boss = boss;
+        this.worker = worker;
+        this.dispatcher = dispatcher;
+    }
+    
+    public List<Channel> getChannels() {
+        return channels;
+    }
+    
+    /**
+     * 阻塞当前线程，直到所有监听的channel关闭
+     * @throws InterruptedException 等待时被中断
+     */
+    public void awaitTermination() throws InterruptedException {
+        for (Channel channel : channels) {
+            channel.closeFuture().sync();
+        }
+    }
+    
+    /**
+     * 关闭所有监听的channel，并释放线程池和方法表中的舱壁
+     */
+    public void shutdown() {
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        try {
+            boss.shutdownGracefully().sync();
+            worker.shutdownGracefully().sync();
+            dispatcher.shutdown();
+        } catch (InterruptedException e) {
+            log.error("关闭服务端线程池时发生异常.", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            MethodRegistry.shutdown();
+        }
+    }
+}
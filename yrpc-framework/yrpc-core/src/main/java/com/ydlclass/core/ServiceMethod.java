@@ -0,0 +1,30 @@
+package com.ydlclass.core;
+
+import com.ydlclass.protection.BulkheadExecutor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 服务提供方发布的一个方法，发布时预先解析好并生成调用器，调用时不再通过名字和参数类型查找
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+@Data
+@Builder
+public class ServiceMethod {
+
+    // 方法的编号，同一个服务提供方内唯一
+    private int id;
+
+    private String interfaceName;
+    private String methodName;
+    private Class<?>[] parametersType;
+    private Class<?> returnType;
+
+    // 绑定了服务实现的调用器
+    private MethodInvoker invoker;
+
+    // 方法所在的舱壁，为null时按照配置的线程模型执行
+    private BulkheadExecutor bulkhead;
+}
@@ -23,4 +23,30 @@ public interface Registry {
      */
     List<InetSocketAddress> lookup(String serviceName,String group);
     
+    /**
+     * 发布压缩字典，字典跟服务的元数据放在一起，其他节点按编号查找
+     * 不支持的注册中心什么都不做，字典只能由双方各自加载
+     * @param id         字典的编号
+     * @param dictionary 字典的内容
+     */
+    default void publishDictionary(int id, byte[] dictionary) {
+    }
+    
+    /**
+     * 按编号查找其他节点发布的压缩字典
+     * @param id 字典的编号
+     * @return 字典的内容，没有时返回null
+     */
+    default byte[] lookupDictionary(int id) {
+        return null;
+    }
+    
+    /**
+     * 查找其他节点发布的所有压缩字典，启动时预先加载
+     * @return 字典的内容，没有时返回空列表
+     */
+    default List<byte[]> lookupDictionaries() {
+        return List.of();
+    }
+    
 }
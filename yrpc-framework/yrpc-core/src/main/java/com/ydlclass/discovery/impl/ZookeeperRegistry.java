@@ -14,6 +14,7 @@ import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.ZooKeeper;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -89,10 +90,46 @@ public class ZookeeperRegistry extends AbstractRegistry {
             return new InetSocketAddress(ip, port);
         }).toList();
 
+        // 记录最新的服务列表，节点上下线时据此判断哪些地址下线了
+        UpAndDownWatcher.remember(serviceNode, inetSocketAddresses);
+
         if (inetSocketAddresses.size() == 0) {
             throw new DiscoveryException("未发现任何可用的服务主机.");
         }
 
         return inetSocketAddresses;
     }
+
+    /**
+     * 字典保存在持久节点中，节点名是字典的编号，已经存在时不覆盖
+     */
+    @Override
+    public void publishDictionary(int id, byte[] dictionary) {
+        if (!ZookeeperUtils.exists(zooKeeper, Constant.BASE_DICTIONARIES_PATH, null)) {
+            ZookeeperNode zookeeperNode = new ZookeeperNode(Constant.BASE_DICTIONARIES_PATH, null);
+            ZookeeperUtils.createNode(zooKeeper, zookeeperNode, null, CreateMode.PERSISTENT);
+        }
+        String node = Constant.BASE_DICTIONARIES_PATH + "/" + Integer.toUnsignedString(id);
+        ZookeeperUtils.createNode(zooKeeper, new ZookeeperNode(node, dictionary), null, CreateMode.PERSISTENT);
+    }
+
+    @Override
+    public byte[] lookupDictionary(int id) {
+        return ZookeeperUtils.getData(zooKeeper, Constant.BASE_DICTIONARIES_PATH + "/" + Integer.toUnsignedString(id));
+    }
+
+    @Override
+    public List<byte[]> lookupDictionaries() {
+        if (!ZookeeperUtils.exists(zooKeeper, Constant.BASE_DICTIONARIES_PATH, null)) {
+            return List.of();
+        }
+        List<byte[]> dictionaries = new ArrayList<>();
+        for (String child : ZookeeperUtils.getChildren(zooKeeper, Constant.BASE_DICTIONARIES_PATH, null)) {
+            byte[] dictionary = ZookeeperUtils.getData(zooKeeper, Constant.BASE_DICTIONARIES_PATH + "/" + child);
+            if (dictionary != null) {
+                dictionaries.add(dictionary);
+            }
+        }
+        return dictionaries;
+    }
 }
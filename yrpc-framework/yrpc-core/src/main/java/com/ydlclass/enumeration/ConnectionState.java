@@ -0,0 +1,28 @@
+package com.ydlclass.enumeration;
+
+/**
+ * 服务调用方与一个服务提供方之间的连接状态
+ * IDLE -> CONNECTING -> ACTIVE，连接失败进入BACKOFF，等待退避时间以后再次CONNECTING
+ * 连接全部断开以后回到IDLE，下一次调用时重新建立，服务下线以后进入CLOSED
+ *
+ * @author it楠老师
+ * @createTime 2023-08-14
+ */
+public enum ConnectionState {
+    
+    IDLE("还没有建立连接"),
+    CONNECTING("正在建立连接"),
+    ACTIVE("至少有一条可用的连接"),
+    BACKOFF("连接失败，等待退避时间以后重连"),
+    CLOSED("已经关闭，不再建立连接");
+    
+    private String desc;
+    
+    ConnectionState(String desc) {
+        this.desc = desc;
+    }
+    
+    public String getDesc() {
+        return desc;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ydlclass.enumeration;
+
+/**
+ * 故障注入的类型
+ *
+ * @author it楠老师
+ * @createTime 2023-08-01
+ */
+public enum FaultType {
+    
+    DELAY("delay","延迟处理请求"),
+    DROP("drop","直接丢弃请求"),
+    ERROR("error","直接返回错误码");
+    
+    private String name;
+    private String desc;
+    
+    FaultType(String name, String desc) {
+        this.name = name;
+        this.desc = desc;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getDesc() {
+        return desc;
+    }
+    
+    /**
+     * 根据配置中的名字获取故障类型
+     * @param name 名字，如delay
+     * @return 故障类型
+     */
+    public static FaultType of(String name) {
+        for (FaultType faultType : values()) {
+            if (faultType.name.equalsIgnoreCase(name)) {
+                return faultType;
+            }
+        }
+        throw new IllegalArgumentException("不支持的故障类型【" + name + "】");
+    }
+}
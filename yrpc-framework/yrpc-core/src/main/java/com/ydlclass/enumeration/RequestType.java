@@ -8,7 +8,10 @@ package com.ydlclass.enumeration;
  */
 public enum RequestType {
     
-    REQUEST((byte)1,"普通请求"), HEART_BEAT((byte)2,"心跳检测请求");
+    REQUEST((byte)1,"普通请求"), HEART_BEAT((byte)2,"心跳检测请求"), BATCH((byte)3,"批量请求"),
+    SERVER_STREAM((byte)4,"服务端流式请求"), WINDOW_UPDATE((byte)5,"流控窗口更新"), STREAM_RESET((byte)6,"取消流"),
+    STREAM_OPEN((byte)7,"打开双向流"), STREAM_DATA((byte)8,"双向流数据"), STREAM_HALF_CLOSE((byte)9,"双向流半关闭"),
+    HANDSHAKE((byte)10,"协议握手"), METHOD_REGISTER((byte)11,"登记方法编号");
     
     private byte id;
     private String type;
@@ -25,4 +28,14 @@ public enum RequestType {
     public String getType() {
         return type;
     }
+    
+    /**
+     * 已经打开的流上的报文，携带的是StreamPayload
+     * @param id 请求类型
+     * @return 是否为流报文
+     */
+    public static boolean isStreamControl(byte id) {
+        return id == WINDOW_UPDATE.id || id == STREAM_RESET.id
+            || id == STREAM_DATA.id || id == STREAM_HALF_CLOSE.id;
+    }
 }
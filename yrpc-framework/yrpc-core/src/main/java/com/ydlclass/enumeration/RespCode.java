@@ -2,9 +2,10 @@ package com.ydlclass.enumeration;
 
 /**
  * 响应码需要做统一的处理
- * 成功码  20(方法成功调用)   21（心跳成功反回）
- * 负载码  31（服务器负载过高，被限流）
- * 错误码（客户端错误）  44
+ * 成功码  20(方法成功调用)   21（心跳成功反回）   22（批量请求返回，每个子响应携带自己的响应码）
+ *        23（流式数据）   24（流式数据结束，双向流中为半关闭）   25（流控窗口更新）   26（协议握手成功，响应体为协商出的版本）
+ * 负载码  31（服务器负载过高，被限流）   32（服务过载，方法所在的舱壁已满）
+ * 错误码（客户端错误）  44   45（方法编号未登记，调用方需要携带完整的方法描述重新发送）
  * 错误码（服务端错误）  50（请求的方法不存在）
 
  * @author it楠老师
@@ -14,8 +15,15 @@ public enum RespCode {
     
     SUCCESS((byte) 20,"成功"),
     SUCCESS_HEART_BEAT((byte) 21,"心跳检测成功返回"),
+    BATCH((byte) 22,"批量请求返回"),
+    STREAM_DATA((byte) 23,"流式数据"),
+    STREAM_END((byte) 24,"流式数据结束"),
+    STREAM_WINDOW_UPDATE((byte) 25,"流控窗口更新"),
+    SUCCESS_HANDSHAKE((byte) 26,"协议握手成功"),
     RATE_LIMIT((byte)31,"服务被限流" ),
+    OVERLOAD((byte)32,"服务过载，舱壁已满" ),
     RESOURCE_NOT_FOUND((byte)44,"请求的资源不存在" ),
+    METHOD_UNKNOWN((byte)45,"方法编号未登记" ),
     FAIL((byte)50,"调用方法发生异常"),
     BECOLSING((byte)51,"调用方法发生异常");
     
@@ -0,0 +1,57 @@
+package com.ydlclass.fault;
+
+import com.ydlclass.enumeration.FaultType;
+import com.ydlclass.enumeration.RespCode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一条故障注入规则，用于压测和韧性测试，默认不开启
+ * service和method为 * 时匹配所有的服务和方法
+ *
+ * @author it楠老师
+ * @createTime 2023-08-01
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FaultRule {
+    
+    public static final String ANY = "*";
+    
+    // 匹配的接口全限定名
+    @Builder.Default
+    private String service = ANY;
+    
+    // 匹配的方法名
+    @Builder.Default
+    private String method = ANY;
+    
+    // 故障类型
+    private FaultType type;
+    
+    // 命中规则后触发故障的概率 0~1
+    @Builder.Default
+    private double probability = 1.0D;
+    
+    // 延迟的毫秒数，type为delay时生效
+    private long delay;
+    
+    // 返回的响应码，type为error时生效
+    @Builder.Default
+    private byte code = RespCode.FAIL.getCode();
+    
+    /**
+     * 判断当前规则是否匹配某个方法
+     * @param interfaceName 接口的全限定名
+     * @param methodName    方法名
+     * @return true 匹配
+     */
+    public boolean matches(String interfaceName, String methodName) {
+        return (ANY.equals(service) || service.equals(interfaceName))
+            && (ANY.equals(method) || method.equals(methodName));
+    }
+}
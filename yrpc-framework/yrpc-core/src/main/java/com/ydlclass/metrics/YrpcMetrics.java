@@ -0,0 +1,59 @@
+package com.ydlclass.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 一个简易的指标中心，保存计数器和瞬时值
+ * 指标名使用 . 分隔，如 yrpc.flush.frames
+ *
+ * @author it楠老师
+ * @createTime 2023-08-03
+ */
+public class YrpcMetrics {
+    
+    // 只增不减的计数器
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>(32);
+    
+    // 瞬时值，读取时才计算
+    private static final Map<String, Supplier<Number>> GAUGES = new ConcurrentHashMap<>(32);
+    
+    /**
+     * 获取一个计数器，不存在就创建
+     * @param name 指标名
+     * @return 计数器
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+    
+    /**
+     * 注册一个瞬时值，同名的会被覆盖
+     * @param name     指标名
+     * @param supplier 读取瞬时值的方法
+     */
+    public static void gauge(String name, Supplier<Number> supplier) {
+        GAUGES.put(name, supplier);
+    }
+    
+    /**
+     * 移除一个瞬时值
+     * @param name 指标名
+     */
+    public static void removeGauge(String name) {
+        GAUGES.remove(name);
+    }
+    
+    /**
+     * @return 当前所有指标的快照，按名字排序
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        GAUGES.forEach((name, supplier) -> snapshot.put(name, supplier.get()));
+        return snapshot;
+    }
+}
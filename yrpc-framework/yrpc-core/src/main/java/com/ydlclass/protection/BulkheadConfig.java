@@ -0,0 +1,39 @@
+package com.ydlclass.protection;
+
+import com.ydlclass.annotation.Bulkhead;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 舱壁的配置，可以通过ServiceConfig设置，也可以通过@Bulkhead注解声明
+ *
+ * @author it楠老师
+ * @createTime 2023-08-11
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkheadConfig {
+    
+    public static final String REJECT_OVERLOAD = "overload";
+    public static final String REJECT_RATE_LIMIT = "rateLimit";
+    
+    // 同时执行的最大调用数
+    @Builder.Default
+    private int maxConcurrency = 10;
+    
+    // 排队的最大调用数，0代表不排队
+    @Builder.Default
+    private int queueSize = 100;
+    
+    // 舱壁已满时的响应
+    @Builder.Default
+    private String rejectPolicy = REJECT_OVERLOAD;
+    
+    public static BulkheadConfig of(Bulkhead bulkhead) {
+        return new BulkheadConfig(bulkhead.maxConcurrency(), bulkhead.queueSize(), bulkhead.rejectPolicy());
+    }
+}
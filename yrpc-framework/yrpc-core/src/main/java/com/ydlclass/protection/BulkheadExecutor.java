@@ -0,0 +1,94 @@
+package com.ydlclass.protection;
+
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.metrics.YrpcMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 舱壁，一个服务或方法独占的线程池和有界队列
+ * 舱壁已满时立即拒绝，按照配置回复服务过载或者服务被限流，而不是占用公共的线程
+ * 指标：yrpc.bulkhead.<名字>.active、.queued、.saturation（(执行中+排队中)/(线程数+队列长度)）和.rejected
+ *
+ * @author it楠老师
+ * @createTime 2023-08-11
+ */
+@Slf4j
+public class BulkheadExecutor {
+    
+    private static final String METRIC_PREFIX = "yrpc.bulkhead.";
+    
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final RespCode rejectCode;
+    private final LongAdder rejected;
+    
+    /**
+     * @param name   舱壁的名字，服务级别为接口名，方法级别为接口名.方法名
+     * @param config 舱壁的配置
+     */
+    public BulkheadExecutor(String name, BulkheadConfig config) {
+        this.name = name;
+        int threads = Math.max(1, config.getMaxConcurrency());
+        int queueSize = Math.max(0, config.getQueueSize());
+        BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger index = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "yrpc-bulkhead-" + name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.rejectCode = BulkheadConfig.REJECT_RATE_LIMIT.equals(config.getRejectPolicy())
+            ? RespCode.RATE_LIMIT : RespCode.OVERLOAD;
+        this.rejected = YrpcMetrics.counter(METRIC_PREFIX + name + ".rejected");
+        int capacity = threads + queueSize;
+        YrpcMetrics.gauge(METRIC_PREFIX + name + ".active", executor::getActiveCount);
+        YrpcMetrics.gauge(METRIC_PREFIX + name + ".queued", () -> executor.getQueue().size());
+        YrpcMetrics.gauge(METRIC_PREFIX + name + ".saturation",
+            () -> (double) (executor.getActiveCount() + executor.getQueue().size()) / capacity);
+        log.info("舱壁【{}】已经创建，线程数【{}】，队列长度【{}】.", name, threads, queueSize);
+    }
+    
+    /**
+     * 在舱壁中执行一次方法调用
+     * @param invocation 方法调用
+     * @throws RejectedExecutionException 舱壁已满
+     */
+    public void execute(Runnable invocation) {
+        try {
+            executor.execute(invocation);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+    
+    /**
+     * @return 舱壁已满时回复的响应码
+     */
+    public RespCode getRejectCode() {
+        return rejectCode;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * 不再接收新的调用，已经提交的调用会执行完
+     */
+    public void shutdown() {
+        executor.shutdown();
+        YrpcMetrics.removeGauge(METRIC_PREFIX + name + ".active");
+        YrpcMetrics.removeGauge(METRIC_PREFIX + name + ".queued");
+        YrpcMetrics.removeGauge(METRIC_PREFIX + name + ".saturation");
+    }
+}
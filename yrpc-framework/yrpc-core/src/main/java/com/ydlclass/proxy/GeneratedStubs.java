@@ -0,0 +1,68 @@
+package com.ydlclass.proxy;
+
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.proxy.handler.RpcConsumerInvocationHandler;
+import com.ydlclass.stub.GeneratedNames;
+import com.ydlclass.stub.StubInvoker;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 加载yrpc-processor在编译期为接口生成的存根
+ * 存根的第i个方法调用StubInvoker#invoke(i, args)，这里按存根记录的签名把下标对应到RemoteMethod
+ *
+ * @author it楠老师
+ * @createTime 2023-08-09
+ */
+@Slf4j
+public class GeneratedStubs {
+
+    /**
+     * 创建接口的存根实例
+     * @param interfaceRef 接口
+     * @param handler      调用处理器，存根的所有方法最终都调用它的call方法
+     * @return 存根实例，没有生成存根或者存根和接口对不上时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T create(Class<T> interfaceRef, RpcConsumerInvocationHandler handler) {
+        String stubName = GeneratedNames.stubName(interfaceRef.getName());
+        try {
+            Class<?> stubClass = Class.forName(stubName, true, interfaceRef.getClassLoader());
+            String[] signatures = (String[]) stubClass.getField(GeneratedNames.SIGNATURES_FIELD).get(null);
+
+            Map<String, Method> methods = new HashMap<>();
+            for (Method method : interfaceRef.getMethods()) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    methods.putIfAbsent(MethodRegistry.signature(interfaceRef.getName(),
+                        method.getName(), method.getParameterTypes()), method);
+                }
+            }
+            // 接口修改后没有重新编译时，存根中的签名会对不上
+            RemoteMethod[] remoteMethods = new RemoteMethod[signatures.length];
+            for (int i = 0; i < signatures.length; i++) {
+                Method method = methods.remove(signatures[i]);
+                if (method == null) {
+                    log.warn("接口【{}】中没有存根记录的方法【{}】，不使用存根。", interfaceRef.getName(), signatures[i]);
+                    return null;
+                }
+                remoteMethods[i] = handler.toRemoteMethod(method);
+            }
+            if (!methods.isEmpty()) {
+                log.warn("接口【{}】的方法【{}】没有出现在存根中，不使用存根。", interfaceRef.getName(), methods.keySet());
+                return null;
+            }
+
+            StubInvoker invoker = (index, parametersValue) -> handler.call(remoteMethods[index], parametersValue);
+            return (T) stubClass.getConstructor(StubInvoker.class).newInstance(invoker);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            log.warn("接口【{}】的存根【{}】无法使用。", interfaceRef.getName(), stubName, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ydlclass.proxy;
+
+import com.ydlclass.annotation.Timeout;
+import com.ydlclass.annotation.TryTimes;
+import com.ydlclass.stream.YrpcStream;
+import lombok.Getter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 服务调用方引用的一个远程方法，生成代理时预先解析好
+ * 调用时不再读取注解、不再按名字查找压缩和序列化方式
+ *
+ * @author it楠老师
+ * @createTime 2023-08-08
+ */
+@Getter
+public class RemoteMethod {
+
+    // 等待响应的默认超时时间
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final String interfaceName;
+    private final String methodName;
+    private final Class<?>[] parametersType;
+    private final Class<?> returnType;
+
+    // 返回YrpcStream的方法发起的是服务端流式请求
+    private final boolean serverStream;
+
+    // 返回CompletableFuture的方法是异步方法，调用时直接返回future
+    private final boolean async;
+
+    // 在AsyncContext中调用同步方法时代替返回值，基本类型需要一个非null的默认值
+    private final Object placeholder;
+
+    // 重试次数和重试间隔，默认值0代表不重试
+    private final int tryTimes;
+    private final int intervalTime;
+
+    // 等待响应的超时时间，可以通过@Timeout注解为每个方法单独设置
+    private final long timeoutMillis;
+
+    // 压缩和序列化方式的编号
+    private final byte compressType;
+    private final byte serializeType;
+
+    public RemoteMethod(String interfaceName, Method method, byte compressType, byte serializeType) {
+        this.interfaceName = interfaceName;
+        this.methodName = method.getName();
+        this.parametersType = method.getParameterTypes();
+        this.returnType = method.getReturnType();
+        this.serverStream = YrpcStream.class.isAssignableFrom(method.getReturnType());
+        this.async = method.getReturnType() == CompletableFuture.class || method.getReturnType() == CompletionStage.class;
+        this.placeholder = method.getReturnType().isPrimitive() && method.getReturnType() != void.class
+            ? Array.get(Array.newInstance(method.getReturnType(), 1), 0) : null;
+        TryTimes tryTimesAnnotation = method.getAnnotation(TryTimes.class);
+        this.tryTimes = tryTimesAnnotation == null ? 0 : tryTimesAnnotation.tryTimes();
+        this.intervalTime = tryTimesAnnotation == null ? 0 : tryTimesAnnotation.intervalTime();
+        Timeout timeoutAnnotation = method.getAnnotation(Timeout.class);
+        this.timeoutMillis = timeoutAnnotation == null ? DEFAULT_TIMEOUT_MILLIS : timeoutAnnotation.timeoutMillis();
+        this.compressType = compressType;
+        this.serializeType = serializeType;
+    }
+}
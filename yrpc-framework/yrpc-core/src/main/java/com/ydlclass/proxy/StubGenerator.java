@@ -0,0 +1,455 @@
+package com.ydlclass.proxy;
+
+import com.ydlclass.proxy.handler.RpcConsumerInvocationHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务调用方的存根生成器，为接口直接生成一个实现类（隐藏类），替代jdk的动态代理
+ * 每个方法对应一个static final的RemoteMethod字段，方法体只做参数装箱，然后调用RpcConsumerInvocationHandler#call
+ * 调用过程中没有反射、没有注解查找，也不再经过Method到RemoteMethod的查表
+ * 字段的值通过隐藏类的classData传入，在静态代码块中赋值
+ *
+ * @author it楠老师
+ * @createTime 2023-08-08
+ */
+@Slf4j
+public class StubGenerator {
+
+    private static final String STUB_NAME = "com/ydlclass/proxy/YrpcStub";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String HANDLER = RpcConsumerInvocationHandler.class.getName().replace('.', '/');
+    private static final String HANDLER_DESC = "L" + HANDLER + ";";
+    private static final String REMOTE_METHOD = RemoteMethod.class.getName().replace('.', '/');
+    private static final String REMOTE_METHOD_DESC = "L" + REMOTE_METHOD + ";";
+    private static final String CALL_DESC = "(" + REMOTE_METHOD_DESC + "[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    // 类文件的版本号，对应java 17
+    private static final int CLASS_VERSION = 61;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // 单个方法的局部变量槽位上限，超出时需要wide指令，这里不支持
+    private static final int MAX_LOCALS = 255;
+
+    /**
+     * 为接口生成存根实例
+     * @param interfaceRef 接口
+     * @param handler      调用处理器，存根的所有方法最终都调用它的call方法
+     * @return 存根实例
+     * @throws Throwable 接口不可访问、方法参数过多等无法生成的情况
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T generate(Class<T> interfaceRef, RpcConsumerInvocationHandler handler) throws Throwable {
+        if (!Modifier.isPublic(interfaceRef.getModifiers())) {
+            throw new IllegalArgumentException("接口【" + interfaceRef.getName() + "】不是public的，无法生成存根。");
+        }
+
+        // 同样签名的方法可能来自多个父接口，只实现一次
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : interfaceRef.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.putIfAbsent(method.getName() + descriptor(method), method);
+            }
+        }
+        List<Method> stubMethods = new ArrayList<>(methods.values());
+
+        // classData：下标0为调用处理器，之后依次为每个方法对应的RemoteMethod
+        Object[] classData = new Object[stubMethods.size() + 1];
+        classData[0] = handler;
+        for (int i = 0; i < stubMethods.size(); i++) {
+            classData[i + 1] = handler.toRemoteMethod(stubMethods.get(i));
+        }
+
+        byte[] bytes = writeClass(interfaceRef, stubMethods);
+        MethodHandles.Lookup lookup = MethodHandles.lookup()
+            .defineHiddenClassWithClassData(bytes, classData, true);
+        Object stub = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        if (log.isDebugEnabled()) {
+            log.debug("已经为接口【{}】生成存根【{}】。", interfaceRef.getName(), lookup.lookupClass().getName());
+        }
+        return (T) stub;
+    }
+
+    private static byte[] writeClass(Class<?> interfaceRef, List<Method> methods) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(STUB_NAME);
+        int superClass = pool.classRef(OBJECT);
+        int interfaceClass = pool.classRef(internalName(interfaceRef));
+
+        // 先生成所有的方法体，常量池随之填满
+        List<byte[]> methodInfos = new ArrayList<>(methods.size() + 2);
+        methodInfos.add(constructor(pool));
+        methodInfos.add(staticInitializer(pool, methods.size()));
+        for (int i = 0; i < methods.size(); i++) {
+            methodInfos.add(stubMethod(pool, methods.get(i), i));
+        }
+        int handlerName = pool.utf8("HANDLER");
+        int handlerDesc = pool.utf8(HANDLER_DESC);
+        int[] fieldNames = new int[methods.size()];
+        for (int i = 0; i < methods.size(); i++) {
+            fieldNames[i] = pool.utf8("M" + i);
+        }
+        int remoteMethodDesc = pool.utf8(REMOTE_METHOD_DESC);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+
+        // 字段
+        out.writeShort(methods.size() + 1);
+        writeField(out, handlerName, handlerDesc);
+        for (int fieldName : fieldNames) {
+            writeField(out, fieldName, remoteMethodDesc);
+        }
+
+        // 方法
+        out.writeShort(methodInfos.size());
+        for (byte[] methodInfo : methodInfos) {
+            out.write(methodInfo);
+        }
+
+        // 类的属性
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeField(DataOutputStream out, int name, int descriptor) throws IOException {
+        out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(0);
+    }
+
+    /**
+     * public YrpcStub() { super(); }
+     */
+    private static byte[] constructor(ConstantPool pool) throws IOException {
+        Code code = new Code();
+        code.op(Op.ALOAD_0);
+        code.op(Op.INVOKESPECIAL, pool.methodRef(OBJECT, "<init>", "()V"));
+        code.op(Op.RETURN);
+        return method(pool, ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+    }
+
+    /**
+     * Object[] data = MethodHandles.classData(MethodHandles.lookup(), "_", Object[].class);
+     * HANDLER = data[0]; M0 = data[1]; ...
+     */
+    private static byte[] staticInitializer(ConstantPool pool, int methodCount) throws IOException {
+        Code code = new Code();
+        code.op(Op.INVOKESTATIC, pool.methodRef("java/lang/invoke/MethodHandles", "lookup",
+            "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+        code.op(Op.LDC_W, pool.string("_"));
+        code.op(Op.LDC_W, pool.classRef("[Ljava/lang/Object;"));
+        code.op(Op.INVOKESTATIC, pool.methodRef("java/lang/invoke/MethodHandles", "classData",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"));
+        code.op(Op.CHECKCAST, pool.classRef("[Ljava/lang/Object;"));
+
+        code.op(Op.DUP);
+        code.pushInt(0);
+        code.op(Op.AALOAD);
+        code.op(Op.CHECKCAST, pool.classRef(HANDLER));
+        code.op(Op.PUTSTATIC, pool.fieldRef(STUB_NAME, "HANDLER", HANDLER_DESC));
+        for (int i = 0; i < methodCount; i++) {
+            code.op(Op.DUP);
+            code.pushInt(i + 1);
+            code.op(Op.AALOAD);
+            code.op(Op.CHECKCAST, pool.classRef(REMOTE_METHOD));
+            code.op(Op.PUTSTATIC, pool.fieldRef(STUB_NAME, "M" + i, REMOTE_METHOD_DESC));
+        }
+        code.op(Op.POP);
+        code.op(Op.RETURN);
+        return method(pool, ACC_STATIC, "<clinit>", "()V", code, 4, 0);
+    }
+
+    /**
+     * public R method(A a, B b) { return (R) HANDLER.call(Mi, new Object[]{a, b}); }
+     * 基本类型的参数装箱，基本类型的返回值拆箱，没有参数时和jdk代理一样传null
+     */
+    private static byte[] stubMethod(ConstantPool pool, Method method, int index) throws IOException {
+        Class<?>[] parametersType = method.getParameterTypes();
+        int locals = 1;
+        for (Class<?> parameterType : parametersType) {
+            locals += slots(parameterType);
+        }
+        if (locals > MAX_LOCALS) {
+            throw new IllegalArgumentException("方法【" + method.getName() + "】的参数过多，无法生成存根。");
+        }
+
+        Code code = new Code();
+        code.op(Op.GETSTATIC, pool.fieldRef(STUB_NAME, "HANDLER", HANDLER_DESC));
+        code.op(Op.GETSTATIC, pool.fieldRef(STUB_NAME, "M" + index, REMOTE_METHOD_DESC));
+        if (parametersType.length == 0) {
+            code.op(Op.ACONST_NULL);
+        } else {
+            code.pushInt(parametersType.length);
+            code.op(Op.ANEWARRAY, pool.classRef(OBJECT));
+            int slot = 1;
+            for (int i = 0; i < parametersType.length; i++) {
+                Class<?> parameterType = parametersType[i];
+                code.op(Op.DUP);
+                code.pushInt(i);
+                code.local(loadOp(parameterType), slot);
+                if (parameterType.isPrimitive()) {
+                    Class<?> wrapper = MethodType.methodType(parameterType).wrap().returnType();
+                    code.op(Op.INVOKESTATIC, pool.methodRef(internalName(wrapper), "valueOf",
+                        "(" + parameterType.descriptorString() + ")" + wrapper.descriptorString()));
+                }
+                code.op(Op.AASTORE);
+                slot += slots(parameterType);
+            }
+        }
+        code.op(Op.INVOKEVIRTUAL, pool.methodRef(HANDLER, "call", CALL_DESC));
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            code.op(Op.POP);
+            code.op(Op.RETURN);
+        } else if (returnType.isPrimitive()) {
+            Class<?> wrapper = MethodType.methodType(returnType).wrap().returnType();
+            code.op(Op.CHECKCAST, pool.classRef(internalName(wrapper)));
+            code.op(Op.INVOKEVIRTUAL, pool.methodRef(internalName(wrapper), returnType.getName() + "Value",
+                "()" + returnType.descriptorString()));
+            code.op(returnOp(returnType));
+        } else {
+            if (returnType != Object.class) {
+                code.op(Op.CHECKCAST, pool.classRef(internalName(returnType)));
+            }
+            code.op(Op.ARETURN);
+        }
+        // 两个静态字段 + 数组 + dup + 下标 + 一个long/double参数
+        return method(pool, ACC_PUBLIC, method.getName(), descriptor(method), code, 8, locals);
+    }
+
+    private static byte[] method(ConstantPool pool, int access, String name, String descriptor,
+                                 Code code, int maxStack, int maxLocals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + code.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        // 只有一个Code属性，方法体中没有分支，不需要StackMapTable
+        out.writeShort(1);
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + code.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        code.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static String descriptor(Method method) {
+        return MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+    }
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.isArray() ? clazz.descriptorString() : clazz.getName().replace('.', '/');
+    }
+
+    private static int slots(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private static int loadOp(Class<?> type) {
+        if (type == long.class) {
+            return Op.LLOAD;
+        } else if (type == float.class) {
+            return Op.FLOAD;
+        } else if (type == double.class) {
+            return Op.DLOAD;
+        } else if (type.isPrimitive()) {
+            return Op.ILOAD;
+        }
+        return Op.ALOAD;
+    }
+
+    private static int returnOp(Class<?> type) {
+        if (type == long.class) {
+            return Op.LRETURN;
+        } else if (type == float.class) {
+            return Op.FRETURN;
+        } else if (type == double.class) {
+            return Op.DRETURN;
+        }
+        return Op.IRETURN;
+    }
+
+    /**
+     * 用到的字节码指令
+     */
+    private static final class Op {
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int ILOAD = 0x15;
+        static final int LLOAD = 0x16;
+        static final int FLOAD = 0x17;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int ALOAD_0 = 0x2a;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int IRETURN = 0xac;
+        static final int LRETURN = 0xad;
+        static final int FRETURN = 0xae;
+        static final int DRETURN = 0xaf;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int PUTSTATIC = 0xb3;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+    }
+
+    /**
+     * 方法体的字节码
+     */
+    private static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        // 带一个常量池下标的指令
+        void op(int opcode, int index) {
+            bytes.write(opcode);
+            bytes.write(index >>> 8);
+            bytes.write(index);
+        }
+
+        void local(int opcode, int slot) {
+            bytes.write(opcode);
+            bytes.write(slot);
+        }
+
+        void pushInt(int value) {
+            if (value <= 5) {
+                bytes.write(Op.ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                bytes.write(Op.BIPUSH);
+                bytes.write(value);
+            } else {
+                bytes.write(Op.SIPUSH);
+                bytes.write(value >>> 8);
+                bytes.write(value);
+            }
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * 常量池，相同的常量只登记一次
+     */
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int CLASS = 7;
+        private static final int STRING = 8;
+        private static final int FIELD_REF = 9;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        // 常量池的下标从1开始
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = indexes.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+            return register("U" + value);
+        }
+
+        int classRef(String internalName) throws IOException {
+            return ref(CLASS, "C" + internalName, utf8(internalName));
+        }
+
+        int string(String value) throws IOException {
+            return ref(STRING, "S" + value, utf8(value));
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return ref(FIELD_REF, "F" + owner + "." + name + descriptor, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return ref(METHOD_REF, "M" + owner + "." + name + descriptor, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            return ref(NAME_AND_TYPE, "N" + name + descriptor, utf8(name), utf8(descriptor));
+        }
+
+        private int ref(int tag, String key, int... operands) throws IOException {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            out.writeByte(tag);
+            for (int operand : operands) {
+                out.writeShort(operand);
+            }
+            return register(key);
+        }
+
+        private int register(String key) {
+            indexes.put(key, count);
+            return count++;
+        }
+
+        void writeTo(DataOutputStream classOut) throws IOException {
+            out.flush();
+            classOut.writeShort(count);
+            bytes.writeTo(classOut);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.ydlclass.proxy.handler;
 
-import com.ydlclass.NettyBootstrapInitializer;
+import com.ydlclass.AsyncContext;
 import com.ydlclass.YrpcBootstrap;
-import com.ydlclass.annotation.TryTimes;
 import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.config.Configuration;
 import com.ydlclass.discovery.Registry;
 import com.ydlclass.enumeration.RequestType;
 import com.ydlclass.exceptions.DiscoveryException;
 import com.ydlclass.exceptions.NetworkException;
 import com.ydlclass.protection.CircuitBreaker;
+import com.ydlclass.proxy.RemoteMethod;
 import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.stream.RemoteStream;
+import com.ydlclass.transport.ConnectionManager;
 import com.ydlclass.transport.message.RequestPayload;
 import com.ydlclass.transport.message.YrpcRequest;
 import io.netty.channel.Channel;
@@ -20,11 +23,11 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -43,10 +46,28 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
     private final Class<?> interfaceRef;
     private String group;
     
+    // 接口中的方法预先解析成远程方法，调用时直接取
+    private final Map<Method, RemoteMethod> remoteMethods = new HashMap<>(16);
+    
     public RpcConsumerInvocationHandler(Registry registry, Class<?> interfaceRef,String group) {
         this.registry = registry;
         this.interfaceRef = interfaceRef;
         this.group = group;
+        for (Method method : interfaceRef.getMethods()) {
+            remoteMethods.put(method, toRemoteMethod(method));
+        }
+    }
+    
+    /**
+     * 将接口中的方法解析成远程方法，压缩和序列化方式取生成代理时的配置
+     * @param method 接口中的方法
+     * @return 远程方法
+     */
+    public RemoteMethod toRemoteMethod(Method method) {
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        return new RemoteMethod(interfaceRef.getName(), method,
+            CompressorFactory.getCompressor(configuration.getCompressType()).getCode(),
+            SerializerFactory.getSerializer(configuration.getSerializeType()).getCode());
     }
     
     
@@ -70,210 +91,195 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        
-        // 从接口中获取判断是否需要重试
-        TryTimes tryTimesAnnotation = method.getAnnotation(TryTimes.class);
-        
-        // 默认值0,代表不重试
-        int tryTimes = 0;
-        int intervalTime = 0;
-        if (tryTimesAnnotation != null) {
-            tryTimes = tryTimesAnnotation.tryTimes();
-            intervalTime = tryTimesAnnotation.intervalTime();
+        RemoteMethod remoteMethod = remoteMethods.get(method);
+        if (remoteMethod == null) {
+            // Object中的方法，和jdk代理原来的行为一样，也发起远程调用
+            remoteMethod = toRemoteMethod(method);
+        }
+        return call(remoteMethod, args);
+    }
+    
+    /**
+     * jdk代理和生成的存根共用的调用过程
+     * 1、返回CompletableFuture的方法直接返回future，不阻塞调用线程
+     * 2、在AsyncContext中调用的同步方法，future交给AsyncContext，返回值使用默认值占位
+     * 3、其他的同步方法等待future完成
+     * @param remoteMethod 预先解析好的远程方法
+     * @param args         参数，没有参数时为null
+     * @return 返回值
+     */
+    public Object call(RemoteMethod remoteMethod, Object[] args) {
+        CompletableFuture<Object> future = callAsync(remoteMethod, args, remoteMethod.getTryTimes());
+        if (remoteMethod.isAsync()) {
+            return future;
+        }
+        if (AsyncContext.capture(future)) {
+            return remoteMethod.getPlaceholder();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("执行远程方法" + remoteMethod.getMethodName() + "时被中断。", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("执行远程方法" + remoteMethod.getMethodName() + "调用失败。", e.getCause());
         }
+    }
+    
+    /**
+     * 发起调用，失败后经过重试间隔再次发起，整个过程都是future的组合，不占用调用线程
+     * 回调在netty的线程或者重试的定时线程中执行
+     * @param remoteMethod 远程方法
+     * @param args         参数
+     * @param tryTimes     剩余的重试次数
+     * @return 调用的结果
+     */
+    private CompletableFuture<Object> callAsync(RemoteMethod remoteMethod, Object[] args, int tryTimes) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        send(remoteMethod, args).whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+                return;
+            }
+            // 重试次数用完了
+            if (tryTimes <= 0) {
+                log.error("对方法【{}】进行远程调用时，重试{}次，依然不可调用",
+                    remoteMethod.getMethodName(), remoteMethod.getTryTimes(), throwable);
+                result.completeExceptionally(throwable);
+                return;
+            }
+            // 固定的重试间隔有一定的问题，重试风暴
+            log.error("在进行第{}次重试时发生异常.", remoteMethod.getTryTimes() - tryTimes + 1, throwable);
+            Executor delayed = CompletableFuture.delayedExecutor(remoteMethod.getIntervalTime(), TimeUnit.MILLISECONDS);
+            CompletableFuture.runAsync(() -> callAsync(remoteMethod, args, tryTimes - 1)
+                .whenComplete((retryValue, retryThrowable) -> {
+                    if (retryThrowable == null) {
+                        result.complete(retryValue);
+                    } else {
+                        result.completeExceptionally(retryThrowable);
+                    }
+                }), delayed);
+        });
+        return result;
+    }
+    
+    /**
+     * 发起一次调用，报文写出以后立即返回，响应在MySimpleChannelInboundHandler中完成future
+     * @param remoteMethod 远程方法
+     * @param args         参数
+     * @return 一次调用的结果，超时后以TimeoutException结束
+     */
+    private CompletableFuture<Object> send(RemoteMethod remoteMethod, Object[] args) {
+        /*
+         * ------------------ 1、封装报文 ---------------------------
+         */
+        RequestPayload requestPayload = RequestPayload.builder()
+            .interfaceName(remoteMethod.getInterfaceName())
+            .methodName(remoteMethod.getMethodName())
+            .parametersType(remoteMethod.getParametersType())
+            .parametersValue(args)
+            .returnType(remoteMethod.getReturnType())
+            .build();
         
+        // 创建一个请求，返回YrpcStream的方法发起的是服务端流式请求
+        boolean serverStream = remoteMethod.isServerStream();
+        YrpcRequest yrpcRequest = YrpcRequest.builder()
+            .requestId(YrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
+            .compressType(remoteMethod.getCompressType())
+            .requestType(serverStream ? RequestType.SERVER_STREAM.getId() : RequestType.REQUEST.getId())
+            .serializeType(remoteMethod.getSerializeType())
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(requestPayload)
+            .build();
         
-        while (true) {
-            // 什么情况下需要重试，1、异常   2、响应有问题 code == 500
-            /*
-             * ------------------ 1、封装报文 ---------------------------
-             */
-            RequestPayload requestPayload = RequestPayload.builder()
-                .interfaceName(interfaceRef.getName())
-                .methodName(method.getName())
-                .parametersType(method.getParameterTypes())
-                .parametersValue(args)
-                .returnType(method.getReturnType())
-                .build();
-            
-            // 创建一个请求
-            YrpcRequest yrpcRequest = YrpcRequest.builder()
-                .requestId(YrpcBootstrap.getInstance().getConfiguration().getIdGenerator().getId())
-                .compressType(CompressorFactory.getCompressor(YrpcBootstrap.getInstance().getConfiguration().getCompressType()).getCode())
-                .requestType(RequestType.REQUEST.getId())
-                .serializeType(SerializerFactory.getSerializer(YrpcBootstrap.getInstance().getConfiguration().getSerializeType()).getCode())
-                .timeStamp(System.currentTimeMillis())
-                .requestPayload(requestPayload)
-                .build();
-            
-            // 2、将请求存入本地线程，需要在合适的时候remove
-            YrpcBootstrap.REQUEST_THREAD_LOCAL.set(yrpcRequest);
-            
+        // 2、将请求存入本地线程，负载均衡时使用，选出地址以后就remove
+        YrpcBootstrap.REQUEST_THREAD_LOCAL.set(yrpcRequest);
+        InetSocketAddress address;
+        try {
             // 3、发现服务，从注册中心拉取服务列表，并通过客户端负载均衡寻找一个可用的服务
             // 传入服务的名字,返回ip+端口
-            InetSocketAddress address = YrpcBootstrap.getInstance()
-                .getConfiguration().getLoadBalancer().selectServiceAddress(interfaceRef.getName(),group);
-            if (log.isDebugEnabled()) {
-                log.debug("服务调用方，发现了服务【{}】的可用主机【{}】.",
-                    interfaceRef.getName(), address);
-            }
-            
-            // 4、获取当前地址所对应的断路器，如果断路器是打开的则不发送请求，抛出异常
-            Map<SocketAddress, CircuitBreaker> everyIpCircuitBreaker = YrpcBootstrap.getInstance()
-                .getConfiguration().getEveryIpCircuitBreaker();
-            CircuitBreaker circuitBreaker = everyIpCircuitBreaker.get(address);
-            if (circuitBreaker == null) {
-                circuitBreaker = new CircuitBreaker(10, 0.5F);
-                everyIpCircuitBreaker.put(address, circuitBreaker);
-            }
-            
-            try {
-                // 如果断路器是打开的
-                if (yrpcRequest.getRequestType() != RequestType.HEART_BEAT.getId() && circuitBreaker.isBreak()) {
-                    // 定期打开
-                    Timer timer = new Timer();
-                    timer.schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            YrpcBootstrap.getInstance()
-                                .getConfiguration().getEveryIpCircuitBreaker()
-                                .get(address).reset();
-                        }
-                    }, 5000);
-                    
-                    throw new RuntimeException("当前断路器已经开启，无法发送请求");
-                }
-                
-                // 使用netty连接服务器，发送 调用的 服务的名字+方法名字+参数列表，得到结果
-                // 定义线程池，EventLoopGroup
-                // q：整个连接过程放在这里行不行，也就意味着每次调用都会产生一个新的netty连接。如何缓存我们的连接
-                // 也就意味着，每次在此处建立一个新的连接是不合适的
-                
-                // 解决方案？缓存channel，尝试从缓存中获取channel，如果未获取，则创建新的连接，并进行缓存
-                
-                // 5、尝试获取一个可用通道
-                Channel channel = getAvailableChannel(address);
+            address = YrpcBootstrap.getInstance()
+                .getConfiguration().getLoadBalancer().selectServiceAddress(interfaceRef.getName(), group);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            YrpcBootstrap.REQUEST_THREAD_LOCAL.remove();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("服务调用方，发现了服务【{}】的可用主机【{}】.",
+                interfaceRef.getName(), address);
+        }
+        
+        // 4、获取当前地址所对应的断路器，如果断路器是打开的则不发送请求
+        Map<SocketAddress, CircuitBreaker> everyIpCircuitBreaker = YrpcBootstrap.getInstance()
+            .getConfiguration().getEveryIpCircuitBreaker();
+        CircuitBreaker circuitBreaker = everyIpCircuitBreaker.get(address);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker(10, 0.5F);
+            everyIpCircuitBreaker.put(address, circuitBreaker);
+        }
+        if (circuitBreaker.isBreak()) {
+            // 定期打开，使用定时的future，不为每次调用创建线程
+            CompletableFuture.runAsync(circuitBreaker::reset,
+                CompletableFuture.delayedExecutor(5000, TimeUnit.MILLISECONDS));
+            circuitBreaker.recordErrorRequest();
+            return CompletableFuture.failedFuture(new RuntimeException("当前断路器已经开启，无法发送请求"));
+        }
+        
+        // 5、尝试获取一个可用通道，已经建立的通道直接复用，否则异步建立连接，等待连接的时间也算在超时时间内
+        CircuitBreaker breaker = circuitBreaker;
+        long timeoutMillis = remoteMethod.getTimeoutMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        CompletableFuture<Object> future = getAvailableChannelAsync(address)
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .thenCompose(channel -> {
                 if (log.isDebugEnabled()) {
                     log.debug("获取了和【{}】建立的连接通道,准备发送数据.", address);
                 }
-                
-                /*
-                 * ------------------同步策略-------------------------
-                 */
-//                ChannelFuture channelFuture = channel.writeAndFlush(new Object()).await();
-                // 需要学习channelFuture的简单的api get 阻塞获取结果，getNow 获取当前的结果，如果未处理完成，返回null
-//                if(channelFuture.isDone()){
-//                    Object object = channelFuture.getNow();
-//                } else if( !channelFuture.isSuccess() ){
-//                    // 需要捕获异常,可以捕获异步任务中的异常
-//                    Throwable cause = channelFuture.cause();
-//                    throw new RuntimeException(cause);
-//                }
-                
-                /*
-                 * ------------------异步策略-------------------------
-                 */
-                // 6、写出报文
-                CompletableFuture<Object> completableFuture = new CompletableFuture<>();
-                // 将 completableFuture 暴露出去
-                YrpcBootstrap.PENDING_REQUEST.put(yrpcRequest.getRequestId(), completableFuture);
-                
-                // 这里这几 writeAndFlush 写出一个请求，这个请求的实例就会进入pipeline执行出站的一系列操作
-                // 我们可以想象得到，第一个出站程序一定是将 yrpcRequest --> 二进制的报文
+                // 连接用掉的时间从超时时间中扣除，至少留1毫秒，到期时由超时机制统一结束
+                long remainingMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                // 服务端流式请求，数据帧由流自己接收，这里直接返回
+                if (serverStream) {
+                    return CompletableFuture.completedFuture(RemoteStream.open(channel, yrpcRequest, remainingMillis));
+                }
+            
+                // 6、写出报文，将 completableFuture 挂起并且暴露，在得到服务提供方的响应的时候调用complete方法
+                // 超时后future以TimeoutException结束，并从挂起的请求中移除
+                CompletableFuture<Object> completableFuture = YrpcBootstrap.PENDING_REQUEST.register(
+                    yrpcRequest.getRequestId(), channel, remainingMillis);
                 channel.writeAndFlush(yrpcRequest).addListener((ChannelFutureListener) promise -> {
-                    // 当前的promise将来返回的结果是什么，writeAndFlush的返回结果
-                    // 一旦数据被写出去，这个promise也就结束了
-                    // 但是我们想要的是什么？  服务端给我们的返回值，所以这里处理completableFuture是有问题的
-                    // 是不是应该将 completableFuture 挂起并且暴露，并且在得到服务提供方的响应的时候调用complete方法
-//                    if(promise.isDone()){
-//                        completableFuture.complete(promise.getNow());
-//                    }
-                    
-                    // 只需要处理以下异常就行了
+                    // 一旦数据被写出去，这个promise也就结束了，只需要处理写出时的异常
                     if (!promise.isSuccess()) {
                         completableFuture.completeExceptionally(promise.cause());
                     }
                 });
-                
-                // 7、清理threadLocal
-                YrpcBootstrap.REQUEST_THREAD_LOCAL.remove();
-                
-                // 如果没有地方处理这个 completableFuture ，这里会阻塞，等待complete方法的执行
-                // q: 我们需要在哪里调用complete方法得到结果，很明显 pipeline 中最终的handler的处理结果
-                
-                // 8、获得响应的结果
-                
-                Object result = completableFuture.get(10, TimeUnit.SECONDS);
-                // 记录成功的请求
-                circuitBreaker.recordRequest();
-                return result;
-            } catch (Exception e) {
-                // 次数减一，并且等待固定时间，固定时间有一定的问题，重试风暴
-                tryTimes--;
-                // 记录错误的次数
-                circuitBreaker.recordErrorRequest();
-                try {
-                    Thread.sleep(intervalTime);
-                } catch (InterruptedException ex) {
-                    log.error("在进行重试时发生异常.", ex);
-                }
-                if (tryTimes < 0) {
-                    log.error("对方法【{}】进行远程调用时，重试{}次，依然不可调用",
-                        method.getName(), tryTimes, e);
-                    break;
-                }
-                log.error("在进行第{}次重试时发生异常.", 3 - tryTimes, e);
+                return completableFuture;
+            });
+        
+        // 8、记录请求的结果
+        return future.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                breaker.recordRequest();
+            } else {
+                breaker.recordErrorRequest();
             }
-        }
-        throw new RuntimeException("执行远程方法" + method.getName() + "调用失败。");
+        });
     }
     
     
     /**
-     * 根据地址获取一个可用的通道
-     * @param address
-     * @return
+     * 根据地址获取一个可用的通道，双向流也复用这里缓存的通道
+     * @param address 服务提供方的地址
+     * @return 通道
      */
-    private Channel getAvailableChannel(InetSocketAddress address) {
-        
-        // 1、尝试从缓存中获取
-        Channel channel = YrpcBootstrap.CHANNEL_CACHE.get(address);
-        
-        // 2、拿不到就去建立连接
-        if (channel == null) {
-            // await 方法会阻塞，会等待连接成功在返回，netty还提供了异步处理的逻辑
-            // sync和await都是阻塞当前线程，获取返回值（连接的过程是异步的，发生数据的过程是异步的）
-            // 如果发生了异常，sync会主动在主线程抛出异常，await不会，异常在子线程中处理需要使用future中处理
-//                    channel = NettyBootstrapInitializer.getBootstrap()
-//                        .connect(address).await().channel();
-            
-            // 使用addListener执行的异步操作
-            CompletableFuture<Channel> channelFuture = new CompletableFuture<>();
-            NettyBootstrapInitializer.getBootstrap().connect(address).addListener(
-                (ChannelFutureListener) promise -> {
-                    if (promise.isDone()) {
-                        // 异步的，我们已经完成
-                        if (log.isDebugEnabled()) {
-                            log.debug("已经和【{}】成功建立了连接。", address);
-                        }
-                        channelFuture.complete(promise.channel());
-                    } else if (!promise.isSuccess()) {
-                        channelFuture.completeExceptionally(promise.cause());
-                    }
-                }
-            );
-
-            
-            // 阻塞获取channel
-            try {
-                channel = channelFuture.get(3, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                log.error("获取通道时，发生异常。", e);
-                throw new DiscoveryException(e);
-            }
-            
-            // 缓存channel
-            YrpcBootstrap.CHANNEL_CACHE.put(address, channel);
+    public static Channel getAvailableChannel(InetSocketAddress address) {
+        // 阻塞获取channel
+        Channel channel;
+        try {
+            channel = getAvailableChannelAsync(address).get(3, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            log.error("获取通道时，发生异常。", e);
+            throw new DiscoveryException(e);
         }
         
         if (channel == null) {
@@ -283,4 +289,14 @@ public class RpcConsumerInvocationHandler implements InvocationHandler {
         
         return channel;
     }
+    
+    /**
+     * 根据地址异步获取一个可用的通道，由连接管理从该地址的连接池中选择，池中没有连接时异步建立
+     * 并发的调用方共用同一次连接的建立，不会各自建立连接
+     * @param address 服务提供方的地址
+     * @return 连接可用以后完成的future
+     */
+    public static CompletableFuture<Channel> getAvailableChannelAsync(InetSocketAddress address) {
+        return ConnectionManager.acquire(address);
+    }
 }
@@ -1,5 +1,11 @@
 package com.ydlclass.serialize;
 
+import com.ydlclass.exceptions.SerializeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * 序列化器
  *
@@ -15,6 +21,24 @@ public interface Serializer {
      */
     byte[] serialize(Object object);
     
+    /**
+     * 将对象直接序列化到输出流中，编码器会传入一个包装了ByteBuf的流，避免中间的字节数组拷贝
+     * 默认实现退化为先序列化成字节数组再写出，自定义的序列化器可以按需覆盖
+     * @param object 待序列化的对象实例
+     * @param out    目标输出流，方法内部不负责关闭
+     */
+    default void serialize(Object object, OutputStream out) {
+        byte[] bytes = serialize(object);
+        if (bytes == null) {
+            return;
+        }
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new SerializeException(e);
+        }
+    }
+    
     /**
      * 反序列化的方法
      *
@@ -25,4 +49,28 @@ public interface Serializer {
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
     
+    /**
+     * 直接从输入流中反序列化，解码器会传入一个包装了ByteBuf的流，避免拷贝出负载的字节数组
+     * 默认实现退化为先读出字节数组再反序列化，自定义的序列化器可以按需覆盖
+     * @param in    待反序列化的输入流，方法内部不负责关闭
+     * @param clazz 目标类的class对象
+     * @param <T>   目标类泛型
+     * @return 目标实例
+     */
+    default <T> T deserialize(InputStream in, Class<T> clazz) {
+        try {
+            return deserialize(in.readAllBytes(), clazz);
+        } catch (IOException e) {
+            throw new SerializeException(e);
+        }
+    }
+    
+    /**
+     * 按Object反序列化时能否还原出原来的类型，不能还原的序列化方式（如json）不参与请求合并
+     * @return true 能还原
+     */
+    default boolean keepsType() {
+        return true;
+    }
+    
 }
@@ -1,6 +1,7 @@
 package com.ydlclass.serialize;
 
 import com.ydlclass.config.ObjectWrapper;
+import com.ydlclass.serialize.impl.CompactSerializer;
 import com.ydlclass.serialize.impl.HessianSerializer;
 import com.ydlclass.serialize.impl.JdkSerializer;
 import com.ydlclass.serialize.impl.JsonSerializer;
@@ -22,13 +23,16 @@ public class SerializerFactory {
         ObjectWrapper<Serializer> jdk = new  ObjectWrapper<>((byte) 1, "jdk", new JdkSerializer());
         ObjectWrapper<Serializer> json = new  ObjectWrapper<>((byte) 2, "json", new JsonSerializer());
         ObjectWrapper<Serializer> hessian = new  ObjectWrapper<>((byte) 3, "hessian", new HessianSerializer());
+        ObjectWrapper<Serializer> compact = new  ObjectWrapper<>(CompactSerializer.CODE, CompactSerializer.NAME, new CompactSerializer());
         SERIALIZER_CACHE.put("jdk",jdk);
         SERIALIZER_CACHE.put("json",json);
         SERIALIZER_CACHE.put("hessian",hessian);
+        SERIALIZER_CACHE.put(CompactSerializer.NAME,compact);
     
         SERIALIZER_CACHE_CODE.put((byte) 1, jdk);
         SERIALIZER_CACHE_CODE.put((byte) 2, json);
         SERIALIZER_CACHE_CODE.put((byte) 3, hessian);
+        SERIALIZER_CACHE_CODE.put(CompactSerializer.CODE, compact);
     }
     
     /**
@@ -0,0 +1,202 @@
+package com.ydlclass.serialize.compact;
+
+import com.ydlclass.exceptions.SerializeException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 一个类的字段顺序，对象按这个顺序依次写出字段的值，不写字段名
+ * 1、父类的字段在前，同一个类的字段按名字排序，与反射返回的顺序无关，两端的类相同时顺序一定相同
+ * 2、基本类型的字段直接写值，不写类型标记
+ * 3、普通的类使用无参构造方法创建对象（可以是private的），record使用规范构造方法，两者都没有的类不能使用compact序列化
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+final class ClassSchema {
+
+    static final byte REF = 0;
+    static final byte BOOLEAN = 1;
+    static final byte BYTE = 2;
+    static final byte CHAR = 3;
+    static final byte SHORT = 4;
+    static final byte INT = 5;
+    static final byte LONG = 6;
+    static final byte FLOAT = 7;
+    static final byte DOUBLE = 8;
+
+    private static final ClassValue<ClassSchema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected ClassSchema computeValue(Class<?> type) {
+            return new ClassSchema(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final Field[] fields;
+    private final byte[] kinds;
+    private final Constructor<?> constructor;
+    private final boolean record;
+
+    static ClassSchema of(Class<?> type) {
+        return SCHEMAS.get(type);
+    }
+
+    private ClassSchema(Class<?> type) {
+        this.type = type;
+        this.record = type.isRecord();
+        try {
+            List<Field> list = new ArrayList<>();
+            if (record) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] parameterTypes = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    list.add(type.getDeclaredField(components[i].getName()));
+                    parameterTypes[i] = components[i].getType();
+                }
+                constructor = type.getDeclaredConstructor(parameterTypes);
+            } else {
+                collectFields(type, list);
+                constructor = instantiator(type);
+            }
+            constructor.setAccessible(true);
+            fields = list.toArray(new Field[0]);
+            kinds = new byte[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setAccessible(true);
+                kinds[i] = kindOf(fields[i].getType());
+            }
+        } catch (SerializeException e) {
+            throw e;
+        } catch (NoSuchFieldException | NoSuchMethodException | RuntimeException e) {
+            throw new SerializeException("类【" + type.getName() + "】不能使用compact序列化：" + e.getMessage());
+        }
+    }
+
+    private static void collectFields(Class<?> type, List<Field> list) {
+        if (type == Object.class || type == null) {
+            return;
+        }
+        collectFields(type.getSuperclass(), list);
+        Field[] declared = type.getDeclaredFields();
+        Arrays.sort(declared, Comparator.comparing(Field::getName));
+        for (Field field : declared) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                list.add(field);
+            }
+        }
+    }
+
+    private static Constructor<?> instantiator(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new SerializeException("类【" + type.getName() + "】是接口或者抽象类。");
+        }
+        try {
+            return type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new SerializeException("类【" + type.getName() + "】没有无参构造方法，也不是record，不能使用compact序列化。");
+        }
+    }
+
+    private static byte kindOf(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REF;
+        }
+        if (type == int.class) {
+            return INT;
+        } else if (type == long.class) {
+            return LONG;
+        } else if (type == boolean.class) {
+            return BOOLEAN;
+        } else if (type == double.class) {
+            return DOUBLE;
+        } else if (type == byte.class) {
+            return BYTE;
+        } else if (type == char.class) {
+            return CHAR;
+        } else if (type == short.class) {
+            return SHORT;
+        }
+        return FLOAT;
+    }
+
+    void write(CompactWriter out, Object value, int depth) {
+        try {
+            out.writeVarInt(fields.length);
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                switch (kinds[i]) {
+                    case INT -> out.writeZigZag(field.getInt(value));
+                    case LONG -> out.writeZigZag(field.getLong(value));
+                    case BOOLEAN -> out.writeByte(field.getBoolean(value) ? 1 : 0);
+                    case DOUBLE -> out.writeLongLE(Double.doubleToRawLongBits(field.getDouble(value)));
+                    case BYTE -> out.writeByte(field.getByte(value));
+                    case CHAR -> out.writeVarInt(field.getChar(value));
+                    case SHORT -> out.writeZigZag(field.getShort(value));
+                    case FLOAT -> out.writeIntLE(Float.floatToRawIntBits(field.getFloat(value)));
+                    default -> out.writeValue(field.get(value), depth);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new SerializeException(e);
+        }
+    }
+
+    Object read(CompactReader in, int depth) {
+        int count = in.readVarInt();
+        if (count != fields.length) {
+            throw new SerializeException("类【" + type.getName() + "】在报文中有【" + count + "】个字段，本地有【"
+                + fields.length + "】个，两端的类不一致。");
+        }
+        try {
+            if (record) {
+                Object[] arguments = new Object[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    arguments[i] = readField(in, kinds[i], depth);
+                }
+                return constructor.newInstance(arguments);
+            }
+            Object value = constructor.newInstance();
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                switch (kinds[i]) {
+                    case INT -> field.setInt(value, in.readZigZagInt());
+                    case LONG -> field.setLong(value, in.readZigZagLong());
+                    case BOOLEAN -> field.setBoolean(value, in.readByte() != 0);
+                    case DOUBLE -> field.setDouble(value, Double.longBitsToDouble(in.readLongLE()));
+                    case BYTE -> field.setByte(value, in.readByte());
+                    case CHAR -> field.setChar(value, (char) in.readVarInt());
+                    case SHORT -> field.setShort(value, (short) in.readZigZagInt());
+                    case FLOAT -> field.setFloat(value, Float.intBitsToFloat(in.readIntLE()));
+                    default -> field.set(value, in.readValue(depth));
+                }
+            }
+            return value;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SerializeException(e);
+        }
+    }
+
+    private static Object readField(CompactReader in, byte kind, int depth) {
+        return switch (kind) {
+            case INT -> in.readZigZagInt();
+            case LONG -> in.readZigZagLong();
+            case BOOLEAN -> in.readByte() != 0;
+            case DOUBLE -> Double.longBitsToDouble(in.readLongLE());
+            case BYTE -> in.readByte();
+            case CHAR -> (char) in.readVarInt();
+            case SHORT -> (short) in.readZigZagInt();
+            case FLOAT -> Float.intBitsToFloat(in.readIntLE());
+            default -> in.readValue(depth);
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package com.ydlclass.serialize.compact;
+
+import com.ydlclass.exceptions.SerializeException;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.StreamPayload;
+
+import java.io.ObjectInputFilter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * compact序列化的类编号
+ * 1、登记过编号的类在报文中只写一个变长整数，没有登记的类第一次出现时写类名，同一个报文中再出现时写它在报文中的序号
+ * 2、编号小于USER_ID_START的是内置的类，只能在末尾追加，不能调整顺序
+ * 3、业务的类从USER_ID_START开始登记，服务调用方和服务提供方必须使用同样的编号
+ * 4、报文中的类名来自对端，只加载登记过的类、java和javax的类以及允许列表中的类，其他的类名直接拒绝
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+public class CompactClassRegistry {
+
+    public static final int USER_ID_START = 64;
+
+    // 内置的类，下标加一就是编号，只能在末尾追加
+    private static final Class<?>[] BUILTIN = {
+        Object.class, String.class, Class.class,
+        Boolean.class, Byte.class, Short.class, Character.class, Integer.class, Long.class, Float.class, Double.class,
+        boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class, double.class,
+        void.class, Void.class,
+        boolean[].class, byte[].class, short[].class, char[].class, int[].class, long[].class, float[].class,
+        double[].class, Object[].class, String[].class, Class[].class,
+        Collection.class, List.class, ArrayList.class, LinkedList.class, Set.class, HashSet.class, LinkedHashSet.class,
+        TreeSet.class, Map.class, HashMap.class, LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class,
+        BigDecimal.class, BigInteger.class, Date.class, Number.class,
+        RequestPayload.class, BatchPayload.class, StreamPayload.class
+    };
+
+    private static final Map<Class<?>, Integer> IDS = new ConcurrentHashMap<>(128);
+    private static final Map<Integer, Class<?>> CLASSES = new ConcurrentHashMap<>(128);
+
+    // 按类名加载的类
+    private static final Map<String, Class<?>> NAMED = new ConcurrentHashMap<>(64);
+
+    // 允许按类名加载的类，以.结尾的是包名前缀，其他的是完整的类名
+    private static final List<String> ALLOWED = new CopyOnWriteArrayList<>(List.of("java.", "javax."));
+
+    static {
+        for (int i = 0; i < BUILTIN.length; i++) {
+            IDS.put(BUILTIN[i], i + 1);
+            CLASSES.put(i + 1, BUILTIN[i]);
+        }
+    }
+
+    /**
+     * 登记一个业务的类
+     * @param clazz 类
+     * @param id    编号，不能小于USER_ID_START
+     */
+    public static synchronized void register(Class<?> clazz, int id) {
+        if (id < USER_ID_START) {
+            throw new SerializeException("业务的类编号不能小于【" + USER_ID_START + "】，【" + clazz.getName() + "】的编号为【" + id + "】。");
+        }
+        Class<?> exists = CLASSES.get(id);
+        Integer existsId = IDS.get(clazz);
+        if ((exists != null && exists != clazz) || (existsId != null && existsId != id)) {
+            throw new SerializeException("类【" + clazz.getName() + "】的编号【" + id + "】与已经登记的编号冲突。");
+        }
+        IDS.put(clazz, id);
+        CLASSES.put(id, clazz);
+    }
+
+    /**
+     * 允许报文中按类名出现的类，不需要登记编号
+     * @param name 完整的类名，或者以.结尾的包名前缀，例如com.ydlclass.order.
+     */
+    public static void allow(String name) {
+        if (name == null || name.isBlank()) {
+            throw new SerializeException("允许的类名不能为空。");
+        }
+        if (!ALLOWED.contains(name)) {
+            ALLOWED.add(name);
+        }
+    }
+
+    /**
+     * @return 类的编号，没有登记时返回0
+     */
+    static int idOf(Class<?> clazz) {
+        Integer id = IDS.get(clazz);
+        return id == null ? 0 : id;
+    }
+
+    static Class<?> classOf(int id) {
+        Class<?> clazz = CLASSES.get(id);
+        if (clazz == null) {
+            throw new SerializeException("编号为【" + id + "】的类没有登记。");
+        }
+        return clazz;
+    }
+
+    static Class<?> forName(String name) {
+        Class<?> clazz = NAMED.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        if (!isAllowed(name)) {
+            throw new SerializeException("报文中的类【" + name + "】没有登记编号，也不在允许的列表中，"
+                + "请使用compactClass登记编号或者使用compactAllow允许它。");
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            clazz = Class.forName(name, false, classLoader != null ? classLoader : CompactClassRegistry.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new SerializeException(e);
+        }
+        NAMED.put(name, clazz);
+        return clazz;
+    }
+
+    /**
+     * 数组按元素的类型判断
+     */
+    static boolean isAllowed(String name) {
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            // 基本类型的数组，例如[I
+            if (name.length() == dimensions + 1) {
+                return true;
+            }
+            if (name.charAt(dimensions) != 'L' || !name.endsWith(";")) {
+                return false;
+            }
+            name = name.substring(dimensions + 1, name.length() - 1);
+        }
+        for (String allowed : ALLOWED) {
+            if (allowed.endsWith(".") ? name.startsWith(allowed) : name.equals(allowed)) {
+                return true;
+            }
+        }
+        for (Class<?> registered : IDS.keySet()) {
+            if (registered.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * jdk序列化的过滤器，只允许和按类名加载时相同的类，同时限制嵌套的层数和数组的长度
+     * @param length jdk序列化的字节数，数组的长度不会超过它
+     */
+    static ObjectInputFilter javaFilter(int length) {
+        return info -> {
+            if (info.depth() > CompactWriter.MAX_DEPTH || info.arrayLength() > length) {
+                return ObjectInputFilter.Status.REJECTED;
+            }
+            Class<?> type = info.serialClass();
+            if (type == null) {
+                return ObjectInputFilter.Status.UNDECIDED;
+            }
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            return type.isPrimitive() || isAllowed(type.getName())
+                ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+        };
+    }
+}
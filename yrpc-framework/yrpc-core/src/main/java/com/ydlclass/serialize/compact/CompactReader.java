@@ -0,0 +1,385 @@
+package com.ydlclass.serialize.compact;
+
+import com.ydlclass.exceptions.SerializeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 从字节数组中读取compact格式的对象，每个报文使用一个实例
+ * 所有的长度都先和剩余的字节数比较，损坏的报文不会导致分配过大的数组
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+public final class CompactReader {
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    // 本报文中按类名出现的类，下标是序号
+    private List<Class<?>> classes;
+
+    public CompactReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * 读一个带有类型标记的值
+     */
+    public Object readValue() {
+        return readValue(0);
+    }
+
+    Object readValue(int depth) {
+        byte tag = readByte();
+        switch (tag) {
+            case Tags.NULL:
+                return null;
+            case Tags.TRUE:
+                return Boolean.TRUE;
+            case Tags.FALSE:
+                return Boolean.FALSE;
+            case Tags.BYTE:
+                return readByte();
+            case Tags.SHORT:
+                return (short) readZigZagInt();
+            case Tags.CHAR:
+                return (char) readVarInt();
+            case Tags.INT:
+                return readZigZagInt();
+            case Tags.LONG:
+                return readZigZagLong();
+            case Tags.FLOAT:
+                return Float.intBitsToFloat(readIntLE());
+            case Tags.DOUBLE:
+                return Double.longBitsToDouble(readLongLE());
+            case Tags.STRING:
+                return readString();
+            case Tags.BYTES:
+                return readBytes(readLength(1));
+            case Tags.CLASS:
+                return readClass();
+            case Tags.ENUM:
+                return readEnum();
+            case Tags.ARRAY:
+                return readArray(checkDepth(depth));
+            case Tags.ARRAY_LIST: {
+                int size = readLength(1);
+                return readElements(new ArrayList<>(size), size, checkDepth(depth));
+            }
+            case Tags.LINKED_LIST:
+                return readElements(new LinkedList<>(), readLength(1), checkDepth(depth));
+            case Tags.HASH_SET: {
+                int size = readLength(1);
+                return readElements(new HashSet<>(capacity(size)), size, checkDepth(depth));
+            }
+            case Tags.LINKED_HASH_SET: {
+                int size = readLength(1);
+                return readElements(new LinkedHashSet<>(capacity(size)), size, checkDepth(depth));
+            }
+            case Tags.TREE_SET:
+                return readElements(new TreeSet<>(), readLength(1), checkDepth(depth));
+            case Tags.HASH_MAP: {
+                int size = readLength(2);
+                return readEntries(new HashMap<>(capacity(size)), size, checkDepth(depth));
+            }
+            case Tags.LINKED_HASH_MAP: {
+                int size = readLength(2);
+                return readEntries(new LinkedHashMap<>(capacity(size)), size, checkDepth(depth));
+            }
+            case Tags.TREE_MAP:
+                return readEntries(new TreeMap<>(), readLength(2), checkDepth(depth));
+            case Tags.CONCURRENT_HASH_MAP: {
+                int size = readLength(2);
+                return readEntries(new ConcurrentHashMap<>(capacity(size)), size, checkDepth(depth));
+            }
+            case Tags.BIG_DECIMAL: {
+                int scale = readZigZagInt();
+                return new BigDecimal(readBigInteger(), scale);
+            }
+            case Tags.BIG_INTEGER:
+                return readBigInteger();
+            case Tags.DATE:
+                return new Date(readZigZagLong());
+            case Tags.OBJECT:
+                return readObject(checkDepth(depth));
+            case Tags.JAVA:
+                return readJava();
+            default:
+                throw new SerializeException("compact报文中出现了未知的类型标记【" + tag + "】。");
+        }
+    }
+
+    private Object readObject(int depth) {
+        Class<?> type = readClass();
+        if (CompactWriter.isJdkClass(type)) {
+            throw new SerializeException("compact报文中的类【" + type.getName() + "】不能按字段读取。");
+        }
+        return ClassSchema.of(type).read(this, depth);
+    }
+
+    private Object readEnum() {
+        Class<?> type = readClass();
+        if (!type.isEnum()) {
+            throw new SerializeException("类【" + type.getName() + "】不是枚举。");
+        }
+        Object[] constants = type.getEnumConstants();
+        int ordinal = readVarInt();
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new SerializeException("枚举【" + type.getName() + "】没有序号为【" + ordinal + "】的值。");
+        }
+        return constants[ordinal];
+    }
+
+    private Object readArray(int depth) {
+        Class<?> componentType = readClass();
+        if (componentType == int.class) {
+            int[] array = new int[readLength(1)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readZigZagInt();
+            }
+            return array;
+        } else if (componentType == long.class) {
+            long[] array = new long[readLength(1)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readZigZagLong();
+            }
+            return array;
+        } else if (componentType == double.class) {
+            double[] array = new double[readLength(8)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = Double.longBitsToDouble(readLongLE());
+            }
+            return array;
+        } else if (componentType == boolean.class) {
+            boolean[] array = new boolean[readLength(1)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = buffer[position++] != 0;
+            }
+            return array;
+        } else if (componentType == float.class) {
+            float[] array = new float[readLength(4)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = Float.intBitsToFloat(readIntLE());
+            }
+            return array;
+        } else if (componentType == short.class) {
+            short[] array = new short[readLength(1)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (short) readZigZagInt();
+            }
+            return array;
+        } else if (componentType == char.class) {
+            char[] array = new char[readLength(1)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (char) readVarInt();
+            }
+            return array;
+        } else if (componentType == byte.class) {
+            return readBytes(readLength(1));
+        }
+        Object[] array = (Object[]) Array.newInstance(componentType, readLength(1));
+        for (int i = 0; i < array.length; i++) {
+            array[i] = readValue(depth);
+        }
+        return array;
+    }
+
+    private Collection<Object> readElements(Collection<Object> collection, int size, int depth) {
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(depth));
+        }
+        return collection;
+    }
+
+    private Map<Object, Object> readEntries(Map<Object, Object> map, int size, int depth) {
+        for (int i = 0; i < size; i++) {
+            map.put(readValue(depth), readValue(depth));
+        }
+        return map;
+    }
+
+    private BigInteger readBigInteger() {
+        return new BigInteger(readBytes(readLength(1)));
+    }
+
+    private Object readJava() {
+        byte[] bytes = readBytes(readLength(1));
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            ois.setObjectInputFilter(CompactClassRegistry.javaFilter(bytes.length));
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializeException(e);
+        }
+    }
+
+    Class<?> readClass() {
+        int value = readVarInt();
+        if ((value & 1) != 0) {
+            return CompactClassRegistry.classOf(value >>> 1);
+        }
+        if (classes == null) {
+            classes = new ArrayList<>(4);
+        }
+        if (value == 0) {
+            Class<?> type = CompactClassRegistry.forName(readString());
+            classes.add(type);
+            return type;
+        }
+        int index = (value >>> 1) - 1;
+        if (index >= classes.size()) {
+            throw new SerializeException("compact报文中引用了不存在的类序号【" + index + "】。");
+        }
+        return classes.get(index);
+    }
+
+    String readString() {
+        int length = readLength(1);
+        int start = position;
+        int end = start + length;
+        // 全部是ascii字符时字节数就是字符数
+        while (position < end && buffer[position] >= 0) {
+            position++;
+        }
+        if (position == end) {
+            return new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        int count = position - start;
+        for (int i = 0; i < count; i++) {
+            chars[i] = (char) buffer[start + i];
+        }
+        for (; count < length; count++) {
+            int b = readByte() & 0xFF;
+            if (b < 0x80) {
+                chars[count] = (char) b;
+            } else if (b < 0xE0) {
+                chars[count] = (char) ((b & 0x1F) << 6 | readByte() & 0x3F);
+            } else {
+                chars[count] = (char) ((b & 0x0F) << 12 | (readByte() & 0x3F) << 6 | readByte() & 0x3F);
+            }
+        }
+        return new String(chars);
+    }
+
+    byte readByte() {
+        if (position >= limit) {
+            throw truncated();
+        }
+        return buffer[position++];
+    }
+
+    private byte[] readBytes(int length) {
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new SerializeException("compact报文中的变长整数不合法。");
+    }
+
+    int readZigZagInt() {
+        int value = readVarInt();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    long readZigZagLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result >>> 1 ^ -(result & 1);
+            }
+        }
+        throw new SerializeException("compact报文中的变长整数不合法。");
+    }
+
+    int readIntLE() {
+        if (position + 4 > limit) {
+            throw truncated();
+        }
+        int value = (int) INT.get(buffer, position);
+        position += 4;
+        return value;
+    }
+
+    long readLongLE() {
+        if (position + 8 > limit) {
+            throw truncated();
+        }
+        long value = (long) LONG.get(buffer, position);
+        position += 8;
+        return value;
+    }
+
+    /**
+     * 读取一个长度，每个元素至少占unit个字节，超过剩余的字节数时报文一定已经损坏
+     */
+    private int readLength(int unit) {
+        int length = readVarInt();
+        if (length < 0 || (long) length * unit > limit - position) {
+            throw truncated();
+        }
+        return length;
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    private static int checkDepth(int depth) {
+        if (depth >= CompactWriter.MAX_DEPTH) {
+            throw new SerializeException("对象的嵌套层数超过了【" + CompactWriter.MAX_DEPTH + "】。");
+        }
+        return depth + 1;
+    }
+
+    private SerializeException truncated() {
+        return new SerializeException("compact报文不完整。");
+    }
+
+    /**
+     * @return 是否已经读完
+     */
+    public boolean isFinished() {
+        return position == limit;
+    }
+}
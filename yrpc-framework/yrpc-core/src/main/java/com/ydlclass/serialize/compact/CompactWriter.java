@@ -0,0 +1,380 @@
+package com.ydlclass.serialize.compact;
+
+import com.ydlclass.exceptions.SerializeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把对象写成compact格式，写进一个可以复用的字节数组
+ * 每个线程复用一个实例，写完一个报文以后调用reset
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+public final class CompactWriter {
+
+    // 对象的最大嵌套层数，超过时多半是循环引用
+    static final int MAX_DEPTH = 128;
+
+    private static final int INITIAL_CAPACITY = 256;
+    // 写过大报文以后，超过该长度的缓冲区不再保留
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+    // 本报文中出现过的没有编号的类和它的序号
+    private Map<Class<?>, Integer> classes;
+
+    /**
+     * 写一个值，前面带有类型标记
+     */
+    public void writeValue(Object value) {
+        writeValue(value, 0);
+    }
+
+    void writeValue(Object value, int depth) {
+        if (value == null) {
+            writeByte(Tags.NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            writeByte(Tags.STRING);
+            writeString((String) value);
+        } else if (type == Integer.class) {
+            writeByte(Tags.INT);
+            writeZigZag((Integer) value);
+        } else if (type == Long.class) {
+            writeByte(Tags.LONG);
+            writeZigZag((Long) value);
+        } else if (type == Boolean.class) {
+            writeByte((Boolean) value ? Tags.TRUE : Tags.FALSE);
+        } else if (type == Double.class) {
+            writeByte(Tags.DOUBLE);
+            writeLongLE(Double.doubleToRawLongBits((Double) value));
+        } else if (type == Float.class) {
+            writeByte(Tags.FLOAT);
+            writeIntLE(Float.floatToRawIntBits((Float) value));
+        } else if (type == Byte.class) {
+            writeByte(Tags.BYTE);
+            writeByte((Byte) value);
+        } else if (type == Short.class) {
+            writeByte(Tags.SHORT);
+            writeZigZag((Short) value);
+        } else if (type == Character.class) {
+            writeByte(Tags.CHAR);
+            writeVarInt((Character) value);
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            writeByte(Tags.BYTES);
+            writeVarInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        } else if (type == Class.class) {
+            writeByte(Tags.CLASS);
+            writeClass((Class<?>) value);
+        } else if (value instanceof Enum<?> constant) {
+            writeByte(Tags.ENUM);
+            writeClass(constant.getDeclaringClass());
+            writeVarInt(constant.ordinal());
+        } else if (type.isArray()) {
+            writeArray(value, type.getComponentType(), checkDepth(depth));
+        } else if (value instanceof Collection<?> collection) {
+            writeCollection(collection, checkDepth(depth));
+        } else if (value instanceof Map<?, ?> map) {
+            writeMap(map, checkDepth(depth));
+        } else if (type == BigDecimal.class) {
+            BigDecimal decimal = (BigDecimal) value;
+            writeByte(Tags.BIG_DECIMAL);
+            writeZigZag(decimal.scale());
+            writeBigInteger(decimal.unscaledValue());
+        } else if (type == BigInteger.class) {
+            writeByte(Tags.BIG_INTEGER);
+            writeBigInteger((BigInteger) value);
+        } else if (type == Date.class) {
+            writeByte(Tags.DATE);
+            writeZigZag(((Date) value).getTime());
+        } else if (isJdkClass(type)) {
+            writeJava(value);
+        } else {
+            writeByte(Tags.OBJECT);
+            writeClass(type);
+            ClassSchema.of(type).write(this, value, checkDepth(depth));
+        }
+    }
+
+    private void writeArray(Object array, Class<?> componentType, int depth) {
+        writeByte(Tags.ARRAY);
+        writeClass(componentType);
+        int length = Array.getLength(array);
+        writeVarInt(length);
+        if (componentType == int.class) {
+            for (int value : (int[]) array) {
+                writeZigZag(value);
+            }
+        } else if (componentType == long.class) {
+            for (long value : (long[]) array) {
+                writeZigZag(value);
+            }
+        } else if (componentType == double.class) {
+            ensureCapacity(length * 8);
+            for (double value : (double[]) array) {
+                writeLongLE(Double.doubleToRawLongBits(value));
+            }
+        } else if (componentType == boolean.class) {
+            ensureCapacity(length);
+            for (boolean value : (boolean[]) array) {
+                buffer[position++] = (byte) (value ? 1 : 0);
+            }
+        } else if (componentType == float.class) {
+            ensureCapacity(length * 4);
+            for (float value : (float[]) array) {
+                writeIntLE(Float.floatToRawIntBits(value));
+            }
+        } else if (componentType == short.class) {
+            for (short value : (short[]) array) {
+                writeZigZag(value);
+            }
+        } else if (componentType == char.class) {
+            for (char value : (char[]) array) {
+                writeVarInt(value);
+            }
+        } else {
+            for (Object element : (Object[]) array) {
+                writeValue(element, depth);
+            }
+        }
+    }
+
+    private void writeCollection(Collection<?> collection, int depth) {
+        byte tag;
+        if (collection instanceof List) {
+            tag = collection instanceof LinkedList ? Tags.LINKED_LIST : Tags.ARRAY_LIST;
+        } else if (collection instanceof SortedSet) {
+            tag = Tags.TREE_SET;
+        } else if (collection instanceof LinkedHashSet) {
+            tag = Tags.LINKED_HASH_SET;
+        } else if (collection instanceof Set) {
+            tag = Tags.HASH_SET;
+        } else {
+            tag = Tags.ARRAY_LIST;
+        }
+        writeByte(tag);
+        writeVarInt(collection.size());
+        for (Object element : collection) {
+            writeValue(element, depth);
+        }
+    }
+
+    private void writeMap(Map<?, ?> map, int depth) {
+        byte tag;
+        if (map instanceof ConcurrentHashMap) {
+            tag = Tags.CONCURRENT_HASH_MAP;
+        } else if (map instanceof SortedMap) {
+            tag = Tags.TREE_MAP;
+        } else if (map instanceof LinkedHashMap) {
+            tag = Tags.LINKED_HASH_MAP;
+        } else {
+            tag = Tags.HASH_MAP;
+        }
+        writeByte(tag);
+        writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(entry.getKey(), depth);
+            writeValue(entry.getValue(), depth);
+        }
+    }
+
+    private void writeBigInteger(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeJava(Object value) {
+        if (!(value instanceof Serializable)) {
+            throw new SerializeException("compact序列化不支持类【" + value.getClass().getName() + "】。");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            throw new SerializeException(e);
+        }
+        writeByte(Tags.JAVA);
+        writeVarInt(baos.size());
+        writeBytes(baos.toByteArray(), 0, baos.size());
+    }
+
+    /**
+     * 写一个类：登记过的类写编号，没有登记的类第一次写类名，之后写它在本报文中的序号
+     * 编码为一个变长整数，奇数是编号，0后面跟着类名，其他偶数是序号
+     */
+    void writeClass(Class<?> type) {
+        int id = CompactClassRegistry.idOf(type);
+        if (id > 0) {
+            writeVarInt(id << 1 | 1);
+            return;
+        }
+        if (classes == null) {
+            classes = new IdentityHashMap<>();
+        }
+        Integer index = classes.get(type);
+        if (index != null) {
+            writeVarInt((index + 1) << 1);
+            return;
+        }
+        classes.put(type, classes.size());
+        writeVarInt(0);
+        writeString(type.getName());
+    }
+
+    /**
+     * 字符数 + 每个字符按utf-8的规则写1到3个字节，代理对的两个字符分开写
+     */
+    void writeString(String value) {
+        int length = value.length();
+        writeVarInt(length);
+        ensureCapacity(length * 3);
+        byte[] buf = buffer;
+        int pos = position;
+        int i = 0;
+        // 大部分字符串只有ascii字符
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[pos++] = (byte) c;
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                buf[pos++] = (byte) (0xE0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        position = pos;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeZigZag(int value) {
+        writeVarInt(value << 1 ^ value >> 31);
+    }
+
+    void writeZigZag(long value) {
+        value = value << 1 ^ value >> 63;
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeIntLE(int value) {
+        ensureCapacity(4);
+        INT.set(buffer, position, value);
+        position += 4;
+    }
+
+    void writeLongLE(long value) {
+        ensureCapacity(8);
+        LONG.set(buffer, position, value);
+        position += 8;
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+        }
+    }
+
+    private static int checkDepth(int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new SerializeException("对象的嵌套层数超过了【" + MAX_DEPTH + "】，可能存在循环引用。");
+        }
+        return depth + 1;
+    }
+
+    static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+
+    /**
+     * @return 已经写入的字节数
+     */
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+
+    /**
+     * 清空已经写入的内容，可以写下一个报文
+     */
+    public void reset() {
+        position = 0;
+        classes = null;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ydlclass.serialize.compact;
+
+/**
+ * compact格式中每个值前面的类型标记
+ * 只能在末尾追加，不能修改已有的值
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+final class Tags {
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHAR = 5;
+    // 整数都是zigzag编码的变长整数，绝对值小的数只占一两个字节
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    // 字符数 + 每个字符1到3个字节
+    static final byte STRING = 10;
+    static final byte BYTES = 11;
+    static final byte CLASS = 12;
+    // 类 + 序号
+    static final byte ENUM = 13;
+    // 元素的类 + 长度 + 元素，基本类型的元素直接写值
+    static final byte ARRAY = 14;
+    // 集合：个数 + 元素
+    static final byte ARRAY_LIST = 15;
+    static final byte LINKED_LIST = 16;
+    static final byte HASH_SET = 17;
+    static final byte LINKED_HASH_SET = 18;
+    static final byte TREE_SET = 19;
+    static final byte HASH_MAP = 20;
+    static final byte LINKED_HASH_MAP = 21;
+    static final byte TREE_MAP = 22;
+    static final byte CONCURRENT_HASH_MAP = 23;
+    static final byte BIG_DECIMAL = 24;
+    static final byte BIG_INTEGER = 25;
+    static final byte DATE = 26;
+    // 类 + 按字段顺序写出的字段
+    static final byte OBJECT = 27;
+    // 没有专门支持的jdk中的类，使用jdk序列化
+    static final byte JAVA = 28;
+
+    private Tags() {
+    }
+}
@@ -0,0 +1,117 @@
+package com.ydlclass.serialize.impl;
+
+import com.ydlclass.exceptions.SerializeException;
+import com.ydlclass.serialize.Serializer;
+import com.ydlclass.serialize.compact.CompactReader;
+import com.ydlclass.serialize.compact.CompactWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 紧凑的二进制序列化
+ * 1、常用的类和登记过的类只写编号，对象按固定的字段顺序只写字段的值，基本类型的字段不写类型标记
+ * 2、整数使用变长编码，字符串直接编码，不经过Charset
+ * 3、每个线程复用一个输出的缓冲区，序列化一个报文不会反复扩容
+ * 4、值的前面都有类型标记，反序列化时不需要知道目标类型，响应体按Object读取也能还原出原来的类型
+ * 两端的类必须相同（字段相同），不支持循环引用，没有专门支持的jdk中的类退化为jdk序列化
+ *
+ * @author it楠老师
+ * @createTime 2023-08-17
+ */
+@Slf4j
+public class CompactSerializer implements Serializer {
+
+    public static final byte CODE = 4;
+    public static final String NAME = "compact";
+
+    private static final ThreadLocal<CompactWriter> WRITER = ThreadLocal.withInitial(CompactWriter::new);
+    // 当前线程的缓冲区是否正在使用，重入时使用新的实例
+    private static final ThreadLocal<boolean[]> IN_USE = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    @Override
+    public byte[] serialize(Object object) {
+        if (object == null) {
+            return null;
+        }
+        return write(object, null);
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream out) {
+        if (object == null) {
+            return;
+        }
+        write(object, out);
+    }
+
+    /**
+     * 写进线程的缓冲区，out为空时返回字节数组，否则直接写进out
+     */
+    private byte[] write(Object object, OutputStream out) {
+        boolean[] inUse = IN_USE.get();
+        boolean reentrant = inUse[0];
+        CompactWriter writer = reentrant ? new CompactWriter() : WRITER.get();
+        inUse[0] = true;
+        try {
+            writer.writeValue(object);
+            if (log.isDebugEnabled()) {
+                log.debug("对象【{}】已经使用compact完成了序列化操作，序列化后的字节数为【{}】", object, writer.size());
+            }
+            if (out == null) {
+                return writer.toByteArray();
+            }
+            writer.writeTo(out);
+            return null;
+        } catch (IOException e) {
+            log.error("使用compact进行序列化对象【{}】时放生异常.", object);
+            throw new SerializeException(e);
+        } finally {
+            writer.reset();
+            inUse[0] = reentrant;
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        if (bytes == null || clazz == null) {
+            return null;
+        }
+        CompactReader reader = new CompactReader(bytes, 0, bytes.length);
+        Object value;
+        try {
+            value = reader.readValue();
+        } catch (SerializeException e) {
+            log.error("使用compact进行反序列化对象【{}】时发生异常.", clazz, e);
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("使用compact进行反序列化对象【{}】时发生异常.", clazz, e);
+            throw new SerializeException(e);
+        }
+        if (!reader.isFinished()) {
+            throw new SerializeException("compact报文中还有没有读取的字节。");
+        }
+        if (value != null && !clazz.isInstance(value) && !clazz.isPrimitive()) {
+            throw new SerializeException("compact报文中的对象是【" + value.getClass().getName() + "】，不是【" + clazz.getName() + "】。");
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("类【{}】已经使用compact完成了反序列化操作.", clazz);
+        }
+        return (T) value;
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        if (in == null || clazz == null) {
+            return null;
+        }
+        try {
+            return deserialize(in.readAllBytes(), clazz);
+        } catch (IOException e) {
+            log.error("使用compact进行反序列化对象【{}】时发生异常.", clazz);
+            throw new SerializeException(e);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * @author it楠老师
@@ -39,6 +41,24 @@ public class HessianSerializer implements Serializer {
         }
     }
     
+    @Override
+    public void serialize(Object object, OutputStream out) {
+        if (object == null) {
+            return;
+        }
+        try {
+            Hessian2Output hessian2Output = new Hessian2Output(out);
+            hessian2Output.writeObject(object);
+            hessian2Output.flush();
+            if(log.isDebugEnabled()){
+                log.debug("对象【{}】已经使用hessian直接序列化至输出流",object);
+            }
+        } catch (IOException e) {
+            log.error("使用hessian进行序列化对象【{}】时放生异常.",object);
+            throw new SerializeException(e);
+        }
+    }
+    
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         if(bytes == null || clazz == null){
@@ -60,4 +80,22 @@ public class HessianSerializer implements Serializer {
             throw new SerializeException(e);
         }
     }
+    
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        if(in == null || clazz == null){
+            return null;
+        }
+        try {
+            Hessian2Input hessian2Input = new Hessian2Input(in);
+            T t = (T) hessian2Input.readObject();
+            if(log.isDebugEnabled()){
+                log.debug("类【{}】已经使用hessian从输入流完成了反序列化操作.",clazz);
+            }
+            return t;
+        } catch (IOException  e) {
+            log.error("使用hessian进行反序列化对象【{}】时发生异常.",clazz);
+            throw new SerializeException(e);
+        }
+    }
 }
@@ -36,6 +36,25 @@ public class JdkSerializer implements Serializer {
         }
     }
     
+    @Override
+    public void serialize(Object object, OutputStream out) {
+        if (object == null) {
+            return;
+        }
+        try {
+            // 这里不能关闭ObjectOutputStream，否则会连带关闭外部传入的流
+            ObjectOutputStream outputStream = new ObjectOutputStream(out);
+            outputStream.writeObject(object);
+            outputStream.flush();
+            if(log.isDebugEnabled()){
+                log.debug("对象【{}】已经直接序列化至输出流",object);
+            }
+        } catch (IOException e) {
+            log.error("序列化对象【{}】时放生异常.",object);
+            throw new SerializeException(e);
+        }
+    }
+    
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         if(bytes == null || clazz == null){
@@ -56,4 +75,23 @@ public class JdkSerializer implements Serializer {
             throw new SerializeException(e);
         }
     }
+    
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        if(in == null || clazz == null){
+            return null;
+        }
+        try {
+            // 同样不关闭ObjectInputStream，外部传入的流由调用方负责
+            ObjectInputStream objectInputStream = new ObjectInputStream(in);
+            Object object = objectInputStream.readObject();
+            if(log.isDebugEnabled()){
+                log.debug("类【{}】已经从输入流完成了反序列化操作.",clazz);
+            }
+            return (T)object;
+        } catch (IOException | ClassNotFoundException e) {
+            log.error("反序列化对象【{}】时放生异常.",clazz);
+            throw new SerializeException(e);
+        }
+    }
 }
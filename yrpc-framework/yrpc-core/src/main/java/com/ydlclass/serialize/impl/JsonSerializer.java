@@ -5,6 +5,8 @@ import com.ydlclass.serialize.Serializer;
 import com.ydlclass.transport.message.RequestPayload;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 /**
@@ -27,6 +29,18 @@ public class JsonSerializer implements Serializer {
         
     }
     
+    @Override
+    public void serialize(Object object, OutputStream out) {
+        if (object == null) {
+            return;
+        }
+        
+        int length = JSON.writeTo(out, object);
+        if (log.isDebugEnabled()) {
+            log.debug("对象【{}】已经直接序列化至输出流，写出的字节数为【{}】", object, length);
+        }
+    }
+    
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
         if (bytes == null || clazz == null) {
@@ -39,6 +53,24 @@ public class JsonSerializer implements Serializer {
         return t;
     }
     
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        if (in == null || clazz == null) {
+            return null;
+        }
+        T t = JSON.parseObject(in, clazz);
+        if (log.isDebugEnabled()) {
+            log.debug("类【{}】已经从输入流完成了反序列化操作.", clazz);
+        }
+        return t;
+    }
+    
+    @Override
+    public boolean keepsType() {
+        // 批量负载中的子请求会被还原成JSONObject
+        return false;
+    }
+    
     public static void main(String[] args) {
         Serializer serializer = new JsonSerializer();
     
@@ -0,0 +1,430 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.ServiceConfig;
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.compress.CompressorFactory;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.exceptions.ResponseException;
+import com.ydlclass.proxy.RemoteMethod;
+import com.ydlclass.serialize.SerializerFactory;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.StreamPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 双向流，复用已有的连接，调用方和服务提供方各持有一个
+ * 每个方向都有独立的额度：对方每处理掉半个窗口的消息就补充一次额度，没有额度的消息先在本地排队，
+ * 调用方的业务线程积压超过一个窗口时会阻塞，netty线程中发送的消息只排队不阻塞。
+ * 除了发送方法以外，所有的状态都只在通道所属的eventLoop中访问。
+ *
+ * @param <S> 本端发送的消息类型
+ * @param <R> 本端接收的消息类型
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+@Slf4j
+public class BidiStreamCall<S, R> implements ConsumerStream, ProviderStream {
+
+    // 队列中null值的占位
+    private static final Object NULL = new Object();
+
+    private final Channel channel;
+    private final long streamId;
+    // 是否是调用方的流，决定了写出的是请求还是响应
+    private final boolean consumerSide;
+    private final byte compressType;
+    private final byte serializeType;
+    private final int window;
+    // 业务线程等待发送额度的超时时间
+    private final long timeoutMillis;
+
+    // 接收对方消息的观察者
+    private StreamObserver<R> inbound;
+    // 本端用来发送消息的观察者
+    private final StreamObserver<S> outbound = new StreamObserver<>() {
+        @Override
+        public void onNext(S value) {
+            send(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            cancel(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            halfClose();
+        }
+    };
+
+    // 待发送的消息，以及用来阻塞业务线程的锁
+    private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Object lock = new Object();
+    private volatile boolean terminated;
+    private volatile boolean completed;
+
+    // 以下状态只会在eventLoop中访问
+    private int credit;
+    private int consumed;
+    private boolean halfClosePending;
+    private boolean outClosed;
+    private boolean inClosed;
+
+    // 连接断开，流也就结束了
+    private final ChannelFutureListener closeListener = future -> onChannelClosed();
+
+    private BidiStreamCall(Channel channel, long streamId, boolean consumerSide,
+                           byte compressType, byte serializeType, int window, long timeoutMillis) {
+        this.channel = channel;
+        this.streamId = streamId;
+        this.consumerSide = consumerSide;
+        this.compressType = compressType;
+        this.serializeType = serializeType;
+        this.window = window;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 服务调用方打开一个双向流
+     * @param channel          通道
+     * @param interfaceName    接口的全限定名
+     * @param name             服务提供方登记的流的名字
+     * @param responseObserver 接收响应的观察者，在netty线程中被调用
+     * @param timeoutMillis    发送消息时等待额度的超时时间
+     * @return 发送消息的观察者
+     */
+    public static <S, R> StreamObserver<S> open(Channel channel, String interfaceName, String name,
+                                                StreamObserver<R> responseObserver, long timeoutMillis) {
+        Configuration configuration = YrpcBootstrap.getInstance().getConfiguration();
+        YrpcRequest yrpcRequest = YrpcRequest.builder()
+            .requestId(configuration.getIdGenerator().getId())
+            .requestType(RequestType.STREAM_OPEN.getId())
+            .compressType(CompressorFactory.getCompressor(configuration.getCompressType()).getCode())
+            .serializeType(SerializerFactory.getSerializer(configuration.getSerializeType()).getCode())
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(RequestPayload.builder().interfaceName(interfaceName).methodName(name).build())
+            .build();
+
+        BidiStreamCall<S, R> call = new BidiStreamCall<>(channel, yrpcRequest.getRequestId(), true,
+            yrpcRequest.getCompressType(), yrpcRequest.getSerializeType(), configuration.getStreamWindow(), timeoutMillis);
+        call.inbound = responseObserver;
+        YrpcBootstrap.STREAMS.put(call.streamId, call);
+        channel.closeFuture().addListener(call.closeListener);
+
+        // 打开流，并给予服务提供方初始的额度
+        channel.write(yrpcRequest);
+        call.writeWindowUpdate(call.window);
+        if (log.isDebugEnabled()) {
+            log.debug("已经打开编号为【{}】的双向流【{}#{}】。", call.streamId, interfaceName, name);
+        }
+        return call.outbound;
+    }
+
+    /**
+     * 服务提供方接受一个双向流，必须在通道所属的eventLoop中调用
+     * @param channel     通道
+     * @param yrpcRequest 打开流的请求
+     * @return 是否找到了登记的流处理器
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean accept(Channel channel, YrpcRequest yrpcRequest) {
+        RequestPayload requestPayload = yrpcRequest.getRequestPayload();
+        ServiceConfig<?> serviceConfig = YrpcBootstrap.SERVERS_LIST.get(requestPayload.getInterfaceName());
+        StreamHandler<Object, Object> handler = serviceConfig == null ? null
+            : (StreamHandler<Object, Object>) serviceConfig.getStreamHandler(requestPayload.getMethodName());
+        if (handler == null) {
+            log.error("服务【{}】没有登记名为【{}】的流处理器。",
+                requestPayload.getInterfaceName(), requestPayload.getMethodName());
+            return false;
+        }
+
+        int window = YrpcBootstrap.getInstance().getConfiguration().getStreamWindow();
+        BidiStreamCall<Object, Object> call = new BidiStreamCall<>(channel, yrpcRequest.getRequestId(), false,
+            yrpcRequest.getCompressType(), yrpcRequest.getSerializeType(), window, RemoteMethod.DEFAULT_TIMEOUT_MILLIS);
+        StreamRegistry.register(channel, call.streamId, call);
+        try {
+            call.inbound = handler.open(call.outbound);
+        } catch (RuntimeException e) {
+            StreamRegistry.remove(channel, call.streamId);
+            throw e;
+        }
+        // 给予调用方初始的额度
+        call.writeWindowUpdate(window);
+        return true;
+    }
+
+    private void send(S value) {
+        if (terminated || completed) {
+            throw new NetworkException("编号为【" + streamId + "】的流已经结束。");
+        }
+        // 业务线程积压超过一个窗口时阻塞等待，形成背压
+        if (!channel.eventLoop().inEventLoop()) {
+            awaitCapacity();
+        }
+        pending.add(value == null ? NULL : value);
+        queued.incrementAndGet();
+        channel.eventLoop().execute(this::drain);
+    }
+
+    private void awaitCapacity() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (lock) {
+            while (queued.get() >= window && !terminated) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new NetworkException("等待编号为【" + streamId + "】的流的发送额度超时。");
+                }
+                try {
+                    lock.wait(TimeUnit.NANOSECONDS.toMillis(left) + 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NetworkException(e);
+                }
+            }
+        }
+    }
+
+    private void halfClose() {
+        completed = true;
+        channel.eventLoop().execute(() -> {
+            halfClosePending = true;
+            drain();
+        });
+    }
+
+    private void cancel(Throwable cause) {
+        channel.eventLoop().execute(() -> {
+            if (terminated) {
+                return;
+            }
+            log.error("编号为【{}】的流被本端取消。", streamId, cause);
+            writeReset();
+            terminate(null);
+        });
+    }
+
+    /**
+     * 在额度允许的范围内写出排队的消息
+     */
+    private void drain() {
+        if (terminated) {
+            return;
+        }
+        int sent = 0;
+        while (credit > 0 && channel.isWritable()) {
+            Object item = pending.poll();
+            if (item == null) {
+                break;
+            }
+            writeData(item == NULL ? null : item);
+            credit--;
+            sent++;
+        }
+        if (sent > 0) {
+            queued.addAndGet(-sent);
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+        boolean closing = halfClosePending && !outClosed && pending.isEmpty();
+        if (closing) {
+            outClosed = true;
+            writeEnd();
+        }
+        if (sent > 0 || closing) {
+            channel.flush();
+        }
+        tryFinish();
+    }
+
+    @Override
+    public Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void onResponse(YrpcResponse yrpcResponse) {
+        byte code = yrpcResponse.getCode();
+        if (code == RespCode.STREAM_DATA.getCode()) {
+            onData(yrpcResponse.getBody());
+        } else if (code == RespCode.STREAM_END.getCode()) {
+            onHalfClose();
+        } else if (code == RespCode.STREAM_WINDOW_UPDATE.getCode()) {
+            onWindowUpdate(((Number) yrpcResponse.getBody()).intValue());
+        } else {
+            log.error("编号为【{}】的双向流返回错误的结果，响应码【{}】.", streamId, code);
+            terminate(new ResponseException(code, "双向流发生异常"));
+        }
+    }
+
+    @Override
+    public void onWindowUpdate(int credit) {
+        this.credit += credit;
+        drain();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onData(Object data) {
+        if (inClosed || terminated) {
+            return;
+        }
+        try {
+            inbound.onNext((R) data);
+        } catch (RuntimeException e) {
+            log.error("编号为【{}】的流在处理消息时发生异常。", streamId, e);
+            writeReset();
+            terminate(e);
+            return;
+        }
+        // 处理了半个窗口，给对方补充额度
+        if (++consumed >= Math.max(1, window / 2)) {
+            writeWindowUpdate(consumed);
+            consumed = 0;
+        }
+    }
+
+    @Override
+    public void onHalfClose() {
+        if (inClosed || terminated) {
+            return;
+        }
+        inClosed = true;
+        try {
+            inbound.onCompleted();
+        } catch (RuntimeException e) {
+            log.error("编号为【{}】的流在处理结束时发生异常。", streamId, e);
+        }
+        tryFinish();
+    }
+
+    @Override
+    public void onReset() {
+        terminate(new NetworkException("编号为【" + streamId + "】的流被对方取消。"));
+    }
+
+    @Override
+    public void onWritable() {
+        drain();
+    }
+
+    @Override
+    public void onChannelClosed() {
+        terminate(new NetworkException("流所在的连接已经关闭。"));
+    }
+
+    /**
+     * 两个方向都结束了，流正常结束
+     */
+    private void tryFinish() {
+        if (inClosed && outClosed && !terminated) {
+            terminated = true;
+            unregister();
+        }
+    }
+
+    /**
+     * 流异常结束，通知本端的接收方
+     */
+    private void terminate(Throwable cause) {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        unregister();
+        pending.clear();
+        queued.set(0);
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (cause != null && !inClosed) {
+            inClosed = true;
+            try {
+                inbound.onError(cause);
+            } catch (RuntimeException e) {
+                log.error("编号为【{}】的流在处理异常时发生异常。", streamId, e);
+            }
+        }
+    }
+
+    private void unregister() {
+        if (consumerSide) {
+            channel.closeFuture().removeListener(closeListener);
+            YrpcBootstrap.STREAMS.remove(streamId);
+        } else {
+            StreamRegistry.remove(channel, streamId);
+        }
+    }
+
+    private void writeData(Object data) {
+        if (consumerSide) {
+            writeRequest(RequestType.STREAM_DATA, StreamPayload.builder().data(data).build());
+        } else {
+            writeResponse(RespCode.STREAM_DATA, data);
+        }
+    }
+
+    private void writeEnd() {
+        if (consumerSide) {
+            writeRequest(RequestType.STREAM_HALF_CLOSE, null);
+        } else {
+            writeResponse(RespCode.STREAM_END, null);
+        }
+    }
+
+    private void writeWindowUpdate(int credit) {
+        if (consumerSide) {
+            writeRequest(RequestType.WINDOW_UPDATE, StreamPayload.builder().credit(credit).build());
+        } else {
+            writeResponse(RespCode.STREAM_WINDOW_UPDATE, credit);
+        }
+        channel.flush();
+    }
+
+    private void writeReset() {
+        if (consumerSide) {
+            writeRequest(RequestType.STREAM_RESET, null);
+        } else {
+            writeResponse(RespCode.FAIL, null);
+        }
+        channel.flush();
+    }
+
+    private void writeRequest(RequestType requestType, StreamPayload streamPayload) {
+        YrpcRequest yrpcRequest = YrpcRequest.builder()
+            .requestId(streamId)
+            .requestType(requestType.getId())
+            .compressType(compressType)
+            .serializeType(serializeType)
+            .timeStamp(System.currentTimeMillis())
+            .streamPayload(streamPayload)
+            .build();
+        channel.write(yrpcRequest);
+    }
+
+    private void writeResponse(RespCode respCode, Object body) {
+        YrpcResponse yrpcResponse = YrpcResponse.builder()
+            .requestId(streamId)
+            .compressType(compressType)
+            .serializeType(serializeType)
+            .timeStamp(System.currentTimeMillis())
+            .code(respCode.getCode())
+            .body(body)
+            .build();
+        channel.write(yrpcResponse);
+    }
+}
@@ -0,0 +1,24 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.Channel;
+
+/**
+ * 服务调用方的流，接收服务提供方发来的与流id相同的响应帧
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+public interface ConsumerStream {
+
+    /**
+     * 处理服务提供方发来的帧，在netty线程中执行
+     * @param yrpcResponse 响应
+     */
+    void onResponse(YrpcResponse yrpcResponse);
+
+    /**
+     * @return 流所在的通道，连接池不会回收还有流的通道
+     */
+    Channel getChannel();
+}
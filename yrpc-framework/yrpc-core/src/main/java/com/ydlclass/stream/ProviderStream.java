@@ -0,0 +1,44 @@
+package com.ydlclass.stream;
+
+/**
+ * 服务提供方的流，接收调用方发来的与流id相同的流报文，所有的方法都在通道所属的eventLoop中执行
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+public interface ProviderStream {
+
+    /**
+     * 调用方补充了额度
+     * @param credit 新增的额度
+     */
+    void onWindowUpdate(int credit);
+
+    /**
+     * 调用方发来了一条消息
+     * @param data 消息
+     */
+    default void onData(Object data) {
+    }
+
+    /**
+     * 调用方的消息已经发送完毕
+     */
+    default void onHalfClose() {
+    }
+
+    /**
+     * 调用方取消了流
+     */
+    void onReset();
+
+    /**
+     * 通道重新变得可写
+     */
+    void onWritable();
+
+    /**
+     * 通道已经关闭
+     */
+    void onChannelClosed();
+}
@@ -0,0 +1,188 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.exceptions.ResponseException;
+import com.ydlclass.transport.message.StreamPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务调用方持有的流，数据帧由netty线程放入队列，调用方线程阻塞消费
+ * 每消费掉半个窗口的数据就向服务提供方补充一次额度，消费得慢，提供方就发得慢
+ *
+ * @author it楠老师
+ * @createTime 2023-08-05
+ */
+@Slf4j
+public class RemoteStream<T> implements YrpcStream<T>, ConsumerStream {
+
+    // 队列中的结束标记，和null值的占位
+    private static final Object END = new Object();
+    private static final Object NULL = new Object();
+
+    private final YrpcRequest yrpcRequest;
+    private final Channel channel;
+    private final int window;
+    // 等待下一个数据帧的超时时间，即方法的超时时间
+    private final long timeoutMillis;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    // 连接断开，流也就结束了
+    private final ChannelFutureListener closeListener =
+        future -> fail(new NetworkException("流所在的连接已经关闭。"));
+
+    // 以下状态只会在调用方线程中访问
+    private Object next;
+    private int consumed;
+    private boolean finished;
+
+    private RemoteStream(YrpcRequest yrpcRequest, Channel channel, int window, long timeoutMillis) {
+        this.yrpcRequest = yrpcRequest;
+        this.channel = channel;
+        this.window = window;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 发出服务端流式请求，并立即给予服务提供方初始的额度
+     * @param channel     通道
+     * @param yrpcRequest   请求类型为SERVER_STREAM的请求
+     * @param timeoutMillis 等待每一个数据帧的超时时间
+     * @return 流
+     */
+    public static <T> RemoteStream<T> open(Channel channel, YrpcRequest yrpcRequest, long timeoutMillis) {
+        int window = YrpcBootstrap.getInstance().getConfiguration().getStreamWindow();
+        RemoteStream<T> stream = new RemoteStream<>(yrpcRequest, channel, window, timeoutMillis);
+        YrpcBootstrap.STREAMS.put(yrpcRequest.getRequestId(), stream);
+        channel.closeFuture().addListener(stream.closeListener);
+
+        channel.write(yrpcRequest).addListener(stream.failOnError());
+        stream.writeControl(RequestType.WINDOW_UPDATE, window);
+        if (log.isDebugEnabled()) {
+            log.debug("已经打开编号为【{}】的流，初始额度为【{}】。", yrpcRequest.getRequestId(), window);
+        }
+        return stream;
+    }
+
+    @Override
+    public Channel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void onResponse(YrpcResponse yrpcResponse) {
+        byte code = yrpcResponse.getCode();
+        if (code == RespCode.STREAM_DATA.getCode()) {
+            queue.add(yrpcResponse.getBody() == null ? NULL : yrpcResponse.getBody());
+        } else if (code == RespCode.STREAM_END.getCode()) {
+            detach();
+            queue.add(END);
+        } else {
+            log.error("编号为【{}】的流返回错误的结果，响应码【{}】.", yrpcRequest.getRequestId(), code);
+            fail(new ResponseException(code, "流式调用发生异常"));
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        if (detach()) {
+            queue.add(e);
+        }
+    }
+    
+    /**
+     * 从全局的流中移除
+     * @return 是否是本次移除的
+     */
+    private boolean detach() {
+        channel.closeFuture().removeListener(closeListener);
+        return YrpcBootstrap.STREAMS.remove(yrpcRequest.getRequestId()) != null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            if (finished) {
+                return false;
+            }
+            try {
+                next = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NetworkException(e);
+            }
+            if (next == null) {
+                close();
+                throw new NetworkException("等待编号为【" + yrpcRequest.getRequestId() + "】的流的数据超时。");
+            }
+        }
+        if (next == END) {
+            finished = true;
+            return false;
+        }
+        if (next instanceof RuntimeException e) {
+            finished = true;
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        // 消费了半个窗口，补充额度
+        if (++consumed >= Math.max(1, window / 2)) {
+            writeControl(RequestType.WINDOW_UPDATE, consumed);
+            consumed = 0;
+        }
+        return item == NULL ? null : (T) item;
+    }
+
+    /**
+     * 提前结束时通知服务提供方停止发送
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (detach() && channel.isActive()) {
+            writeControl(RequestType.STREAM_RESET, 0);
+        }
+    }
+
+    private void writeControl(RequestType requestType, int credit) {
+        YrpcRequest control = YrpcRequest.builder()
+            .requestId(yrpcRequest.getRequestId())
+            .requestType(requestType.getId())
+            .compressType(yrpcRequest.getCompressType())
+            .serializeType(yrpcRequest.getSerializeType())
+            .timeStamp(System.currentTimeMillis())
+            .streamPayload(StreamPayload.builder().credit(credit).build())
+            .build();
+        channel.writeAndFlush(control).addListener(failOnError());
+    }
+
+    private ChannelFutureListener failOnError() {
+        return future -> {
+            if (!future.isSuccess()) {
+                fail(new NetworkException(future.cause()));
+            }
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.transport.message.YrpcRequest;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务提供方每一个通道上正在进行的流，流报文按照流id分发给对应的流
+ *
+ * @author it楠老师
+ * @createTime 2023-08-06
+ */
+@Slf4j
+public final class StreamRegistry {
+
+    // key为流的id
+    private static final AttributeKey<Map<Long, ProviderStream>> STREAMS = AttributeKey.valueOf("yrpc.provider.streams");
+
+    private StreamRegistry() {
+    }
+
+    public static void register(Channel channel, long streamId, ProviderStream stream) {
+        streams(channel).put(streamId, stream);
+    }
+
+    public static ProviderStream get(Channel channel, long streamId) {
+        return streams(channel).get(streamId);
+    }
+
+    public static void remove(Channel channel, long streamId) {
+        streams(channel).remove(streamId);
+    }
+
+    /**
+     * 将流报文分发给对应的流
+     * @param channel     通道
+     * @param yrpcRequest 请求
+     * @return 是否是流报文
+     */
+    public static boolean dispatch(Channel channel, YrpcRequest yrpcRequest) {
+        byte requestType = yrpcRequest.getRequestType();
+        if (!RequestType.isStreamControl(requestType)) {
+            return false;
+        }
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(() -> dispatch(channel, yrpcRequest));
+            return true;
+        }
+
+        ProviderStream stream = get(channel, yrpcRequest.getRequestId());
+        if (stream == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("编号为【{}】的流已经结束，忽略类型为【{}】的报文。", yrpcRequest.getRequestId(), requestType);
+            }
+            return true;
+        }
+        if (requestType == RequestType.WINDOW_UPDATE.getId()) {
+            stream.onWindowUpdate(yrpcRequest.getStreamPayload().getCredit());
+        } else if (requestType == RequestType.STREAM_DATA.getId()) {
+            stream.onData(yrpcRequest.getStreamPayload().getData());
+        } else if (requestType == RequestType.STREAM_HALF_CLOSE.getId()) {
+            stream.onHalfClose();
+        } else if (requestType == RequestType.STREAM_RESET.getId()) {
+            if (log.isDebugEnabled()) {
+                log.debug("编号为【{}】的流被取消。", yrpcRequest.getRequestId());
+            }
+            stream.onReset();
+        }
+        return true;
+    }
+
+    /**
+     * 通道重新变得可写，继续发送所有被挂起的流
+     */
+    public static void resumeAll(Channel channel) {
+        for (ProviderStream stream : new ArrayList<>(streams(channel).values())) {
+            stream.onWritable();
+        }
+    }
+
+    /**
+     * 通道关闭，结束所有的流
+     */
+    public static void closeAll(Channel channel) {
+        for (ProviderStream stream : new ArrayList<>(streams(channel).values())) {
+            stream.onChannelClosed();
+        }
+        streams(channel).clear();
+    }
+
+    private static Map<Long, ProviderStream> streams(Channel channel) {
+        Map<Long, ProviderStream> streams = channel.attr(STREAMS).get();
+        if (streams == null) {
+            streams = new ConcurrentHashMap<>(8);
+            Map<Long, ProviderStream> old = channel.attr(STREAMS).setIfAbsent(streams);
+            if (old != null) {
+                streams = old;
+            }
+        }
+        return streams;
+    }
+}
@@ -0,0 +1,155 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 服务提供方的流发送器，一个服务端流式请求对应一个
+ * 只有在调用方给予额度并且通道可写时才从数据源中取数据写出，所有的状态都只在通道所属的eventLoop中访问
+ *
+ * @author it楠老师
+ * @createTime 2023-08-05
+ */
+@Slf4j
+public class StreamSender implements ProviderStream {
+
+    private final Channel channel;
+    private final long streamId;
+    private final byte compressType;
+    private final byte serializeType;
+
+    private YrpcStream<?> source;
+    private int credit;
+    private boolean done;
+
+    private StreamSender(Channel channel, YrpcRequest yrpcRequest) {
+        this.channel = channel;
+        this.streamId = yrpcRequest.getRequestId();
+        this.compressType = yrpcRequest.getCompressType();
+        this.serializeType = yrpcRequest.getSerializeType();
+    }
+
+    /**
+     * 读到服务端流式请求时登记发送器，必须在通道所属的eventLoop中调用
+     * 方法调用完成之前到达的额度会先累积在发送器上
+     * @param channel     通道
+     * @param yrpcRequest 服务端流式请求
+     */
+    public static void register(Channel channel, YrpcRequest yrpcRequest) {
+        StreamRegistry.register(channel, yrpcRequest.getRequestId(), new StreamSender(channel, yrpcRequest));
+    }
+
+    /**
+     * 开始发送服务提供方返回的流
+     * @param channel  通道
+     * @param streamId 流的id
+     * @param source   服务提供方返回的流
+     */
+    public static void open(Channel channel, long streamId, YrpcStream<?> source) {
+        channel.eventLoop().execute(() -> {
+            if (!(StreamRegistry.get(channel, streamId) instanceof StreamSender sender)) {
+                // 通道已经关闭
+                closeQuietly(streamId, source);
+                return;
+            }
+            sender.source = source;
+            if (sender.done) {
+                sender.finish();
+                return;
+            }
+            sender.pump();
+        });
+    }
+
+    /**
+     * 方法调用失败，流没能打开，移除登记的发送器
+     */
+    public static void discard(Channel channel, long streamId) {
+        channel.eventLoop().execute(() -> StreamRegistry.remove(channel, streamId));
+    }
+
+    @Override
+    public void onWindowUpdate(int credit) {
+        this.credit += credit;
+        pump();
+    }
+
+    @Override
+    public void onReset() {
+        done = true;
+        // 数据源还没有就绪时保留发送器，等open时再关闭
+        if (source != null) {
+            finish();
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        pump();
+    }
+
+    @Override
+    public void onChannelClosed() {
+        done = true;
+        finish();
+    }
+
+    private void pump() {
+        if (source == null || done) {
+            return;
+        }
+        int sent = 0;
+        try {
+            while (credit > 0 && channel.isWritable()) {
+                if (!source.hasNext()) {
+                    write(RespCode.STREAM_END, null);
+                    done = true;
+                    break;
+                }
+                write(RespCode.STREAM_DATA, source.next());
+                credit--;
+                sent++;
+            }
+        } catch (Exception e) {
+            log.error("编号为【{}】的流在读取数据时发生异常。", streamId, e);
+            write(RespCode.FAIL, null);
+            done = true;
+        }
+        if (sent > 0 || done) {
+            channel.flush();
+        }
+        if (done) {
+            finish();
+        }
+    }
+
+    private void write(RespCode respCode, Object body) {
+        YrpcResponse yrpcResponse = YrpcResponse.builder()
+            .requestId(streamId)
+            .compressType(compressType)
+            .serializeType(serializeType)
+            .timeStamp(System.currentTimeMillis())
+            .code(respCode.getCode())
+            .body(body)
+            .build();
+        channel.write(yrpcResponse);
+    }
+
+    private void finish() {
+        StreamRegistry.remove(channel, streamId);
+        if (source != null) {
+            closeQuietly(streamId, source);
+        }
+    }
+
+    private static void closeQuietly(long streamId, YrpcStream<?> source) {
+        try {
+            source.close();
+        } catch (Exception e) {
+            log.error("关闭编号为【{}】的流时发生异常。", streamId, e);
+        }
+    }
+}
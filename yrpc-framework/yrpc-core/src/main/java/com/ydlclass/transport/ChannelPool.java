@@ -0,0 +1,352 @@
+package com.ydlclass.transport;
+
+import com.ydlclass.NettyBootstrapInitializer;
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.config.Configuration;
+import com.ydlclass.core.PendingCalls;
+import com.ydlclass.enumeration.ConnectionState;
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.stream.ConsumerStream;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 服务调用方与一个服务提供方之间的连接池
+ * 1、第一次使用时才建立连接，同一时刻只有一个连接在建立，并发的调用方共用这一次连接
+ * 2、所有连接上都有挂起的请求，并且没有达到最大连接数时，后台新建一条连接，本次调用依然使用已有的连接
+ * 3、超过最小连接数的连接，空闲一段时间以后关闭，还有流的连接不会关闭
+ * 4、池中的第一条可用连接同时放在YrpcBootstrap.CHANNEL_CACHE中，心跳检测和负载均衡依然使用它
+ * 5、连接失败以后按指数退避加随机抖动等待，退避期间的调用方共用一次定时的重连，不会一起去连
+ * 6、连接池关闭以后，池中的连接等挂起的请求结束再关闭
+ *
+ * @author it楠老师
+ * @createTime 2023-08-13
+ */
+@Slf4j
+public class ChannelPool {
+
+    public static final String LEAST_PENDING = "leastPending";
+    public static final String ROUND_ROBIN = "roundRobin";
+
+    // 连接池关闭以后，检查连接上挂起的请求是否已经结束的间隔
+    private static final long DRAIN_CHECK_MILLIS = 100;
+
+    private final InetSocketAddress address;
+    private final int minConnections;
+    private final int maxConnections;
+    private final boolean roundRobin;
+    private final long idleNanos;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+
+    private final List<PooledChannel> channels = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    // 以下状态都在锁内修改
+    private volatile ConnectionState state = ConnectionState.IDLE;
+    // 正在建立的连接，或者退避结束以后才会建立的连接，为null时没有
+    private CompletableFuture<Channel> connecting;
+    // 连续失败的次数和下一次允许建立连接的时间
+    private int failures;
+    private long retryAt;
+    private ScheduledFuture<?> reconnectTask;
+
+    // 定期关闭空闲的连接
+    private final ScheduledFuture<?> evictTask;
+
+    public ChannelPool(InetSocketAddress address, Configuration configuration) {
+        this.address = address;
+        this.minConnections = Math.max(1, configuration.getMinConnections());
+        this.maxConnections = Math.max(minConnections, configuration.getMaxConnections());
+        this.roundRobin = ROUND_ROBIN.equals(configuration.getConnectionSelect());
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getConnectionIdleMillis());
+        this.backoffMillis = Math.max(1, configuration.getReconnectBackoffMillis());
+        this.maxBackoffMillis = Math.max(backoffMillis, configuration.getReconnectMaxBackoffMillis());
+        long period = Math.max(100, configuration.getConnectionIdleMillis() / 2);
+        this.evictTask = maxConnections > minConnections
+            ? NettyBootstrapInitializer.getBootstrap().config().group()
+                .scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    /**
+     * 获取一条可用的连接
+     * @return 连接可用时完成的future，池中已有连接时立即完成，每个调用方拿到的都是独立的future
+     */
+    public CompletableFuture<Channel> acquire() {
+        PooledChannel selected = select();
+        if (selected == null) {
+            return connect().copy();
+        }
+        if (shouldGrow(selected)) {
+            connect();
+        }
+        selected.lastUsed = System.nanoTime();
+        return CompletableFuture.completedFuture(selected.channel);
+    }
+
+    private PooledChannel select() {
+        channels.removeIf(pooled -> !pooled.channel.isActive());
+        int size = channels.size();
+        if (size == 0) {
+            return null;
+        }
+        if (roundRobin) {
+            try {
+                return channels.get(Math.floorMod(next.getAndIncrement(), size));
+            } catch (IndexOutOfBoundsException e) {
+                // 连接在选择的过程中被移除
+                return select();
+            }
+        }
+        PooledChannel selected = null;
+        int least = Integer.MAX_VALUE;
+        for (PooledChannel pooled : channels) {
+            int pending = PendingCalls.pending(pooled.channel);
+            if (pending < least) {
+                least = pending;
+                selected = pooled;
+            }
+        }
+        return selected;
+    }
+
+    private boolean shouldGrow(PooledChannel selected) {
+        int size = channels.size();
+        if (size >= maxConnections || System.currentTimeMillis() < retryAt) {
+            return false;
+        }
+        return size < minConnections || PendingCalls.pending(selected.channel) > 0;
+    }
+
+    /**
+     * 建立一条新的连接
+     * 已经有连接在建立时直接返回它，处于退避期间时返回退避结束以后建立的连接
+     */
+    private synchronized CompletableFuture<Channel> connect() {
+        if (state == ConnectionState.CLOSED) {
+            return CompletableFuture.failedFuture(new NetworkException("与【" + address + "】的连接池已经关闭。"));
+        }
+        if (connecting != null) {
+            return connecting;
+        }
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        connecting = future;
+        long delay = retryAt - System.currentTimeMillis();
+        if (delay > 0) {
+            // 退避期间，到时间以后由一次定时任务重连
+            reconnectTask = NettyBootstrapInitializer.getBootstrap().config().group()
+                .schedule(() -> doConnect(future), delay, TimeUnit.MILLISECONDS);
+        } else {
+            doConnect(future);
+        }
+        return future;
+    }
+
+    private void doConnect(CompletableFuture<Channel> future) {
+        synchronized (this) {
+            if (state == ConnectionState.CLOSED) {
+                return;
+            }
+            if (channels.isEmpty()) {
+                state = ConnectionState.CONNECTING;
+            }
+        }
+        NettyBootstrapInitializer.getBootstrap().connect(address).addListener(
+            (ChannelFutureListener) promise -> {
+                if (!promise.isSuccess()) {
+                    onConnectFailure(future, promise.cause());
+                    return;
+                }
+                Channel channel = promise.channel();
+                PooledChannel pooled = new PooledChannel(channel);
+                synchronized (this) {
+                    connecting = null;
+                    failures = 0;
+                    retryAt = 0;
+                    if (state == ConnectionState.CLOSED) {
+                        channel.close();
+                        future.completeExceptionally(new NetworkException("与【" + address + "】的连接池已经关闭。"));
+                        return;
+                    }
+                    state = ConnectionState.ACTIVE;
+                    channels.add(pooled);
+                }
+                // 缓存channel，心跳检测和负载均衡使用
+                YrpcBootstrap.CHANNEL_CACHE.merge(address, channel,
+                    (cached, created) -> cached.isActive() ? cached : created);
+                channel.closeFuture().addListener(closed -> onClose(pooled));
+                if (log.isDebugEnabled()) {
+                    log.debug("已经和【{}】成功建立了连接，连接池中现有【{}】条连接。", address, channels.size());
+                }
+                future.complete(channel);
+            }
+        );
+    }
+
+    private void onConnectFailure(CompletableFuture<Channel> future, Throwable cause) {
+        long delay;
+        int attempts;
+        synchronized (this) {
+            connecting = null;
+            attempts = ++failures;
+            // 指数退避，再取[一半, 全部]之间的随机值，避免所有调用方在同一时刻重连
+            long backoff = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempts - 1, 20));
+            delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            retryAt = System.currentTimeMillis() + delay;
+            if (state != ConnectionState.CLOSED && channels.isEmpty()) {
+                state = ConnectionState.BACKOFF;
+            }
+        }
+        log.warn("与【{}】建立连接失败，第【{}】次，【{}】毫秒以后才会重连。", address, attempts, delay, cause);
+        future.completeExceptionally(cause);
+    }
+
+    private void onClose(PooledChannel pooled) {
+        channels.remove(pooled);
+        Channel replacement = channels.stream()
+            .map(candidate -> candidate.channel)
+            .filter(Channel::isActive)
+            .findFirst()
+            .orElse(null);
+        // 连接断开，换成池中的其他连接，没有时从缓存中移除，下次调用时重新建立
+        if (replacement == null) {
+            YrpcBootstrap.CHANNEL_CACHE.remove(address, pooled.channel);
+            synchronized (this) {
+                if (state == ConnectionState.ACTIVE && channels.isEmpty()) {
+                    state = ConnectionState.IDLE;
+                }
+            }
+        } else {
+            YrpcBootstrap.CHANNEL_CACHE.replace(address, pooled.channel, replacement);
+        }
+    }
+
+    /**
+     * 心跳检测认为连接已经失效，从池中移除并关闭
+     * 关闭以后和连接自己断开一样由onClose处理，池中没有连接时下一次获取会重新建立，失败时进入退避
+     * @param channel 失效的连接
+     * @return 连接是否属于这个池
+     */
+    public boolean evict(Channel channel) {
+        for (PooledChannel pooled : channels) {
+            if (pooled.channel == channel) {
+                channels.remove(pooled);
+                log.warn("与【{}】的连接心跳检测失败，已经从连接池中移除。", address);
+                channel.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        Set<Channel> streaming = YrpcBootstrap.STREAMS.values().stream()
+            .map(ConsumerStream::getChannel)
+            .collect(Collectors.toSet());
+        for (PooledChannel pooled : channels) {
+            if (channels.size() <= minConnections) {
+                return;
+            }
+            if (now - pooled.lastUsed > idleNanos && PendingCalls.pending(pooled.channel) == 0
+                && !streaming.contains(pooled.channel) && channels.remove(pooled)) {
+                log.info("与【{}】的连接空闲超过【{}】毫秒，已经关闭。", address, TimeUnit.NANOSECONDS.toMillis(idleNanos));
+                pooled.channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return 池中可用的连接数
+     */
+    public int size() {
+        return channels.size();
+    }
+
+    public ConnectionState getState() {
+        return state;
+    }
+
+    /**
+     * 不再使用这个连接池，等待中的调用方立即失败
+     * 池中的连接不再分配给新的调用，没有挂起请求的连接立即关闭，其余的连接在挂起的请求全部结束（收到响应或者超时）以后关闭
+     */
+    public void close() {
+        CompletableFuture<Channel> waiting;
+        List<PooledChannel> draining;
+        synchronized (this) {
+            state = ConnectionState.CLOSED;
+            waiting = connecting;
+            connecting = null;
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+            }
+            draining = new ArrayList<>(channels);
+            channels.clear();
+        }
+        if (evictTask != null) {
+            evictTask.cancel(false);
+        }
+        if (waiting != null) {
+            waiting.completeExceptionally(new NetworkException("与【" + address + "】的连接池已经关闭。"));
+        }
+        drain(draining);
+    }
+
+    /**
+     * 关闭已经没有挂起请求的连接，剩下的连接稍后再检查
+     * @param draining 等待关闭的连接，只在当前任务中修改
+     */
+    private void drain(List<PooledChannel> draining) {
+        draining.removeIf(pooled -> {
+            if (PendingCalls.pending(pooled.channel) > 0) {
+                return false;
+            }
+            pooled.channel.close();
+            // 该地址上已经没有挂起的请求时，同时移除它的指标
+            if (pooled.channel.remoteAddress() != null) {
+                YrpcBootstrap.PENDING_REQUEST.removeAddress(pooled.channel.remoteAddress());
+            }
+            return true;
+        });
+        if (draining.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("与【{}】的连接池已经关闭，池中的连接已经全部关闭。", address);
+            }
+            return;
+        }
+        try {
+            NettyBootstrapInitializer.getBootstrap().config().group()
+                .schedule(() -> drain(draining), DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 线程池已经关闭，不再等待
+            for (PooledChannel pooled : draining) {
+                pooled.channel.close();
+            }
+        }
+    }
+
+    private static class PooledChannel {
+        private final Channel channel;
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledChannel(Channel channel) {
+            this.channel = channel;
+        }
+    }
+}
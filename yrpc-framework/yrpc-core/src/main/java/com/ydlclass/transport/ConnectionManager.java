@@ -0,0 +1,93 @@
+package com.ydlclass.transport;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.enumeration.ConnectionState;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 服务调用方的连接管理，每个服务提供方的地址对应一个连接池，连接池维护该地址的连接状态
+ * 调用、心跳检测和注册中心的监听都通过这里获取连接，同一个地址同一时刻只会有一次连接在建立
+ *
+ * @author it楠老师
+ * @createTime 2023-08-14
+ */
+@Slf4j
+public class ConnectionManager {
+
+    /**
+     * 异步获取一条可用的连接
+     * @param address 服务提供方的地址
+     * @return 连接可用时完成的future，连接失败或者处于退避期间时在重连结束以后完成
+     */
+    public static CompletableFuture<Channel> acquire(InetSocketAddress address) {
+        return pool(address).acquire();
+    }
+
+    /**
+     * 提前建立连接，不等待结果，适合在注册中心的回调等不能阻塞的线程中使用
+     * @param address 服务提供方的地址
+     */
+    public static void warmUp(InetSocketAddress address) {
+        acquire(address).whenComplete((channel, throwable) -> {
+            if (throwable != null && log.isDebugEnabled()) {
+                log.debug("提前建立与【{}】的连接失败。", address, throwable);
+            }
+        });
+    }
+
+    /**
+     * 服务提供方下线或者正在关闭，关闭该地址的连接池，等待中的调用方立即失败
+     * @param address 服务提供方的地址
+     */
+    public static void remove(SocketAddress address) {
+        YrpcBootstrap.CHANNEL_CACHE.remove(address);
+        ChannelPool pool = YrpcBootstrap.CHANNEL_POOLS.remove(address);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * 移除并关闭一条失效的连接，连接池保留，之后的调用和心跳检测由连接池重新建立连接
+     * @param address 服务提供方的地址
+     * @param channel 失效的连接
+     */
+    public static void evict(InetSocketAddress address, Channel channel) {
+        ChannelPool pool = YrpcBootstrap.CHANNEL_POOLS.get(address);
+        if (pool == null || !pool.evict(channel)) {
+            channel.close();
+        }
+        YrpcBootstrap.CHANNEL_CACHE.remove(address, channel);
+    }
+
+    /**
+     * 已经有连接池但是当前没有可用连接的地址，在后台重新建立连接
+     * 连接池处于退避期间时，连接在退避结束以后才会建立，不会频繁重连
+     */
+    public static void reconnectIdle() {
+        for (InetSocketAddress address : YrpcBootstrap.CHANNEL_POOLS.keySet()) {
+            if (!YrpcBootstrap.CHANNEL_CACHE.containsKey(address)) {
+                warmUp(address);
+            }
+        }
+    }
+
+    /**
+     * @param address 服务提供方的地址
+     * @return 该地址的连接状态，还没有使用过时为IDLE
+     */
+    public static ConnectionState getState(InetSocketAddress address) {
+        ChannelPool pool = YrpcBootstrap.CHANNEL_POOLS.get(address);
+        return pool == null ? ConnectionState.IDLE : pool.getState();
+    }
+
+    private static ChannelPool pool(InetSocketAddress address) {
+        return YrpcBootstrap.CHANNEL_POOLS.computeIfAbsent(address,
+            key -> new ChannelPool(key, YrpcBootstrap.getInstance().getConfiguration()));
+    }
+}
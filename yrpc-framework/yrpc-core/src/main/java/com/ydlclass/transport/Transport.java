@@ -0,0 +1,58 @@
+package com.ydlclass.transport;
+
+import com.ydlclass.config.Configuration;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+
+/**
+ * 传输层的抽象，屏蔽nio、epoll、io_uring的差异
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+public interface Transport {
+    
+    /**
+     * @return 传输层的名字
+     */
+    String getName();
+    
+    /**
+     * 创建一个线程池
+     * @param threads 线程数，0代表使用netty的默认值
+     * @return EventLoopGroup
+     */
+    EventLoopGroup newEventLoopGroup(int threads);
+    
+    /**
+     * @return 服务端使用的channel类型
+     */
+    Class<? extends ServerChannel> serverChannelClass();
+    
+    /**
+     * @return 客户端使用的channel类型
+     */
+    Class<? extends SocketChannel> channelClass();
+    
+    /**
+     * @return 是否支持SO_REUSEPORT，支持时服务端可以在同一个端口上启动多个监听器
+     */
+    boolean supportsReusePort();
+    
+    /**
+     * 为服务端设置传输层相关的socket参数
+     * @param serverBootstrap 服务端引导程序
+     * @param configuration   全局配置
+     */
+    void applyServerOptions(ServerBootstrap serverBootstrap, Configuration configuration);
+    
+    /**
+     * 为客户端设置传输层相关的socket参数
+     * @param bootstrap     客户端引导程序
+     * @param configuration 全局配置
+     */
+    void applyClientOptions(Bootstrap bootstrap, Configuration configuration);
+}
@@ -0,0 +1,69 @@
+package com.ydlclass.transport;
+
+import com.ydlclass.transport.impl.EpollTransport;
+import com.ydlclass.transport.impl.IoUringTransport;
+import com.ydlclass.transport.impl.NioTransport;
+import io.netty.channel.epoll.Epoll;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 根据配置和运行环境选择传输层
+ * auto：linux下优先使用epoll，否则使用nio
+ * epoll、io_uring：不可用时依次回退到epoll、nio
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+@Slf4j
+public class TransportFactory {
+    
+    public static final String AUTO = "auto";
+    public static final String NIO = "nio";
+    public static final String EPOLL = "epoll";
+    public static final String IO_URING = "io_uring";
+    
+    /**
+     * 获取一个传输层
+     * @param transportType 配置的传输层类型
+     * @return 当前环境下可用的传输层
+     */
+    public static Transport getTransport(String transportType) {
+        if (IO_URING.equalsIgnoreCase(transportType)) {
+            if (isIoUringAvailable()) {
+                return new IoUringTransport();
+            }
+            log.warn("当前环境不支持io_uring，将回退到其他的传输层。");
+            return epollOrNio();
+        }
+        if (EPOLL.equalsIgnoreCase(transportType) || AUTO.equalsIgnoreCase(transportType)) {
+            return epollOrNio();
+        }
+        if (!NIO.equalsIgnoreCase(transportType)) {
+            log.error("未找到您配置的【{}】传输层，默认选用nio。", transportType);
+        }
+        return new NioTransport();
+    }
+    
+    private static Transport epollOrNio() {
+        if (Epoll.isAvailable()) {
+            return new EpollTransport();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("当前环境不支持epoll，原因【{}】.", Epoll.unavailabilityCause().getMessage());
+        }
+        return new NioTransport();
+    }
+    
+    /**
+     * io_uring是可选依赖，需要先确认类是否存在再去访问
+     * @return true 可用
+     */
+    private static boolean isIoUringAvailable() {
+        try {
+            Class.forName("io.netty.incubator.channel.uring.IOUring");
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        return IoUringTransport.isAvailable();
+    }
+}
@@ -0,0 +1,67 @@
+package com.ydlclass.transport.impl;
+
+import com.ydlclass.config.Configuration;
+import com.ydlclass.transport.Transport;
+import com.ydlclass.transport.TransportFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+
+/**
+ * linux原生epoll的传输层，减少系统调用和gc
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+public class EpollTransport implements Transport {
+    
+    @Override
+    public String getName() {
+        return TransportFactory.EPOLL;
+    }
+    
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return new EpollEventLoopGroup(threads);
+    }
+    
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return EpollServerSocketChannel.class;
+    }
+    
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return EpollSocketChannel.class;
+    }
+    
+    @Override
+    public boolean supportsReusePort() {
+        return true;
+    }
+    
+    @Override
+    public void applyServerOptions(ServerBootstrap serverBootstrap, Configuration configuration) {
+        EpollMode epollMode = configuration.isEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+        serverBootstrap
+            .option(EpollChannelOption.SO_REUSEPORT, configuration.isReusePort() || configuration.getAcceptors() > 1)
+            .option(EpollChannelOption.EPOLL_MODE, epollMode)
+            .childOption(EpollChannelOption.EPOLL_MODE, epollMode)
+            .childOption(EpollChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+    }
+    
+    @Override
+    public void applyClientOptions(Bootstrap bootstrap, Configuration configuration) {
+        EpollMode epollMode = configuration.isEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+        bootstrap
+            .option(EpollChannelOption.EPOLL_MODE, epollMode)
+            .option(EpollChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+    }
+}
@@ -0,0 +1,67 @@
+package com.ydlclass.transport.impl;
+
+import com.ydlclass.config.Configuration;
+import com.ydlclass.transport.Transport;
+import com.ydlclass.transport.TransportFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+
+/**
+ * linux io_uring的传输层，依赖是可选的，只有通过TransportFactory确认类存在后才会加载本类
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+public class IoUringTransport implements Transport {
+    
+    public static boolean isAvailable() {
+        return IOUring.isAvailable();
+    }
+    
+    @Override
+    public String getName() {
+        return TransportFactory.IO_URING;
+    }
+    
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return new IOUringEventLoopGroup(threads);
+    }
+    
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return IOUringServerSocketChannel.class;
+    }
+    
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return IOUringSocketChannel.class;
+    }
+    
+    @Override
+    public boolean supportsReusePort() {
+        return true;
+    }
+    
+    @Override
+    public void applyServerOptions(ServerBootstrap serverBootstrap, Configuration configuration) {
+        // io_uring没有边缘触发和水平触发的概念
+        serverBootstrap
+            .option(UnixChannelOption.SO_REUSEPORT, configuration.isReusePort() || configuration.getAcceptors() > 1)
+            .childOption(IOUringChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+    }
+    
+    @Override
+    public void applyClientOptions(Bootstrap bootstrap, Configuration configuration) {
+        bootstrap.option(IOUringChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+    }
+}
@@ -0,0 +1,56 @@
+package com.ydlclass.transport.impl;
+
+import com.ydlclass.config.Configuration;
+import com.ydlclass.transport.Transport;
+import com.ydlclass.transport.TransportFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * jdk nio的传输层，所有平台都可用，作为兜底
+ *
+ * @author it楠老师
+ * @createTime 2023-08-02
+ */
+public class NioTransport implements Transport {
+    
+    @Override
+    public String getName() {
+        return TransportFactory.NIO;
+    }
+    
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return new NioEventLoopGroup(threads);
+    }
+    
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return NioServerSocketChannel.class;
+    }
+    
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return NioSocketChannel.class;
+    }
+    
+    @Override
+    public boolean supportsReusePort() {
+        return false;
+    }
+    
+    @Override
+    public void applyServerOptions(ServerBootstrap serverBootstrap, Configuration configuration) {
+        // nio不支持TCP_QUICKACK、SO_REUSEPORT等原生参数
+    }
+    
+    @Override
+    public void applyClientOptions(Bootstrap bootstrap, Configuration configuration) {
+    }
+}
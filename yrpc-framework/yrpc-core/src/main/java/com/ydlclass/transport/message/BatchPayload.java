@@ -0,0 +1,36 @@
+package com.ydlclass.transport.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 批量报文的负载，一个报文中携带多个独立的请求或响应，按下标一一对应
+ * 请求：requestIds + bodies(RequestPayload)
+ * 响应：requestIds + codes + bodies(返回值)
+ *
+ * @author it楠老师
+ * @createTime 2023-08-04
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchPayload implements Serializable {
+    
+    // 每一个子请求的id
+    private long[] requestIds;
+    
+    // 每一个子响应的响应码，请求中为空
+    private byte[] codes;
+    
+    // 每一个子请求的负载或子响应的返回值
+    private Object[] bodies;
+    
+    public int size() {
+        return requestIds == null ? 0 : requestIds.length;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ydlclass.transport.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * v2协议的报文头，请求和响应共用，type在请求中是请求类型，在响应中是响应码
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompactHeader {
+    
+    private byte type;
+    private byte serializeType;
+    private byte compressType;
+    
+    private long requestId;
+    
+    // 可选，0代表没有携带
+    private long timeStamp;
+    
+    // 可选，扩展的头部附件
+    private Map<String, String> attachments;
+}
@@ -0,0 +1,255 @@
+package com.ydlclass.transport.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AttributeKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * v2紧凑协议，同一个连接上的请求和响应都可以是v1或者v2，通过第一个字节区分（v1是魔数'y'，v2是版本号2）
+ * <pre>
+ *   +-----+------------+------+-------+-------+-----------------+--------------+----------------+--------+
+ *   | ver | length(3B) | type | codec | flags | id delta(varint)| ts(varint,可选)| attachments(可选)|  body  |
+ *   +-----+------------+------+-------+-------+-----------------+--------------+----------------+--------+
+ * </pre>
+ * 1B version ----> 2
+ * 3B length 长度字段之后的字节数，固定占3个字节的varint，便于写完报文体之后回填
+ * 1B type 请求类型或者响应码
+ * 1B codec 高4位是序列化方式，低4位是压缩方式，任何一个编号超过15的报文使用v1协议（见fitsCodec）
+ * 1B flags 标记可选字段是否存在
+ * varint id 与同一个连接同一方向上一个报文的请求id之差（zigzag编码）
+ * varint timestamp 只有心跳报文携带
+ * attachments varint个数 + (varint长度+utf8的key, varint长度+utf8的value)*
+ * <p>
+ * 最常见的请求头在10个字节左右，v1固定30个字节
+ *
+ * @author it楠老师
+ * @createTime 2023-08-07
+ */
+public final class CompactProtocol {
+    
+    // 通道上协商出来的协议版本，没有协商时使用v1
+    public static final AttributeKey<Integer> VERSION_KEY = AttributeKey.valueOf("yrpc.protocol.version");
+    
+    // 长度字段固定占用的字节数，3个字节的varint最大可以表示2M
+    public static final int LENGTH_FIELD_LENGTH = 3;
+    
+    // codec字节中序列化和压缩方式各占4位，能表示的最大编号
+    public static final int MAX_CODEC = 0x0F;
+    
+    public static final int FLAG_TIMESTAMP = 1;
+    public static final int FLAG_ATTACHMENTS = 1 << 1;
+    
+    private CompactProtocol() {
+    }
+    
+    /**
+     * @param channel 通道
+     * @return 通道上写出报文使用的协议版本
+     */
+    public static int version(Channel channel) {
+        Integer version = channel.attr(VERSION_KEY).get();
+        return version == null ? MessageFormatConstant.VERSION : version;
+    }
+    
+    /**
+     * 升级通道上使用的协议版本，只升不降
+     */
+    public static void upgrade(Channel channel, int version) {
+        if (version > version(channel)) {
+            channel.attr(VERSION_KEY).set(version);
+        }
+    }
+    
+    /**
+     * 判断序列化和压缩方式能否放进v2的codec字节，spi可以登记更大的编号，放不下时这个报文使用v1协议
+     * @param serializeType 序列化方式
+     * @param compressType  压缩方式
+     * @return true 可以使用v2协议
+     */
+    public static boolean fitsCodec(byte serializeType, byte compressType) {
+        return serializeType >= 0 && serializeType <= MAX_CODEC && compressType >= 0 && compressType <= MAX_CODEC;
+    }
+    
+    /**
+     * 判断可读的报文是否是v2协议
+     */
+    public static boolean isCompact(ByteBuf in) {
+        return in.isReadable() && in.getByte(in.readerIndex()) == MessageFormatConstant.VERSION_2;
+    }
+    
+    /**
+     * 写出v2的报文头
+     * @param out    输出
+     * @param header 报文头
+     * @param lastId 同一方向上一个报文的请求id
+     * @return 长度字段的位置，写完报文体之后用来回填长度
+     */
+    public static int writeHeader(ByteBuf out, CompactHeader header, long lastId) {
+        checkCodec(header.getSerializeType(), header.getCompressType());
+        out.writeByte(MessageFormatConstant.VERSION_2);
+        int lengthIndex = out.writerIndex();
+        out.writerIndex(lengthIndex + LENGTH_FIELD_LENGTH);
+        out.writeByte(header.getType());
+        out.writeByte(header.getSerializeType() << 4 | header.getCompressType() & 0x0F);
+        
+        Map<String, String> attachments = header.getAttachments();
+        boolean hasAttachments = attachments != null && !attachments.isEmpty();
+        out.writeByte((header.getTimeStamp() != 0 ? FLAG_TIMESTAMP : 0) | (hasAttachments ? FLAG_ATTACHMENTS : 0));
+        
+        writeVarint(out, zigzag(header.getRequestId() - lastId));
+        if (header.getTimeStamp() != 0) {
+            writeVarint(out, header.getTimeStamp());
+        }
+        if (hasAttachments) {
+            writeVarint(out, attachments.size());
+            for (Map.Entry<String, String> entry : attachments.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        return lengthIndex;
+    }
+    
+    /**
+     * 回填序列化和压缩方式，压缩方式要在写完报文体以后才能确定
+     * @param out           输出
+     * @param lengthIndex   长度字段的位置
+     * @param serializeType 序列化方式
+     * @param compressType  实际使用的压缩方式
+     */
+    public static void writeCompressType(ByteBuf out, int lengthIndex, byte serializeType, byte compressType) {
+        checkCodec(serializeType, compressType);
+        out.setByte(lengthIndex + LENGTH_FIELD_LENGTH + 1, serializeType << 4 | compressType & 0x0F);
+    }
+    
+    /**
+     * 回填长度字段
+     * @param out         输出
+     * @param lengthIndex 长度字段的位置
+     */
+    public static void writeLength(ByteBuf out, int lengthIndex) {
+        int length = out.writerIndex() - lengthIndex - LENGTH_FIELD_LENGTH;
+        if (length > MessageFormatConstant.MAX_FRAME_LENGTH) {
+            throw new TooLongFrameException("报文的长度【" + length + "】超过了上限。");
+        }
+        out.setByte(lengthIndex, length & 0x7F | 0x80);
+        out.setByte(lengthIndex + 1, length >>> 7 & 0x7F | 0x80);
+        out.setByte(lengthIndex + 2, length >>> 14);
+    }
+    
+    /**
+     * 从累积的数据中截取一个完整的v2报文
+     * @param in 累积的数据
+     * @return 长度字段之后的内容（retainedSlice，使用完需要释放），数据不完整时返回null
+     */
+    public static ByteBuf readFrame(ByteBuf in) {
+        int index = in.readerIndex() + 1;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (index >= in.writerIndex()) {
+                return null;
+            }
+            if (shift > 21) {
+                throw new CorruptedFrameException("报文的长度字段不合法。");
+            }
+            b = in.getByte(index++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        
+        if (length > MessageFormatConstant.MAX_FRAME_LENGTH) {
+            throw new TooLongFrameException("报文的长度【" + length + "】超过了上限。");
+        }
+        if (in.writerIndex() - index < length) {
+            return null;
+        }
+        ByteBuf frame = in.retainedSlice(index, length);
+        in.readerIndex(index + length);
+        return frame;
+    }
+    
+    /**
+     * 读取v2的报文头，读取之后frame的读指针位于报文体的开始
+     * @param frame  readFrame截取出的报文
+     * @param lastId 同一方向上一个报文的请求id
+     * @return 报文头
+     */
+    public static CompactHeader readHeader(ByteBuf frame, long lastId) {
+        CompactHeader header = new CompactHeader();
+        header.setType(frame.readByte());
+        int codec = frame.readUnsignedByte();
+        header.setSerializeType((byte) (codec >>> 4));
+        header.setCompressType((byte) (codec & 0x0F));
+        int flags = frame.readUnsignedByte();
+        
+        header.setRequestId(lastId + unzigzag(readVarint(frame)));
+        if ((flags & FLAG_TIMESTAMP) != 0) {
+            header.setTimeStamp(readVarint(frame));
+        }
+        if ((flags & FLAG_ATTACHMENTS) != 0) {
+            int size = (int) readVarint(frame);
+            Map<String, String> attachments = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                attachments.put(readString(frame), readString(frame));
+            }
+            header.setAttachments(attachments);
+        }
+        return header;
+    }
+    
+    public static void writeVarint(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    public static long readVarint(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("varint字段不合法。");
+    }
+    
+    private static void checkCodec(byte serializeType, byte compressType) {
+        if (!fitsCodec(serializeType, compressType)) {
+            throw new IllegalArgumentException("序列化方式【" + serializeType + "】或压缩方式【" + compressType
+                + "】的编号超过了" + MAX_CODEC + "，不能使用v2协议。");
+        }
+    }
+    
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+    
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+    
+    private static void writeString(ByteBuf out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+    
+    private static String readString(ByteBuf in) {
+        int length = (int) readVarint(in);
+        String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+}
@@ -18,6 +18,10 @@ public class MessageFormatConstant {
     
     public final static byte[] MAGIC = "yrpc".getBytes();
     public final static byte VERSION = 1;
+    // v2紧凑协议，见CompactProtocol
+    public final static byte VERSION_2 = 2;
+    // 当前实现支持的最高版本
+    public final static byte MAX_VERSION = VERSION_2;
     
     // 头部信息的长度
     public final static short HEADER_LENGTH = (byte)(MAGIC.length + 1 + 2 + 4 + 1 + 1 + 1 + 8 + 8);
@@ -30,4 +34,7 @@ public class MessageFormatConstant {
     
     // 总长度占用的字节数
     public static final int FULL_FIELD_LENGTH = 4;
+    
+    // 压缩方式在报文中的位置，编码器写完报文体以后回填
+    public static final int COMPRESS_OFFSET = MAGIC.length + VERSION_LENGTH + HEADER_FIELD_LENGTH + FULL_FIELD_LENGTH + 1 + 1;
 }
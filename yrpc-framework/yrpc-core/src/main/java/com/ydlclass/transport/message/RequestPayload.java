@@ -16,6 +16,9 @@ import java.io.Serializable;
 @NoArgsConstructor
 public class RequestPayload implements Serializable {
     
+    // 固定为增加methodId之前的值，jdk序列化时和老版本的服务提供方保持兼容
+    private static final long serialVersionUID = 8250088872299954902L;
+    
     // 1、接口的名字 -- com.ydlclass.HelloYrpc
     private String interfaceName;
     
@@ -30,4 +33,7 @@ public class RequestPayload implements Serializable {
     // 4、返回值的封装 -- {java.long.String}
     private Class<?> returnType;
     
+    // 5、方法在服务提供方登记的编号，大于0时前四项不再传输，由提供方根据编号还原
+    private int methodId;
+    
 }
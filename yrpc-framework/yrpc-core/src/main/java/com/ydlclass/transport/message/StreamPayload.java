@@ -0,0 +1,29 @@
+package com.ydlclass.transport.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 流报文的负载，报文的requestId就是流的id
+ * 窗口更新：credit为新增的额度
+ * 双向流数据：data为消息
+ *
+ * @author it楠老师
+ * @createTime 2023-08-05
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StreamPayload implements Serializable {
+
+    // 新增的额度，也就是对方还可以继续发送的数据帧的个数
+    private int credit;
+
+    // 携带的数据
+    private Object data;
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 /**
  * 服务调用方发起的请求内容
  * @author it楠老师
@@ -26,8 +28,17 @@ public class YrpcRequest {
     
     private long timeStamp;
     
+    // 扩展的头部附件，只有v2协议会携带
+    private Map<String, String> attachments;
+    
     // 具体的消息体
     private RequestPayload requestPayload;
     
+    // 批量请求的消息体，requestType为BATCH时使用
+    private BatchPayload batchPayload;
+    
+    // 流报文的消息体，requestType为WINDOW_UPDATE、STREAM_RESET、STREAM_DATA、STREAM_HALF_CLOSE时使用
+    private StreamPayload streamPayload;
+    
     
 }
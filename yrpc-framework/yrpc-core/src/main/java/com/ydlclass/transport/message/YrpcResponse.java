@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 /**
  * 服务提供方回复的响应
  * @author it楠老师
@@ -25,9 +27,15 @@ public class YrpcResponse {
     
     private long timeStamp;
     
+    // 扩展的头部附件，只有v2协议会携带
+    private Map<String, String> attachments;
+    
     // 1 成功，  2 异常
     private byte code;
     
     // 具体的消息体
     private Object body;
+    
+    // 响应的方法，只在本地使用不会编码，编码器按方法统计压缩率
+    private String method;
 }
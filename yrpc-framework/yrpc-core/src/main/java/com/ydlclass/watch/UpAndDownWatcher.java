@@ -1,17 +1,20 @@
 package com.ydlclass.watch;
 
-import com.ydlclass.NettyBootstrapInitializer;
 import com.ydlclass.YrpcBootstrap;
 import com.ydlclass.discovery.Registry;
+import com.ydlclass.exceptions.DiscoveryException;
 import com.ydlclass.loadbalancer.LoadBalancer;
-import io.netty.channel.Channel;
+import com.ydlclass.transport.ConnectionManager;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 
 import java.net.InetSocketAddress;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author it楠老师
@@ -19,6 +22,21 @@ import java.util.Map;
  */
 @Slf4j
 public class UpAndDownWatcher implements Watcher {
+    
+    // key是服务节点的路径，值是上一次拉取到的服务列表，只有从这里消失的地址才算下线
+    private static final Map<String, Set<InetSocketAddress>> KNOWN_ADDRESSES = new ConcurrentHashMap<>();
+    
+    /**
+     * 记录服务节点最新的服务列表，注册中心每次拉取服务列表时调用
+     * @param serviceNode 服务节点的路径
+     * @param addresses   服务列表
+     * @return 上一次的服务列表，没有时为空
+     */
+    public static Set<InetSocketAddress> remember(String serviceNode, List<InetSocketAddress> addresses) {
+        Set<InetSocketAddress> previous = KNOWN_ADDRESSES.put(serviceNode, new HashSet<>(addresses));
+        return previous == null ? Set.of() : previous;
+    }
+    
     @Override
     public void process(WatchedEvent event) {
         
@@ -27,43 +45,57 @@ public class UpAndDownWatcher implements Watcher {
             if (log.isDebugEnabled()){
                 log.debug("检测到服务【{}】下有节点上/下线，将重新拉取服务列表...",event.getPath());
             }
-            String serviceName = getServiceName(event.getPath());
-            Registry registry = YrpcBootstrap.getInstance().getConfiguration().getRegistryConfig().getRegistry();;
-            List<InetSocketAddress> addresses = registry.lookup(serviceName,
-                YrpcBootstrap.getInstance().getConfiguration().getGroup());
+            String serviceNode = event.getPath();
+            String serviceName = getServiceName(serviceNode);
+            Set<InetSocketAddress> previous = KNOWN_ADDRESSES.getOrDefault(serviceNode, Set.of());
+            Registry registry = YrpcBootstrap.getInstance().getConfiguration().getRegistryConfig().getRegistry();
+            List<InetSocketAddress> addresses;
+            try {
+                // 拉取的同时会记录最新的服务列表
+                addresses = registry.lookup(serviceName, YrpcBootstrap.getInstance().getConfiguration().getGroup());
+            } catch (DiscoveryException e) {
+                // 最后一个节点也下线了，拉取时已经记录了空的服务列表
+                addresses = List.of();
+            }
             // 处理新增的节点
             for (InetSocketAddress address : addresses) {
                 // 新增的节点   会在address 不在CHANNEL_CACHE
-                // 下线的节点   可能会在CHANNEL_CACHE 不在address
                 if(!YrpcBootstrap.CHANNEL_CACHE.containsKey(address)){
-                    // 根据地址建立连接，并且缓存
-                    Channel channel = null;
-                    try {
-                        channel = NettyBootstrapInitializer.getBootstrap()
-                            .connect(address).sync().channel();
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                    YrpcBootstrap.CHANNEL_CACHE.put(address,channel);
+                    // 交给连接管理异步建立连接，不阻塞zookeeper的事件线程
+                    ConnectionManager.warmUp(address);
                 }
             }
             
-            // 处理下线的节点 可能会在CHANNEL_CACHE 不在address
-            for (Map.Entry<InetSocketAddress,Channel> entry: YrpcBootstrap.CHANNEL_CACHE.entrySet()){
-                if(!addresses.contains(entry.getKey())){
-                    YrpcBootstrap.CHANNEL_CACHE.remove(entry.getKey());
+            // 处理下线的节点 上一次在这个服务的列表中，这一次不在，并且没有被其他服务使用
+            for (InetSocketAddress address : previous) {
+                if (!addresses.contains(address) && !usedByOtherService(serviceNode, address)) {
+                    ConnectionManager.remove(address);
                 }
             }
             
             // 获得负载均衡器，进行重新的loadBalance
-            LoadBalancer loadBalancer = YrpcBootstrap.getInstance().getConfiguration().getLoadBalancer();
-            loadBalancer.reLoadBalance(serviceName,addresses);
+            if (!addresses.isEmpty()) {
+                LoadBalancer loadBalancer = YrpcBootstrap.getInstance().getConfiguration().getLoadBalancer();
+                loadBalancer.reLoadBalance(serviceName,addresses);
+            }
     
         }
     }
     
+    private boolean usedByOtherService(String serviceNode, InetSocketAddress address) {
+        for (Map.Entry<String, Set<InetSocketAddress>> entry : KNOWN_ADDRESSES.entrySet()) {
+            if (!entry.getKey().equals(serviceNode) && entry.getValue().contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 服务节点的路径为 /yrpc-metadata/providers/接口名/分组
+     */
     private String getServiceName(String path) {
         String[] split = path.split("/");
-        return split[split.length - 1];
+        return split[split.length - 2];
     }
 }
@@ -0,0 +1,97 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.ServiceConfig;
+import com.ydlclass.core.MethodRegistry;
+import com.ydlclass.enumeration.FaultType;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.fault.FaultRule;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 使用方法表的请求只携带方法编号，按服务和方法配置的故障规则依然能匹配
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class FaultInjectionHandlerTest {
+
+    @Test
+    public void methodIdOnlyRequestMatchesMethodRule() {
+        int methodId = register();
+        EmbeddedChannel channel = new EmbeddedChannel(new FaultInjectionHandler(List.of(FaultRule.builder()
+            .service(Greeting.class.getName())
+            .method("hello")
+            .type(FaultType.ERROR)
+            .code(RespCode.FAIL.getCode())
+            .build())));
+
+        channel.writeInbound(request(31, RequestPayload.builder().methodId(methodId).build()));
+        YrpcResponse response = channel.readOutbound();
+        assertEquals(31, response.getRequestId());
+        assertEquals(RespCode.FAIL.getCode(), response.getCode());
+        assertNull(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void otherMethodPassesThrough() {
+        int methodId = register();
+        EmbeddedChannel channel = new EmbeddedChannel(new FaultInjectionHandler(List.of(FaultRule.builder()
+            .service(Greeting.class.getName())
+            .method("bye")
+            .type(FaultType.DROP)
+            .build())));
+
+        YrpcRequest request = request(32, RequestPayload.builder().methodId(methodId).build());
+        channel.writeInbound(request);
+        assertSame(request, channel.readInbound());
+        assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    private static int register() {
+        ServiceConfig<Greeting> service = new ServiceConfig<>();
+        service.setInterface(Greeting.class);
+        service.setRef(new GreetingImpl());
+        MethodRegistry.register(service);
+        return MethodRegistry.lookup(RequestPayload.builder()
+            .interfaceName(Greeting.class.getName())
+            .methodName("hello")
+            .parametersType(new Class[]{String.class})
+            .build()).getId();
+    }
+
+    private static YrpcRequest request(long requestId, RequestPayload requestPayload) {
+        return YrpcRequest.builder()
+            .requestId(requestId)
+            .requestType(RequestType.REQUEST.getId())
+            .serializeType((byte) 1)
+            .compressType((byte) 0)
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(requestPayload)
+            .build();
+    }
+
+    public interface Greeting {
+        String hello(String name);
+    }
+
+    public static class GreetingImpl implements Greeting {
+
+        @Override
+        public String hello(String name) {
+            return "hello " + name;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.core.InvocationDispatcher;
+import com.ydlclass.core.ShutDownHolder;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 报文体为空的请求直接回复失败，计数器不会残留
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class MethodCallHandlerTest {
+
+    @Test
+    public void missingPayloadIsAnsweredWithFail() {
+        for (RequestType requestType : new RequestType[]{RequestType.REQUEST, RequestType.SERVER_STREAM, RequestType.BATCH}) {
+            long before = ShutDownHolder.REQUEST_COUNTER.sum();
+            EmbeddedChannel channel = new EmbeddedChannel(
+                new MethodCallHandler(InvocationDispatcher.create(YrpcBootstrap.getInstance().getConfiguration())));
+            channel.writeInbound(YrpcRequest.builder()
+                .requestId(21)
+                .requestType(requestType.getId())
+                .serializeType((byte) 1)
+                .compressType((byte) 0)
+                .timeStamp(System.currentTimeMillis())
+                .build());
+
+            YrpcResponse response = channel.readOutbound();
+            assertEquals(21, response.getRequestId());
+            assertEquals(RespCode.FAIL.getCode(), response.getCode());
+            assertEquals(before, ShutDownHolder.REQUEST_COUNTER.sum());
+            channel.finishAndReleaseAll();
+        }
+    }
+}
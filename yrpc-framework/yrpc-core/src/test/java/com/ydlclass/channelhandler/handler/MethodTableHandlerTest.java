@@ -0,0 +1,109 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.CompactProtocol;
+import com.ydlclass.transport.message.MessageFormatConstant;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 方法表：第一次调用时登记，之后只携带编号；提供方重启后返回METHOD_UNKNOWN，携带完整的描述重新发送并重新登记
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class MethodTableHandlerTest {
+
+    @Test
+    public void registersThenResendsAfterProviderRestart() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MethodTableHandler());
+        channel.attr(CompactProtocol.VERSION_KEY).set((int) MessageFormatConstant.VERSION_2);
+
+        // 1、第一次调用携带完整的描述，后面跟着登记请求
+        YrpcRequest first = request(41);
+        channel.writeOutbound(first);
+        assertSame(first, channel.readOutbound());
+        YrpcRequest register = channel.readOutbound();
+        assertEquals(RequestType.METHOD_REGISTER.getId(), register.getRequestType());
+        assertEquals("sayHi", register.getRequestPayload().getMethodName());
+        assertNull(channel.readOutbound());
+
+        // 登记的结果不会继续向后传递
+        channel.writeInbound(response(register.getRequestId(), RespCode.SUCCESS, 7));
+        assertNull(channel.readInbound());
+
+        // 2、登记以后只携带编号和参数
+        YrpcRequest second = request(42);
+        channel.writeOutbound(second);
+        YrpcRequest compacted = channel.readOutbound();
+        assertEquals(42, compacted.getRequestId());
+        assertEquals(7, compacted.getRequestPayload().getMethodId());
+        assertNull(compacted.getRequestPayload().getInterfaceName());
+        assertEquals("你好", compacted.getRequestPayload().getParametersValue()[0]);
+        assertNull(channel.readOutbound());
+
+        // 3、提供方重启后不认识编号，原样重新发送完整的请求，METHOD_UNKNOWN不会交给调用方
+        channel.writeInbound(response(42, RespCode.METHOD_UNKNOWN, null));
+        assertNull(channel.readInbound());
+        assertSame(second, channel.readOutbound());
+        assertNull(channel.readOutbound());
+
+        // 重新发送的请求的响应照常交给调用方
+        YrpcResponse answer = response(42, RespCode.SUCCESS, "hi");
+        channel.writeInbound(answer);
+        assertSame(answer, channel.readInbound());
+
+        // 4、方法表已经清空，下一次调用重新登记
+        YrpcRequest third = request(43);
+        channel.writeOutbound(third);
+        assertSame(third, channel.readOutbound());
+        YrpcRequest reRegister = channel.readOutbound();
+        assertEquals(RequestType.METHOD_REGISTER.getId(), reRegister.getRequestType());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void v1ConnectionSendsFullDescriptions() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MethodTableHandler());
+        channel.attr(CompactProtocol.VERSION_KEY).set((int) MessageFormatConstant.VERSION);
+
+        YrpcRequest request = request(44);
+        channel.writeOutbound(request);
+        assertSame(request, channel.readOutbound());
+        assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    private static YrpcRequest request(long requestId) {
+        return YrpcRequest.builder()
+            .requestId(requestId)
+            .requestType(RequestType.REQUEST.getId())
+            .serializeType((byte) 1)
+            .compressType((byte) 0)
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(RequestPayload.builder()
+                .interfaceName("com.ydlclass.HelloYrpc")
+                .methodName("sayHi")
+                .parametersType(new Class[]{String.class})
+                .parametersValue(new Object[]{"你好"})
+                .returnType(String.class)
+                .build())
+            .build();
+    }
+
+    private static YrpcResponse response(long requestId, RespCode code, Object body) {
+        return YrpcResponse.builder()
+            .requestId(requestId)
+            .code(code.getCode())
+            .body(body)
+            .build();
+    }
+}
@@ -0,0 +1,111 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.CompactProtocol;
+import com.ydlclass.transport.message.MessageFormatConstant;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 协议握手：协商成功时升级，老版本的提供方不回复或先回复其他请求时退回v1并移除处理器
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class ProtocolHandshakeHandlerTest {
+
+    @Test
+    public void upgradesAfterHandshakeResponse() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolHandshakeHandler(MessageFormatConstant.VERSION_2));
+        YrpcRequest handshake = channel.readOutbound();
+        assertEquals(RequestType.HANDSHAKE.getId(), handshake.getRequestType());
+
+        channel.writeInbound(YrpcResponse.builder()
+            .requestId(handshake.getRequestId())
+            .code(RespCode.SUCCESS_HANDSHAKE.getCode())
+            .body((int) MessageFormatConstant.VERSION_2)
+            .build());
+
+        assertEquals(MessageFormatConstant.VERSION_2, CompactProtocol.version(channel));
+        assertNull(channel.pipeline().get(ProtocolHandshakeHandler.class));
+        // 握手的响应不会继续向后传递
+        assertNull(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void negotiatesTheLowerVersion() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolHandshakeHandler(MessageFormatConstant.VERSION));
+        YrpcRequest handshake = channel.readOutbound();
+
+        channel.writeInbound(YrpcResponse.builder()
+            .requestId(handshake.getRequestId())
+            .code(RespCode.SUCCESS_HANDSHAKE.getCode())
+            .body((int) MessageFormatConstant.VERSION_2)
+            .build());
+
+        assertEquals(MessageFormatConstant.VERSION, CompactProtocol.version(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void otherResponseFirstFallsBackToV1() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolHandshakeHandler(MessageFormatConstant.VERSION_2));
+        YrpcRequest handshake = channel.readOutbound();
+
+        YrpcResponse other = YrpcResponse.builder()
+            .requestId(handshake.getRequestId() + 1)
+            .code(RespCode.SUCCESS.getCode())
+            .build();
+        channel.writeInbound(other);
+
+        assertEquals(MessageFormatConstant.VERSION, CompactProtocol.version(channel));
+        assertNull(channel.pipeline().get(ProtocolHandshakeHandler.class));
+        assertSame(other, channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void errorResponseFallsBackToV1() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolHandshakeHandler(MessageFormatConstant.VERSION_2));
+        YrpcRequest handshake = channel.readOutbound();
+
+        channel.writeInbound(YrpcResponse.builder()
+            .requestId(handshake.getRequestId())
+            .code(RespCode.FAIL.getCode())
+            .build());
+
+        assertEquals(MessageFormatConstant.VERSION, CompactProtocol.version(channel));
+        assertNull(channel.pipeline().get(ProtocolHandshakeHandler.class));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void noResponseFallsBackAfterTimeout() throws Exception {
+        // 先冻结时间再激活通道，超时只随advanceTimeBy推进，不受真实时间影响
+        EmbeddedChannel channel = new EmbeddedChannel(false, false,
+            new ProtocolHandshakeHandler(MessageFormatConstant.VERSION_2));
+        channel.freezeTime();
+        channel.register();
+        channel.readOutbound();
+
+        channel.advanceTimeBy(ProtocolHandshakeHandler.HANDSHAKE_TIMEOUT_MILLIS - 1, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertSame(ProtocolHandshakeHandler.class, channel.pipeline().get(ProtocolHandshakeHandler.class).getClass());
+
+        channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertNull(channel.pipeline().get(ProtocolHandshakeHandler.class));
+        assertEquals(MessageFormatConstant.VERSION, CompactProtocol.version(channel));
+        channel.finishAndReleaseAll();
+    }
+}
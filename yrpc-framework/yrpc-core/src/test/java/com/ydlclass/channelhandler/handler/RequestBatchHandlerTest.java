@@ -0,0 +1,115 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.exceptions.ResponseException;
+import com.ydlclass.protection.CircuitBreaker;
+import com.ydlclass.transport.message.BatchPayload;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 请求合并：同一轮写出的请求合并成一个批量报文，批量响应中的成功、失败、过载各自完成对应的请求
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class RequestBatchHandlerTest {
+
+    @Test
+    public void mixedBatchResponseCompletesEachRequest() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestBatchHandler(16), new MySimpleChannelInboundHandler());
+        YrpcBootstrap.getInstance().getConfiguration().getEveryIpCircuitBreaker()
+            .put(channel.remoteAddress(), new CircuitBreaker(100, 0.9F));
+        long[] requestIds = {51, 52, 53};
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requestIds.length];
+        for (int i = 0; i < requestIds.length; i++) {
+            futures[i] = YrpcBootstrap.PENDING_REQUEST.register(requestIds[i], channel, 10_000);
+            channel.write(request(requestIds[i]));
+        }
+        channel.flush();
+        channel.runPendingTasks();
+
+        // 1、三个请求合并成一个批量报文
+        YrpcRequest batch = channel.readOutbound();
+        assertEquals(RequestType.BATCH.getId(), batch.getRequestType());
+        assertArrayEquals(requestIds, batch.getBatchPayload().getRequestIds());
+        assertNull(channel.readOutbound());
+
+        // 2、批量响应中的子响应各自完成对应的请求，失败的子响应不影响其他子响应
+        channel.writeInbound(YrpcResponse.builder()
+            .requestId(batch.getRequestId())
+            .code(RespCode.BATCH.getCode())
+            .serializeType((byte) 1)
+            .compressType((byte) 0)
+            .body(BatchPayload.builder()
+                .requestIds(requestIds)
+                .codes(new byte[]{RespCode.SUCCESS.getCode(), RespCode.FAIL.getCode(), RespCode.OVERLOAD.getCode()})
+                .bodies(new Object[]{"hi", null, null})
+                .build())
+            .build());
+
+        assertEquals("hi", futures[0].getNow(null));
+        assertEquals(RespCode.FAIL.getDesc(), failure(futures[1]));
+        assertEquals(RespCode.OVERLOAD.getDesc(), failure(futures[2]));
+        for (long requestId : requestIds) {
+            assertNull(YrpcBootstrap.PENDING_REQUEST.get(requestId));
+        }
+        YrpcBootstrap.getInstance().getConfiguration().getEveryIpCircuitBreaker().remove(channel.remoteAddress());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void singleRequestIsWrittenAsIs() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestBatchHandler(16));
+        YrpcRequest request = request(54);
+        channel.writeAndFlush(request);
+        channel.runPendingTasks();
+
+        assertEquals(request, channel.readOutbound());
+        assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    private static String failure(CompletableFuture<?> future) throws InterruptedException {
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResponseException);
+            return e.getCause().getMessage();
+        }
+        return null;
+    }
+
+    private static YrpcRequest request(long requestId) {
+        return YrpcRequest.builder()
+            .requestId(requestId)
+            .requestType(RequestType.REQUEST.getId())
+            .serializeType((byte) 1)
+            .compressType((byte) 0)
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(RequestPayload.builder()
+                .interfaceName("com.ydlclass.HelloYrpc")
+                .methodName("sayHi")
+                .parametersType(new Class[]{String.class})
+                .parametersValue(new Object[]{"你好"})
+                .returnType(String.class)
+                .build())
+            .build();
+    }
+}
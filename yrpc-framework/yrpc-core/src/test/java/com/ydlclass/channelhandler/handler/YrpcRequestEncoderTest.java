@@ -0,0 +1,111 @@
+package com.ydlclass.channelhandler.handler;
+
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.transport.message.CompactProtocol;
+import com.ydlclass.transport.message.MessageFormatConstant;
+import com.ydlclass.transport.message.RequestPayload;
+import com.ydlclass.transport.message.YrpcRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 请求在v1和v2协议下编码后，都能被服务端的解码器还原
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class YrpcRequestEncoderTest {
+
+    @Test
+    public void v1RoundTrip() {
+        YrpcRequest decoded = roundTrip(request(11, (byte) 1), MessageFormatConstant.VERSION, MessageFormatConstant.MAGIC[0]);
+        assertEquals("sayHi", decoded.getRequestPayload().getMethodName());
+    }
+
+    @Test
+    public void v2RoundTrip() {
+        YrpcRequest decoded = roundTrip(request(12, (byte) 3), MessageFormatConstant.VERSION_2, MessageFormatConstant.VERSION_2);
+        assertEquals("sayHi", decoded.getRequestPayload().getMethodName());
+        assertEquals("你好", decoded.getRequestPayload().getParametersValue()[0]);
+    }
+
+    @Test
+    public void wideCodecFallsBackToV1() {
+        // 心跳没有负载，只验证报文头
+        YrpcRequest heartbeat = YrpcRequest.builder()
+            .requestId(13)
+            .requestType(RequestType.HEART_BEAT.getId())
+            .serializeType((byte) 16)
+            .compressType((byte) 0)
+            .timeStamp(System.currentTimeMillis())
+            .build();
+        YrpcRequest decoded = roundTrip(heartbeat, MessageFormatConstant.VERSION_2, MessageFormatConstant.MAGIC[0]);
+        assertEquals(16, decoded.getSerializeType());
+        assertEquals(13, decoded.getRequestId());
+    }
+
+    @Test
+    public void compressedBodyReplacesRawBody() {
+        // 超过压缩阈值，压缩结果直接写在原始报文体后面再前移
+        String text = "你好，yrpc".repeat(200);
+        for (byte compressType : new byte[]{1, 2}) {
+            YrpcRequest request = request(14, (byte) 1, compressType, text);
+            YrpcRequest decoded = roundTrip(request, MessageFormatConstant.VERSION_2, MessageFormatConstant.VERSION_2);
+            assertEquals(compressType, decoded.getCompressType());
+            assertEquals(text, decoded.getRequestPayload().getParametersValue()[0]);
+        }
+    }
+
+    @Test
+    public void smallBodyKeepsCompressorOnV1() {
+        // 低于压缩阈值的报文体，v2不压缩，v1的老版本会把0当作gzip解压，必须保留配置的压缩方式
+        YrpcRequest v1 = roundTrip(request(15, (byte) 1, (byte) 1, "你好"), MessageFormatConstant.VERSION, MessageFormatConstant.MAGIC[0]);
+        assertEquals(1, v1.getCompressType());
+        assertEquals("你好", v1.getRequestPayload().getParametersValue()[0]);
+
+        YrpcRequest v2 = roundTrip(request(16, (byte) 1, (byte) 1, "你好"), MessageFormatConstant.VERSION_2, MessageFormatConstant.VERSION_2);
+        assertEquals(0, v2.getCompressType());
+        assertEquals("你好", v2.getRequestPayload().getParametersValue()[0]);
+    }
+
+    private static YrpcRequest request(long requestId, byte serializeType) {
+        return request(requestId, serializeType, (byte) 0, "你好");
+    }
+
+    private static YrpcRequest request(long requestId, byte serializeType, byte compressType, String argument) {
+        return YrpcRequest.builder()
+            .requestId(requestId)
+            .requestType(RequestType.REQUEST.getId())
+            .serializeType(serializeType)
+            .compressType(compressType)
+            .timeStamp(System.currentTimeMillis())
+            .requestPayload(RequestPayload.builder()
+                .interfaceName("com.ydlclass.HelloYrpc")
+                .methodName("sayHi")
+                .parametersType(new Class[]{String.class})
+                .parametersValue(new Object[]{argument})
+                .returnType(String.class)
+                .build())
+            .build();
+    }
+
+    private static YrpcRequest roundTrip(YrpcRequest request, int version, byte firstByte) {
+        EmbeddedChannel client = new EmbeddedChannel(new YrpcRequestEncoder());
+        client.attr(CompactProtocol.VERSION_KEY).set(version);
+        client.writeOutbound(request);
+        ByteBuf frame = client.readOutbound();
+        assertEquals(firstByte, frame.getByte(frame.readerIndex()));
+
+        EmbeddedChannel server = new EmbeddedChannel(new YrpcRequestDecoder());
+        server.writeInbound(frame);
+        YrpcRequest decoded = server.readInbound();
+        assertNull(server.readInbound());
+        assertEquals(request.getRequestId(), decoded.getRequestId());
+        assertEquals(request.getRequestType(), decoded.getRequestType());
+        return decoded;
+    }
+}
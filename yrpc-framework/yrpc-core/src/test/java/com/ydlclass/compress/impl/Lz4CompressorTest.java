@@ -0,0 +1,151 @@
+package com.ydlclass.compress.impl;
+
+import com.ydlclass.exceptions.CompressException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * lz4压缩：各种数据的往返，以及损坏的数据在解压缩时只抛出CompressException
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class Lz4CompressorTest {
+
+    private final Lz4Compressor compressor = new Lz4Compressor();
+
+    @Test
+    public void randomRoundTrip() {
+        Random random = new Random(1);
+        for (int length : new int[]{13, 100, 4096, 65_536, 70_000, 1 << 20}) {
+            byte[] bytes = new byte[length];
+            // 只用少量的字节值，数据中有短的重复
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) random.nextInt(4);
+            }
+            assertRoundTrip(bytes);
+        }
+    }
+
+    @Test
+    public void incompressibleDataStaysWithinBound() {
+        Random random = new Random(2);
+        for (int length : new int[]{13, 255, 1000, 65_536, 1 << 20}) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            byte[] compressed = assertRoundTrip(bytes);
+            assertTrue(compressed.length <= 4 + length + length / 255 + 16);
+        }
+    }
+
+    @Test
+    public void repetitiveDataCompresses() {
+        byte[] zeros = new byte[1 << 20];
+        assertTrue(assertRoundTrip(zeros).length < zeros.length / 100);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("{\"orderId\":").append(i).append(",\"status\":\"PAID\",\"address\":\"北京市海淀区\"}");
+        }
+        byte[] json = text.toString().getBytes(StandardCharsets.UTF_8);
+        assertTrue(assertRoundTrip(json).length < json.length / 4);
+    }
+
+    @Test
+    public void overlappingMatchRoundTrip() {
+        // 匹配的距离小于匹配的长度，解压缩时需要逐字节复制
+        byte[] bytes = "ab".repeat(5000).concat("xyz").getBytes(StandardCharsets.US_ASCII);
+        assertRoundTrip(bytes);
+    }
+
+    @Test
+    public void matchesBeyondWindowRoundTrip() {
+        Random random = new Random(3);
+        byte[] block = new byte[1000];
+        random.nextBytes(block);
+        // 同样的内容相隔超过64KB，不能作为匹配
+        byte[] bytes = new byte[block.length * 2 + 70_000];
+        System.arraycopy(block, 0, bytes, 0, block.length);
+        System.arraycopy(block, 0, bytes, block.length + 70_000, block.length);
+        assertRoundTrip(bytes);
+    }
+
+    @Test
+    public void shortInputsAreLiterals() {
+        for (int length = 0; length <= 12; length++) {
+            byte[] bytes = new byte[length];
+            Arrays.fill(bytes, (byte) 'a');
+            // 4字节原始长度 + 1字节token + 字面量
+            assertEquals(4 + 1 + length, assertRoundTrip(bytes).length);
+        }
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsTruncatedData() {
+        byte[] compressed = compressor.compress("hello hello hello hello hello".getBytes(StandardCharsets.US_ASCII));
+        compressor.decompress(Arrays.copyOf(compressed, compressed.length - 3));
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsNegativeLength() {
+        compressor.decompress(new byte[]{(byte) 0x80, 0, 0, 0, 0});
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsImpossibleLength() {
+        compressor.decompress(new byte[]{0x10, 0, 0, 0, 0});
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsLengthAboveLimit() {
+        // 数据足够长，声明的长度没有超过压缩率的上限，但超过了解压缩的上限
+        byte[] bytes = new byte[4 + 1_200_000];
+        bytes[0] = 0x11;
+        bytes[1] = (byte) 0xE1;
+        bytes[2] = (byte) 0xA3;
+        compressor.decompress(bytes);
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsZeroOffset() {
+        // 1个字面量 + 距离为0的匹配
+        compressor.decompress(new byte[]{0, 0, 0, 8, 0x10, 'a', 0, 0, 0x10, 'b'});
+    }
+
+    @Test(expected = CompressException.class)
+    public void rejectsMissingHeader() {
+        compressor.decompress(new byte[]{0, 0});
+    }
+
+    @Test
+    public void corruptDataOnlyThrowsCompressException() {
+        Random random = new Random(4);
+        byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) random.nextInt(8);
+        }
+        byte[] compressed = compressor.compress(bytes);
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupt = compressed.clone();
+            corrupt[4 + random.nextInt(corrupt.length - 4)] = (byte) random.nextInt(256);
+            try {
+                compressor.decompress(corrupt);
+            } catch (CompressException expected) {
+                // 损坏的数据可能解压出错误的内容，也可能被发现，但不能抛出其他异常
+            }
+        }
+    }
+
+    private byte[] assertRoundTrip(byte[] bytes) {
+        byte[] compressed = compressor.compress(bytes);
+        assertArrayEquals(bytes, compressor.decompress(compressed));
+        return compressed;
+    }
+}
@@ -0,0 +1,107 @@
+package com.ydlclass.compress.impl;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.ydlclass.ServiceConfig;
+import com.ydlclass.compress.DictionaryRegistry;
+import com.ydlclass.compress.DictionaryTrainer;
+import com.ydlclass.discovery.Registry;
+import com.ydlclass.exceptions.CompressException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 字典压缩：接收方本地没有发送方刚启用的字典时，等待从注册中心取回再解压
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class ZstdDictCompressorTest {
+
+    private static byte[] dictionary;
+
+    @BeforeClass
+    public static void setUp() {
+        Random random = new Random(1);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            samples.add(sample(random));
+        }
+        dictionary = DictionaryTrainer.train(samples, 4096);
+        // 只有发送方有这个字典，注册中心要过一会儿才返回
+        DictionaryRegistry.lookupFrom(new Registry() {
+            @Override
+            public void register(ServiceConfig<?> serviceConfig) {
+            }
+
+            @Override
+            public List<InetSocketAddress> lookup(String serviceName, String group) {
+                return List.of();
+            }
+
+            @Override
+            public byte[] lookupDictionary(int id) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return id == dictionaryId(dictionary) ? dictionary : null;
+            }
+        });
+    }
+
+    @Test
+    public void receiverWithoutDictionaryWaitsForRegistry() {
+        byte[] raw = sample(new Random(2));
+        byte[] compressed = compress(dictionary, raw);
+        assertArrayEquals(raw, new ZstdDictCompressor().decompress(compressed));
+    }
+
+    @Test
+    public void unknownDictionaryFailsAfterBoundedWait() {
+        // 换一个编号，注册中心也没有
+        byte[] unknown = Arrays.copyOf(dictionary, dictionary.length);
+        unknown[4] ^= 0x5A;
+        byte[] compressed = compress(unknown, sample(new Random(3)));
+        long begin = System.currentTimeMillis();
+        try {
+            new ZstdDictCompressor().decompress(compressed);
+            fail();
+        } catch (CompressException e) {
+            assertTrue(System.currentTimeMillis() - begin < 5_000);
+        }
+    }
+
+    private static byte[] compress(byte[] dictionary, byte[] raw) {
+        try (ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+            ctx.loadDict(dictionary);
+            return ctx.compress(raw);
+        }
+    }
+
+    private static int dictionaryId(byte[] dictionary) {
+        return dictionary[4] & 0xFF | (dictionary[5] & 0xFF) << 8
+            | (dictionary[6] & 0xFF) << 16 | (dictionary[7] & 0xFF) << 24;
+    }
+
+    /**
+     * 模拟一个请求的报文体，字段名重复，值是随机的
+     */
+    private static byte[] sample(Random random) {
+        String text = "{\"interfaceName\":\"com.ydlclass.HelloYrpc\",\"methodName\":\"sayHi\",\"orderId\":"
+            + random.nextInt(1_000_000) + ",\"status\":\"" + (random.nextBoolean() ? "PAID" : "CREATED")
+            + "\",\"amount\":" + random.nextInt(100_000) + "}";
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ydlclass.core;
+
+import com.ydlclass.stub.ServiceDispatcher;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 调用器：每个方法一个隐藏类，参数展开、基本类型拆箱、异常原样抛出
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class MethodInvokerTest {
+
+    @Test
+    public void invokesThroughHiddenClasses() throws Throwable {
+        Calculator calculator = new Calculator();
+        MethodInvoker add = MethodInvoker.of(calculator, Calculator.class.getMethod("add", int.class, int.class));
+        MethodInvoker name = MethodInvoker.of(calculator, Calculator.class.getMethod("name"));
+
+        assertEquals(3, add.invoke(new Object[]{1, 2}));
+        assertEquals("calculator", name.invoke(null));
+        assertTrue(add.getClass().isHidden());
+        // 每个方法的方法句柄都是自己隐藏类的常量
+        assertNotSame(add.getClass(), name.getClass());
+    }
+
+    @Test
+    public void rethrowsTheMethodException() throws Throwable {
+        MethodInvoker fail = MethodInvoker.of(new Calculator(), Calculator.class.getMethod("fail"));
+        try {
+            fail.invoke(new Object[0]);
+            fail();
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void invokesThroughDispatcher() throws Throwable {
+        ServiceDispatcher dispatcher = new ServiceDispatcher() {
+            @Override
+            public String[] signatures() {
+                return new String[]{"add(int,int)"};
+            }
+
+            @Override
+            public Object dispatch(Object ref, int index, Object[] parametersValue) {
+                return ((Calculator) ref).add((Integer) parametersValue[0], (Integer) parametersValue[1]) + index;
+            }
+        };
+        MethodInvoker invoker = MethodInvoker.of(dispatcher, new Calculator(), 10);
+        assertEquals(13, invoker.invoke(new Object[]{1, 2}));
+    }
+
+    public static class Calculator {
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public String name() {
+            return "calculator";
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("boom");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ydlclass.core;
+
+import com.ydlclass.exceptions.NetworkException;
+import com.ydlclass.metrics.YrpcMetrics;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 挂起的请求：响应、超时、连接断开三种结束方式都会从表中移除
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class PendingCallsTest {
+
+    private static final String ADDRESS_GAUGE = PendingCalls.OUTSTANDING_GAUGE + ".embedded";
+
+    private PendingCalls pendingCalls;
+    private EmbeddedChannel channel;
+    private EmbeddedChannel other;
+
+    @Before
+    public void setUp() {
+        pendingCalls = new PendingCalls();
+        channel = new EmbeddedChannel();
+        other = new EmbeddedChannel();
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        other.finishAndReleaseAll();
+    }
+
+    @Test
+    public void responseRemovesCall() {
+        CompletableFuture<Object> future = pendingCalls.register(1, channel, 10_000);
+        assertSame(future, pendingCalls.get(1));
+        assertEquals(1, pendingCalls.size());
+        assertEquals(1, PendingCalls.pending(channel));
+
+        future.complete("ok");
+
+        assertNull(pendingCalls.get(1));
+        assertEquals(0, pendingCalls.size());
+        assertEquals(0, PendingCalls.pending(channel));
+    }
+
+    @Test
+    public void timeoutFailsAndRemovesCall() throws InterruptedException {
+        CompletableFuture<Object> future = pendingCalls.register(2, channel, 30);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("请求应该超时");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("时间轮没有触发超时");
+        }
+        assertNull(pendingCalls.get(2));
+        assertEquals(0, pendingCalls.size());
+        assertEquals(0, PendingCalls.pending(channel));
+    }
+
+    @Test
+    public void failAllOnlyFailsCallsOnThatChannel() {
+        CompletableFuture<?>[] mine = new CompletableFuture<?>[3];
+        for (int i = 0; i < mine.length; i++) {
+            mine[i] = pendingCalls.register(10 + i, channel, 10_000);
+        }
+        CompletableFuture<Object> others = pendingCalls.register(20, other, 10_000);
+        NetworkException cause = new NetworkException("连接已经断开");
+
+        assertEquals(3, pendingCalls.failAll(channel, cause));
+
+        for (CompletableFuture<?> future : mine) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+        assertFalse(others.isDone());
+        assertEquals(0, PendingCalls.pending(channel));
+        assertEquals(1, PendingCalls.pending(other));
+        assertEquals(1, pendingCalls.size());
+        assertEquals(0, pendingCalls.failAll(channel, cause));
+        others.complete(null);
+    }
+
+    @Test
+    public void failAllOnUnusedChannel() {
+        assertEquals(0, pendingCalls.failAll(channel, new NetworkException("连接已经断开")));
+    }
+
+    @Test
+    public void registerOnClosedChannelFailsImmediately() {
+        channel.close();
+
+        CompletableFuture<Object> future = pendingCalls.register(3, channel, 10_000);
+
+        assertTrue(future.isCompletedExceptionally());
+        assertNull(pendingCalls.get(3));
+        assertEquals(0, PendingCalls.pending(channel));
+    }
+
+    @Test
+    public void removeAddressKeepsBusyAddress() {
+        CompletableFuture<Object> future = pendingCalls.register(4, channel, 10_000);
+        assertEquals(1, YrpcMetrics.snapshot().get(ADDRESS_GAUGE).intValue());
+
+        pendingCalls.removeAddress(channel.remoteAddress());
+        assertTrue(YrpcMetrics.snapshot().containsKey(ADDRESS_GAUGE));
+
+        future.complete(null);
+        pendingCalls.removeAddress(channel.remoteAddress());
+        assertFalse(YrpcMetrics.snapshot().containsKey(ADDRESS_GAUGE));
+    }
+}
@@ -0,0 +1,145 @@
+package com.ydlclass.proxy;
+
+import com.ydlclass.proxy.handler.RpcConsumerInvocationHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 生成的存根：参数装箱的顺序和槽位、返回值拆箱，long/double参数占两个槽位
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class StubGeneratorTest {
+
+    private RecordingHandler handler;
+    private Calculator stub;
+
+    @Before
+    public void generate() throws Throwable {
+        handler = new RecordingHandler();
+        stub = StubGenerator.generate(Calculator.class, handler);
+    }
+
+    @Test
+    public void primitiveParametersAreBoxed() {
+        handler.returns(7);
+        assertEquals(7, stub.add(3, 4));
+        handler.assertCalled("add", 3, 4);
+
+        handler.returns(true);
+        assertTrue(stub.check((byte) 1, (short) 2, 'c', false, 1.5f));
+        handler.assertCalled("check", (byte) 1, (short) 2, 'c', false, 1.5f);
+    }
+
+    @Test
+    public void longAndDoubleTakeTwoSlots() {
+        handler.returns(42.5d);
+        assertEquals(42.5d, stub.mix(1L, 2, 3.5d, "x", Long.MAX_VALUE), 0);
+        handler.assertCalled("mix", 1L, 2, 3.5d, "x", Long.MAX_VALUE);
+
+        handler.returns(-1L);
+        assertEquals(-1L, stub.negate(1L));
+        handler.assertCalled("negate", 1L);
+    }
+
+    @Test
+    public void voidMethodWithoutParametersPassesNull() {
+        handler.returns(null);
+        stub.reset();
+        RecordingHandler.Call call = handler.calls.pop();
+        assertEquals("reset", call.method.getMethodName());
+        assertNull(call.args);
+    }
+
+    @Test
+    public void arraysAndObjectsAreCast() {
+        int[] values = {1, 2, 3};
+        String[] names = {"a", "b"};
+        handler.returns(names);
+        assertSame(names, stub.names(values, new long[]{4L}));
+        handler.assertCalled("names", values, new long[]{4L});
+
+        Object anything = new Object();
+        handler.returns(anything);
+        assertSame(anything, stub.echo(anything));
+        handler.assertCalled("echo", anything);
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void wrongReturnTypeFailsCast() {
+        handler.returns("not a number");
+        stub.add(1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPublicInterface() throws Throwable {
+        StubGenerator.generate(Hidden.class, new RecordingHandler(Hidden.class));
+    }
+
+    public interface Calculator {
+        int add(int a, int b);
+
+        boolean check(byte b, short s, char c, boolean z, float f);
+
+        double mix(long a, int b, double c, String d, long e);
+
+        long negate(long value);
+
+        void reset();
+
+        String[] names(int[] values, long[] others);
+
+        Object echo(Object value);
+    }
+
+    interface Hidden {
+        void hidden();
+    }
+
+    /**
+     * 记录存根传进来的远程方法和参数，返回预先设置的值
+     */
+    private static class RecordingHandler extends RpcConsumerInvocationHandler {
+
+        private final Deque<Call> calls = new ArrayDeque<>();
+        private Object result;
+
+        RecordingHandler() {
+            this(Calculator.class);
+        }
+
+        RecordingHandler(Class<?> interfaceRef) {
+            super(null, interfaceRef, "default");
+        }
+
+        void returns(Object result) {
+            this.result = result;
+        }
+
+        @Override
+        public Object call(RemoteMethod remoteMethod, Object[] args) {
+            calls.push(new Call(remoteMethod, args));
+            return result;
+        }
+
+        void assertCalled(String methodName, Object... args) {
+            Call call = calls.pop();
+            assertEquals(methodName, call.method.getMethodName());
+            assertEquals(Calculator.class.getName(), call.method.getInterfaceName());
+            assertArrayEquals(args, call.args);
+        }
+
+        private record Call(RemoteMethod method, Object[] args) {
+        }
+    }
+}
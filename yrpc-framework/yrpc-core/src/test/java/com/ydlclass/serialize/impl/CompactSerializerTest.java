@@ -0,0 +1,183 @@
+package com.ydlclass.serialize.impl;
+
+import com.ydlclass.exceptions.SerializeException;
+import com.ydlclass.serialize.compact.CompactClassRegistry;
+import com.ydlclass.transport.message.RequestPayload;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * compact序列化：请求体、集合、record的往返，以及报文中不允许的类名和没有无参构造方法的类
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class CompactSerializerTest {
+
+    private final CompactSerializer serializer = new CompactSerializer();
+
+    @BeforeClass
+    public static void allowTestClasses() {
+        CompactClassRegistry.allow(Order.class.getName());
+        CompactClassRegistry.allow(Status.class.getName());
+        CompactClassRegistry.allow(Point.class.getName());
+    }
+
+    @Test
+    public void requestPayloadRoundTrip() {
+        RequestPayload payload = RequestPayload.builder()
+            .interfaceName("com.ydlclass.OrderService")
+            .methodName("create")
+            .parametersType(new Class[]{String.class, int.class, Order.class, long[].class})
+            .parametersValue(new Object[]{"北京", 3, order(), new long[]{1L, -2L}})
+            .returnType(List.class)
+            .build();
+
+        RequestPayload decoded = roundTrip(payload, RequestPayload.class);
+
+        assertEquals(payload, decoded);
+        assertArrayEquals(payload.getParametersType(), decoded.getParametersType());
+    }
+
+    @Test
+    public void collectionsKeepTheirTypes() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("list", new ArrayList<>(Arrays.asList(1, null, "a")));
+        map.put("linked", new LinkedList<>(List.of(1L, 2L)));
+        map.put("set", new HashSet<>(List.of("x", "y")));
+        map.put("sorted", new TreeSet<>(List.of(3, 1, 2)));
+        map.put("tree", new TreeMap<>(Map.of("b", 2, "a", 1)));
+        map.put("concurrent", new ConcurrentHashMap<>(Map.of(1, List.of(order()))));
+        map.put("values", new Object[]{BigDecimal.valueOf(12_345, 2), new Date(1_692_000_000_000L), Status.PAID});
+
+        Map<?, ?> decoded = roundTrip(map, Map.class);
+
+        assertEquals(LinkedHashMap.class, decoded.getClass());
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(decoded.keySet()));
+        for (String key : List.of("list", "linked", "set", "sorted", "tree", "concurrent")) {
+            assertEquals(map.get(key), decoded.get(key));
+            assertSame(map.get(key).getClass(), decoded.get(key).getClass());
+        }
+        assertArrayEquals((Object[]) map.get("values"), (Object[]) decoded.get("values"));
+    }
+
+    @Test
+    public void recordRoundTrip() {
+        Point point = new Point(-7, "原点", List.of("a", "b"));
+        assertEquals(point, roundTrip(point, Point.class));
+        assertEquals(new Point(0, null, null), roundTrip(new Point(0, null, null), Point.class));
+    }
+
+    @Test
+    public void jdkClassesUseJavaSerialization() {
+        LocalDate date = LocalDate.of(2023, 8, 18);
+        assertEquals(date, roundTrip(date, LocalDate.class));
+
+        Map.Entry<String, Integer> entry = new AbstractMap.SimpleEntry<>("a", 1);
+        assertEquals(entry, roundTrip(entry, Map.Entry.class));
+    }
+
+    @Test
+    public void rejectsClassNameNotAllowed() {
+        byte[] bytes = serializer.serialize(new Secret());
+        try {
+            serializer.deserialize(bytes, Object.class);
+            fail("没有登记也没有允许的类不能按类名加载");
+        } catch (SerializeException e) {
+            assertTrue(e.getMessage().contains(Secret.class.getName()));
+        }
+    }
+
+    @Test(expected = SerializeException.class)
+    public void javaSerializationRejectsClassNotAllowed() {
+        // SimpleEntry退化为jdk序列化，其中的Secret不在允许的列表中
+        byte[] bytes = serializer.serialize(new AbstractMap.SimpleEntry<>("secret", new Secret()));
+        serializer.deserialize(bytes, Map.Entry.class);
+    }
+
+    @Test
+    public void rejectsClassWithoutNoArgConstructor() {
+        try {
+            serializer.serialize(new NoDefault(1));
+            fail("没有无参构造方法的类不能使用compact序列化");
+        } catch (SerializeException e) {
+            assertTrue(e.getMessage().contains("没有无参构造方法"));
+        }
+    }
+
+    @Test(expected = SerializeException.class)
+    public void rejectsTrailingBytes() {
+        byte[] bytes = serializer.serialize("yrpc");
+        serializer.deserialize(Arrays.copyOf(bytes, bytes.length + 1), String.class);
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) {
+        return serializer.deserialize(serializer.serialize(value), type);
+    }
+
+    private static Order order() {
+        Map<String, Integer> items = new LinkedHashMap<>();
+        items.put("书", 2);
+        items.put("笔", 10);
+        return new Order(1_000_000_007L, "张三", 99.5d, true, 'Y', new int[]{1, 2, 3},
+            new ArrayList<>(List.of("加急")), items, Status.PAID);
+    }
+
+    enum Status {
+        CREATED, PAID
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Order {
+        private long id;
+        private String buyer;
+        private double amount;
+        private boolean paid;
+        private char level;
+        private int[] codes;
+        private List<String> tags;
+        private Map<String, Integer> items;
+        private Status status;
+    }
+
+    record Point(int x, String label, List<String> tags) {
+    }
+
+    @Data
+    static class Secret implements Serializable {
+        private String value = "secret";
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class NoDefault {
+        private int value;
+    }
+}
@@ -0,0 +1,118 @@
+package com.ydlclass.stream;
+
+import com.ydlclass.YrpcBootstrap;
+import com.ydlclass.enumeration.RequestType;
+import com.ydlclass.enumeration.RespCode;
+import com.ydlclass.transport.message.YrpcRequest;
+import com.ydlclass.transport.message.YrpcResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 双向流的额度：没有额度的消息在本地排队，对方补充额度后继续发送；本端处理了半个窗口的消息后给对方补充额度
+ *
+ * @author it楠老师
+ * @createTime 2023-08-19
+ */
+public class BidiStreamCallTest {
+
+    @Test
+    public void sendsOnlyWithinCredit() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        StreamObserver<String> outbound = BidiStreamCall.open(channel, "com.ydlclass.Chat", "chat", new Collector(), 1000);
+        YrpcRequest open = channel.readOutbound();
+        assertEquals(RequestType.STREAM_OPEN.getId(), open.getRequestType());
+        YrpcRequest initial = channel.readOutbound();
+        assertEquals(RequestType.WINDOW_UPDATE.getId(), initial.getRequestType());
+        assertEquals(YrpcBootstrap.getInstance().getConfiguration().getStreamWindow(), initial.getStreamPayload().getCredit());
+
+        // 1、对方还没有给予额度，消息只在本地排队
+        outbound.onNext("a");
+        outbound.onNext("b");
+        outbound.onNext("c");
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+
+        // 2、额度为2，只写出前两条，额度用完后第三条继续排队
+        ConsumerStream stream = YrpcBootstrap.STREAMS.get(open.getRequestId());
+        stream.onResponse(response(open.getRequestId(), RespCode.STREAM_WINDOW_UPDATE, 2));
+        assertEquals(List.of("a", "b"), data(channel));
+
+        // 3、补充额度后写出剩下的消息
+        stream.onResponse(response(open.getRequestId(), RespCode.STREAM_WINDOW_UPDATE, 5));
+        assertEquals(List.of("c"), data(channel));
+
+        // 额度还剩4，新的消息直接写出
+        outbound.onNext("d");
+        channel.runPendingTasks();
+        assertEquals(List.of("d"), data(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void replenishesAfterHalfWindow() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Collector collector = new Collector();
+        BidiStreamCall.open(channel, "com.ydlclass.Chat", "chat", collector, 1000);
+        YrpcRequest open = channel.readOutbound();
+        channel.readOutbound();
+
+        int half = YrpcBootstrap.getInstance().getConfiguration().getStreamWindow() / 2;
+        ConsumerStream stream = YrpcBootstrap.STREAMS.get(open.getRequestId());
+        for (int i = 0; i < half - 1; i++) {
+            stream.onResponse(response(open.getRequestId(), RespCode.STREAM_DATA, "m" + i));
+        }
+        // 不到半个窗口不补充额度
+        assertNull(channel.readOutbound());
+
+        stream.onResponse(response(open.getRequestId(), RespCode.STREAM_DATA, "last"));
+        YrpcRequest update = channel.readOutbound();
+        assertEquals(RequestType.WINDOW_UPDATE.getId(), update.getRequestType());
+        assertEquals(half, update.getStreamPayload().getCredit());
+        assertNull(channel.readOutbound());
+        assertEquals(half, collector.received.size());
+        channel.finishAndReleaseAll();
+    }
+
+    private static List<Object> data(EmbeddedChannel channel) {
+        List<Object> data = new ArrayList<>();
+        YrpcRequest request;
+        while ((request = channel.readOutbound()) != null) {
+            assertEquals(RequestType.STREAM_DATA.getId(), request.getRequestType());
+            data.add(request.getStreamPayload().getData());
+        }
+        return data;
+    }
+
+    private static YrpcResponse response(long streamId, RespCode code, Object body) {
+        return YrpcResponse.builder()
+            .requestId(streamId)
+            .code(code.getCode())
+            .body(body)
+            .build();
+    }
+
+    private static class Collector implements StreamObserver<Object> {
+
+        private final List<Object> received = new ArrayList<>();
+
+        @Override
+        public void onNext(Object value) {
+            received.add(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.ydlclass.transport.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * v2紧凑协议报文头的编解码
+ *
+ * @author it楠老师
+ * @createTime 2023-08-18
+ */
+public class CompactProtocolTest {
+
+    @Test
+    public void headerRoundTrip() {
+        Map<String, String> attachments = new LinkedHashMap<>();
+        attachments.put("traceId", "a1b2c3");
+        attachments.put("区域", "北京");
+        CompactHeader header = CompactHeader.builder()
+            .type((byte) 1)
+            .serializeType((byte) 3)
+            .compressType((byte) 15)
+            .requestId(1_000_000_123L)
+            .timeStamp(1_692_000_000_000L)
+            .attachments(attachments)
+            .build();
+
+        CompactHeader decoded = roundTrip(header, 1_000_000_000L);
+
+        assertEquals(header, decoded);
+    }
+
+    @Test
+    public void headerWithoutOptionalFields() {
+        CompactHeader header = CompactHeader.builder()
+            .type((byte) 20)
+            .serializeType((byte) 4)
+            .compressType((byte) 0)
+            .requestId(42)
+            .build();
+
+        CompactHeader decoded = roundTrip(header, 42);
+
+        assertEquals(header, decoded);
+        assertNull(decoded.getAttachments());
+        assertEquals(0, decoded.getTimeStamp());
+    }
+
+    @Test
+    public void requestIdDeltaCanBeNegative() {
+        long[] lastIds = {0, 500, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+        long[] ids = {1, 3, Long.MIN_VALUE, Long.MAX_VALUE, 0};
+        for (int i = 0; i < ids.length; i++) {
+            CompactHeader header = CompactHeader.builder().type((byte) 1).requestId(ids[i]).build();
+            assertEquals(ids[i], roundTrip(header, lastIds[i]).getRequestId());
+        }
+    }
+
+    @Test
+    public void smallDeltaTakesOneByte() {
+        ByteBuf out = Unpooled.buffer();
+        CompactHeader header = CompactHeader.builder().type((byte) 1).serializeType((byte) 1).requestId(101).build();
+        int lengthIndex = CompactProtocol.writeHeader(out, header, 100);
+        CompactProtocol.writeLength(out, lengthIndex);
+        // 版本 + 长度 + 类型 + codec + flags + 1个字节的id差值
+        assertEquals(1 + CompactProtocol.LENGTH_FIELD_LENGTH + 3 + 1, out.readableBytes());
+        out.release();
+    }
+
+    @Test
+    public void varintRoundTrip() {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        ByteBuf buf = Unpooled.buffer();
+        for (long value : values) {
+            CompactProtocol.writeVarint(buf, value);
+        }
+        for (long value : values) {
+            assertEquals(value, CompactProtocol.readVarint(buf));
+        }
+        assertFalse(buf.isReadable());
+        buf.release();
+    }
+
+    @Test
+    public void compressTypeIsPatchedAfterBody() {
+        ByteBuf out = Unpooled.buffer();
+        CompactHeader header = CompactHeader.builder()
+            .type((byte) 1).serializeType((byte) 4).compressType((byte) 2).requestId(7).build();
+        int lengthIndex = CompactProtocol.writeHeader(out, header, 0);
+        out.writeBytes(new byte[]{1, 2, 3});
+        CompactProtocol.writeCompressType(out, lengthIndex, (byte) 4, (byte) 0);
+        CompactProtocol.writeLength(out, lengthIndex);
+
+        ByteBuf frame = CompactProtocol.readFrame(out);
+        CompactHeader decoded = CompactProtocol.readHeader(frame, 0);
+        assertEquals(4, decoded.getSerializeType());
+        assertEquals(0, decoded.getCompressType());
+        assertEquals(3, frame.readableBytes());
+        frame.release();
+        out.release();
+    }
+
+    @Test
+    public void readFrameWaitsForCompleteFrame() {
+        ByteBuf out = Unpooled.buffer();
+        CompactHeader header = CompactHeader.builder().type((byte) 1).requestId(9).build();
+        int lengthIndex = CompactProtocol.writeHeader(out, header, 0);
+        out.writeBytes(new byte[300]);
+        CompactProtocol.writeLength(out, lengthIndex);
+        int total = out.readableBytes();
+
+        // 每次只多给一个字节，直到报文完整
+        ByteBuf in = Unpooled.buffer();
+        for (int i = 0; i < total - 1; i++) {
+            in.writeByte(out.getByte(i));
+            assertNull(CompactProtocol.readFrame(in));
+            assertEquals(0, in.readerIndex());
+        }
+        in.writeByte(out.getByte(total - 1));
+        ByteBuf frame = CompactProtocol.readFrame(in);
+        assertEquals(total - 1 - CompactProtocol.LENGTH_FIELD_LENGTH, frame.readableBytes());
+        assertFalse(in.isReadable());
+        frame.release();
+        in.release();
+        out.release();
+    }
+
+    @Test(expected = TooLongFrameException.class)
+    public void rejectsTooLongFrame() {
+        ByteBuf in = Unpooled.buffer();
+        in.writeByte(MessageFormatConstant.VERSION_2);
+        int length = MessageFormatConstant.MAX_FRAME_LENGTH + 1;
+        in.writeByte(length & 0x7F | 0x80);
+        in.writeByte(length >>> 7 & 0x7F | 0x80);
+        in.writeByte(length >>> 14);
+        try {
+            CompactProtocol.readFrame(in);
+        } finally {
+            in.release();
+        }
+    }
+
+    @Test
+    public void isCompactChecksFirstByte() {
+        assertTrue(CompactProtocol.isCompact(Unpooled.wrappedBuffer(new byte[]{MessageFormatConstant.VERSION_2})));
+        assertFalse(CompactProtocol.isCompact(Unpooled.wrappedBuffer(MessageFormatConstant.MAGIC)));
+        assertFalse(CompactProtocol.isCompact(Unpooled.EMPTY_BUFFER));
+    }
+
+    @Test
+    public void fitsCodecOnlyForFourBitCodes() {
+        assertTrue(CompactProtocol.fitsCodec((byte) 0, (byte) 0));
+        assertTrue(CompactProtocol.fitsCodec((byte) 15, (byte) 15));
+        assertFalse(CompactProtocol.fitsCodec((byte) 16, (byte) 1));
+        assertFalse(CompactProtocol.fitsCodec((byte) 1, (byte) 16));
+        assertFalse(CompactProtocol.fitsCodec((byte) -1, (byte) 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeHeaderRejectsWideCodes() {
+        CompactHeader header = CompactHeader.builder().type((byte) 1).serializeType((byte) 17).requestId(1).build();
+        CompactProtocol.writeHeader(Unpooled.buffer(), header, 0);
+    }
+
+    private static CompactHeader roundTrip(CompactHeader header, long lastId) {
+        ByteBuf out = Unpooled.buffer();
+        int lengthIndex = CompactProtocol.writeHeader(out, header, lastId);
+        CompactProtocol.writeLength(out, lengthIndex);
+        assertTrue(CompactProtocol.isCompact(out));
+        ByteBuf frame = CompactProtocol.readFrame(out);
+        try {
+            CompactHeader decoded = CompactProtocol.readHeader(frame, lastId);
+            assertFalse(frame.isReadable());
+            return decoded;
+        } finally {
+            frame.release();
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.ydlclass.processor;
+
+import com.ydlclass.annotation.YrpcApi;
+import com.ydlclass.stub.GeneratedNames;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 编译期处理@YrpcApi，生成的内容运行时优先使用，没有时框架退回反射
+ * 1、标注在服务实现上：为服务实现生成分发器，按方法下标直接调用服务实现，并把服务实现写入服务索引，包扫描不再遍历文件
+ * 2、标注在接口上，或者接口和服务实现在同一次编译中：为接口生成存根，替代jdk动态代理
+ * 参数在生成的代码里直接强转成方法声明的类型，基本类型直接拆箱
+ *
+ * @author it楠老师
+ * @createTime 2023-08-09
+ */
+@SupportedAnnotationTypes("com.ydlclass.annotation.YrpcApi")
+public class YrpcApiProcessor extends AbstractProcessor {
+
+    private static final String GENERATED = "@javax.annotation.processing.Generated(\"" + YrpcApiProcessor.class.getName() + "\")";
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    // 所有轮次中发现的服务实现，最后一轮写入索引
+    private final Set<String> services = new TreeSet<>();
+
+    // 已经生成过的类，同一个接口可能被多个服务实现引用
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        Set<TypeElement> rootTypes = new HashSet<>(ElementFilter.typesIn(roundEnv.getRootElements()));
+        for (Element element : roundEnv.getElementsAnnotatedWith(YrpcApi.class)) {
+            TypeElement type = (TypeElement) element;
+            if (type.getKind() == ElementKind.INTERFACE) {
+                generateStub(type);
+            } else if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+                services.add(elements.getBinaryName(type).toString());
+                generateDispatcher(type);
+                // 接口和服务实现一起编译时顺便生成存根
+                for (TypeMirror interfaceType : type.getInterfaces()) {
+                    TypeElement anInterface = (TypeElement) types.asElement(interfaceType);
+                    if (rootTypes.contains(outermost(anInterface))) {
+                        generateStub(anInterface);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 为接口生成存根，存根只依赖yrpc-common，所有方法通过StubInvoker发起调用
+     * 有任何一个方法无法生成时放弃整个存根，运行时退回动态代理
+     */
+    private void generateStub(TypeElement anInterface) {
+        String interfaceName = elements.getBinaryName(anInterface).toString();
+        String stubName = GeneratedNames.stubName(interfaceName);
+        if (!generated.add(stubName)) {
+            return;
+        }
+        PackageElement packageElement = elements.getPackageOf(anInterface);
+        Map<String, InterfaceMethod> methods = interfaceMethods((DeclaredType) anInterface.asType());
+        for (InterfaceMethod method : methods.values()) {
+            if (!isAccessible(method.type, packageElement)) {
+                note(anInterface, "接口【" + interfaceName + "】的方法【" + method.element.getSimpleName() + "】使用了不可访问的类型，不生成存根。");
+                return;
+            }
+        }
+        if (!isAccessible(anInterface, packageElement)) {
+            note(anInterface, "接口【" + interfaceName + "】不可访问，不生成存根。");
+            return;
+        }
+
+        StringBuilder source = new StringBuilder();
+        String simpleName = header(source, stubName);
+        source.append("public final class ").append(simpleName)
+            .append(" implements ").append(sourceName(anInterface.asType())).append(" {\n\n");
+        appendSignatures(source, "public static final", methods.keySet());
+        source.append("    private final com.ydlclass.stub.StubInvoker invoker;\n\n")
+            .append("    public ").append(simpleName).append("(com.ydlclass.stub.StubInvoker invoker) {\n")
+            .append("        this.invoker = invoker;\n")
+            .append("    }\n");
+
+        int index = 0;
+        for (InterfaceMethod method : methods.values()) {
+            List<String> arguments = new ArrayList<>();
+            List<? extends TypeMirror> parametersType = method.type.getParameterTypes();
+            source.append("\n    @Override\n    public ").append(sourceName(method.type.getReturnType()))
+                .append(' ').append(method.element.getSimpleName()).append('(');
+            for (int i = 0; i < parametersType.size(); i++) {
+                arguments.add("arg" + i);
+                source.append(i == 0 ? "" : ", ").append(sourceName(parametersType.get(i))).append(" arg").append(i);
+            }
+            source.append(") {\n        ");
+            String call = "invoker.invoke(" + index++ + ", "
+                + (arguments.isEmpty() ? "null" : "new Object[]{" + String.join(", ", arguments) + "}") + ")";
+            if (method.type.getReturnType().getKind() == TypeKind.VOID) {
+                source.append(call).append(";\n");
+            } else {
+                source.append("return (").append(sourceName(method.type.getReturnType())).append(") ").append(call).append(";\n");
+            }
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        writeSource(stubName, source, anInterface);
+    }
+
+    /**
+     * 为服务实现生成分发器，实现的每一个接口方法对应一个下标，通过switch直接调用
+     * 无法访问的接口和方法不生成，运行时这些方法退回方法句柄
+     */
+    private void generateDispatcher(TypeElement implementation) {
+        String dispatcherName = GeneratedNames.dispatcherName(elements.getBinaryName(implementation).toString());
+        if (!generated.add(dispatcherName)) {
+            return;
+        }
+        PackageElement packageElement = elements.getPackageOf(implementation);
+        Map<String, InterfaceMethod> methods = new LinkedHashMap<>();
+        Map<String, TypeElement> owners = new LinkedHashMap<>();
+        for (TypeMirror interfaceType : implementation.getInterfaces()) {
+            TypeElement anInterface = (TypeElement) types.asElement(interfaceType);
+            if (!isAccessible(anInterface, packageElement)) {
+                note(implementation, "接口【" + anInterface.getQualifiedName() + "】不可访问，不生成分发方法。");
+                continue;
+            }
+            interfaceMethods((DeclaredType) interfaceType).forEach((signature, method) -> {
+                if (isAccessible(method.type, packageElement)) {
+                    methods.put(signature, method);
+                    owners.put(signature, anInterface);
+                }
+            });
+        }
+
+        StringBuilder source = new StringBuilder();
+        String simpleName = header(source, dispatcherName);
+        source.append("public final class ").append(simpleName)
+            .append(" implements com.ydlclass.stub.ServiceDispatcher {\n\n");
+        appendSignatures(source, "private static final", methods.keySet());
+        source.append("    @Override\n")
+            .append("    public String[] signatures() {\n")
+            .append("        return SIGNATURES.clone();\n")
+            .append("    }\n\n")
+            .append("    @Override\n")
+            .append("    public Object dispatch(Object ref, int index, Object[] args) throws Throwable {\n")
+            .append("        switch (index) {\n");
+
+        int index = 0;
+        for (Map.Entry<String, InterfaceMethod> entry : methods.entrySet()) {
+            InterfaceMethod method = entry.getValue();
+            List<String> arguments = new ArrayList<>();
+            List<? extends TypeMirror> parametersType = method.type.getParameterTypes();
+            for (int i = 0; i < parametersType.size(); i++) {
+                arguments.add("(" + sourceName(parametersType.get(i)) + ") args[" + i + "]");
+            }
+            String call = "((" + sourceName(owners.get(entry.getKey()).asType()) + ") ref)."
+                + method.element.getSimpleName() + "(" + String.join(", ", arguments) + ")";
+            source.append("            case ").append(index++).append(":\n");
+            if (method.type.getReturnType().getKind() == TypeKind.VOID) {
+                source.append("                ").append(call).append(";\n")
+                    .append("                return null;\n");
+            } else {
+                source.append("                return ").append(call).append(";\n");
+            }
+        }
+        source.append("            default:\n")
+            .append("                throw new IllegalArgumentException(\"方法下标【\" + index + \"】不存在。\");\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append("}\n");
+        writeSource(dispatcherName, source, implementation);
+    }
+
+    /**
+     * 接口中需要远程调用的方法，包括继承来的，key为方法签名，格式和运行时的签名一致
+     * 签名使用方法声明处擦除后的参数类型，和Class#getMethods一致；生成代码时使用代入了泛型参数的类型
+     * @param interfaceType 接口，实现时指定的泛型参数会代入到继承来的方法中
+     */
+    private Map<String, InterfaceMethod> interfaceMethods(DeclaredType interfaceType) {
+        TypeElement anInterface = (TypeElement) interfaceType.asElement();
+        String interfaceName = elements.getBinaryName(anInterface).toString();
+        Map<String, InterfaceMethod> methods = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(anInterface))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            List<String> parametersType = new ArrayList<>();
+            method.getParameters().forEach(parameter -> parametersType.add(className(parameter.asType())));
+            methods.putIfAbsent(GeneratedNames.signature(interfaceName, method.getSimpleName().toString(), parametersType),
+                new InterfaceMethod(method, (ExecutableType) types.asMemberOf(interfaceType, method)));
+        }
+        return methods;
+    }
+
+    // 写入包名和类上的注解，返回类的简单名字
+    private String header(StringBuilder source, String className) {
+        int packageEnd = className.lastIndexOf('.');
+        if (packageEnd > 0) {
+            source.append("package ").append(className, 0, packageEnd).append(";\n\n");
+        }
+        source.append(GENERATED).append('\n')
+            .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        return className.substring(packageEnd + 1);
+    }
+
+    private void appendSignatures(StringBuilder source, String modifiers, Set<String> signatures) {
+        source.append("    ").append(modifiers).append(" String[] ").append(GeneratedNames.SIGNATURES_FIELD).append(" = {\n");
+        for (String signature : signatures) {
+            source.append("        \"").append(signature).append("\",\n");
+        }
+        source.append("    };\n\n");
+    }
+
+    private void writeSource(String className, StringBuilder source, Element originatingElement) {
+        try (Writer writer = filer.createSourceFile(className, originatingElement).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "生成【" + className + "】时发生异常：" + e.getMessage(), originatingElement);
+        }
+    }
+
+    private void writeIndex() {
+        if (services.isEmpty()) {
+            return;
+        }
+        // 增量编译时只有本次编译的服务实现经过处理器，合并上次生成的索引
+        services.addAll(existingServices());
+        try {
+            FileObject index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", GeneratedNames.SERVICE_INDEX);
+            try (Writer writer = index.openWriter()) {
+                for (String service : services) {
+                    writer.write(service);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "生成服务索引时发生异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 读取输出目录中已有的服务索引，已经删除或者不再标注@YrpcApi的服务实现不再保留
+     */
+    private Set<String> existingServices() {
+        Set<String> existing = new TreeSet<>();
+        try {
+            FileObject index = filer.getResource(StandardLocation.CLASS_OUTPUT, "", GeneratedNames.SERVICE_INDEX);
+            try (BufferedReader reader = new BufferedReader(index.openReader(true))) {
+                String className;
+                while ((className = reader.readLine()) != null) {
+                    className = className.trim();
+                    TypeElement type = className.isEmpty() ? null : elements.getTypeElement(className.replace('$', '.'));
+                    if (type != null && type.getAnnotation(YrpcApi.class) != null) {
+                        existing.add(className);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // 第一次编译时还没有索引
+        }
+        return existing;
+    }
+
+    /**
+     * 方法的参数和返回值在指定的包中是否都可以访问
+     */
+    private boolean isAccessible(ExecutableType method, PackageElement packageElement) {
+        if (!isAccessible(method.getReturnType(), packageElement)) {
+            return false;
+        }
+        for (TypeMirror parameterType : method.getParameterTypes()) {
+            if (!isAccessible(parameterType, packageElement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeMirror type, PackageElement packageElement) {
+        TypeMirror erased = types.erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) erased).getComponentType(), packageElement);
+        }
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return isAccessible((TypeElement) types.asElement(erased), packageElement);
+        }
+        return true;
+    }
+
+    // 类型本身和外部类都需要是public的，或者和生成的类在同一个包中且不是private的
+    private boolean isAccessible(TypeElement type, PackageElement packageElement) {
+        boolean samePackage = elements.getPackageOf(type).equals(packageElement);
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || (!modifiers.contains(Modifier.PUBLIC) && !samePackage)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TypeElement outermost(TypeElement type) {
+        TypeElement outermost = type;
+        while (outermost.getEnclosingElement() instanceof TypeElement enclosing) {
+            outermost = enclosing;
+        }
+        return outermost;
+    }
+
+    /**
+     * 类型在源码中的写法，泛型擦除掉
+     */
+    private String sourceName(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    /**
+     * 类型的名字，格式和Class#getName一致
+     */
+    private String className(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return "[" + descriptor(((ArrayType) erased).getComponentType());
+        }
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return elements.getBinaryName((TypeElement) types.asElement(erased)).toString();
+        }
+        return erased.toString();
+    }
+
+    private String descriptor(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        return switch (erased.getKind()) {
+            case ARRAY -> "[" + descriptor(((ArrayType) erased).getComponentType());
+            case DECLARED -> "L" + elements.getBinaryName((TypeElement) types.asElement(erased)) + ";";
+            case BOOLEAN -> "Z";
+            case BYTE -> "B";
+            case CHAR -> "C";
+            case SHORT -> "S";
+            case INT -> "I";
+            case LONG -> "J";
+            case FLOAT -> "F";
+            case DOUBLE -> "D";
+            default -> throw new IllegalArgumentException("不支持的类型：" + erased);
+        };
+    }
+
+    private void note(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    /**
+     * 接口中的一个方法，type是作为接口成员时代入了泛型参数的类型
+     */
+    private static class InterfaceMethod {
+        private final ExecutableElement element;
+        private final ExecutableType type;
+
+        private InterfaceMethod(ExecutableElement element, ExecutableType type) {
+            this.element = element;
+            this.type = type;
+        }
+    }
+}
@@ -29,6 +29,8 @@ public class Application {
                      ├─ node1 [data]
                      ├─ node2 [data]
                      └─ node3 [data]
+          └─ dictionaries               (压缩字典, 持久节点)
+                └─ dictId [data]
           └─ config
          */
 
@@ -39,13 +41,15 @@ public class Application {
         String basePath = "/yrpc-metadata";
         String providerPath = basePath + "/providers";
         String consumersPath = basePath + "/consumers";
+        String dictionariesPath = basePath + "/dictionaries";
         // 封装为节点对象
         ZookeeperNode baseNode = new ZookeeperNode(basePath, null);
         ZookeeperNode providersNode = new ZookeeperNode(providerPath, null);
         ZookeeperNode consumersNode = new ZookeeperNode(consumersPath, null);
+        ZookeeperNode dictionariesNode = new ZookeeperNode(dictionariesPath, null);
 
         // 批量创建持久节点
-        List.of(baseNode, providersNode, consumersNode).forEach(node -> {
+        List.of(baseNode, providersNode, consumersNode, dictionariesNode).forEach(node -> {
             ZookeeperUtils.createNode(zooKeeper, node, null, CreateMode.PERSISTENT);
         });
 